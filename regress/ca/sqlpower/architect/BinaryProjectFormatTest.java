@@ -0,0 +1,229 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package ca.sqlpower.architect;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+import org.xml.sax.helpers.XMLReaderFactory;
+
+import ca.sqlpower.architect.profile.TableProfileResult;
+import ca.sqlpower.sqlobject.SQLColumn;
+import ca.sqlpower.sqlobject.SQLTable;
+
+public class BinaryProjectFormatTest extends TestCase {
+
+    /**
+     * Writes down every element, attribute and non-blank piece of text it is
+     * given, one per line.
+     */
+    private static class RecordingHandler extends DefaultHandler {
+        private final List<String> events = new ArrayList<String>();
+        private final StringBuilder text = new StringBuilder();
+
+        @Override
+        public void startElement(String uri, String localName, String qName, Attributes attributes) {
+            flushText();
+            StringBuilder event = new StringBuilder("<" + qName);
+            for (int i = 0; i < attributes.getLength(); i++) {
+                event.append(" ").append(attributes.getQName(i)).append("=").append(attributes.getValue(i));
+            }
+            events.add(event.toString());
+        }
+
+        @Override
+        public void characters(char[] ch, int start, int length) {
+            text.append(ch, start, length);
+        }
+
+        @Override
+        public void endElement(String uri, String localName, String qName) {
+            flushText();
+            events.add("</" + qName);
+        }
+
+        private void flushText() {
+            if (text.toString().trim().length() > 0) {
+                events.add(text.toString());
+            }
+            text.setLength(0);
+        }
+    }
+
+    private TestingArchitectSessionContext context;
+
+    private byte[] xml;
+
+    private byte[] binary;
+
+    @Override
+    protected void setUp() throws Exception {
+        context = new TestingArchitectSessionContext();
+        StringWriter sw = new StringWriter();
+        PrintWriter out = new PrintWriter(sw);
+        ProjectLoaderBenchmark.writeProject(out, 20, 5);
+        out.flush();
+        xml = sw.toString().getBytes("UTF-8");
+
+        ByteArrayOutputStream binaryOut = new ByteArrayOutputStream();
+        BinaryProjectWriter.write(new ByteArrayInputStream(xml), binaryOut);
+        binary = binaryOut.toByteArray();
+    }
+
+    private ArchitectSession load(byte[] project) throws Exception {
+        ArchitectSession session = context.createSession();
+        session.getProjectLoader().load(new ByteArrayInputStream(project), context.getPlDotIni());
+        return session;
+    }
+
+    public void testIsBinary() throws Exception {
+        assertTrue(BinaryProjectReader.isBinary(new ByteArrayInputStream(binary)));
+        assertFalse(BinaryProjectReader.isBinary(new ByteArrayInputStream(xml)));
+        assertTrue(binary.length < xml.length);
+    }
+
+    /**
+     * Replaying the binary file has to give the handler the same elements,
+     * attributes and text as parsing the XML it was made from.
+     */
+    public void testReplayMatchesXML() throws Exception {
+        RecordingHandler expected = new RecordingHandler();
+        XMLReader reader = XMLReaderFactory.createXMLReader();
+        reader.setContentHandler(expected);
+        reader.parse(new InputSource(new ByteArrayInputStream(xml)));
+
+        RecordingHandler actual = new RecordingHandler();
+        new BinaryProjectReader(new ByteArrayInputStream(binary)).replay(
+                actual, Collections.<String>emptySet(), false);
+
+        assertEquals(expected.events, actual.events);
+    }
+
+    /**
+     * Converting the XML as it is written has to give the same file as
+     * converting it all at once, even when it is written in small pieces.
+     */
+    public void testEncoderMatchesWrite() throws Exception {
+        ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+        BinaryProjectWriter.Encoder encoder = BinaryProjectWriter.openEncoder(encoded);
+        for (int i = 0; i < xml.length; i += 100) {
+            encoder.write(xml, i, Math.min(100, xml.length - i));
+        }
+        encoder.close();
+        assertTrue(Arrays.equals(binary, encoded.toByteArray()));
+    }
+
+    /**
+     * XML that can't be converted has to make close fail, every time it is
+     * called, rather than leave a truncated file behind quietly.
+     */
+    public void testEncoderReportsBadXML() throws Exception {
+        BinaryProjectWriter.Encoder encoder = BinaryProjectWriter.openEncoder(new ByteArrayOutputStream());
+        encoder.write("<architect-project><unclosed>".getBytes("UTF-8"));
+        try {
+            encoder.close();
+            fail("Incomplete XML was converted");
+        } catch (IOException expected) {
+            // the parser's complaint
+        }
+        try {
+            encoder.close();
+            fail("Closing again hid the failure");
+        } catch (IOException expected) {
+            // the same complaint
+        }
+    }
+
+    public void testSections() throws Exception {
+        BinaryProjectReader reader = new BinaryProjectReader(new ByteArrayInputStream(binary));
+        assertEquals("architect-project", reader.getRootName());
+        assertEquals("1.0", reader.getRootAttributes().getValue("version"));
+        List<String> names = new ArrayList<String>();
+        for (BinaryProjectReader.Section section : reader.getSections()) {
+            names.add(section.getName());
+        }
+        assertEquals(6, names.size());
+        assertEquals("project-name", names.get(0));
+        assertEquals("target-database", names.get(3));
+        assertEquals("profiles", names.get(5));
+        assertNull(reader.getSection("olap"));
+    }
+
+    public void testLoadMatchesXML() throws Exception {
+        ArchitectSession expected = load(xml);
+        ArchitectSession actual = load(binary);
+        assertTrue(actual.getProjectLoader().isBinaryFormat());
+
+        assertEquals(expected.getName(), actual.getName());
+        List<SQLTable> expectedTables = expected.getTargetDatabase().getTables();
+        List<SQLTable> actualTables = actual.getTargetDatabase().getTables();
+        assertEquals(expectedTables.size(), actualTables.size());
+        for (int i = 0; i < expectedTables.size(); i++) {
+            SQLTable et = expectedTables.get(i);
+            SQLTable at = actualTables.get(i);
+            assertEquals(et.getName(), at.getName());
+            assertEquals(et.getRemarks(), at.getRemarks());
+            assertEquals(et.getColumns().size(), at.getColumns().size());
+            for (int j = 0; j < et.getColumns().size(); j++) {
+                SQLColumn ec = et.getColumns().get(j);
+                SQLColumn ac = at.getColumns().get(j);
+                assertEquals(ec.getName(), ac.getName());
+                assertEquals(ec.getType(), ac.getType());
+                assertEquals(ec.getPrecision(), ac.getPrecision());
+                assertEquals(ec.isPrimaryKey(), ac.isPrimaryKey());
+            }
+            assertEquals(et.getImportedKeys().size(), at.getImportedKeys().size());
+            assertEquals(et.getIndices().size(), at.getIndices().size());
+        }
+    }
+
+    /**
+     * The profiles are not loaded with the rest of the project, but have to
+     * be there as soon as the profile manager is asked for them.
+     */
+    public void testProfilesLoadedWhenUsed() throws Exception {
+        ArchitectSession session = load(binary);
+        SQLTable table = session.getTargetDatabase().getTableByName("table_0");
+
+        List<TableProfileResult> results = session.getProfileManager().getResults();
+        assertEquals(2, results.size());
+        assertSame(table, results.get(0).getProfiledObject());
+        assertEquals(1000, results.get(0).getRowCount());
+        assertEquals(1, results.get(0).getColumnProfileResults().get(0).getValueCount().size());
+
+        // loading it again must not add the results twice
+        session.getProjectLoader().loadDeferredSection("profiles");
+        assertEquals(2, session.getProfileManager().getResults().size());
+    }
+}
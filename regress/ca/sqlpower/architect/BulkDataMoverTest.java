@@ -0,0 +1,282 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package ca.sqlpower.architect;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+import ca.sqlpower.architect.BulkDataMover.TableCopy;
+
+/**
+ * Tests the bulk data mover against in-memory stand-ins for the JDBC
+ * connections. Source tables are lists of rows; the destination keeps the
+ * committed rows of each table and records the order things happened in.
+ */
+public class BulkDataMoverTest extends TestCase {
+
+    private static <T> T proxy(Class<T> type, InvocationHandler handler) {
+        return type.cast(Proxy.newProxyInstance(
+                BulkDataMoverTest.class.getClassLoader(), new Class[] { type }, handler));
+    }
+
+    /**
+     * The source tables, by name. Every table has two columns.
+     */
+    private final Map<String, List<Object[]>> sourceTables = new HashMap<String, List<Object[]>>();
+
+    /**
+     * The committed rows of the destination tables, by name.
+     */
+    private final Map<String, List<Object[]>> destTables = Collections.synchronizedMap(new HashMap<String, List<Object[]>>());
+
+    /**
+     * Records "select X", "commit X" and so on in the order they happen.
+     */
+    private final List<String> events = Collections.synchronizedList(new ArrayList<String>());
+
+    private int batchesExecuted;
+
+    private List<Object[]> makeRows(int count) {
+        List<Object[]> rows = new ArrayList<Object[]>();
+        for (int i = 0; i < count; i++) {
+            rows.add(new Object[] { Integer.valueOf(i), i % 3 == 0 ? null : "row " + i });
+        }
+        return rows;
+    }
+
+    private Connection sourceConnection() {
+        return proxy(Connection.class, new InvocationHandler() {
+            public Object invoke(Object p, Method method, Object[] args) throws Throwable {
+                if (method.getName().equals("createStatement")) {
+                    return sourceStatement();
+                } else if (method.getName().equals("close")) {
+                    return null;
+                }
+                throw new UnsupportedOperationException(method.getName());
+            }
+        });
+    }
+
+    private Statement sourceStatement() {
+        return proxy(Statement.class, new InvocationHandler() {
+            public Object invoke(Object p, Method method, Object[] args) throws Throwable {
+                String name = method.getName();
+                if (name.equals("executeQuery")) {
+                    String table = ((String) args[0]).substring("SELECT * FROM ".length());
+                    events.add("select " + table);
+                    List<Object[]> rows = sourceTables.get(table);
+                    if (rows == null) {
+                        throw new SQLException("No such table " + table);
+                    }
+                    return resultSet(rows);
+                } else if (name.equals("setFetchSize") || name.equals("close")) {
+                    return null;
+                }
+                throw new UnsupportedOperationException(name);
+            }
+        });
+    }
+
+    private ResultSet resultSet(final List<Object[]> rows) {
+        final ResultSetMetaData rsmd = proxy(ResultSetMetaData.class, new InvocationHandler() {
+            public Object invoke(Object p, Method method, Object[] args) throws Throwable {
+                String name = method.getName();
+                if (name.equals("getColumnCount")) {
+                    return 2;
+                } else if (name.equals("getColumnName")) {
+                    return "COL_" + args[0];
+                } else if (name.equals("getColumnType")) {
+                    return ((Integer) args[0]) == 1 ? Types.INTEGER : Types.VARCHAR;
+                }
+                throw new UnsupportedOperationException(name);
+            }
+        });
+        return proxy(ResultSet.class, new InvocationHandler() {
+            int row = -1;
+            public Object invoke(Object p, Method method, Object[] args) throws Throwable {
+                String name = method.getName();
+                if (name.equals("next")) {
+                    return ++row < rows.size();
+                } else if (name.equals("getObject")) {
+                    return rows.get(row)[(Integer) args[0] - 1];
+                } else if (name.equals("getMetaData")) {
+                    return rsmd;
+                } else if (name.equals("close")) {
+                    return null;
+                }
+                throw new UnsupportedOperationException(name);
+            }
+        });
+    }
+
+    private Connection destConnection() {
+        return proxy(Connection.class, new InvocationHandler() {
+            boolean autoCommit = true;
+            String table;
+            Object[] current = new Object[2];
+            final List<Object[]> batch = new ArrayList<Object[]>();
+            final List<Object[]> uncommitted = new ArrayList<Object[]>();
+
+            public Object invoke(Object p, Method method, Object[] args) throws Throwable {
+                String name = method.getName();
+                if (name.equals("getAutoCommit")) {
+                    return autoCommit;
+                } else if (name.equals("setAutoCommit")) {
+                    autoCommit = (Boolean) args[0];
+                    return null;
+                } else if (name.equals("commit")) {
+                    events.add("commit " + table);
+                    destTables.get(table).addAll(uncommitted);
+                    uncommitted.clear();
+                    return null;
+                } else if (name.equals("rollback")) {
+                    uncommitted.clear();
+                    return null;
+                } else if (name.equals("close")) {
+                    return null;
+                } else if (name.equals("prepareStatement")) {
+                    String sql = (String) args[0];
+                    assertEquals("INSERT INTO ", sql.substring(0, 12));
+                    table = sql.substring(12, sql.indexOf(' ', 12));
+                    assertEquals("INSERT INTO " + table + " (COL_1, COL_2) VALUES (?, ?)", sql);
+                    destTables.put(table, Collections.synchronizedList(new ArrayList<Object[]>()));
+                    return proxy(PreparedStatement.class, new InvocationHandler() {
+                        public Object invoke(Object p, Method method, Object[] args) throws Throwable {
+                            String name = method.getName();
+                            if (name.equals("setObject")) {
+                                current[(Integer) args[0] - 1] = args[1];
+                            } else if (name.equals("setNull")) {
+                                current[(Integer) args[0] - 1] = null;
+                            } else if (name.equals("addBatch")) {
+                                batch.add(current);
+                                current = new Object[2];
+                            } else if (name.equals("executeBatch")) {
+                                batchesExecuted++;
+                                uncommitted.addAll(batch);
+                                int[] counts = new int[batch.size()];
+                                batch.clear();
+                                return counts;
+                            } else if (!name.equals("close")) {
+                                throw new UnsupportedOperationException(name);
+                            }
+                            return null;
+                        }
+                    });
+                }
+                throw new UnsupportedOperationException(name);
+            }
+        });
+    }
+
+    private BulkDataMover createMover() {
+        return new BulkDataMover() {
+            @Override
+            protected Connection openSourceConnection(TableCopy copy) {
+                return sourceConnection();
+            }
+            @Override
+            protected Connection openDestinationConnection(TableCopy copy) {
+                return destConnection();
+            }
+        };
+    }
+
+    private TableCopy tableCopy(String name) {
+        return new TableCopy(name, null, name, null, "dest_" + name);
+    }
+
+    private void assertCopied(String name) {
+        List<Object[]> expected = sourceTables.get(name);
+        List<Object[]> actual = destTables.get("dest_" + name);
+        assertNotNull("Nothing was copied to " + name, actual);
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertTrue("Row " + i + " of " + name, Arrays.equals(expected.get(i), actual.get(i)));
+        }
+    }
+
+    public void testCopyTableBatchesAndCommits() throws Exception {
+        sourceTables.put("a", makeRows(2550));
+        BulkDataMover mover = createMover();
+        mover.setBatchSize(100);
+        mover.setCommitInterval(1000);
+        TableCopy copy = tableCopy("a");
+        assertEquals(2550, mover.copyTable(sourceConnection(), destConnection(), copy));
+        assertCopied("a");
+        assertEquals(26, batchesExecuted);
+        assertEquals(Arrays.asList("select a", "commit dest_a", "commit dest_a", "commit dest_a"), events);
+        assertTrue(copy.isCompleted());
+        assertEquals(2550, copy.getRowCount());
+    }
+
+    public void testParentsCopiedBeforeChildren() throws Exception {
+        sourceTables.put("parent", makeRows(5000));
+        sourceTables.put("child", makeRows(10));
+        sourceTables.put("other", makeRows(10));
+        TableCopy parent = tableCopy("parent");
+        TableCopy child = tableCopy("child");
+        TableCopy other = tableCopy("other");
+        child.addPrerequisite(parent);
+
+        BulkDataMover mover = createMover();
+        mover.setThreadCount(3);
+        assertEquals(5020, mover.copyTables(Arrays.asList(parent, child, other)));
+        assertCopied("parent");
+        assertCopied("child");
+        assertCopied("other");
+        assertTrue(events.indexOf("select child") > events.lastIndexOf("commit dest_parent"));
+        assertTrue(mover.getProgressMonitor().isFinished());
+        assertEquals(3, mover.getProgressMonitor().getProgress());
+    }
+
+    public void testFailedParentSkipsChildren() throws Exception {
+        sourceTables.put("child", makeRows(10));
+        sourceTables.put("other", makeRows(10));
+        TableCopy parent = tableCopy("missing");
+        TableCopy child = tableCopy("child");
+        TableCopy other = tableCopy("other");
+        child.addPrerequisite(parent);
+
+        BulkDataMover mover = createMover();
+        assertEquals(10, mover.copyTables(Arrays.asList(parent, child, other)));
+        assertNotNull(parent.getException());
+        assertNotNull(child.getException());
+        assertFalse(child.isCompleted());
+        assertFalse(events.contains("select child"));
+        assertTrue(other.isCompleted());
+        assertCopied("other");
+    }
+}
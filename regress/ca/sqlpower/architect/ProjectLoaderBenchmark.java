@@ -0,0 +1,164 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.architect;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+
+/**
+ * Compares the time and memory it takes the Digester and the
+ * {@link StreamingProjectReader} to load a large generated project. This is
+ * not a unit test; run it from the command line with the regression test
+ * classpath:
+ * <pre>
+ *   java ca.sqlpower.architect.ProjectLoaderBenchmark [tables] [columns] [runs]
+ * </pre>
+ * The defaults are 4000 tables of 20 columns each, loaded 5 times by each
+ * loader after 2 warm-up loads.
+ */
+public class ProjectLoaderBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int tableCount = args.length > 0 ? Integer.parseInt(args[0]) : 4000;
+        int columnCount = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+        int runs = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+
+        File file = File.createTempFile("benchmark", ".architect");
+        file.deleteOnExit();
+        PrintWriter out = new PrintWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8"));
+        writeProject(out, tableCount, columnCount);
+        out.close();
+        System.out.println("Generated " + tableCount + " tables of " + columnCount +
+                " columns (" + (file.length() / 1024) + " KB)");
+
+        TestingArchitectSessionContext context = new TestingArchitectSessionContext();
+        for (boolean streaming : new boolean[] { false, true }) {
+            String name = streaming ? "StAX    " : "Digester";
+            for (int i = 0; i < 2; i++) {
+                load(context, file, streaming);
+            }
+            long totalTime = 0;
+            long maxHeap = 0;
+            for (int i = 0; i < runs; i++) {
+                System.gc();
+                Runtime rt = Runtime.getRuntime();
+                long heapBefore = rt.totalMemory() - rt.freeMemory();
+                long start = System.nanoTime();
+                ArchitectSession session = load(context, file, streaming);
+                totalTime += System.nanoTime() - start;
+                maxHeap = Math.max(maxHeap, rt.totalMemory() - rt.freeMemory() - heapBefore);
+                session.close();
+            }
+            System.out.println(name + ": " + (totalTime / runs / 1000000) + " ms per load, " +
+                    (maxHeap / 1024 / 1024) + " MB heap growth at most");
+        }
+    }
+
+    private static ArchitectSession load(TestingArchitectSessionContext context, File file, boolean streaming)
+    throws Exception {
+        ArchitectSession session = context.createSession();
+        session.getProjectLoader().setStreamingParser(streaming);
+        session.getProjectLoader().load(new BufferedInputStream(new FileInputStream(file)), context.getPlDotIni());
+        return session;
+    }
+
+    /**
+     * Writes a project with the given number of tables to the given writer.
+     * Every table has an integer primary key column, a primary key index and,
+     * except for the first table, a foreign key to the table before it. Every
+     * tenth table has a profile result.
+     */
+    static void writeProject(PrintWriter out, int tableCount, int columnCount) {
+        out.println("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
+        out.println("<architect-project version=\"1.0\" appversion=\"" + ArchitectVersion.APP_FULL_VERSION + "\">");
+        out.println(" <project-name>Benchmark</project-name>");
+        out.println(" <project-data-sources>");
+        out.println("  <data-source id=\"DS0\">");
+        out.println("   <property key=\"Logical\" value=\"Benchmark\" />");
+        out.println("  </data-source>");
+        out.println(" </project-data-sources>");
+        out.println(" <source-databases>");
+        out.println(" </source-databases>");
+        out.println(" <target-database id=\"ppdb\" dbcs-ref=\"DS0\">");
+        for (int t = 0; t < tableCount; t++) {
+            out.println("  <table id=\"TAB" + t + "\" populated=\"true\" name=\"table_" + t +
+                    "\" objectType=\"TABLE\" physicalName=\"TABLE_" + t + "\" >");
+            out.println("   <remarks>Remarks for table " + t + " &amp; friends</remarks>");
+            out.println("   <folder id=\"FOL" + t + "1\" populated=\"true\" name=\"Columns\" physicalName=\"Columns\" type=\"1\">");
+            for (int c = 0; c < columnCount; c++) {
+                out.print("    <column id=\"COL" + t + "_" + c + "\" populated=\"true\" autoIncrement=\"false\"" +
+                        " name=\"col_" + c + "\" physicalName=\"COL_" + c + "\" nullable=\"" + (c == 0 ? 0 : 1) + "\"" +
+                        " precision=\"" + (10 + c) + "\" scale=\"0\" type=\"" + (c % 2 == 0 ? 4 : 12) + "\"" +
+                        " defaultValue=\"\" referenceCount=\"1\"");
+                if (c == 0) {
+                    out.print(" primaryKeySeq=\"0\"");
+                }
+                out.println(" >");
+                out.println("     <remarks>column " + c + "</remarks>");
+                out.println("    </column>");
+            }
+            out.println("   </folder>");
+            out.println("   <folder id=\"FOL" + t + "3\" populated=\"true\" name=\"Exported Keys\" physicalName=\"Exported Keys\" type=\"3\">");
+            out.println("   </folder>");
+            out.println("   <folder id=\"FOL" + t + "2\" populated=\"true\" name=\"Imported Keys\" physicalName=\"Imported Keys\" type=\"2\">");
+            out.println("   </folder>");
+            out.println("   <folder id=\"FOL" + t + "4\" populated=\"true\" name=\"Indices\" physicalName=\"Indices\" type=\"4\">");
+            out.println("    <index id=\"IDX" + t + "\" populated=\"true\" clustered=\"false\" index-type=\"BTREE\"" +
+                    " name=\"table_" + t + "_pk\" physicalName=\"TABLE_" + t + "_PK\" primaryKeyIndex=\"true\" unique=\"false\">");
+            out.println("     <index-column id=\"IDC" + t + "\" populated=\"true\" ascendingOrDescending=\"UNSPECIFIED\"" +
+                    " column-ref=\"COL" + t + "_0\" name=\"col_0\" physicalName=\"COL_0\" />");
+            out.println("    </index>");
+            out.println("   </folder>");
+            out.println("  </table>");
+        }
+        out.println("  <relationships>");
+        for (int t = 1; t < tableCount && columnCount > 1; t++) {
+            out.println("   <relationship id=\"REL" + t + "\" populated=\"true\" deferrability=\"7\" deleteRule=\"3\"" +
+                    " fk-table-ref=\"TAB" + t + "\" fkCardinality=\"7\" identifying=\"false\" name=\"table_" + t + "_fk\"" +
+                    " pk-table-ref=\"TAB" + (t - 1) + "\" pkCardinality=\"2\" updateRule=\"3\">");
+            out.println("    <column-mapping id=\"CMP" + t + "\" populated=\"true\" fk-column-ref=\"COL" + t + "_1\"" +
+                    " pk-column-ref=\"COL" + (t - 1) + "_0\" />");
+            out.println("   </relationship>");
+        }
+        out.println("  </relationships>");
+        out.println(" </target-database>");
+        out.println(" <ddl-generator type=\"ca.sqlpower.architect.ddl.GenericDDLGenerator\" allow-connection=\"true\"> </ddl-generator>");
+        out.println(" <profiles topNCount=\"10\">");
+        for (int t = 0; t < tableCount; t += 10) {
+            out.println("  <table-profile-result ref-id=\"TAB" + t + "\" createStartTime=\"1185828799320\"" +
+                    " createEndTime=\"1185828807187\" exception=\"false\" rowCount=\"1000\">");
+            out.println("   <column-profile-result ref-id=\"COL" + t + "_0\" createStartTime=\"1185828799479\"" +
+                    " createEndTime=\"1185828801322\" exception=\"false\" avgLength=\"3.5\" minLength=\"1\"" +
+                    " maxLength=\"4\" nullCount=\"0\" distinctValueCount=\"1000\">");
+            out.println("    <avgValue type=\"java.math.BigDecimal\" value=\"500.5\"/>");
+            out.println("    <maxValue type=\"java.math.BigDecimal\" value=\"1000\"/>");
+            out.println("    <minValue type=\"java.math.BigDecimal\" value=\"1\"/>");
+            out.println("    <topNvalue count=\"1\" type=\"java.math.BigDecimal\" value=\"1\" percent=\"0.001\"/>");
+            out.println("   </column-profile-result>");
+            out.println("  </table-profile-result>");
+        }
+        out.println(" </profiles>");
+        out.println("</architect-project>");
+    }
+}
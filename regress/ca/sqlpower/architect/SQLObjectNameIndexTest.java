@@ -0,0 +1,124 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.architect;
+
+import java.sql.Types;
+import java.util.List;
+import java.util.Locale;
+
+import junit.framework.TestCase;
+import ca.sqlpower.architect.SQLObjectNameIndex.NameProperty;
+import ca.sqlpower.sqlobject.SQLColumn;
+import ca.sqlpower.sqlobject.SQLDatabase;
+import ca.sqlpower.sqlobject.SQLObject;
+import ca.sqlpower.sqlobject.SQLTable;
+
+public class SQLObjectNameIndexTest extends TestCase {
+
+    private SQLDatabase db;
+    private SQLTable customer;
+    private SQLColumn customerId;
+    private SQLColumn customerName;
+    private SQLObjectNameIndex index;
+
+    @Override
+    protected void setUp() throws Exception {
+        db = new SQLDatabase();
+        customer = new SQLTable(db, true);
+        customer.setName("Customer");
+        customer.setPhysicalName("CUST");
+        db.addChild(customer);
+        customerId = new SQLColumn(null, "customer_id", Types.INTEGER, 10, 0);
+        customerName = new SQLColumn(null, "name", Types.VARCHAR, 50, 0);
+        customer.addColumn(customerId);
+        customer.addColumn(customerName);
+        index = new SQLObjectNameIndex(db);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        index.cleanup();
+    }
+
+    public void testSubstring() throws Exception {
+        List<SQLObject> results = index.findSubstring(NameProperty.LOGICAL_NAME, "ustom", true);
+        assertEquals(2, results.size());
+        assertSame(customer, results.get(0));
+        assertSame(customerId, results.get(1));
+
+        assertEquals(1, index.findSubstring(NameProperty.LOGICAL_NAME, "ustom", false).size());
+        assertTrue(index.findSubstring(NameProperty.LOGICAL_NAME, "xyz", true).isEmpty());
+    }
+
+    public void testShortTextChecksEverything() throws Exception {
+        List<SQLObject> results = index.findSubstring(NameProperty.LOGICAL_NAME, "na", true);
+        assertEquals(1, results.size());
+        assertSame(customerName, results.get(0));
+    }
+
+    public void testExact() throws Exception {
+        assertEquals(1, index.findExact(NameProperty.LOGICAL_NAME, "customer", true).size());
+        assertTrue(index.findExact(NameProperty.LOGICAL_NAME, "customer", false).isEmpty());
+        assertTrue(index.findExact(NameProperty.LOGICAL_NAME, "custom", true).isEmpty());
+    }
+
+    /**
+     * Case is ignored the same way whatever the default locale is. In a
+     * Turkish locale, "I" lower-cases to a dotless i.
+     */
+    public void testIgnoreCaseInTurkishLocale() throws Exception {
+        Locale oldLocale = Locale.getDefault();
+        Locale.setDefault(new Locale("tr", "TR"));
+        SQLObjectNameIndex turkishIndex = null;
+        try {
+            turkishIndex = new SQLObjectNameIndex(db);
+            List<SQLObject> results = turkishIndex.findExact(NameProperty.LOGICAL_NAME, "CUSTOMER_ID", true);
+            assertEquals(1, results.size());
+            assertSame(customerId, results.get(0));
+        } finally {
+            Locale.setDefault(oldLocale);
+            if (turkishIndex != null) {
+                turkishIndex.cleanup();
+            }
+        }
+    }
+
+    public void testPhysicalName() throws Exception {
+        List<SQLObject> results = index.findExact(NameProperty.PHYSICAL_NAME, "cust", true);
+        assertEquals(1, results.size());
+        assertSame(customer, results.get(0));
+    }
+
+    public void testFollowsRenames() throws Exception {
+        customerName.setName("surname");
+        assertTrue(index.findExact(NameProperty.LOGICAL_NAME, "name", true).isEmpty());
+        assertEquals(1, index.findExact(NameProperty.LOGICAL_NAME, "surname", true).size());
+    }
+
+    public void testFollowsAddsAndRemoves() throws Exception {
+        SQLColumn email = new SQLColumn(null, "customer_email", Types.VARCHAR, 50, 0);
+        customer.addColumn(email);
+        assertEquals(3, index.findSubstring(NameProperty.LOGICAL_NAME, "customer", true).size());
+
+        db.removeChild(customer);
+        assertTrue(index.findSubstring(NameProperty.LOGICAL_NAME, "customer", true).isEmpty());
+        assertEquals(1, index.size());
+    }
+}
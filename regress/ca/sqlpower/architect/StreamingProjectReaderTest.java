@@ -0,0 +1,128 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.architect;
+
+import java.io.ByteArrayInputStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.math.BigDecimal;
+import java.util.List;
+
+import junit.framework.TestCase;
+import ca.sqlpower.architect.profile.ColumnProfileResult;
+import ca.sqlpower.architect.profile.TableProfileResult;
+import ca.sqlpower.sqlobject.SQLColumn;
+import ca.sqlpower.sqlobject.SQLIndex;
+import ca.sqlpower.sqlobject.SQLRelationship;
+import ca.sqlpower.sqlobject.SQLTable;
+
+public class StreamingProjectReaderTest extends TestCase {
+
+    private TestingArchitectSessionContext context;
+
+    private byte[] project;
+
+    @Override
+    protected void setUp() throws Exception {
+        context = new TestingArchitectSessionContext();
+        StringWriter sw = new StringWriter();
+        PrintWriter out = new PrintWriter(sw);
+        ProjectLoaderBenchmark.writeProject(out, 20, 5);
+        out.flush();
+        project = sw.toString().getBytes("UTF-8");
+    }
+
+    private ArchitectSession load(boolean streaming) throws Exception {
+        ArchitectSession session = context.createSession();
+        session.getProjectLoader().setStreamingParser(streaming);
+        session.getProjectLoader().load(new ByteArrayInputStream(project), context.getPlDotIni());
+        return session;
+    }
+
+    /**
+     * The streaming reader has to build the same SQL objects the Digester
+     * does.
+     */
+    public void testSameTablesAsDigester() throws Exception {
+        ArchitectSession expected = load(false);
+        ArchitectSession actual = load(true);
+
+        assertEquals(expected.getName(), actual.getName());
+        List<SQLTable> expectedTables = expected.getTargetDatabase().getTables();
+        List<SQLTable> actualTables = actual.getTargetDatabase().getTables();
+        assertEquals(20, actualTables.size());
+        assertEquals(expectedTables.size(), actualTables.size());
+        for (int i = 0; i < expectedTables.size(); i++) {
+            SQLTable et = expectedTables.get(i);
+            SQLTable at = actualTables.get(i);
+            assertEquals(et.getName(), at.getName());
+            assertEquals(et.getPhysicalName(), at.getPhysicalName());
+            assertEquals(et.getRemarks(), at.getRemarks());
+            assertEquals(et.getColumns().size(), at.getColumns().size());
+            for (int j = 0; j < et.getColumns().size(); j++) {
+                SQLColumn ec = et.getColumns().get(j);
+                SQLColumn ac = at.getColumns().get(j);
+                assertEquals(ec.getName(), ac.getName());
+                assertEquals(ec.getType(), ac.getType());
+                assertEquals(ec.getPrecision(), ac.getPrecision());
+                assertEquals(ec.getNullable(), ac.getNullable());
+                assertEquals(ec.getRemarks(), ac.getRemarks());
+                assertEquals(ec.isPrimaryKey(), ac.isPrimaryKey());
+            }
+            assertEquals(et.getIndices().size(), at.getIndices().size());
+            assertEquals(et.getImportedKeys().size(), at.getImportedKeys().size());
+            assertEquals(et.getExportedKeys().size(), at.getExportedKeys().size());
+        }
+    }
+
+    public void testRelationshipsResolved() throws Exception {
+        ArchitectSession session = load(true);
+        SQLTable t0 = session.getTargetDatabase().getTableByName("table_0");
+        SQLTable t1 = session.getTargetDatabase().getTableByName("table_1");
+        assertEquals(1, t0.getExportedKeys().size());
+        SQLRelationship rel = t0.getExportedKeys().get(0);
+        assertSame(t1, rel.getFkTable());
+        assertSame(t0.getColumn(0), rel.getChildren(SQLRelationship.ColumnMapping.class).get(0).getPkColumn());
+        assertSame(t1.getColumn(1), rel.getChildren(SQLRelationship.ColumnMapping.class).get(0).getFkColumn());
+
+        SQLIndex pk = t1.getPrimaryKeyIndex();
+        assertEquals(1, pk.getChildCount());
+        assertSame(t1.getColumn(0), pk.getChild(0).getColumn());
+    }
+
+    public void testProfilesLoaded() throws Exception {
+        ArchitectSession session = load(true);
+        List<TableProfileResult> results = session.getProfileManager().getResults();
+        assertEquals(2, results.size());
+        TableProfileResult tpr = results.get(0);
+        assertEquals(1000, tpr.getRowCount());
+        ColumnProfileResult cpr = tpr.getColumnProfileResults().get(0);
+        assertEquals(1000, cpr.getDistinctValueCount());
+        assertEquals(new BigDecimal("500.5"), cpr.getAvgValue());
+        assertEquals(1, cpr.getValueCount().size());
+    }
+
+    public void testUnescape() throws Exception {
+        assertEquals("plain", StreamingProjectReader.unescape("plain"));
+        assertEquals("a\u0001b", StreamingProjectReader.unescape("a\\u0001b"));
+        assertEquals("back\\slash", StreamingProjectReader.unescape("back\\slash"));
+        assertNull(StreamingProjectReader.unescape(null));
+    }
+}
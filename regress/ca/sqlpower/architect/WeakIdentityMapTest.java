@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.architect;
+
+import java.lang.ref.WeakReference;
+
+import junit.framework.TestCase;
+
+public class WeakIdentityMapTest extends TestCase {
+
+    /**
+     * A key whose equality changes with its value, like a data source whose
+     * properties are edited.
+     */
+    private static class MutableKey {
+        String value;
+
+        MutableKey(String value) {
+            this.value = value;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof MutableKey && ((MutableKey) obj).value.equals(value);
+        }
+
+        @Override
+        public int hashCode() {
+            return value.hashCode();
+        }
+    }
+
+    private WeakIdentityMap<MutableKey, String> map;
+
+    @Override
+    protected void setUp() throws Exception {
+        map = new WeakIdentityMap<MutableKey, String>();
+    }
+
+    public void testComparesByIdentity() throws Exception {
+        MutableKey key = new MutableKey("a");
+        map.put(key, "first");
+        assertNull(map.get(new MutableKey("a")));
+
+        key.value = "b";
+        assertEquals("first", map.get(key));
+        assertEquals("first", map.remove(key));
+        assertEquals(0, map.size());
+    }
+
+    public void testReplacesValue() throws Exception {
+        MutableKey key = new MutableKey("a");
+        map.put(key, "first");
+        assertEquals("first", map.put(key, "second"));
+        assertEquals("second", map.get(key));
+        assertEquals(1, map.size());
+    }
+
+    public void testDropsCollectedKeys() throws Exception {
+        MutableKey key = new MutableKey("a");
+        map.put(key, "first");
+        WeakReference<MutableKey> ref = new WeakReference<MutableKey>(key);
+        key = null;
+        for (int i = 0; i < 50 && ref.get() != null; i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        assertNull("The key was not collected", ref.get());
+        for (int i = 0; i < 50 && map.size() > 0; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, map.size());
+    }
+}
@@ -0,0 +1,233 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package ca.sqlpower.architect.ddl;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.BatchUpdateException;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+public class DDLScriptExecutorTest extends TestCase {
+
+    /**
+     * A statement that records every SQL string it executes, and fails any
+     * statement whose text contains "bad". Batches stop at the first bad
+     * statement, the way most drivers do.
+     */
+    private class RecordingStatement implements InvocationHandler {
+        final List<String> pending = new ArrayList<String>();
+        final List<String> executed = new ArrayList<String>();
+        int batches;
+
+        /**
+         * If true, a failed batch throws a plain SQLException without update
+         * counts, after the statements before the bad one were applied.
+         */
+        boolean failWithoutCounts;
+
+        /**
+         * If true, addBatch throws, the way drivers without batch support do.
+         */
+        boolean batchesUnsupported;
+
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if (name.equals("addBatch")) {
+                if (batchesUnsupported) {
+                    throw new SQLException("batches not supported");
+                }
+                pending.add((String) args[0]);
+                return null;
+            } else if (name.equals("clearBatch")) {
+                pending.clear();
+                return null;
+            } else if (name.equals("executeBatch")) {
+                batches++;
+                List<Integer> counts = new ArrayList<Integer>();
+                for (String sql : pending) {
+                    if (sql.contains("bad")) {
+                        if (failWithoutCounts) {
+                            throw new SQLException("bad statement");
+                        }
+                        int[] c = new int[counts.size()];
+                        for (int i = 0; i < c.length; i++) c[i] = counts.get(i);
+                        throw new BatchUpdateException("bad statement", c);
+                    }
+                    executed.add(sql);
+                    counts.add(0);
+                }
+                pending.clear();
+                return new int[counts.size()];
+            } else if (name.equals("executeUpdate")) {
+                String sql = (String) args[0];
+                if (sql.contains("bad")) {
+                    throw new SQLException("bad statement");
+                }
+                executed.add(sql);
+                return 0;
+            }
+            throw new UnsupportedOperationException(name);
+        }
+    }
+
+    private class TestExecutor extends DDLScriptExecutor {
+        final List<String> failed = new ArrayList<String>();
+        boolean continueAfterFailure = true;
+        int lastProcessed;
+
+        @Override
+        protected boolean statementFailed(DDLStatement ddlStmt, SQLException ex) {
+            failed.add(ddlStmt.getSQLText());
+            return continueAfterFailure;
+        }
+
+        @Override
+        protected void batchExecuted(int statementsProcessed, int batchSize, long batchMillis, long elapsedMillis) {
+            assertTrue(statementsProcessed > lastProcessed);
+            lastProcessed = statementsProcessed;
+        }
+    }
+
+    private RecordingStatement recorder;
+    private Statement stmt;
+
+    @Override
+    protected void setUp() throws Exception {
+        recorder = new RecordingStatement();
+        stmt = (Statement) Proxy.newProxyInstance(
+                getClass().getClassLoader(), new Class[] { Statement.class }, recorder);
+    }
+
+    private List<DDLStatement> makeStatements(int count, int... badIndices) {
+        List<DDLStatement> statements = new ArrayList<DDLStatement>();
+        for (int i = 0; i < count; i++) {
+            String sql = "CREATE TABLE t" + i;
+            for (int bad : badIndices) {
+                if (bad == i) sql = "bad " + i;
+            }
+            statements.add(new DDLStatement(null, DDLStatement.StatementType.CREATE, sql, ";", null, null));
+        }
+        return statements;
+    }
+
+    private List<String> sqlOf(List<DDLStatement> statements) {
+        List<String> sql = new ArrayList<String>();
+        for (DDLStatement s : statements) {
+            if (!s.getSQLText().startsWith("bad")) {
+                sql.add(s.getSQLText());
+            }
+        }
+        return sql;
+    }
+
+    public void testBatchesExecuteEverythingInOrder() throws Exception {
+        List<DDLStatement> statements = makeStatements(1000);
+        TestExecutor executor = new TestExecutor();
+        executor.setBatchUpdates(true);
+        assertEquals(1000, executor.execute(stmt, statements));
+        assertEquals(sqlOf(statements), recorder.executed);
+        assertEquals(1000, executor.lastProcessed);
+        assertTrue("Expected far fewer batches than statements but got " + recorder.batches,
+                recorder.batches < 100);
+    }
+
+    public void testBatchSizeGrowsWhenFast() throws Exception {
+        TestExecutor executor = new TestExecutor();
+        executor.setBatchUpdates(true);
+        executor.execute(stmt, makeStatements(500));
+        assertTrue(executor.getBatchSize() > DDLScriptExecutor.INITIAL_BATCH_SIZE);
+        assertTrue(executor.getBatchSize() <= DDLScriptExecutor.MAX_BATCH_SIZE);
+    }
+
+    /**
+     * A failure in a batch has to be reported against the statement that
+     * failed, and the statements around it still have to run exactly once.
+     */
+    public void testFailedBatchFallsBackToSingleStatements() throws Exception {
+        List<DDLStatement> statements = makeStatements(100, 5, 40);
+        TestExecutor executor = new TestExecutor();
+        executor.setBatchUpdates(true);
+        assertEquals(98, executor.execute(stmt, statements));
+        assertEquals(sqlOf(statements), recorder.executed);
+        assertEquals(2, executor.failed.size());
+        assertEquals("bad 5", executor.failed.get(0));
+        assertEquals("bad 40", executor.failed.get(1));
+    }
+
+    public void testStopAfterFailure() throws Exception {
+        List<DDLStatement> statements = makeStatements(100, 5);
+        TestExecutor executor = new TestExecutor();
+        executor.continueAfterFailure = false;
+        executor.setBatchUpdates(true);
+        assertEquals(5, executor.execute(stmt, statements));
+        assertEquals(sqlOf(statements.subList(0, 5)), recorder.executed);
+        assertEquals(1, executor.failed.size());
+    }
+
+    public void testWithoutBatches() throws Exception {
+        List<DDLStatement> statements = makeStatements(50, 10);
+        TestExecutor executor = new TestExecutor();
+        assertEquals(49, executor.execute(stmt, statements));
+        assertEquals(sqlOf(statements), recorder.executed);
+        assertEquals(0, recorder.batches);
+        assertEquals(50, executor.lastProcessed);
+    }
+
+    /**
+     * When the driver does not say which statements of a failed batch took
+     * effect, none of the batch may run a second time.
+     */
+    public void testBatchFailureWithoutCountsNotRerun() throws Exception {
+        recorder.failWithoutCounts = true;
+        List<DDLStatement> statements = makeStatements(100, 5);
+        TestExecutor executor = new TestExecutor();
+        executor.setBatchUpdates(true);
+        executor.setBatchSize(16);
+        assertEquals(84, executor.execute(stmt, statements));
+        List<String> expected = sqlOf(statements.subList(0, 5));
+        expected.addAll(sqlOf(statements.subList(16, 100)));
+        assertEquals(expected, recorder.executed);
+        assertEquals(1, executor.failed.size());
+        assertEquals(1, recorder.batches);
+        assertTrue(executor.isBatchUpdates());
+    }
+
+    /**
+     * A batch that could not even be built never reached the database, so
+     * its statements are run on their own.
+     */
+    public void testBatchesUnsupportedFallsBackToSingleStatements() throws Exception {
+        recorder.batchesUnsupported = true;
+        List<DDLStatement> statements = makeStatements(50, 10);
+        TestExecutor executor = new TestExecutor();
+        executor.setBatchUpdates(true);
+        assertEquals(49, executor.execute(stmt, statements));
+        assertEquals(sqlOf(statements), recorder.executed);
+        assertEquals(0, recorder.batches);
+        assertEquals(1, executor.failed.size());
+    }
+}
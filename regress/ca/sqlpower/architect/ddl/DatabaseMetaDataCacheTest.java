@@ -0,0 +1,119 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package ca.sqlpower.architect.ddl;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+
+import junit.framework.TestCase;
+import ca.sqlpower.sql.JDBCDataSource;
+import ca.sqlpower.sql.PlDotIni;
+
+public class DatabaseMetaDataCacheTest extends TestCase {
+
+    private long now;
+
+    private int metaDataCalls;
+
+    private DatabaseMetaDataCache cache;
+
+    private JDBCDataSource ds;
+
+    private Connection con;
+
+    @Override
+    protected void setUp() throws Exception {
+        now = 1000;
+        metaDataCalls = 0;
+        cache = new DatabaseMetaDataCache() {
+            @Override
+            protected long currentTimeMillis() {
+                return now;
+            }
+        };
+        cache.setTimeToLive(100);
+        ds = new JDBCDataSource(new PlDotIni());
+        ds.setUrl("jdbc:test:one");
+
+        final DatabaseMetaData dbmd = (DatabaseMetaData) Proxy.newProxyInstance(
+                getClass().getClassLoader(), new Class[] { DatabaseMetaData.class },
+                new InvocationHandler() {
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        if (method.getName().equals("getIdentifierQuoteString")) {
+                            metaDataCalls++;
+                            return "\"";
+                        }
+                        throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+        con = (Connection) Proxy.newProxyInstance(
+                getClass().getClassLoader(), new Class[] { Connection.class },
+                new InvocationHandler() {
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        if (method.getName().equals("getMetaData")) {
+                            return dbmd;
+                        }
+                        throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+
+    public void testQuoteStringCached() throws Exception {
+        assertEquals("\"", cache.getIdentifierQuoteString(ds, con));
+        assertEquals("\"", cache.getIdentifierQuoteString(ds, con));
+        assertEquals(1, metaDataCalls);
+    }
+
+    public void testEntryExpires() throws Exception {
+        cache.getIdentifierQuoteString(ds, con);
+        now += 99;
+        cache.getIdentifierQuoteString(ds, con);
+        assertEquals(1, metaDataCalls);
+        now += 1;
+        cache.getIdentifierQuoteString(ds, con);
+        assertEquals(2, metaDataCalls);
+    }
+
+    public void testInvalidate() throws Exception {
+        cache.getIdentifierQuoteString(ds, con);
+        cache.invalidate(ds);
+        cache.getIdentifierQuoteString(ds, con);
+        assertEquals(2, metaDataCalls);
+    }
+
+    public void testUrlChangeDiscardsEntry() throws Exception {
+        cache.getIdentifierQuoteString(ds, con);
+        ds.setUrl("jdbc:test:two");
+        cache.getIdentifierQuoteString(ds, con);
+        assertEquals(2, metaDataCalls);
+    }
+
+    public void testDataSourcesCachedSeparately() throws Exception {
+        JDBCDataSource other = new JDBCDataSource(new PlDotIni());
+        other.setUrl("jdbc:test:one");
+        cache.getIdentifierQuoteString(ds, con);
+        cache.getIdentifierQuoteString(other, con);
+        assertEquals(2, metaDataCalls);
+    }
+}
@@ -19,11 +19,16 @@
 
 package ca.sqlpower.architect.ddl;
 
+import java.io.StringWriter;
 import java.sql.Types;
+import java.util.ArrayList;
 import java.util.List;
 
 import junit.framework.TestCase;
 import ca.sqlpower.sqlobject.SQLColumn;
+import ca.sqlpower.sqlobject.SQLIndex;
+import ca.sqlpower.sqlobject.SQLIndex.AscendDescend;
+import ca.sqlpower.sqlobject.SQLRelationship;
 import ca.sqlpower.sqlobject.SQLTable;
 import ca.sqlpower.sqlobject.SQLType;
 import ca.sqlpower.sqlobject.SQLTypePhysicalPropertiesProvider.PropertyType;
@@ -59,6 +64,99 @@ public class GenericDDLGeneratorTest extends TestCase {
 		assertEquals("COMMENT ON COLUMN test_table.name IS 'The person''s name'", sql);
 	}
 
+	private List<SQLTable> makeTables(int count) throws Exception {
+	    List<SQLTable> tables = new ArrayList<SQLTable>();
+	    for (int i = 0; i < count; i++) {
+	        SQLTable tbl = new SQLTable();
+	        tbl.initFolders(true);
+	        tbl.setPhysicalName("table_" + i);
+	        tbl.setRemarks("Table " + i);
+	        SQLColumn id = new SQLColumn(tbl, "id", Types.INTEGER, 0, 0);
+	        tbl.addColumn(id);
+	        tbl.addToPK(id);
+	        tbl.addColumn(new SQLColumn(tbl, "name", Types.VARCHAR, 50, 0));
+	        tables.add(tbl);
+	    }
+	    return tables;
+	}
+
+	public void testStreamingScriptMatchesScript() throws Exception {
+	    List<SQLTable> tables = makeTables(5);
+	    String expected = new GenericDDLGenerator(false).generateDDLScript(null, tables);
+
+	    GenericDDLGenerator ddl = new GenericDDLGenerator(false);
+	    StringWriter out = new StringWriter();
+	    ddl.generateDDLScript(null, tables, out);
+	    assertEquals(expected, out.toString());
+	    assertTrue(ddl.getDdlStatements().isEmpty());
+	}
+
+	public void testStatementHandler() throws Exception {
+	    List<SQLTable> tables = makeTables(3);
+	    List<DDLStatement> expected = new GenericDDLGenerator(false).generateDDLStatements(tables);
+
+	    final List<DDLStatement> handled = new ArrayList<DDLStatement>();
+	    GenericDDLGenerator ddl = new GenericDDLGenerator(false);
+	    ddl.generateDDLStatements(tables, new DDLStatementHandler() {
+	        public void handleStatement(DDLStatement statement) {
+	            handled.add(statement);
+	        }
+	    });
+	    assertEquals(expected.size(), handled.size());
+	    for (int i = 0; i < expected.size(); i++) {
+	        assertEquals(expected.get(i).getSQLText(), handled.get(i).getSQLText());
+	        assertEquals(expected.get(i).getType(), handled.get(i).getType());
+	    }
+	}
+
+	/**
+	 * Large models are generated in parallel; the statements have to be the
+	 * same, in the same order, as when they are generated one table at a
+	 * time.
+	 */
+	public void testParallelMatchesSerial() throws Exception {
+	    List<SQLTable> tables = makeTables(120);
+	    for (int i = 1; i < tables.size(); i += 2) {
+	        SQLTable child = tables.get(i);
+	        SQLColumn fk = new SQLColumn(child, "parent_id", Types.INTEGER, 0, 0);
+	        child.addColumn(fk);
+	        SQLRelationship r = new SQLRelationship();
+	        r.setName("fk_" + i);
+	        r.addMapping(tables.get(i - 1).getColumn(0), fk);
+	        r.attachRelationship(tables.get(i - 1), child, false);
+	        if (i % 3 == 0) {
+	            SQLIndex index = new SQLIndex("idx_" + i, false, null, null, null);
+	            index.addIndexColumn(fk, AscendDescend.UNSPECIFIED);
+	            child.addIndex(index);
+	        }
+	    }
+
+	    GenericDDLGenerator serial = new GenericDDLGenerator(false);
+	    serial.setParallelGeneration(false);
+	    List<DDLStatement> expected = serial.generateDDLStatements(tables);
+	    GenericDDLGenerator parallel = new GenericDDLGenerator(false);
+	    List<DDLStatement> actual = parallel.generateDDLStatements(tables);
+
+	    assertEquals(expected.size(), actual.size());
+	    for (int i = 0; i < expected.size(); i++) {
+	        assertEquals(expected.get(i).getSQLText(), actual.get(i).getSQLText());
+	        assertEquals(expected.get(i).getType(), actual.get(i).getType());
+	        assertSame(expected.get(i).getObject(), actual.get(i).getObject());
+	    }
+	}
+
+	/**
+	 * Platforms only generate in parallel once they opt in.
+	 */
+	public void testParallelGenerationIsOptIn() throws Exception {
+	    assertTrue(new GenericDDLGenerator(false).supportsParallelGeneration());
+	    assertTrue(new MySqlDDLGenerator().supportsParallelGeneration());
+	    assertFalse(new PostgresDDLGenerator().supportsParallelGeneration());
+	    assertFalse(new OracleDDLGenerator().supportsParallelGeneration());
+	    assertFalse(new SQLServer2005DDLGenerator().supportsParallelGeneration());
+	    assertFalse(new LiquibaseDDLGenerator().supportsParallelGeneration());
+	}
+
 	public void testNewTypes() throws Exception {
 		GenericDDLGenerator ddl = new GenericDDLGenerator(false);
 		SQLTable tbl = new SQLTable();
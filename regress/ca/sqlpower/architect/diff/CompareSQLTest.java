@@ -845,6 +845,57 @@ public class CompareSQLTest extends TestCase {
         }
     }
 
+    /**
+     * The hash join engine has to produce exactly the same diffs, in the same
+     * order, as the sorted walk, with left-only, right-only, renamed and
+     * modified tables and columns all mixed together.
+     */
+    public void testHashJoinMatchesSortedWalk() throws Exception {
+        for (boolean suppressSimilarities : new boolean[] { false, true }) {
+            List<SQLTable> left = new ArrayList<SQLTable>();
+            List<SQLTable> right = new ArrayList<SQLTable>();
+            for (int i = 0; i < 60; i++) {
+                if (i % 7 != 0) {
+                    left.add(makeTable(i, 5));
+                }
+                if (i % 5 != 0) {
+                    SQLTable t = makeTable(i, 5 + i % 3);
+                    if (i % 4 == 0) {
+                        t.setRemarks("changed remark");
+                    }
+                    if (i % 6 == 0) {
+                        t.getColumn(1).setType(Types.VARCHAR);
+                    }
+                    if (i % 9 == 0) {
+                        t.addToPK(t.getColumn(0));
+                    }
+                    right.add(t);
+                }
+            }
+
+            CompareSQL sorted = new CompareSQL(left, right, suppressSimilarities);
+            sorted.setCompareIndices(true);
+            List<DiffChunk<SQLObject>> expected = sorted.generateTableDiffs();
+
+            CompareSQL hashed = new CompareSQL(left, right, suppressSimilarities);
+            hashed.setCompareIndices(true);
+            hashed.setHashJoin(true);
+            hashed.setThreadCount(4);
+            List<DiffChunk<SQLObject>> actual = hashed.generateTableDiffs();
+
+            assertEquals(expected.size(), actual.size());
+            for (int i = 0; i < expected.size(); i++) {
+                DiffChunk<SQLObject> e = expected.get(i);
+                DiffChunk<SQLObject> a = actual.get(i);
+                assertSame("Different data at " + i, e.getData(), a.getData());
+                assertEquals("Different type at " + i, e.getType(), a.getType());
+                assertSame(e.getOriginalData(), a.getOriginalData());
+                assertEquals(e.getPropertyChanges().size(), a.getPropertyChanges().size());
+            }
+            assertTrue(hashed.isFinished());
+        }
+    }
+
 	/**
 	 * Creates a table with the name <tt>table_<i>i</i></tt> (where <i>i</i> is the
 	 * argument given to this function.  The new table will have i columns called
@@ -0,0 +1,180 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.architect.layout;
+
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+public class TestBarnesHutForceLayout extends TestCase {
+
+    private static class Node extends AbstractLayoutNode {
+        private final Rectangle bounds;
+        private final List<LayoutEdge> inbound = new ArrayList<LayoutEdge>();
+        private final List<LayoutEdge> outbound = new ArrayList<LayoutEdge>();
+
+        Node(int x, int y) {
+            bounds = new Rectangle(x, y, 100, 60);
+        }
+
+        @Override
+        public Rectangle getBounds(Rectangle b) {
+            b.setBounds(bounds);
+            return b;
+        }
+        @Override
+        public List<LayoutEdge> getInboundEdges() {
+            return inbound;
+        }
+        @Override
+        public List<LayoutEdge> getOutboundEdges() {
+            return outbound;
+        }
+        @Override
+        public String getNodeName() {
+            return "node at " + bounds.getLocation();
+        }
+        @Override
+        public void setBounds(int x, int y, int width, int height) {
+            bounds.setBounds(x, y, width, height);
+        }
+    }
+
+    private static class Edge implements LayoutEdge {
+        private final LayoutNode head;
+        private final LayoutNode tail;
+
+        Edge(Node tail, Node head) {
+            this.tail = tail;
+            this.head = head;
+            tail.outbound.add(this);
+            head.inbound.add(this);
+        }
+        public LayoutNode getHeadNode() {
+            return head;
+        }
+        public LayoutNode getTailNode() {
+            return tail;
+        }
+    }
+
+    /**
+     * Creates a chain of nodes at random (but repeatable) locations. Every
+     * node needs an edge, otherwise the layout puts it aside as an orphan.
+     */
+    private List<Node> makeNodes(int count, List<LayoutEdge> edges) {
+        Random random = new Random(count);
+        List<Node> nodes = new ArrayList<Node>();
+        for (int i = 0; i < count; i++) {
+            Node node = new Node(random.nextInt(20000), random.nextInt(20000));
+            if (i > 0) {
+                edges.add(new Edge(nodes.get(i - 1), node));
+            }
+            nodes.add(node);
+        }
+        return nodes;
+    }
+
+    private Map<LayoutNode, Point> repulsion(FruchtermanReingoldForceLayout layout, List<Node> nodes) {
+        Map<LayoutNode, Point> displacement = new HashMap<LayoutNode, Point>();
+        for (Node n : nodes) {
+            displacement.put(n, new Point());
+        }
+        layout.calculateRepulsiveForces(displacement);
+        return displacement;
+    }
+
+    /**
+     * With only two nodes there is nothing to approximate, so the force has
+     * to be the same as the pairwise layout's.
+     */
+    public void testTwoNodesMatchPairwise() {
+        List<LayoutEdge> edges = new ArrayList<LayoutEdge>();
+        List<Node> nodes = makeNodes(2, edges);
+        Rectangle frame = new Rectangle(0, 0, 20000, 20000);
+
+        FruchtermanReingoldForceLayout pairwise = new FruchtermanReingoldForceLayout();
+        pairwise.setup(nodes, edges, frame);
+        BarnesHutForceLayout barnesHut = new BarnesHutForceLayout();
+        barnesHut.setup(nodes, edges, frame);
+
+        assertEquals(repulsion(pairwise, nodes), repulsion(barnesHut, nodes));
+    }
+
+    public void testParallelMatchesSerial() {
+        List<LayoutEdge> edges = new ArrayList<LayoutEdge>();
+        List<Node> nodes = makeNodes(1000, edges);
+        Rectangle frame = new Rectangle(0, 0, 20000, 20000);
+
+        BarnesHutForceLayout layout = new BarnesHutForceLayout();
+        layout.setup(nodes, edges, frame);
+        layout.setParallel(false);
+        Map<LayoutNode, Point> serial = repulsion(layout, nodes);
+        layout.setParallel(true);
+        Map<LayoutNode, Point> parallel = repulsion(layout, nodes);
+        assertEquals(serial, parallel);
+    }
+
+    /**
+     * The approximated forces should add up to nearly the same as the exact
+     * ones.
+     */
+    public void testCloseToPairwise() {
+        List<LayoutEdge> edges = new ArrayList<LayoutEdge>();
+        List<Node> nodes = makeNodes(500, edges);
+        Rectangle frame = new Rectangle(0, 0, 20000, 20000);
+
+        FruchtermanReingoldForceLayout pairwise = new FruchtermanReingoldForceLayout();
+        pairwise.setup(nodes, edges, frame);
+        Map<LayoutNode, Point> expected = repulsion(pairwise, nodes);
+        BarnesHutForceLayout barnesHut = new BarnesHutForceLayout();
+        barnesHut.setup(nodes, edges, frame);
+        Map<LayoutNode, Point> actual = repulsion(barnesHut, nodes);
+
+        double error = 0;
+        double total = 0;
+        for (Node n : nodes) {
+            error += expected.get(n).distance(actual.get(n));
+            total += expected.get(n).distance(0, 0);
+        }
+        assertTrue("Relative error too large: " + (error / total), error / total < 0.1);
+    }
+
+    public void testLayoutFinishesInsideFrame() {
+        List<LayoutEdge> edges = new ArrayList<LayoutEdge>();
+        List<Node> nodes = makeNodes(1500, edges);
+        BarnesHutForceLayout layout = new BarnesHutForceLayout();
+        Rectangle frame = new Rectangle(new Point(), layout.getNewArea(Collections.unmodifiableList(nodes)));
+        layout.setup(nodes, edges, frame);
+        for (int i = 0; i < 200 && !layout.isDone(); i++) {
+            layout.nextFrame();
+        }
+        for (Node n : nodes) {
+            assertTrue(n.getBounds() + " is outside " + frame, frame.contains(n.getLocation()));
+        }
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.architect.olap;
+
+import junit.framework.TestCase;
+import ca.sqlpower.architect.olap.MondrianModel.Cube;
+import ca.sqlpower.architect.olap.MondrianModel.SQL;
+import ca.sqlpower.architect.olap.MondrianModel.Schema;
+import ca.sqlpower.architect.olap.MondrianModel.View;
+import ca.sqlpower.sqlobject.SQLDatabase;
+import ca.sqlpower.sqlobject.SQLTable;
+
+public class RelationTableCacheTest extends TestCase {
+
+    private OLAPSession session;
+    private SQL select;
+    private SQLDatabase database;
+    private SQLTable table;
+    private RelationTableCache cache;
+
+    @Override
+    protected void setUp() throws Exception {
+        Schema schema = new Schema();
+        session = new OLAPSession(schema);
+        Cube cube = new Cube();
+        schema.addCube(cube);
+        View view = new View();
+        select = new SQL();
+        select.setText("SELECT 1");
+        view.addSelect(select);
+        cube.setFact(view);
+
+        database = new SQLDatabase();
+        session.setDatabase(database);
+        table = new SQLTable(database, true);
+        cache = session.getRelationTableCache();
+        cache.put(database, "SELECT 1", table);
+    }
+
+    public void testGet() throws Exception {
+        assertSame(table, cache.get(database, "SELECT 1"));
+        assertNull(cache.get(database, "SELECT 2"));
+        assertNull(cache.get(new SQLDatabase(), "SELECT 1"));
+    }
+
+    public void testClearedWhenViewChanges() throws Exception {
+        select.setText("SELECT 2");
+        assertNull(cache.get(database, "SELECT 1"));
+    }
+
+    public void testClearedWhenFactChanges() throws Exception {
+        session.getSchema().getCubes().get(0).setFact(new View());
+        assertNull(cache.get(database, "SELECT 1"));
+    }
+
+    public void testClearedWhenDatabaseChanges() throws Exception {
+        session.setDatabase(new SQLDatabase());
+        assertNull(cache.get(database, "SELECT 1"));
+    }
+}
@@ -0,0 +1,207 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package ca.sqlpower.architect.profile;
+
+import java.sql.Types;
+
+import junit.framework.TestCase;
+import ca.sqlpower.sqlobject.SQLColumn;
+import ca.sqlpower.sqlobject.SQLTable;
+
+public class ColumnProfileAccumulatorTest extends TestCase {
+
+    private ProfileSettings settings;
+    private SQLTable table;
+    private SQLColumn column;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        settings = new ProfileSettings();
+        settings.setTopNCount(3);
+        table = new SQLTable(null, "test_table", "", "TABLE", true);
+        column = new SQLColumn(table, "test_column", Types.INTEGER, 10, 0);
+        table.addColumn(column);
+    }
+
+    /**
+     * Creates a column profile result for a table with the given number of
+     * rows, populated from the given values.
+     */
+    private ColumnProfileResult profile(ColumnProfileAccumulator acc, int rowCount) {
+        TableProfileResult tpr = new TableProfileResult(table, settings);
+        tpr.setRowCount(rowCount);
+        ColumnProfileResult cpr = new ColumnProfileResult(column);
+        tpr.addColumnProfileResult(cpr);
+        acc.populate(cpr, settings.getTopNCount());
+        return cpr;
+    }
+
+    public void testPopulate() throws Exception {
+        ColumnProfileAccumulator acc = new ColumnProfileAccumulator(settings);
+        for (int i = 0; i < 100; i++) {
+            acc.add(i % 10 == 0 ? null : Integer.valueOf(i % 4));
+        }
+        ColumnProfileResult cpr = profile(acc, 100);
+        assertEquals(10, cpr.getNullCount());
+        assertEquals(4, cpr.getDistinctValueCount());
+        assertEquals(0, cpr.getMinValue());
+        assertEquals(3, cpr.getMaxValue());
+        assertFalse(cpr.isEstimate());
+    }
+
+    /**
+     * Adding values as primitives has to give the same results as adding
+     * them as objects.
+     */
+    public void testPrimitiveAddsMatchObjectAdds() throws Exception {
+        settings.setFindingMinLength(true);
+        settings.setFindingMaxLength(true);
+        ColumnProfileAccumulator boxed = new ColumnProfileAccumulator(settings);
+        ColumnProfileAccumulator primitive = new ColumnProfileAccumulator(settings);
+        for (int i = 0; i < 100; i++) {
+            long l = (i % 7) * 1000L - 3000L;
+            boxed.add(Long.valueOf(l));
+            primitive.add(l);
+        }
+        ColumnProfileResult expected = profile(boxed, 100);
+        ColumnProfileResult actual = profile(primitive, 100);
+        assertEquals(expected.getDistinctValueCount(), actual.getDistinctValueCount());
+        assertEquals(expected.getMinValue(), actual.getMinValue());
+        assertEquals(expected.getMaxValue(), actual.getMaxValue());
+        assertEquals(expected.getAvgValue(), actual.getAvgValue());
+        assertEquals(expected.getMinLength(), actual.getMinLength());
+        assertEquals(expected.getMaxLength(), actual.getMaxLength());
+        assertEquals(expected.getValueCount().get(0).getValue(), actual.getValueCount().get(0).getValue());
+        assertEquals(expected.getValueCount().get(0).getCount(), actual.getValueCount().get(0).getCount());
+
+        ColumnProfileAccumulator doubles = new ColumnProfileAccumulator(settings);
+        doubles.add(2.5);
+        doubles.add(-1.25);
+        doubles.add(2.5);
+        ColumnProfileResult cpr = profile(doubles, 3);
+        assertEquals(2, cpr.getDistinctValueCount());
+        assertEquals(Double.valueOf(-1.25), cpr.getMinValue());
+        assertEquals(Double.valueOf(2.5), cpr.getMaxValue());
+        assertEquals(Double.valueOf(2.5), cpr.getValueCount().get(0).getValue());
+        assertEquals(2, cpr.getValueCount().get(0).getCount());
+    }
+
+    public void testDecimalLength() throws Exception {
+        for (long l : new long[] { 0, 9, 10, -1, -10, 123456789012L, Long.MAX_VALUE, Long.MIN_VALUE }) {
+            assertEquals(String.valueOf(l).length(), ColumnProfileAccumulator.decimalLength(l));
+        }
+    }
+
+    public void testApproximatePopulate() throws Exception {
+        settings.setApproximate(true);
+        ColumnProfileAccumulator acc = new ColumnProfileAccumulator(settings);
+        for (int i = 1; i <= 999; i++) {
+            acc.add(Integer.valueOf(i));
+        }
+        ColumnProfileResult cpr = profile(acc, 999);
+        assertTrue(cpr.isEstimate());
+        assertTrue(cpr.getErrorBound() > 0);
+        assertEquals(999, cpr.getDistinctValueCount(), 999 * cpr.getErrorBound());
+        assertEquals(500, ((Number) cpr.getMedianValue()).doubleValue(), 10);
+    }
+
+    public void testMergeNewKeys() throws Exception {
+        ColumnProfileAccumulator oldRows = new ColumnProfileAccumulator(settings);
+        for (int i = 1; i <= 100; i++) {
+            oldRows.add(Integer.valueOf(i));
+        }
+        ColumnProfileResult previous = profile(oldRows, 100);
+
+        ColumnProfileAccumulator newRows = new ColumnProfileAccumulator(settings);
+        for (int i = 101; i <= 150; i++) {
+            newRows.add(Integer.valueOf(i));
+        }
+        TableProfileResult tpr = new TableProfileResult(table, settings);
+        tpr.setRowCount(150);
+        ColumnProfileResult merged = new ColumnProfileResult(column);
+        tpr.addColumnProfileResult(merged);
+        newRows.populateMerged(merged, previous, 100, true, settings.getTopNCount(), Types.INTEGER);
+
+        assertEquals(150, merged.getDistinctValueCount());
+        assertEquals(Long.valueOf(1), merged.getMinValue());
+        assertEquals(Long.valueOf(150), merged.getMaxValue());
+        assertEquals(75.5, ((Number) merged.getAvgValue()).doubleValue(), 0.0001);
+        assertFalse(merged.isEstimate());
+    }
+
+    public void testMergeRepeatedValuesIsEstimate() throws Exception {
+        ColumnProfileAccumulator oldRows = new ColumnProfileAccumulator(settings);
+        for (int i = 0; i < 100; i++) {
+            oldRows.add(Integer.valueOf(i % 5));
+        }
+        ColumnProfileResult previous = profile(oldRows, 100);
+
+        ColumnProfileAccumulator newRows = new ColumnProfileAccumulator(settings);
+        for (int i = 0; i < 50; i++) {
+            newRows.add(Integer.valueOf(i % 5));
+        }
+        TableProfileResult tpr = new TableProfileResult(table, settings);
+        tpr.setRowCount(150);
+        ColumnProfileResult merged = new ColumnProfileResult(column);
+        tpr.addColumnProfileResult(merged);
+        newRows.populateMerged(merged, previous, 100, false, settings.getTopNCount(), Types.INTEGER);
+
+        // the merge can only give an upper bound on the distinct count
+        assertTrue(merged.isEstimate());
+        assertTrue(merged.getDistinctValueCount() >= 5);
+        assertEquals(30, merged.getValueCount().get(0).getCount());
+    }
+
+    /**
+     * A reloaded project gives back the values of an integer column as
+     * strings. Merging has to compare and count them as numbers.
+     */
+    public void testMergeValuesFromReloadedProject() throws Exception {
+        TableProfileResult previousTable = new TableProfileResult(table, settings);
+        previousTable.setRowCount(10);
+        ColumnProfileResult previous = new ColumnProfileResult(column);
+        previousTable.addColumnProfileResult(previous);
+        previous.setDistinctValueCount(2);
+        previous.setMinValue("5");
+        previous.setMaxValue("9");
+        previous.setAvgValue("7.0");
+        previous.addValueCount("5", 5);
+        previous.addValueCount("9", 5);
+
+        ColumnProfileAccumulator newRows = new ColumnProfileAccumulator(settings);
+        newRows.add(10L);
+        newRows.add(5L);
+        TableProfileResult tpr = new TableProfileResult(table, settings);
+        tpr.setRowCount(12);
+        ColumnProfileResult merged = new ColumnProfileResult(column);
+        tpr.addColumnProfileResult(merged);
+        newRows.populateMerged(merged, previous, 10, false, settings.getTopNCount(), Types.INTEGER);
+
+        assertEquals(Long.valueOf(5), merged.getMinValue());
+        assertEquals(Long.valueOf(10), merged.getMaxValue());
+        assertEquals(85 / 12.0, ((Number) merged.getAvgValue()).doubleValue(), 0.0001);
+        assertEquals(Long.valueOf(5), merged.getValueCount().get(0).getValue());
+        assertEquals(6, merged.getValueCount().get(0).getCount());
+        assertEquals(Long.valueOf(9), merged.getValueCount().get(1).getValue());
+        assertEquals(Long.valueOf(10), merged.getValueCount().get(2).getValue());
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.architect.profile;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.Timestamp;
+
+import junit.framework.TestCase;
+
+public class DistinctValueCounterTest extends TestCase {
+
+    public void testCountsDistinctValues() throws Exception {
+        DistinctValueCounter counter = new DistinctValueCounter();
+        for (int i = 0; i < 100000; i++) {
+            counter.offer(Integer.valueOf(i % 12345));
+        }
+        assertEquals(12345, counter.getCount());
+    }
+
+    public void testNullsNotCounted() throws Exception {
+        DistinctValueCounter counter = new DistinctValueCounter();
+        counter.offer(null);
+        counter.offer("a");
+        counter.offer(null);
+        assertEquals(1, counter.getCount());
+    }
+
+    public void testEqualNumbersOfDifferentTypes() throws Exception {
+        DistinctValueCounter counter = new DistinctValueCounter();
+        counter.offer(Integer.valueOf(1));
+        counter.offer(Long.valueOf(1));
+        counter.offer(new BigDecimal("1.00"));
+        counter.offer("1");
+        assertEquals(2, counter.getCount());
+    }
+
+    /**
+     * Values too big to be told apart as doubles still have to be counted
+     * separately.
+     */
+    public void testLargeNumbersCountedExactly() throws Exception {
+        DistinctValueCounter counter = new DistinctValueCounter();
+        long big = 1L << 60;
+        counter.offer(Long.valueOf(big));
+        counter.offer(Long.valueOf(big + 1));
+        counter.offer(BigInteger.valueOf(big + 1));
+        counter.offer(new BigDecimal("12345678901234567890.1"));
+        counter.offer(new BigDecimal("12345678901234567890.2"));
+        counter.offer(new BigDecimal("12345678901234567890.20"));
+        counter.offer(new BigDecimal("123456789012345678901234567890"));
+        counter.offer(new BigDecimal("1.23456789012345678901234567890E+29"));
+        assertEquals(5, counter.getCount());
+        assertEquals(DistinctValueCounter.hash64(Long.valueOf(7)), DistinctValueCounter.hash64(7L));
+        assertEquals(DistinctValueCounter.hash64(Double.valueOf(7.5)), DistinctValueCounter.hash64(7.5));
+        assertEquals(DistinctValueCounter.hash64(7L), DistinctValueCounter.hash64(7.0));
+        assertEquals(DistinctValueCounter.hash64(BigDecimal.ZERO),
+                DistinctValueCounter.hash64(new BigDecimal("0.000")));
+    }
+
+    public void testTimestampNanosCounted() throws Exception {
+        DistinctValueCounter counter = new DistinctValueCounter();
+        Timestamp t1 = new Timestamp(1000000000000L);
+        Timestamp t2 = new Timestamp(1000000000000L);
+        t2.setNanos(1);
+        counter.offer(t1);
+        counter.offer(t2);
+        assertEquals(2, counter.getCount());
+    }
+
+    public void testMerge() throws Exception {
+        DistinctValueCounter c1 = new DistinctValueCounter();
+        DistinctValueCounter c2 = new DistinctValueCounter();
+        for (int i = 0; i < 1000; i++) {
+            c1.offer("value " + i);
+            c2.offer("value " + (i + 500));
+        }
+        c1.merge(c2);
+        assertEquals(1500, c1.getCount());
+    }
+}
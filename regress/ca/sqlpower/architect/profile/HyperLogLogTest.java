@@ -0,0 +1,82 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package ca.sqlpower.architect.profile;
+
+import junit.framework.TestCase;
+
+public class HyperLogLogTest extends TestCase {
+
+    /**
+     * Checks that the estimate is within four standard errors of the true
+     * count, which should practically never fail by chance.
+     */
+    private void assertWithinError(long expected, HyperLogLog hll) {
+        double allowed = 4 * hll.getRelativeError() * expected;
+        long estimate = hll.getEstimate();
+        assertTrue("Estimate " + estimate + " too far from " + expected,
+                Math.abs(estimate - expected) <= allowed);
+    }
+
+    public void testSmallCountsNearlyExact() throws Exception {
+        HyperLogLog hll = new HyperLogLog();
+        for (int i = 0; i < 1000; i++) {
+            hll.offer(Integer.valueOf(i % 100));
+        }
+        assertEquals(100, hll.getEstimate(), 2);
+    }
+
+    public void testLargeCount() throws Exception {
+        HyperLogLog hll = new HyperLogLog();
+        for (int i = 0; i < 500000; i++) {
+            hll.offer("value " + i);
+        }
+        assertWithinError(500000, hll);
+    }
+
+    public void testNullsNotCounted() throws Exception {
+        HyperLogLog hll = new HyperLogLog();
+        hll.offer(null);
+        assertEquals(0, hll.getEstimate());
+        hll.offer("a");
+        hll.offer(null);
+        assertEquals(1, hll.getEstimate());
+    }
+
+    public void testMerge() throws Exception {
+        HyperLogLog h1 = new HyperLogLog();
+        HyperLogLog h2 = new HyperLogLog();
+        for (int i = 0; i < 100000; i++) {
+            h1.offer(Integer.valueOf(i));
+            h2.offer(Integer.valueOf(i + 50000));
+        }
+        h1.merge(h2);
+        assertWithinError(150000, h1);
+    }
+
+    public void testMergeDifferentPrecisionFails() throws Exception {
+        try {
+            new HyperLogLog(10).merge(new HyperLogLog(12));
+            fail("Merging sketches of different precision should not be allowed");
+        } catch (IllegalArgumentException ex) {
+            // expected
+        }
+    }
+}
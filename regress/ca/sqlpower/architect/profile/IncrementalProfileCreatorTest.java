@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.architect.profile;
+
+import java.math.BigDecimal;
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.sql.Types;
+
+import junit.framework.TestCase;
+
+public class IncrementalProfileCreatorTest extends TestCase {
+
+    /**
+     * A reloaded project gives back the maximum of an integer column as a
+     * string, which has to be bound as a number again.
+     */
+    public void testKeyValueFromReloadedProject() throws Exception {
+        assertEquals(Long.valueOf(12345678901L), IncrementalProfileCreator.toKeyValue("12345678901", Types.BIGINT));
+        assertEquals(Long.valueOf(42), IncrementalProfileCreator.toKeyValue(new BigDecimal("42"), Types.INTEGER));
+        assertEquals(Long.valueOf(42), IncrementalProfileCreator.toKeyValue(Integer.valueOf(42), Types.INTEGER));
+        assertEquals(new BigDecimal("1.50"), IncrementalProfileCreator.toKeyValue("1.50", Types.DECIMAL));
+        assertEquals(Double.valueOf(2.5), IncrementalProfileCreator.toKeyValue("2.5", Types.DOUBLE));
+        assertEquals(Timestamp.valueOf("2010-01-02 03:04:05"),
+                IncrementalProfileCreator.toKeyValue("2010-01-02 03:04:05", Types.TIMESTAMP));
+        assertEquals(new Timestamp(Date.valueOf("2010-01-02").getTime()),
+                IncrementalProfileCreator.toKeyValue("2010-01-02", Types.DATE));
+        assertEquals(Boolean.TRUE, IncrementalProfileCreator.toKeyValue("true", Types.BOOLEAN));
+        assertEquals("abc", IncrementalProfileCreator.toKeyValue("abc", Types.VARCHAR));
+        assertNull(IncrementalProfileCreator.toKeyValue(null, Types.INTEGER));
+    }
+
+    public void testUnreadableKeyValue() throws Exception {
+        try {
+            IncrementalProfileCreator.toKeyValue("1.5", Types.INTEGER);
+            fail("A fraction is not an integer key");
+        } catch (IllegalArgumentException ex) {
+            // expected
+        }
+        try {
+            IncrementalProfileCreator.toKeyValue("yesterday", Types.TIMESTAMP);
+            fail("Not a timestamp");
+        } catch (IllegalArgumentException ex) {
+            // expected
+        }
+    }
+
+    /**
+     * A saved value of a column whose type can't be restored stays a string,
+     * and must not be merged with values fresh from the database.
+     */
+    public void testUntypedColumnValue() throws Exception {
+        assertEquals("abc", IncrementalProfileCreator.toColumnValue("abc", Types.CHAR));
+        try {
+            IncrementalProfileCreator.toColumnValue("abc", Types.OTHER);
+            fail("The value's type was lost");
+        } catch (IllegalArgumentException ex) {
+            // expected
+        }
+        assertEquals(Double.valueOf(7.5), IncrementalProfileCreator.toAverage("7.5"));
+        assertNull(IncrementalProfileCreator.toAverage(null));
+    }
+}
@@ -19,6 +19,14 @@
 
 package ca.sqlpower.architect.profile;
 
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import ca.sqlpower.architect.ArchitectProject;
 import ca.sqlpower.architect.StubArchitectSession;
 import ca.sqlpower.architect.util.ArchitectNewValueMaker;
@@ -54,6 +62,82 @@ public class ProfileManagerImplTest extends PersistedSPObjectTest {
         getRootObject().addChild(project, 0);
     }
     
+    /**
+     * The deferred results loader fires events, so it has to run on the
+     * foreground thread. A profile manager used from another thread must
+     * not wait for it there, since the foreground thread may be waiting for
+     * that thread.
+     */
+    public void testDeferredResultsLoadedOnForegroundThread() throws Exception {
+        final Thread[] foreground = new Thread[1];
+        final ExecutorService foregroundExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                foreground[0] = new Thread(r, "Test foreground");
+                return foreground[0];
+            }
+        });
+        try {
+            final ProfileManagerImpl manager = new ProfileManagerImpl();
+            final ArchitectProject project = (ArchitectProject) new ArchitectNewValueMaker(
+                    getRootObject(), getPLIni()).makeNewValue(ArchitectProject.class, null, "");
+            project.setSession(new StubArchitectSession() {
+                @Override
+                public ArchitectProject getWorkspace() {
+                    return project;
+                }
+                @Override
+                public boolean isForegroundThread() {
+                    return Thread.currentThread() == foreground[0];
+                }
+                @Override
+                public void runInForeground(Runnable runner) {
+                    foregroundExecutor.execute(runner);
+                }
+            });
+            project.setProfileManager(manager);
+
+            final AtomicInteger loads = new AtomicInteger();
+            final Thread[] loadedOn = new Thread[1];
+            manager.setDeferredResultsLoader(new Runnable() {
+                public void run() {
+                    loads.incrementAndGet();
+                    loadedOn[0] = Thread.currentThread();
+                }
+            });
+
+            // keep the foreground thread busy, as if it were waiting for this one
+            final CountDownLatch release = new CountDownLatch(1);
+            foregroundExecutor.submit(new Callable<Void>() {
+                public Void call() throws Exception {
+                    release.await();
+                    return null;
+                }
+            });
+            manager.getResults();
+            manager.getResults();
+            assertEquals(0, loads.get());
+
+            release.countDown();
+            foregroundExecutor.submit(new Runnable() {
+                public void run() {
+                    // runs after the load
+                }
+            }).get(10, TimeUnit.SECONDS);
+            assertEquals(1, loads.get());
+            assertSame(foreground[0], loadedOn[0]);
+
+            manager.getResults();
+            foregroundExecutor.submit(new Runnable() {
+                public void run() {
+                    manager.getResults();
+                }
+            }).get(10, TimeUnit.SECONDS);
+            assertEquals("The loader ran twice", 1, loads.get());
+        } finally {
+            foregroundExecutor.shutdown();
+        }
+    }
+
     @Override
     public NewValueMaker createNewValueMaker(SPObject root, DataSourceCollection<SPDataSource> dsCollection) {
         return new ArchitectNewValueMaker(root, dsCollection);
@@ -0,0 +1,121 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.architect.profile;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+public class ProfileSchedulerTest extends TestCase {
+
+    private ProfileScheduler scheduler;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        scheduler = new ProfileScheduler();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        scheduler.shutdown();
+        super.tearDown();
+    }
+
+    /**
+     * Once the workers for a data source are busy, queued jobs must start
+     * in order of decreasing cost.
+     */
+    public void testQueuedJobsRunLargestFirst() throws Exception {
+        scheduler.setMaxConcurrentPerDataSource(1);
+        final CountDownLatch blocker = new CountDownLatch(1);
+        Future<Object> first = scheduler.submit(new Callable<Object>() {
+            public Object call() throws Exception {
+                blocker.await();
+                return null;
+            }
+        }, null, 0);
+
+        final List<Long> runOrder = Collections.synchronizedList(new ArrayList<Long>());
+        List<Future<Object>> futures = new ArrayList<Future<Object>>();
+        for (final long cost : new long[] { 10, 300, 20, 300 }) {
+            futures.add(scheduler.submit(new Callable<Object>() {
+                public Object call() throws Exception {
+                    runOrder.add(cost);
+                    return null;
+                }
+            }, null, cost));
+        }
+        blocker.countDown();
+        first.get();
+        for (Future<Object> f : futures) {
+            f.get();
+        }
+
+        assertEquals(Long.valueOf(300), runOrder.get(0));
+        assertEquals(Long.valueOf(300), runOrder.get(1));
+        assertEquals(Long.valueOf(20), runOrder.get(2));
+        assertEquals(Long.valueOf(10), runOrder.get(3));
+    }
+
+    public void testConcurrencyLimitPerDataSource() throws Exception {
+        scheduler.setMaxConcurrentPerDataSource(2);
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+        List<Future<Object>> futures = new ArrayList<Future<Object>>();
+        for (int i = 0; i < 10; i++) {
+            futures.add(scheduler.submit(new Callable<Object>() {
+                public Object call() throws Exception {
+                    int now = running.incrementAndGet();
+                    synchronized (maxRunning) {
+                        if (now > maxRunning.get()) maxRunning.set(now);
+                    }
+                    Thread.sleep(20);
+                    running.decrementAndGet();
+                    return null;
+                }
+            }, null, 1));
+        }
+        for (Future<Object> f : futures) {
+            f.get();
+        }
+        assertTrue("Too many concurrent jobs: " + maxRunning.get(), maxRunning.get() <= 2);
+    }
+
+    public void testSubmitAfterShutdown() throws Exception {
+        scheduler.shutdown();
+        try {
+            scheduler.submit(new Callable<Object>() {
+                public Object call() throws Exception {
+                    return null;
+                }
+            }, null, 1);
+            fail("Submitting to a shut down scheduler should fail");
+        } catch (IllegalStateException ex) {
+            // expected
+        }
+    }
+}
@@ -134,6 +134,77 @@ public class RemoteDatabateProfileCreatorTest extends TestCase {
         
     }
 
+    public void testTopNSQLFunction() throws Exception {
+        RemoteDatabaseProfileCreator rdpc = new RemoteDatabaseProfileCreator(new ProfileSettings());
+        RemoteDatabaseProfileCreator.TopNSQLFunction limit = rdpc.new TopNSQLFunction("", "LIMIT ?");
+        assertEquals("SELECT a FROM t ORDER BY a LIMIT 10", limit.getTopNSQLFunction("a FROM t ORDER BY a", 10));
+        RemoteDatabaseProfileCreator.TopNSQLFunction top = rdpc.new TopNSQLFunction("TOP ? ", "");
+        assertEquals("SELECT TOP 5 a FROM t ORDER BY a", top.getTopNSQLFunction("a FROM t ORDER BY a", 5));
+    }
+
+    /**
+     * The batched mode has to give the same results as profiling the
+     * columns one at a time.
+     */
+    public void testBatchedProfileMatchesUnbatched() throws Exception {
+        Connection con = null;
+        Statement stmt = null;
+        try {
+            con = ds.createConnection();
+            stmt = con.createStatement();
+            stmt.execute("create table batch_test (col1 varchar(50), col2 integer, col3 varchar(10))");
+            stmt.execute("insert into batch_test values ('hello', 1, null)");
+            stmt.execute("insert into batch_test values ('hello', 2, 'x')");
+            stmt.execute("insert into batch_test values ('bye', 2, 'x')");
+            SQLDatabase db = new SQLDatabase(ds);
+            SQLTable table = db.getTableByName("batch_test");
+
+            final ArchitectProject project = new ArchitectProject();
+            StubArchitectSession session = new StubArchitectSession() {
+                @Override
+                public ArchitectProject getWorkspace() {
+                    return project;
+                }
+                @Override
+                public void runInForeground(Runnable runner) {
+                    runner.run();
+                }
+            };
+            project.setSession(session);
+            ProfileManager profileManager = new ProfileManagerImpl();
+            project.setProfileManager(profileManager);
+            project.getRootObject().addDatabase(db, 0);
+
+            TableProfileResult unbatched = new TableProfileResult(table, new ProfileSettings());
+            profileManager.addChild(unbatched, 0);
+            new RemoteDatabaseProfileCreator(new ProfileSettings()).doProfile(unbatched);
+            TableProfileResult batched = new TableProfileResult(table, new ProfileSettings());
+            profileManager.addChild(batched, 1);
+            new RemoteDatabaseProfileCreator(new ProfileSettings(), 2).doProfile(batched);
+
+            assertEquals(3, batched.getRowCount());
+            assertEquals(unbatched.getColumnProfileResults().size(), batched.getColumnProfileResults().size());
+            for (int i = 0; i < batched.getColumnProfileResults().size(); i++) {
+                ColumnProfileResult expected = unbatched.getColumnProfileResults().get(i);
+                ColumnProfileResult actual = batched.getColumnProfileResults().get(i);
+                assertNull(actual.getException());
+                assertEquals(expected.getDistinctValueCount(), actual.getDistinctValueCount());
+                assertEquals(expected.getMinValue(), actual.getMinValue());
+                assertEquals(expected.getMaxValue(), actual.getMaxValue());
+                assertEquals(expected.getNullCount(), actual.getNullCount());
+                assertEquals(expected.getValueCount().size(), actual.getValueCount().size());
+                for (int j = 0; j < expected.getValueCount().size(); j++) {
+                    assertEquals(expected.getValueCount().get(j).getValue(), actual.getValueCount().get(j).getValue());
+                    assertEquals(expected.getValueCount().get(j).getCount(), actual.getValueCount().get(j).getCount());
+                }
+            }
+        } finally {
+            if (con != null) {
+                con.close();
+            }
+        }
+    }
+
     /**
      * Removes all ProfileFunctionDescriptor entries from the given database type.
      */
@@ -0,0 +1,78 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package ca.sqlpower.architect.profile;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+public class TDigestTest extends TestCase {
+
+    public void testUniformQuantiles() throws Exception {
+        TDigest digest = new TDigest();
+        Random r = new Random(42);
+        for (int i = 0; i < 100000; i++) {
+            digest.add(r.nextDouble() * 1000);
+        }
+        assertEquals(100000, digest.getCount());
+        assertEquals(500, digest.quantile(0.5), 10);
+        assertEquals(10, digest.quantile(0.01), 2);
+        assertEquals(990, digest.quantile(0.99), 2);
+    }
+
+    public void testExtremesAreExact() throws Exception {
+        TDigest digest = new TDigest();
+        for (int i = 1; i <= 10000; i++) {
+            digest.add(i);
+        }
+        assertEquals(1.0, digest.quantile(0), 0);
+        assertEquals(10000.0, digest.quantile(1), 0);
+        assertEquals(5000, digest.quantile(0.5), 50);
+    }
+
+    public void testSkewedMedian() throws Exception {
+        TDigest digest = new TDigest();
+        Random r = new Random(7);
+        for (int i = 0; i < 50000; i++) {
+            digest.add(Math.exp(r.nextGaussian()));
+        }
+        // the median of a log-normal distribution with mu = 0 is 1
+        assertEquals(1.0, digest.quantile(0.5), 0.05);
+    }
+
+    public void testEmpty() throws Exception {
+        assertTrue(Double.isNaN(new TDigest().quantile(0.5)));
+    }
+
+    public void testMerge() throws Exception {
+        TDigest d1 = new TDigest();
+        TDigest d2 = new TDigest();
+        for (int i = 0; i < 10000; i++) {
+            d1.add(i);
+            d2.add(i + 10000);
+        }
+        d1.merge(d2);
+        assertEquals(20000, d1.getCount());
+        assertEquals(10000, d1.quantile(0.5), 100);
+        assertEquals(0.0, d1.getMin(), 0);
+        assertEquals(19999.0, d1.getMax(), 0);
+    }
+}
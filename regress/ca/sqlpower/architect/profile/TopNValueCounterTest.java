@@ -0,0 +1,90 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.architect.profile;
+
+import java.util.List;
+
+import junit.framework.TestCase;
+import ca.sqlpower.architect.profile.TopNValueCounter.ValueCount;
+
+public class TopNValueCounterTest extends TestCase {
+
+    public void testExactWhenUnderCapacity() throws Exception {
+        TopNValueCounter counter = new TopNValueCounter(10);
+        for (int i = 0; i < 5; i++) counter.offer("a");
+        for (int i = 0; i < 3; i++) counter.offer("b");
+        counter.offer(null);
+        counter.offer(null);
+
+        List<ValueCount> top = counter.getTopN(3);
+        assertEquals(3, top.size());
+        assertEquals("a", top.get(0).getValue());
+        assertEquals(5, top.get(0).getCount());
+        assertEquals("b", top.get(1).getValue());
+        assertEquals(3, top.get(1).getCount());
+        assertNull(top.get(2).getValue());
+        assertEquals(2, top.get(2).getCount());
+        assertEquals(0, top.get(0).getError());
+        assertEquals(10, counter.getTotal());
+    }
+
+    /**
+     * Frequent values must survive a long tail of unique values that is much
+     * larger than the counter's capacity.
+     */
+    public void testHeavyHittersSurviveLongTail() throws Exception {
+        TopNValueCounter counter = new TopNValueCounter(20);
+        for (int i = 0; i < 10000; i++) {
+            counter.offer(Integer.valueOf(i + 1000));
+            if (i % 5 == 0) counter.offer("frequent");
+            if (i % 10 == 0) counter.offer("common");
+        }
+        List<ValueCount> top = counter.getTopN(2);
+        assertEquals("frequent", top.get(0).getValue());
+        assertEquals("common", top.get(1).getValue());
+        assertTrue(top.get(0).getCount() - top.get(0).getError() <= 2000);
+        assertTrue(top.get(0).getCount() >= 2000);
+        assertEquals(13000, counter.getTotal());
+    }
+
+    public void testMerge() throws Exception {
+        TopNValueCounter c1 = new TopNValueCounter(10);
+        TopNValueCounter c2 = new TopNValueCounter(10);
+        for (int i = 0; i < 4; i++) c1.offer("x");
+        for (int i = 0; i < 3; i++) c2.offer("x");
+        c2.offer("y");
+
+        c1.merge(c2);
+        List<ValueCount> top = c1.getTopN(10);
+        assertEquals(2, top.size());
+        assertEquals("x", top.get(0).getValue());
+        assertEquals(7, top.get(0).getCount());
+        assertEquals(8, c1.getTotal());
+    }
+
+    public void testZeroCapacityNotAllowed() throws Exception {
+        try {
+            new TopNValueCounter(0);
+            fail("Zero capacity should not be allowed");
+        } catch (IllegalArgumentException ex) {
+            // expected
+        }
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.architect.swingui;
+
+import java.awt.Graphics2D;
+import java.awt.Point;
+import java.awt.image.BufferedImage;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.sql.Types;
+
+import javax.swing.RepaintManager;
+
+import ca.sqlpower.sqlobject.SQLColumn;
+import ca.sqlpower.sqlobject.SQLDatabase;
+import ca.sqlpower.sqlobject.SQLRelationship;
+import ca.sqlpower.sqlobject.SQLTable;
+
+/**
+ * Measures how long it takes the {@link PlayPen} to paint a viewport-sized
+ * frame of a large generated diagram while it is scrolled across and at
+ * several zoom levels, and how much memory each frame allocates (on JVMs
+ * that can tell). This is not a unit test; run it headless from the command
+ * line with the regression test classpath:
+ * <pre>
+ *   java -Djava.awt.headless=true ca.sqlpower.architect.swingui.PlayPenPaintBenchmark [tables] [frames]
+ * </pre>
+ * The defaults are 2500 tables, each one but the first with a relationship
+ * to the table before it (about 5000 play pen components in all), and 500
+ * frames per zoom level after a warm-up pass.
+ * <p>
+ * Every zoom level is measured twice: once through
+ * {@link PlayPen#paintComponent(java.awt.Graphics)}, the way the navigator and
+ * PDF export paint, which draws every table from scratch; and once through
+ * {@link PlayPen#paint(java.awt.Graphics)}, the way Swing paints the play pen
+ * on the screen, which reuses the images in the {@link TablePaneRenderCache}.
+ */
+public class PlayPenPaintBenchmark {
+
+    private static final int VIEW_WIDTH = 1280;
+    private static final int VIEW_HEIGHT = 800;
+
+    private static final double[] ZOOM_LEVELS = { 1.0, 0.5, 0.25, 0.1 };
+
+    public static void main(String[] args) throws Exception {
+        System.setProperty("java.awt.headless", "true");
+        int tableCount = args.length > 0 ? Integer.parseInt(args[0]) : 2500;
+        int frames = args.length > 1 ? Integer.parseInt(args[1]) : 500;
+
+        TestingArchitectSwingSessionContext context = new TestingArchitectSwingSessionContext();
+        ArchitectSwingSession session = context.createSession();
+        PlayPen pp = session.getPlayPen();
+        populate(pp, session.getTargetDatabase(), tableCount);
+        System.out.println("Generated " + pp.getContentPane().getAllChildren().size() + " play pen components");
+
+        // paint straight into the benchmark's image rather than Swing's buffer
+        RepaintManager.currentManager(pp).setDoubleBufferingEnabled(false);
+        BufferedImage image = new BufferedImage(VIEW_WIDTH, VIEW_HEIGHT, BufferedImage.TYPE_INT_RGB);
+        for (double zoom : ZOOM_LEVELS) {
+            pp.setZoom(zoom);
+            pp.setSize(pp.getPreferredSize());
+            for (boolean cached : new boolean[] { false, true }) {
+                paintFrames(pp, image, frames, cached);
+
+                long allocatedBefore = allocatedBytes();
+                long start = System.nanoTime();
+                paintFrames(pp, image, frames, cached);
+                long elapsed = System.nanoTime() - start;
+                long allocated = allocatedBytes() - allocatedBefore;
+
+                System.out.print("zoom " + zoom + (cached ? " cached: " : " vector: ") +
+                        (elapsed / frames / 1000) + " us per frame");
+                if (allocatedBefore >= 0) {
+                    System.out.print(", " + (allocated / frames) + " bytes allocated per frame");
+                }
+                System.out.println();
+            }
+        }
+        session.close();
+    }
+
+    /**
+     * Paints the given number of frames, scrolling the viewport diagonally
+     * across the whole play pen and wrapping around at the far corner. If
+     * cached is true, the frames are painted the way Swing paints the play
+     * pen on the screen, so table panes are copied from the render cache.
+     */
+    private static void paintFrames(PlayPen pp, BufferedImage image, int frames, boolean cached) {
+        int maxX = Math.max(1, pp.getWidth() - VIEW_WIDTH);
+        int maxY = Math.max(1, pp.getHeight() - VIEW_HEIGHT);
+        for (int i = 0; i < frames; i++) {
+            int x = (int) ((long) i * 97 % maxX);
+            int y = (int) ((long) i * 61 % maxY);
+            Graphics2D g = image.createGraphics();
+            g.translate(-x, -y);
+            g.setClip(x, y, VIEW_WIDTH, VIEW_HEIGHT);
+            if (cached) {
+                pp.paint(g);
+            } else {
+                pp.paintComponent(g);
+            }
+            g.dispose();
+        }
+    }
+
+    /**
+     * Adds the given number of tables to the play pen in a square grid, each
+     * one but the first with a relationship to the table before it.
+     */
+    static void populate(PlayPen pp, SQLDatabase db, int tableCount) throws Exception {
+        int columns = (int) Math.ceil(Math.sqrt(tableCount));
+        TablePane previous = null;
+        for (int i = 0; i < tableCount; i++) {
+            SQLTable table = new SQLTable(db, true);
+            table.setName("table_" + i);
+            table.addColumn(new SQLColumn(table, "id", Types.INTEGER, 10, 0));
+            table.addColumn(new SQLColumn(table, "parent_id", Types.INTEGER, 10, 0));
+            table.addColumn(new SQLColumn(table, "name", Types.VARCHAR, 50, 0));
+            table.addToPK(table.getColumn(0));
+            db.addChild(table);
+
+            TablePane tp = new TablePane(table, pp.getContentPane());
+            pp.addTablePane(tp, new Point(20 + (i % columns) * 220, 20 + (i / columns) * 160));
+            if (previous != null) {
+                SQLRelationship rel = new SQLRelationship();
+                rel.attachRelationship(previous.getModel(), table, false);
+                rel.addMapping(previous.getModel().getColumn(0), table.getColumn(1));
+                pp.addRelationship(new Relationship(rel, pp.getContentPane()));
+            }
+            previous = tp;
+        }
+    }
+
+    /**
+     * Returns the number of bytes allocated by the current thread so far, or
+     * -1 if the JVM can't tell.
+     */
+    private static long allocatedBytes() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean sunBean = (com.sun.management.ThreadMXBean) bean;
+            if (sunBean.isThreadAllocatedMemorySupported()) {
+                return sunBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+            }
+        }
+        return -1;
+    }
+}
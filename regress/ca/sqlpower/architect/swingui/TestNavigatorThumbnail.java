@@ -0,0 +1,181 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.architect.swingui;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Point;
+import java.awt.image.BufferedImage;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import javax.swing.JPanel;
+import javax.swing.SwingUtilities;
+
+import junit.framework.TestCase;
+import ca.sqlpower.sqlobject.SQLDatabase;
+import ca.sqlpower.sqlobject.SQLTable;
+
+public class TestNavigatorThumbnail extends TestCase {
+
+    private PlayPen pp;
+    private TablePane tp1;
+    private TablePane tp2;
+    private NavigatorThumbnail thumbnail;
+    private BufferedImage screen;
+
+    /**
+     * The number of times each table pane was painted.
+     */
+    private final Map<TablePane, Integer> paintCounts = new IdentityHashMap<TablePane, Integer>();
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        TestingArchitectSwingSessionContext context = new TestingArchitectSwingSessionContext();
+        ArchitectSwingSession session = context.createSession();
+        pp = session.getPlayPen();
+        SQLDatabase db = session.getTargetDatabase();
+        tp1 = addTablePane(db, new Point(10, 10));
+        tp2 = addTablePane(db, new Point(500, 300));
+        thumbnail = new NavigatorThumbnail(pp, new JPanel(), 200, 125);
+        screen = new BufferedImage(200, 125, BufferedImage.TYPE_INT_RGB);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        thumbnail.dispose();
+        super.tearDown();
+    }
+
+    /**
+     * Adds a table pane that fills its bounds with red and counts how often
+     * it is painted.
+     */
+    private TablePane addTablePane(SQLDatabase db, Point location) throws Exception {
+        SQLTable t = new SQLTable(db, true);
+        db.addChild(t);
+        final TablePane tp = new TablePane(t, pp.getContentPane());
+        pp.addTablePane(tp, location);
+        paintCounts.put(tp, 0);
+        BasicTablePaneUI ui = new BasicTablePaneUI() {
+            @Override
+            public void paint(Graphics2D g) {
+                paintCounts.put(tp, paintCounts.get(tp) + 1);
+                g.setColor(Color.RED);
+                g.fillRect(0, 0, tp.getWidth(), tp.getHeight());
+            }
+        };
+        ui.installUI(tp);
+        tp.setUI(ui);
+        return tp;
+    }
+
+    private void paint(double scale) {
+        Graphics2D g = screen.createGraphics();
+        thumbnail.paint(g, scale);
+        g.dispose();
+    }
+
+    private int pixelAt(Point p, double scale) {
+        return thumbnail.getImage().getRGB((int) (p.x * scale), (int) (p.y * scale));
+    }
+
+    public void testOnlyChangedComponentsRedrawn() throws Exception {
+        paint(0.25);
+        assertEquals(1, (int) paintCounts.get(tp1));
+        assertEquals(1, (int) paintCounts.get(tp2));
+
+        paint(0.25);
+        assertEquals("Nothing changed but the play pen was painted again", 1, (int) paintCounts.get(tp1));
+        assertEquals(1, (int) paintCounts.get(tp2));
+
+        thumbnail.componentChanged(tp1);
+        paint(0.25);
+        assertEquals(2, (int) paintCounts.get(tp1));
+        assertEquals(1, (int) paintCounts.get(tp2));
+    }
+
+    public void testMovedComponentLeavesNoTrail() throws Exception {
+        paint(0.25);
+        Point oldCentre = new Point(tp1.getX() + tp1.getWidth() / 2, tp1.getY() + tp1.getHeight() / 2);
+        assertEquals(Color.RED.getRGB(), pixelAt(oldCentre, 0.25));
+
+        tp1.setLocation(300, 100);
+        thumbnail.componentChanged(tp1);
+        paint(0.25);
+        Point newCentre = new Point(tp1.getX() + tp1.getWidth() / 2, tp1.getY() + tp1.getHeight() / 2);
+        assertEquals(pp.getBackground().getRGB(), pixelAt(oldCentre, 0.25));
+        assertEquals(Color.RED.getRGB(), pixelAt(newCentre, 0.25));
+    }
+
+    public void testRemovedComponentErased() throws Exception {
+        paint(0.25);
+        Point centre = new Point(tp2.getX() + tp2.getWidth() / 2, tp2.getY() + tp2.getHeight() / 2);
+        assertEquals(Color.RED.getRGB(), pixelAt(centre, 0.25));
+
+        pp.getContentPane().removeChild(tp2);
+        thumbnail.componentRemoved(tp2);
+        paint(0.25);
+        assertEquals(pp.getBackground().getRGB(), pixelAt(centre, 0.25));
+    }
+
+    /**
+     * A new scale should be reached by stretching the old picture in the
+     * background, not by painting the play pen again.
+     */
+    public void testRescaleDoesNotRepaintPlayPen() throws Exception {
+        paint(0.25);
+        paint(0.125);
+        assertTrue(thumbnail.isRescaling());
+        for (int i = 0; i < 500 && thumbnail.isRescaling(); i++) {
+            SwingUtilities.invokeAndWait(new Runnable() {
+                public void run() {
+                    // waits for the rescaled picture to be installed
+                }
+            });
+            Thread.sleep(10);
+        }
+        assertFalse(thumbnail.isRescaling());
+        assertEquals(0.125, thumbnail.getScale());
+
+        paint(0.125);
+        assertEquals(1, (int) paintCounts.get(tp1));
+        assertEquals(1, (int) paintCounts.get(tp2));
+    }
+
+    /**
+     * Drawing the whole picture while it is being stretched has to stop the
+     * stretching, or the stretched picture would replace the new one.
+     */
+    public void testFullRenderCancelsRescale() throws Exception {
+        paint(0.25);
+        paint(0.125);
+        assertTrue(thumbnail.isRescaling());
+        BufferedImage stretchSource = thumbnail.getImage();
+
+        thumbnail.invalidate();
+        paint(0.125);
+        assertFalse(thumbnail.isRescaling());
+        assertNotSame(stretchSource, thumbnail.getImage());
+        assertEquals(0.125, thumbnail.getScale());
+        assertEquals(2, (int) paintCounts.get(tp1));
+    }
+}
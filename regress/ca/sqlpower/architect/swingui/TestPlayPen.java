@@ -20,7 +20,10 @@ package ca.sqlpower.architect.swingui;
 
 import java.awt.Color;
 import java.awt.Font;
+import java.awt.Graphics2D;
 import java.awt.Point;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
 import java.beans.PropertyDescriptor;
 import java.sql.Connection;
 import java.sql.Statement;
@@ -633,4 +636,37 @@ public class TestPlayPen extends TestCase {
                     + property.getPropertyType().getName() + ") in isPropertyInstanceMutable()");
         }
     }
+
+    /**
+     * The play pen should only drop to low detail when the navigator or the
+     * screen shows it scaled down, never for exports such as PDF that call
+     * paintComponent directly.
+     */
+    public void testLowDetailOnlyForOverviewWhenScaledDown() throws Exception {
+        SQLTable t = new SQLTable(ppdb, "lod", "", "TABLE", true);
+        ppdb.addChild(t);
+        TablePane tp = new TablePane(t, pp.getContentPane());
+        pp.addTablePane(tp, new Point(10, 10));
+        pp.setZoom(1.0);
+        
+        final List<Boolean> lowDetail = new ArrayList<Boolean>();
+        tp.setUI(new BasicTablePaneUI() {
+            @Override
+            public void paint(Graphics2D g) {
+                lowDetail.add(pp.isPaintingLowDetail());
+            }
+        });
+        
+        BufferedImage image = new BufferedImage(100, 100, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        g.scale(PlayPen.LOW_DETAIL_SCALE / 3, PlayPen.LOW_DETAIL_SCALE / 3);
+        pp.paintComponent(g);
+        pp.paintOverview(g);
+        g.setTransform(new AffineTransform());
+        pp.paintOverview(g);
+        g.dispose();
+        
+        assertEquals(Arrays.asList(false, true, false), lowDetail);
+        assertFalse(pp.isPaintingLowDetail());
+    }
 }
\ No newline at end of file
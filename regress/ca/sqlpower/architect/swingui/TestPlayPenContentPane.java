@@ -19,6 +19,8 @@
 package ca.sqlpower.architect.swingui;
 
 import java.awt.Point;
+import java.awt.Rectangle;
+import java.util.List;
 
 import ca.sqlpower.architect.util.ArchitectNewValueMaker;
 import ca.sqlpower.object.PersistedSPObjectTest;
@@ -93,4 +95,68 @@ public class TestPlayPenContentPane extends PersistedSPObjectTest {
         return new ArchitectNewValueMaker(root, dsCollection);
     }
 
+    /**
+     * Hit testing goes through the content pane's spatial index, which has to
+     * follow components as they move.
+     */
+    public void testComponentAtFollowsMoves() throws Exception {
+        PlayPenContentPane cp = pp.getContentPane();
+        tp1.setLocation(5000, 5000);
+        tp2.setLocation(100, 100);
+        Point inside = new Point(tp1.getX() + 1, tp1.getY() + 1);
+        assertSame(tp1, cp.getComponentAt(inside));
+        
+        tp1.setLocation(8000, 300);
+        assertNull(cp.getComponentAt(inside));
+        assertSame(tp1, cp.getComponentAt(new Point(tp1.getX() + 1, tp1.getY() + 1)));
+        
+        cp.removeChild(tp1);
+        assertNotSame(tp1, cp.getComponentAt(new Point(tp1.getX() + 1, tp1.getY() + 1)));
+    }
+    
+    /**
+     * Painting only looks at the components near the clipping region, and
+     * they have to come back in the same order as {@link PlayPenContentPane#getAllChildren()}.
+     */
+    public void testComponentsIntersecting() throws Exception {
+        PlayPenContentPane cp = pp.getContentPane();
+        tp1.setLocation(100, 100);
+        tp2.setLocation(5000, 5000);
+        List<PlayPenComponent> found = cp.getComponentsIntersecting(new Rectangle(90, 90, 20, 20));
+        assertTrue(found.contains(tp1));
+        assertFalse(found.contains(tp2));
+        
+        found = cp.getComponentsIntersecting(new Rectangle(0, 0, 10000, 10000));
+        assertTrue(found.contains(tp1));
+        assertTrue(found.contains(tp2));
+        List<? extends PlayPenComponent> all = cp.getAllChildren();
+        assertTrue(all.indexOf(found.get(0)) < all.indexOf(found.get(1)));
+    }
+
+    /**
+     * The render order is only rebuilt when the children change, and it
+     * always has the relationships after the tables.
+     */
+    public void testRenderOrder() throws Exception {
+        PlayPenContentPane cp = pp.getContentPane();
+        List<PlayPenComponent> order = cp.getRenderOrder();
+        tp1.setLocation(300, 300);
+        assertSame(order, cp.getRenderOrder());
+        
+        pp.addRelationship(rel1);
+        List<PlayPenComponent> newOrder = cp.getRenderOrder();
+        assertNotSame(order, newOrder);
+        assertEquals(cp.getAllChildren().size(), newOrder.size());
+        assertSame(rel1, newOrder.get(newOrder.size() - 1));
+        assertTrue(newOrder.indexOf(tp1) < newOrder.indexOf(rel1));
+        
+        int[] found = new int[newOrder.size()];
+        int count = cp.collectRenderIndices(new Rectangle(tp1.getX(), tp1.getY(), 1, 1), found);
+        boolean foundTable = false;
+        for (int i = 0; i < count; i++) {
+            foundTable |= newOrder.get(found[i]) == tp1;
+        }
+        assertTrue(foundTable);
+    }
+
 }
@@ -26,7 +26,10 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.InputStream;
 import java.io.PrintWriter;
+import java.io.StringWriter;
 import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
 import java.sql.Types;
 import java.util.ArrayList;
 import java.util.HashSet;
@@ -35,6 +38,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
+import javax.swing.ProgressMonitor;
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 
@@ -51,8 +55,13 @@ import ca.sqlpower.architect.ProjectSettings.ColumnVisibility;
 import ca.sqlpower.architect.ddl.SQLServerDDLGenerator;
 import ca.sqlpower.architect.olap.MondrianModel;
 import ca.sqlpower.architect.olap.OLAPSession;
+import ca.sqlpower.architect.profile.AbstractTableProfileCreator;
 import ca.sqlpower.architect.profile.ColumnProfileResult;
+import ca.sqlpower.architect.profile.ColumnValueCount;
+import ca.sqlpower.architect.profile.IncrementalProfileCreator;
 import ca.sqlpower.architect.profile.ProfileManager;
+import ca.sqlpower.architect.profile.ProfileSettings;
+import ca.sqlpower.architect.profile.StreamingProfileCreator;
 import ca.sqlpower.architect.profile.TableProfileResult;
 import ca.sqlpower.architect.swingui.dbtree.DBTreeModel;
 import ca.sqlpower.object.SPObject;
@@ -73,6 +82,7 @@ import ca.sqlpower.sqlobject.StubSQLObject;
 import ca.sqlpower.sqlobject.SQLIndex.AscendDescend;
 import ca.sqlpower.sqlobject.SQLIndex.Column;
 import ca.sqlpower.testutil.MockJDBCDriver;
+import ca.sqlpower.util.SQLPowerUtils;
 
 /**
  * Test case, mainly for loading and saving via SwingUIProject.
@@ -265,6 +275,28 @@ public class TestSwingUIProject extends ArchitectTestCase {
 		assertEquals(3, target.getChildCount());		
 	}
 	
+    /**
+     * The streaming parser hands the play pen to the digester in the same
+     * pass, which has to restore the same table panes as the digester alone.
+     */
+    public void testStreamingLoadRestoresPlayPen() throws Exception {
+        testLoad();
+        List<TablePane> expected = session.getPlayPen().getContentPane().getChildren(TablePane.class);
+
+        ArchitectSwingSession session2 = session.getContext().createSession();
+        SwingUIProjectLoader p2 = new SwingUIProjectLoader(session2);
+        p2.setStreamingParser(true);
+        p2.load(new ByteArrayInputStream(testData.getBytes()), plIni);
+        List<TablePane> actual = session2.getPlayPen().getContentPane().getChildren(TablePane.class);
+
+        assertEquals(2, expected.size());
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).getModel().getName(), actual.get(i).getModel().getName());
+            assertEquals(expected.get(i).getLocation(), actual.get(i).getLocation());
+        }
+    }
+
     /**
      * Ensures the primary key property of columns loads properly. (from the example file)
      */
@@ -354,6 +386,61 @@ public class TestSwingUIProject extends ArchitectTestCase {
 		assertEquals(file.length(), tmp2.length());	// Quick test
 	}
 	
+    /**
+     * A snapshot written to disk has to be the same file the regular save
+     * would have written.
+     */
+    public void testSnapshotMatchesSave() throws Exception {
+        testLoad();
+        File file = File.createTempFile("snapshot", ".architect");
+        file.deleteOnExit();
+        project.setFile(file);
+        byte[] snapshot = project.saveSnapshot(null);
+        project.writeSnapshot(snapshot);
+        
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        project.save(out, ENCODING);
+        assertEquals(out.size(), file.length());
+        assertEquals(out.toString(ENCODING), new String(snapshot, ENCODING));
+    }
+
+    /**
+     * Saving in the binary format and loading the result again has to give
+     * back the same project as the XML format.
+     */
+    public void testBinaryRoundTrip() throws Exception {
+        testLoad();
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        project.save(expected, ENCODING);
+
+        File file = File.createTempFile("binary", ".architect");
+        file.deleteOnExit();
+        project.setFile(file);
+        project.setBinaryFormat(true);
+        project.save((ProgressMonitor) null);
+        assertTrue(file.length() < expected.size());
+
+        ArchitectSwingSession session2 = context.createSession();
+        SwingUIProjectLoader p2 = session2.getProjectLoader();
+        p2.load(new BufferedInputStream(new FileInputStream(file)), plIni);
+        assertTrue(p2.isBinaryFormat());
+        ByteArrayOutputStream actual = new ByteArrayOutputStream();
+        p2.save(actual, ENCODING);
+        assertEquals(expected.toString(ENCODING), actual.toString(ENCODING));
+    }
+
+    public void testWriteEscapedXML() throws Exception {
+        String[] values = new String[] { "plain name", "a & b", "<tag>", "\"quoted\" 'single'",
+                "back\\slash", "tab\tnewline\n", "caf\u00e9", "", null };
+        for (String value : values) {
+            StringWriter sw = new StringWriter();
+            PrintWriter out = new PrintWriter(sw);
+            SwingUIProjectLoader.writeEscapedXML(out, value);
+            out.flush();
+            assertEquals(SQLPowerUtils.escapeXML(value), sw.toString());
+        }
+    }
+    
 	/*
 	 * Test method for 'ca.sqlpower.architect.swingui.SwingUIProject.save(PrintWriter)'
 	 * Create two temp files, save our testData project to the first, load that
@@ -1191,6 +1278,74 @@ public class TestSwingUIProject extends ArchitectTestCase {
         assertEquals(5, cpr.getMinLength());
         assertEquals(6, cpr.getMaxLength());
     }
+
+    /**
+     * Profile results that were saved in a project come back with most of
+     * their values as strings. Profiling only the new rows of the table after
+     * the project is reloaded has to merge them as values of the columns'
+     * types.
+     */
+    public void testIncrementalProfileAfterReload() throws Exception {
+        JDBCDataSource ds = plIni.getDataSource("regression_test", JDBCDataSource.class);
+        Connection con = ds.createConnection();
+        Statement stmt = con.createStatement();
+        try {
+            stmt.execute("CREATE TABLE profile_reload (id INTEGER PRIMARY KEY, amount INTEGER)");
+            for (int i = 1; i <= 9; i++) {
+                stmt.execute("INSERT INTO profile_reload VALUES (" + i + ", " + (i % 2) + ")");
+            }
+            SQLDatabase db = new SQLDatabase(ds);
+            session.getRootObject().addChild(db);
+            session.getProfileManager().createProfile(db.getTableByName("PROFILE_RELOAD"));
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            project.save(out, ENCODING);
+            ArchitectSwingSession session2 = context.createSession();
+            session2.getProjectLoader().load(new ByteArrayInputStream(out.toByteArray()), plIni);
+            TableProfileResult previous = session2.getProfileManager().getResults().get(0);
+            assertEquals(9, previous.getRowCount());
+
+            stmt.execute("INSERT INTO profile_reload VALUES (10, 1)");
+            stmt.execute("INSERT INTO profile_reload VALUES (11, 1)");
+            ProfileSettings settings = session2.getProfileManager().getDefaultProfileSettings();
+            final boolean[] profiledAll = new boolean[1];
+            AbstractTableProfileCreator fullProfileCreator = new StreamingProfileCreator(settings) {
+                @Override
+                protected boolean doProfileImpl(TableProfileResult tpr) throws SQLException, SQLObjectException {
+                    profiledAll[0] = true;
+                    return super.doProfileImpl(tpr);
+                }
+            };
+            TableProfileResult tpr = new TableProfileResult(previous.getProfiledObject(), settings);
+            new IncrementalProfileCreator(settings, fullProfileCreator, previous, "ID").doProfile(tpr);
+            assertNull(tpr.getException());
+            assertFalse("Only the new rows should have been profiled", profiledAll[0]);
+
+            assertEquals(11, tpr.getRowCount());
+            ColumnProfileResult id = tpr.getColumnProfileResults().get(0);
+            assertEquals(Long.valueOf(1), id.getMinValue());
+            assertEquals(Long.valueOf(11), id.getMaxValue());
+            assertEquals(6.0, ((Number) id.getAvgValue()).doubleValue(), 0.0001);
+
+            ColumnProfileResult amount = tpr.getColumnProfileResults().get(1);
+            assertEquals(7 / 11.0, ((Number) amount.getAvgValue()).doubleValue(), 0.0001);
+            List<ColumnValueCount> topN = new ArrayList<ColumnValueCount>();
+            for (ColumnValueCount cvc : amount.getValueCount()) {
+                if (!cvc.isOtherValues()) {
+                    topN.add(cvc);
+                }
+            }
+            assertEquals(2, topN.size());
+            assertEquals(Long.valueOf(1), topN.get(0).getValue());
+            assertEquals(7, topN.get(0).getCount());
+            assertEquals(Long.valueOf(0), topN.get(1).getValue());
+            assertEquals(4, topN.get(1).getCount());
+        } finally {
+            stmt.execute("DROP TABLE profile_reload");
+            stmt.close();
+            con.close();
+        }
+    }
     
     /**
      * Checks the entire object tree loaded in to ensure all the
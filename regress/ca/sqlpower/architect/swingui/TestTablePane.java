@@ -21,12 +21,14 @@ package ca.sqlpower.architect.swingui;
 
 import java.awt.Color;
 import java.awt.Point;
+import java.awt.image.BufferedImage;
 import java.beans.PropertyChangeEvent;
 import java.sql.Types;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 
+import ca.sqlpower.architect.swingui.event.SelectionEvent;
 import ca.sqlpower.object.AbstractSPListener;
 import ca.sqlpower.object.SPChildEvent;
 import ca.sqlpower.object.SPObject;
@@ -466,6 +468,60 @@ public class TestTablePane extends TestPlayPenComponent<TablePane> {
         assertNotNull(rel.getMappingByFkCol(col));
     }
 
+    /**
+     * A cached image of a table pane has to survive the table being moved,
+     * but not anything that changes what it looks like.
+     */
+    public void testRenderCacheInvalidation() throws Exception {
+        TablePaneRenderCache cache = pp.getTablePaneRenderCache();
+        BufferedImage image = new BufferedImage(10, 10, BufferedImage.TYPE_INT_RGB);
+        cache.put(tp, 1.0, image);
+        assertSame(image, cache.get(tp, 1.0));
+        assertNull("Image drawn at another zoom level was used", cache.get(tp, 2.0));
+        
+        cache.put(tp, 1.0, image);
+        tp.setLocation(tp.getX() + 50, tp.getY() + 50);
+        assertSame(image, cache.get(tp, 1.0));
+        
+        tp.selectItem(0);
+        assertNull("Column selection did not invalidate the image", cache.get(tp, 1.0));
+        
+        cache.put(tp, 1.0, image);
+        t.getColumn(3).setName("renamed");
+        assertNull("Model change did not invalidate the image", cache.get(tp, 1.0));
+        
+        cache.put(tp, 1.0, image);
+        tp.setSelected(!tp.isSelected(), SelectionEvent.SINGLE_SELECT);
+        assertNull("Selection did not invalidate the image", cache.get(tp, 1.0));
+    }
+    
+    public void testRenderCacheEvictsLeastRecentlyUsed() throws Exception {
+        TablePane tp2 = new TablePane(new SQLTable(db, true), pp.getContentPane());
+        TablePane tp3 = new TablePane(new SQLTable(db, true), pp.getContentPane());
+        pp.addTablePane(tp2, new Point(300, 0));
+        pp.addTablePane(tp3, new Point(600, 0));
+        
+        TablePaneRenderCache cache = new TablePaneRenderCache();
+        cache.setMaxBytes(2 * 100 * 100 * 4);
+        assertFalse(cache.fits(100, 100));
+        
+        cache.setMaxBytes(4 * 40 * 40 * 4);
+        BufferedImage image = new BufferedImage(40, 40, BufferedImage.TYPE_INT_RGB);
+        cache.put(tp, 1.0, image);
+        cache.put(tp2, 1.0, image);
+        cache.put(tp3, 1.0, image);
+        assertEquals(3, cache.size());
+        
+        // tp2 is now the least recently used
+        assertNotNull(cache.get(tp, 1.0));
+        cache.setMaxBytes(2 * 40 * 40 * 4);
+        assertEquals(2, cache.size());
+        assertNotNull(cache.get(tp, 1.0));
+        assertNull(cache.get(tp2, 1.0));
+        assertNotNull(cache.get(tp3, 1.0));
+        assertTrue(cache.getUsedBytes() <= cache.getMaxBytes());
+    }
+
     @Override
     protected TablePane getTargetCopy() {
         return new TablePane(tp, (PlayPenContentPane) tp.getParent());
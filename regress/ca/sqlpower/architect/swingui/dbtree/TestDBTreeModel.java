@@ -18,13 +18,18 @@
  */
 package ca.sqlpower.architect.swingui.dbtree;
 
+import java.io.File;
+import java.sql.Connection;
+import java.sql.Statement;
 import java.sql.Types;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Executor;
 
 import javax.swing.JTree;
+import javax.swing.SwingUtilities;
 import javax.swing.event.TreeModelEvent;
 import javax.swing.event.TreeModelListener;
 import javax.swing.tree.TreePath;
@@ -33,10 +38,14 @@ import junit.framework.TestCase;
 import ca.sqlpower.architect.ArchitectSession;
 import ca.sqlpower.architect.ArchitectSessionContextImpl;
 import ca.sqlpower.architect.ArchitectSessionImpl;
+import ca.sqlpower.sql.JDBCDataSource;
+import ca.sqlpower.sql.PlDotIni;
 import ca.sqlpower.sqlobject.SQLColumn;
 import ca.sqlpower.sqlobject.SQLDatabase;
 import ca.sqlpower.sqlobject.SQLObject;
+import ca.sqlpower.sqlobject.SQLObjectException;
 import ca.sqlpower.sqlobject.SQLRelationship;
+import ca.sqlpower.sqlobject.SQLSchema;
 import ca.sqlpower.sqlobject.SQLTable;
 
 public class TestDBTreeModel extends TestCase {
@@ -50,6 +59,8 @@ public class TestDBTreeModel extends TestCase {
         private int removeCount;
         private int structureChangeCount;
         private List<TreeModelEvent> eventLog = new ArrayList<TreeModelEvent>();
+        private List<TreeModelEvent> insertLog = new ArrayList<TreeModelEvent>();
+        private List<TreeModelEvent> removeLog = new ArrayList<TreeModelEvent>();
         
         public void treeNodesChanged(TreeModelEvent e) {
             changeCount++;
@@ -59,11 +70,13 @@ public class TestDBTreeModel extends TestCase {
         public void treeNodesInserted(TreeModelEvent e) {
             insertCount++;
             eventLog.add(e);
+            insertLog.add(e);
         }
 
         public void treeNodesRemoved(TreeModelEvent e) {
             removeCount++;
             eventLog.add(e);
+            removeLog.add(e);
         }
 
         public void treeStructureChanged(TreeModelEvent e) {
@@ -91,6 +104,14 @@ public class TestDBTreeModel extends TestCase {
             return eventLog;
         }
         
+        public List<TreeModelEvent> getInsertLog() {
+            return insertLog;
+        }
+        
+        public List<TreeModelEvent> getRemoveLog() {
+            return removeLog;
+        }
+        
         @Override
         public String toString() {
             return String.format("[insert: %d, remove: %d, change: %d, structure: %d, eventLog: %s]",
@@ -99,13 +120,111 @@ public class TestDBTreeModel extends TestCase {
     }
 
 
+    /**
+     * Holds on to the populations the tree model starts until the test runs
+     * them.
+     */
+    private static class QueuedExecutor implements Executor {
+        private final List<Runnable> queue = new ArrayList<Runnable>();
+
+        public void execute(Runnable command) {
+            queue.add(command);
+        }
+
+        int size() {
+            return queue.size();
+        }
+
+        void runAll() {
+            List<Runnable> tasks = new ArrayList<Runnable>(queue);
+            queue.clear();
+            for (Runnable task : tasks) {
+                task.run();
+            }
+        }
+    }
+
     private DBTreeModel tm;
 
+    private JTree tree;
+
+    private QueuedExecutor populations;
+
+    /**
+     * The data source of the schema made by {@link #createDatabase(String, int)},
+     * or null if the test didn't make one.
+     */
+    private JDBCDataSource ds;
+
+    private String schemaName;
+
     protected void setUp() throws Exception {
         session = new ArchitectSessionImpl(new ArchitectSessionContextImpl("pl.regression.ini"), "TestSession");
-        tm = new DBTreeModel(session.getRootObject(), new JTree());
+        tree = new JTree();
+        tm = new DBTreeModel(session.getRootObject(), tree);
         tm.setRefireEventsOnAnyThread(true);
 	}
+
+    @Override
+    protected void tearDown() throws Exception {
+        if (ds != null) {
+            Connection con = ds.createConnection();
+            try {
+                Statement stmt = con.createStatement();
+                stmt.execute("DROP SCHEMA " + schemaName + " CASCADE");
+                stmt.close();
+            } finally {
+                con.close();
+            }
+        }
+    }
+
+    /**
+     * Makes a schema with the given number of tables in the regression
+     * database, and adds an unpopulated database for it to the tree.
+     */
+    private SQLDatabase createDatabase(String schema, int tableCount) throws Exception {
+        PlDotIni plIni = new PlDotIni();
+        plIni.read(new File("pl.regression.ini"));
+        ds = plIni.getDataSource("regression_test", JDBCDataSource.class);
+        schemaName = schema;
+        Connection con = ds.createConnection();
+        try {
+            Statement stmt = con.createStatement();
+            stmt.execute("CREATE SCHEMA " + schema + " AUTHORIZATION DBA");
+            for (int i = 0; i < tableCount; i++) {
+                stmt.execute("CREATE TABLE " + schema + ".t" + i + " (c integer)");
+            }
+            stmt.close();
+        } finally {
+            con.close();
+        }
+        SQLDatabase db = new SQLDatabase(ds);
+        ((SQLObject) tm.getRoot()).addChild(db);
+        return db;
+    }
+
+    /**
+     * Makes the tree model populate nodes in the background on
+     * {@link #populations}.
+     */
+    private void enableBackgroundPopulation() {
+        populations = new QueuedExecutor();
+        tm.setPopulator(new BackgroundPopulator(populations));
+        tm.setBackgroundPopulation(true);
+    }
+
+    /**
+     * Waits for the event dispatch thread to run everything queued on it so
+     * far. Anything those tasks queue runs on the next call.
+     */
+    private static void flushEventQueue() throws Exception {
+        SwingUtilities.invokeAndWait(new Runnable() {
+            public void run() {
+                // nothing to do
+            }
+        });
+    }
 	
     public void testRefireRelationshipMappingEvents() throws Exception {
         SQLObject treeRoot = (SQLObject) tm.getRoot();
@@ -149,4 +268,275 @@ public class TestDBTreeModel extends TestCase {
     public void testDBTreeRootMatchesSessionRoot() throws Exception {
         assertEquals(session.getRootObject(), tm.getRoot());
     }
+
+    /**
+     * The cached child indices have to follow children being added and
+     * removed.
+     */
+    public void testIndexOfChildFollowsChanges() throws Exception {
+        SQLObject treeRoot = (SQLObject) tm.getRoot();
+        SQLDatabase db = new SQLDatabase();
+        treeRoot.addChild(db);
+        SQLTable t1 = new SQLTable(db, true);
+        t1.setName("t1");
+        SQLTable t2 = new SQLTable(db, true);
+        t2.setName("t2");
+        db.addChild(t1);
+        db.addChild(t2);
+        
+        assertEquals(0, tm.getIndexOfChild(db, t1));
+        assertEquals(1, tm.getIndexOfChild(db, t2));
+        
+        db.removeChild(t1);
+        assertEquals(-1, tm.getIndexOfChild(db, t1));
+        assertEquals(0, tm.getIndexOfChild(db, t2));
+        assertSame(t2, tm.getChild(db, 0));
+        
+        Object columnFolder = tm.getChild(t2, 0);
+        assertEquals(0, tm.getChildCount(columnFolder));
+        SQLColumn c = new SQLColumn(null, "column", Types.INTEGER, 1, 1);
+        t2.addColumn(c);
+        assertEquals(1, tm.getChildCount(columnFolder));
+        assertEquals(0, tm.getIndexOfChild(columnFolder, c));
+    }
+
+    /**
+     * Children added or removed in the middle of a node move the ones after
+     * them in the cached child index.
+     */
+    public void testIndexOfChildFollowsChangesInTheMiddle() throws Exception {
+        SQLObject treeRoot = (SQLObject) tm.getRoot();
+        SQLDatabase db = new SQLDatabase();
+        treeRoot.addChild(db);
+        List<SQLTable> tables = new ArrayList<SQLTable>();
+        for (int i = 0; i < 5; i++) {
+            SQLTable t = new SQLTable(db, true);
+            t.setName("t" + i);
+            db.addChild(t);
+            tables.add(t);
+            assertEquals(i, tm.getIndexOfChild(db, t));
+        }
+
+        SQLTable inserted = new SQLTable(db, true);
+        inserted.setName("inserted");
+        db.addChild(inserted, 2);
+        tables.add(2, inserted);
+        for (int i = 0; i < tables.size(); i++) {
+            assertEquals(i, tm.getIndexOfChild(db, tables.get(i)));
+            assertSame(tables.get(i), tm.getChild(db, i));
+        }
+
+        db.removeChild(tables.remove(1));
+        for (int i = 0; i < tables.size(); i++) {
+            assertEquals(i, tm.getIndexOfChild(db, tables.get(i)));
+            assertSame(tables.get(i), tm.getChild(db, i));
+        }
+        assertEquals(tables.size(), tm.getChildCount(db));
+    }
+
+    /**
+     * The loading placeholder is a leaf and is never the child of a node
+     * that is not loading.
+     */
+    public void testLoadingPlaceholder() throws Exception {
+        SQLObject treeRoot = (SQLObject) tm.getRoot();
+        SQLDatabase db = new SQLDatabase();
+        treeRoot.addChild(db);
+        
+        assertTrue(tm.isLeaf(DBTreeModel.LOADING_PLACEHOLDER));
+        assertEquals(0, tm.getChildCount(DBTreeModel.LOADING_PLACEHOLDER));
+        assertEquals(-1, tm.getIndexOfChild(db, DBTreeModel.LOADING_PLACEHOLDER));
+        assertFalse(tm.isBackgroundPopulation());
+    }
+
+    /**
+     * A node populated in the background shows the placeholder until the
+     * population is done, then the tree is told the placeholder is gone and
+     * the children are there.
+     */
+    public void testBackgroundLoadReplacesPlaceholder() throws Exception {
+        SQLDatabase db = createDatabase("DBTREE_LOAD", 3);
+        enableBackgroundPopulation();
+        LoggingSwingTreeModelListener l = new LoggingSwingTreeModelListener();
+        tm.addTreeModelListener(l);
+
+        assertEquals(1, tm.getChildCount(db));
+        assertSame(DBTreeModel.LOADING_PLACEHOLDER, tm.getChild(db, 0));
+        assertEquals(0, tm.getIndexOfChild(db, DBTreeModel.LOADING_PLACEHOLDER));
+        assertEquals(1, populations.size());
+        assertFalse(db.isPopulated());
+
+        populations.runAll();
+        assertTrue(db.isPopulated());
+        assertEquals("The tree heard about children before the load finished", 0, l.getInsertCount());
+        assertEquals(1, tm.getChildCount(db));
+
+        flushEventQueue();
+        assertEquals(1, l.getRemoveCount());
+        TreeModelEvent removed = l.getRemoveLog().get(0);
+        assertSame(db, removed.getTreePath().getLastPathComponent());
+        assertSame(DBTreeModel.LOADING_PLACEHOLDER, removed.getChildren()[0]);
+
+        int childCount = db.getChildren().size();
+        assertEquals(1, l.getInsertCount());
+        assertEquals(childCount, l.getInsertLog().get(0).getChildren().length);
+        assertEquals(childCount, tm.getChildCount(db));
+        assertEquals(-1, tm.getIndexOfChild(db, DBTreeModel.LOADING_PLACEHOLDER));
+        SQLSchema schema = db.getChildByName("DBTREE_LOAD", SQLSchema.class);
+        assertEquals(db.getChildren().indexOf(schema), tm.getIndexOfChild(db, schema));
+        assertEquals(0, populations.size());
+    }
+
+    /**
+     * The children of a node with many of them are inserted a page at a
+     * time, and the tree can't see the ones that haven't been inserted yet.
+     */
+    public void testBackgroundLoadRevealsPages() throws Exception {
+        int tableCount = DBTreeModel.PAGE_SIZE * 2 + 10;
+        SQLDatabase db = createDatabase("DBTREE_PAGES", tableCount);
+        db.populate();
+        SQLSchema schema = db.getChildByName("DBTREE_PAGES", SQLSchema.class);
+        enableBackgroundPopulation();
+        LoggingSwingTreeModelListener l = new LoggingSwingTreeModelListener();
+        tm.addTreeModelListener(l);
+
+        assertEquals(1, tm.getChildCount(schema));
+        populations.runAll();
+        assertEquals(tableCount, schema.getChildren(SQLTable.class).size());
+        SQLTable secondPage = schema.getChildren(SQLTable.class).get(DBTreeModel.PAGE_SIZE);
+
+        flushEventQueue();
+        assertEquals(1, l.getInsertCount());
+        assertEquals(0, l.getInsertLog().get(0).getChildIndices()[0]);
+        assertEquals(DBTreeModel.PAGE_SIZE, l.getInsertLog().get(0).getChildren().length);
+        assertEquals(DBTreeModel.PAGE_SIZE, tm.getChildCount(schema));
+        assertEquals(-1, tm.getIndexOfChild(schema, secondPage));
+
+        flushEventQueue();
+        assertEquals(2, l.getInsertCount());
+        assertEquals(DBTreeModel.PAGE_SIZE, l.getInsertLog().get(1).getChildIndices()[0]);
+        assertEquals(DBTreeModel.PAGE_SIZE * 2, tm.getChildCount(schema));
+        assertEquals(DBTreeModel.PAGE_SIZE, tm.getIndexOfChild(schema, secondPage));
+
+        flushEventQueue();
+        assertEquals(3, l.getInsertCount());
+        assertEquals(10, l.getInsertLog().get(2).getChildren().length);
+        assertEquals(tableCount, tm.getChildCount(schema));
+
+        flushEventQueue();
+        assertEquals(3, l.getInsertCount());
+        assertEquals(0, l.getStructureChangeCount());
+    }
+
+    /**
+     * Collapsing a node that is loading cancels the load, and the tree is
+     * told to reread the node.
+     */
+    public void testCollapseStopsLoading() throws Exception {
+        SQLDatabase db = createDatabase("DBTREE_COLLAPSE", 1);
+        enableBackgroundPopulation();
+        LoggingSwingTreeModelListener l = new LoggingSwingTreeModelListener();
+        tm.addTreeModelListener(l);
+
+        assertEquals(1, tm.getChildCount(db));
+        tree.fireTreeWillCollapse(new TreePath(tm.getPathToNode(db)));
+        populations.runAll();
+        assertFalse("The cancelled load still ran", db.isPopulated());
+
+        flushEventQueue();
+        assertEquals(1, l.getStructureChangeCount());
+        assertSame(db, l.getEventLog().get(0).getTreePath().getLastPathComponent());
+        assertEquals(0, l.getInsertCount());
+        assertEquals(0, l.getRemoveCount());
+    }
+
+    /**
+     * Collapsing a node whose children are being inserted page by page
+     * stops the paging, and the tree is told to reread the node with all of
+     * its children.
+     */
+    public void testCollapseStopsRevealingPages() throws Exception {
+        int tableCount = DBTreeModel.PAGE_SIZE * 2 + 10;
+        SQLDatabase db = createDatabase("DBTREE_COLLAPSE_PAGES", tableCount);
+        db.populate();
+        SQLSchema schema = db.getChildByName("DBTREE_COLLAPSE_PAGES", SQLSchema.class);
+        enableBackgroundPopulation();
+        LoggingSwingTreeModelListener l = new LoggingSwingTreeModelListener();
+        tm.addTreeModelListener(l);
+
+        tm.getChildCount(schema);
+        populations.runAll();
+        flushEventQueue();
+        assertEquals(1, l.getInsertCount());
+
+        tree.fireTreeWillCollapse(new TreePath(tm.getPathToNode(schema)));
+        flushEventQueue();
+        flushEventQueue();
+        assertEquals(1, l.getInsertCount());
+        assertEquals(1, l.getStructureChangeCount());
+        assertEquals(tableCount, tm.getChildCount(schema));
+    }
+
+    /**
+     * A node that could not be populated in the background is left to the
+     * tree, as it would be without background population, rather than being
+     * tried again in the background every time the tree asks about it.
+     */
+    public void testFailedLoadNotRetried() throws Exception {
+        SQLDatabase db = new SQLDatabase() {
+            @Override
+            public Connection getConnection() throws SQLObjectException {
+                throw new SQLObjectException("This database can't be connected to");
+            }
+        };
+        db.setDataSource(new JDBCDataSource(new PlDotIni()));
+        db.setPopulated(false);
+        ((SQLObject) tm.getRoot()).addChild(db);
+        enableBackgroundPopulation();
+        LoggingSwingTreeModelListener l = new LoggingSwingTreeModelListener();
+        tm.addTreeModelListener(l);
+
+        assertEquals(1, tm.getChildCount(db));
+        populations.runAll();
+        flushEventQueue();
+        assertEquals(1, l.getStructureChangeCount());
+        assertEquals(0, l.getInsertCount());
+        assertEquals(-1, tm.getIndexOfChild(db, DBTreeModel.LOADING_PLACEHOLDER));
+
+        try {
+            tm.getChildCount(db);
+        } catch (RuntimeException e) {
+            // populating fails again, as it would without background population
+        }
+        assertEquals(0, populations.size());
+    }
+
+    /**
+     * A transaction that adds many children should fire a structure change
+     * at its end instead of one insert event per child.
+     */
+    public void testLargeTransactionCoalesced() throws Exception {
+        SQLObject treeRoot = (SQLObject) tm.getRoot();
+        SQLDatabase db = new SQLDatabase();
+        treeRoot.addChild(db);
+        
+        LoggingSwingTreeModelListener l = new LoggingSwingTreeModelListener();
+        tm.addTreeModelListener(l);
+        
+        int tableCount = DBTreeModel.COALESCE_THRESHOLD * 3;
+        db.begin("adding tables");
+        for (int i = 0; i < tableCount; i++) {
+            SQLTable t = new SQLTable(db, true);
+            t.setName("t" + i);
+            db.addChild(t);
+        }
+        assertEquals(0, l.getStructureChangeCount());
+        db.commit();
+        
+        assertTrue(l.getInsertCount() <= DBTreeModel.COALESCE_THRESHOLD * 2);
+        assertEquals(1, l.getStructureChangeCount());
+        assertEquals(tableCount, tm.getChildCount(db));
+        SQLTable last = db.getChildren(SQLTable.class).get(tableCount - 1);
+        assertEquals(tableCount - 1, tm.getIndexOfChild(db, last));
+    }
 }
@@ -0,0 +1,389 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package ca.sqlpower.architect;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.AttributesImpl;
+
+/**
+ * Reads project files in the compact binary format written by
+ * {@link BinaryProjectWriter}. The binary format holds exactly the same
+ * elements, attributes and text as the XML format, so it is loaded by
+ * replaying it as SAX events into the same Digester that reads XML files.
+ * <p>
+ * A binary project file consists of:
+ * <ol>
+ * <li>the eight bytes of {@link #MAGIC}
+ * <li>the format version as a four byte integer
+ * <li>the length of the section index as a four byte integer, followed by the
+ * index itself: the name and attributes of the root element, the number of
+ * sections and then the name and length of each section in file order
+ * <li>the sections themselves
+ * </ol>
+ * Every top level child of the root element, such as the target database or
+ * the profiles, is its own section. A section starts with its own table of
+ * interned strings, which holds every element name, attribute name,
+ * attribute value and piece of text in the section exactly once, followed by
+ * the section's elements as a stream of tokens that refer to the strings by
+ * their index. All counts, lengths and indexes inside a section are written
+ * as variable length integers, so most of them take a single byte.
+ * <p>
+ * Since each section has its own strings, a section can be decoded on its
+ * own long after the rest of the project was loaded. This is what lets the
+ * {@link ProjectLoader} put off loading bulky parts of the project, such as
+ * the profile results, until they are first used.
+ */
+public class BinaryProjectReader {
+
+    /**
+     * The bytes every binary project file starts with. The first byte is not
+     * valid at the start of an XML document, which is how binary files are
+     * told apart from XML ones.
+     */
+    static final byte[] MAGIC = { (byte) 0x89, 'A', 'R', 'C', 'H', '\r', '\n', 0x1a };
+
+    /**
+     * The version of the binary format this class reads and
+     * {@link BinaryProjectWriter} writes.
+     */
+    static final int FORMAT_VERSION = 1;
+
+    /**
+     * Token for the start of an element, followed by the index of its name,
+     * its number of attributes and the name and value index of each
+     * attribute.
+     */
+    static final int START_ELEMENT = 1;
+
+    /**
+     * Token for a piece of text, followed by the index of the text.
+     */
+    static final int TEXT = 2;
+
+    /**
+     * Token for the end of the current element.
+     */
+    static final int END_ELEMENT = 3;
+
+    /**
+     * One top level element of the project and all of its contents, still in
+     * binary form.
+     */
+    public static class Section {
+        private final String name;
+        private final byte[] data;
+
+        Section(String name, byte[] data) {
+            this.name = name;
+            this.data = data;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Returns the size of this section in the file, in bytes.
+         */
+        public int getLength() {
+            return data.length;
+        }
+    }
+
+    private final String rootName;
+
+    private final AttributesImpl rootAttributes = new AttributesImpl();
+
+    private final List<Section> sections = new ArrayList<Section>();
+
+    /**
+     * Reads the section index and all of the sections of a binary project
+     * file from the given stream. The sections are not decoded until they
+     * are replayed.
+     * 
+     * @throws IOException
+     *             If the stream could not be read or does not contain a
+     *             binary project this class understands.
+     */
+    public BinaryProjectReader(InputStream in) throws IOException {
+        DataInputStream din = new DataInputStream(in);
+        byte[] magic = new byte[MAGIC.length];
+        din.readFully(magic);
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (magic[i] != MAGIC[i]) {
+                throw new IOException("Not a binary project file");
+            }
+        }
+        int version = din.readInt();
+        if (version != FORMAT_VERSION) {
+            throw new IOException("Unsupported binary project file version " + version);
+        }
+
+        byte[] index = new byte[din.readInt()];
+        din.readFully(index);
+        DataInputStream indexIn = new DataInputStream(new ByteArrayInputStream(index));
+        rootName = readString(indexIn);
+        int attributeCount = readVarInt(indexIn);
+        for (int i = 0; i < attributeCount; i++) {
+            String name = readString(indexIn);
+            rootAttributes.addAttribute("", name, name, "CDATA", readString(indexIn));
+        }
+        int sectionCount = readVarInt(indexIn);
+        List<String> names = new ArrayList<String>(sectionCount);
+        int[] lengths = new int[sectionCount];
+        for (int i = 0; i < sectionCount; i++) {
+            names.add(readString(indexIn));
+            lengths[i] = readVarInt(indexIn);
+        }
+
+        for (int i = 0; i < sectionCount; i++) {
+            byte[] data = new byte[lengths[i]];
+            din.readFully(data);
+            sections.add(new Section(names.get(i), data));
+        }
+    }
+
+    /**
+     * Returns true if the given stream holds a binary project file rather
+     * than an XML one. The stream must support mark, and is left at the same
+     * position it was in.
+     */
+    public static boolean isBinary(InputStream in) throws IOException {
+        in.mark(MAGIC.length);
+        try {
+            for (int i = 0; i < MAGIC.length; i++) {
+                if (in.read() != (MAGIC[i] & 0xff)) {
+                    return false;
+                }
+            }
+            return true;
+        } finally {
+            in.reset();
+        }
+    }
+
+    public String getRootName() {
+        return rootName;
+    }
+
+    public Attributes getRootAttributes() {
+        return rootAttributes;
+    }
+
+    /**
+     * Returns the sections of the project, in the order they appear in the
+     * file.
+     */
+    public List<Section> getSections() {
+        return Collections.unmodifiableList(sections);
+    }
+
+    /**
+     * Returns the first section with the given name, or null if the project
+     * has no such section.
+     */
+    public Section getSection(String name) {
+        for (Section section : sections) {
+            if (section.getName().equals(name)) {
+                return section;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Sends the whole project to the given handler as a complete document,
+     * except for the sections whose names are in the skipped collection.
+     * 
+     * @param unescape
+     *            If true, the escapes SQLPowerUtils.escapeXML() adds for
+     *            characters XML cannot carry are reversed, as the Digester's
+     *            unescaping SAX parser would do.
+     */
+    public void replay(ContentHandler handler, Collection<String> skipped, boolean unescape)
+    throws IOException, SAXException {
+        handler.startDocument();
+        handler.startElement("", rootName, rootName, rootAttributes);
+        for (Section section : sections) {
+            if (!skipped.contains(section.getName())) {
+                replay(section, handler, unescape);
+            }
+        }
+        handler.endElement("", rootName, rootName);
+        handler.endDocument();
+    }
+
+    /**
+     * Sends the elements of one section to the given handler. No document
+     * events are sent, so the section can be replayed into the middle of
+     * another document or wrapped into a document of its own.
+     */
+    public static void replay(Section section, ContentHandler handler, boolean unescape)
+    throws IOException, SAXException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(section.data));
+        String[] strings = readStrings(in, unescape);
+        List<String> openElements = new ArrayList<String>();
+        AttributesImpl attributes = new AttributesImpl();
+        int token;
+        while ((token = in.read()) != -1) {
+            if (token == START_ELEMENT) {
+                String name = strings[readVarInt(in)];
+                attributes.clear();
+                int attributeCount = readVarInt(in);
+                for (int i = 0; i < attributeCount; i++) {
+                    String attributeName = strings[readVarInt(in)];
+                    attributes.addAttribute("", attributeName, attributeName, "CDATA", strings[readVarInt(in)]);
+                }
+                openElements.add(name);
+                handler.startElement("", name, name, attributes);
+            } else if (token == TEXT) {
+                char[] text = strings[readVarInt(in)].toCharArray();
+                handler.characters(text, 0, text.length);
+            } else if (token == END_ELEMENT) {
+                String name = openElements.remove(openElements.size() - 1);
+                handler.endElement("", name, name);
+            } else {
+                throw new IOException("Unknown token " + token + " in section " + section.getName());
+            }
+        }
+    }
+
+    /**
+     * Writes the given section out as XML, wrapped in the root element, for
+     * readers that can only parse XML files.
+     */
+    public String toXML(Section section) throws IOException {
+        StringWriter out = new StringWriter(section.getLength() * 2);
+        out.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<");
+        out.write(rootName);
+        writeAttributes(out, rootAttributes);
+        out.write(">\n");
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(section.data));
+        String[] strings = readStrings(in, false);
+        List<String> openElements = new ArrayList<String>();
+        AttributesImpl attributes = new AttributesImpl();
+        int token;
+        while ((token = in.read()) != -1) {
+            if (token == START_ELEMENT) {
+                String name = strings[readVarInt(in)];
+                attributes.clear();
+                int attributeCount = readVarInt(in);
+                for (int i = 0; i < attributeCount; i++) {
+                    String attributeName = strings[readVarInt(in)];
+                    attributes.addAttribute("", attributeName, attributeName, "CDATA", strings[readVarInt(in)]);
+                }
+                openElements.add(name);
+                out.write('<');
+                out.write(name);
+                writeAttributes(out, attributes);
+                out.write('>');
+            } else if (token == TEXT) {
+                writeEscaped(out, strings[readVarInt(in)]);
+            } else if (token == END_ELEMENT) {
+                out.write("</");
+                out.write(openElements.remove(openElements.size() - 1));
+                out.write('>');
+            } else {
+                throw new IOException("Unknown token " + token + " in section " + section.getName());
+            }
+        }
+        out.write("\n</");
+        out.write(rootName);
+        out.write(">\n");
+        return out.toString();
+    }
+
+    private static void writeAttributes(Writer out, Attributes attributes) throws IOException {
+        for (int i = 0; i < attributes.getLength(); i++) {
+            out.write(' ');
+            out.write(attributes.getQName(i));
+            out.write("=\"");
+            writeEscaped(out, attributes.getValue(i));
+            out.write('"');
+        }
+    }
+
+    private static void writeEscaped(Writer out, String s) throws IOException {
+        for (int i = 0; i < s.length(); i++) {
+            char ch = s.charAt(i);
+            if (ch == '&') {
+                out.write("&amp;");
+            } else if (ch == '<') {
+                out.write("&lt;");
+            } else if (ch == '>') {
+                out.write("&gt;");
+            } else if (ch == '"') {
+                out.write("&quot;");
+            } else {
+                out.write(ch);
+            }
+        }
+    }
+
+    private static String[] readStrings(DataInputStream in, boolean unescape) throws IOException {
+        String[] strings = new String[readVarInt(in)];
+        for (int i = 0; i < strings.length; i++) {
+            strings[i] = readString(in);
+            if (unescape) {
+                strings[i] = StreamingProjectReader.unescape(strings[i]);
+            }
+        }
+        return strings;
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] utf8 = new byte[readVarInt(in)];
+        in.readFully(utf8);
+        return new String(utf8, "UTF-8");
+    }
+
+    /**
+     * Reads an unsigned integer written by
+     * {@link BinaryProjectWriter#writeVarInt(java.io.ByteArrayOutputStream, int)}.
+     */
+    static int readVarInt(InputStream in) throws IOException {
+        int value = 0;
+        int shift = 0;
+        int b;
+        do {
+            b = in.read();
+            if (b == -1) {
+                throw new IOException("Unexpected end of binary project file");
+            }
+            value |= (b & 0x7f) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+}
@@ -0,0 +1,337 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package ca.sqlpower.architect;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+import org.xml.sax.helpers.XMLReaderFactory;
+
+/**
+ * Converts project files from XML to the compact binary format described in
+ * {@link BinaryProjectReader}. Projects are always written as XML first, so
+ * the XML writer stays the one place that knows what goes into a project
+ * file, and this class only changes how it is stored. An {@link Encoder}
+ * converts the XML as it is written, so the XML of a whole project never has
+ * to be held in memory.
+ */
+public class BinaryProjectWriter {
+
+    /**
+     * The section currently being built, or the sections of the project once
+     * the whole file has been read.
+     */
+    private static class SectionBuilder {
+        private final String name;
+        private final Map<String, Integer> stringIndexes = new HashMap<String, Integer>();
+        private final List<String> strings = new ArrayList<String>();
+        private final ByteArrayOutputStream tokens = new ByteArrayOutputStream();
+
+        SectionBuilder(String name) {
+            this.name = name;
+        }
+
+        /**
+         * Writes the index of the given string in this section's string
+         * table, adding it to the table if it is not there yet.
+         */
+        void writeStringIndex(String s) {
+            Integer index = stringIndexes.get(s);
+            if (index == null) {
+                index = strings.size();
+                strings.add(s);
+                stringIndexes.put(s, index);
+            }
+            writeVarInt(tokens, index);
+        }
+
+        byte[] toByteArray() throws IOException {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(tokens.size() * 2);
+            writeVarInt(out, strings.size());
+            for (String s : strings) {
+                writeString(out, s);
+            }
+            tokens.writeTo(out);
+            return out.toByteArray();
+        }
+    }
+
+    private class Handler extends DefaultHandler {
+        private int depth;
+        private SectionBuilder section;
+        private final StringBuilder text = new StringBuilder();
+
+        @Override
+        public void startElement(String uri, String localName, String qName, Attributes attributes) {
+            if (depth == 0) {
+                rootName = qName;
+                for (int i = 0; i < attributes.getLength(); i++) {
+                    rootAttributeNames.add(attributes.getQName(i));
+                    rootAttributeValues.add(attributes.getValue(i));
+                }
+            } else {
+                if (depth == 1) {
+                    section = new SectionBuilder(qName);
+                    sections.add(section);
+                } else {
+                    flushText();
+                }
+                section.tokens.write(BinaryProjectReader.START_ELEMENT);
+                section.writeStringIndex(qName);
+                writeVarInt(section.tokens, attributes.getLength());
+                for (int i = 0; i < attributes.getLength(); i++) {
+                    section.writeStringIndex(attributes.getQName(i));
+                    section.writeStringIndex(attributes.getValue(i));
+                }
+            }
+            depth++;
+        }
+
+        @Override
+        public void characters(char[] ch, int start, int length) {
+            // whitespace between sections is only formatting
+            if (depth > 1) {
+                text.append(ch, start, length);
+            }
+        }
+
+        @Override
+        public void endElement(String uri, String localName, String qName) {
+            depth--;
+            if (depth > 0) {
+                flushText();
+                section.tokens.write(BinaryProjectReader.END_ELEMENT);
+            }
+        }
+
+        private void flushText() {
+            if (text.length() > 0) {
+                section.tokens.write(BinaryProjectReader.TEXT);
+                section.writeStringIndex(text.toString());
+                text.setLength(0);
+            }
+        }
+    }
+
+    private String rootName;
+    private final List<String> rootAttributeNames = new ArrayList<String>();
+    private final List<String> rootAttributeValues = new ArrayList<String>();
+    private final List<SectionBuilder> sections = new ArrayList<SectionBuilder>();
+
+    private BinaryProjectWriter() {
+        // use write()
+    }
+
+    /**
+     * Reads a project file in XML from the given input stream and writes it
+     * to the given output stream in the binary format. Neither stream is
+     * closed.
+     */
+    public static void write(InputStream xml, OutputStream out) throws IOException, SAXException {
+        BinaryProjectWriter writer = new BinaryProjectWriter();
+        XMLReader reader = XMLReaderFactory.createXMLReader();
+        reader.setContentHandler(writer.new Handler());
+        reader.parse(new InputSource(xml));
+        writer.writeTo(out);
+    }
+
+    /**
+     * Returns a stream that takes a project file in XML and writes it to the
+     * given output stream in the binary format. See {@link Encoder}.
+     */
+    public static Encoder openEncoder(OutputStream out) throws IOException {
+        return new Encoder(out);
+    }
+
+    /**
+     * A stream that converts the project file written to it from XML to the
+     * binary format. The XML is parsed on a thread of its own as it arrives,
+     * so only the sections being built up, which are much smaller than the
+     * XML, are kept in memory. The binary file is written to the underlying
+     * stream when this stream is closed, since the section index at the
+     * start of the file is only known once the whole project has been read.
+     * <p>
+     * Closing this stream also closes the underlying stream. If the XML could
+     * not be converted, close throws an exception, and closing it again
+     * throws the same one. This matters to callers that write through a
+     * {@link java.io.PrintWriter}, which hides exceptions from close.
+     */
+    public static class Encoder extends OutputStream {
+
+        /**
+         * The size of the buffer between the XML writer and the parser
+         * thread.
+         */
+        private static final int PIPE_SIZE = 64 * 1024;
+
+        private final OutputStream out;
+        private final PipedOutputStream xml;
+        private final FutureTask<BinaryProjectWriter> parse;
+        private boolean closed;
+        private IOException failure;
+
+        private Encoder(OutputStream out) throws IOException {
+            this.out = out;
+            final PipedInputStream xmlIn = new PipedInputStream(PIPE_SIZE);
+            xml = new PipedOutputStream(xmlIn);
+            parse = new FutureTask<BinaryProjectWriter>(new Callable<BinaryProjectWriter>() {
+                public BinaryProjectWriter call() throws Exception {
+                    BinaryProjectWriter writer = new BinaryProjectWriter();
+                    try {
+                        XMLReader reader = XMLReaderFactory.createXMLReader();
+                        reader.setContentHandler(writer.new Handler());
+                        // the parser closes its input when it fails, which
+                        // would leave the XML writer with a broken pipe
+                        reader.parse(new InputSource(new FilterInputStream(xmlIn) {
+                            @Override
+                            public void close() {
+                                // drained and closed below
+                            }
+                        }));
+                    } finally {
+                        // a failed parse must not leave the XML writer
+                        // blocked on a full pipe
+                        drain(xmlIn);
+                        xmlIn.close();
+                    }
+                    return writer;
+                }
+            });
+            Thread parser = new Thread(parse, "Binary project encoder"); //$NON-NLS-1$
+            parser.setDaemon(true);
+            parser.start();
+        }
+
+        private static void drain(InputStream in) {
+            byte[] buffer = new byte[4096];
+            try {
+                while (in.read(buffer) != -1) {
+                    // throw it away
+                }
+            } catch (IOException ex) {
+                // the parser already closed the pipe
+            }
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            xml.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            xml.write(b, off, len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            xml.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!closed) {
+                closed = true;
+                try {
+                    xml.close();
+                    parse.get().writeTo(out);
+                } catch (InterruptedException e) {
+                    failure = new InterruptedIOException("Interrupted while converting the project to the binary format"); //$NON-NLS-1$
+                } catch (ExecutionException e) {
+                    failure = new IOException("Couldn't convert the project to the binary format", e.getCause()); //$NON-NLS-1$
+                } catch (IOException e) {
+                    failure = e;
+                } finally {
+                    out.close();
+                }
+            }
+            if (failure != null) {
+                throw failure;
+            }
+        }
+    }
+
+    private void writeTo(OutputStream out) throws IOException {
+        List<byte[]> sectionData = new ArrayList<byte[]>(sections.size());
+        ByteArrayOutputStream index = new ByteArrayOutputStream();
+        writeString(index, rootName);
+        writeVarInt(index, rootAttributeNames.size());
+        for (int i = 0; i < rootAttributeNames.size(); i++) {
+            writeString(index, rootAttributeNames.get(i));
+            writeString(index, rootAttributeValues.get(i));
+        }
+        writeVarInt(index, sections.size());
+        for (SectionBuilder section : sections) {
+            byte[] data = section.toByteArray();
+            sectionData.add(data);
+            writeString(index, section.name);
+            writeVarInt(index, data.length);
+        }
+
+        DataOutputStream dout = new DataOutputStream(out);
+        dout.write(BinaryProjectReader.MAGIC);
+        dout.writeInt(BinaryProjectReader.FORMAT_VERSION);
+        dout.writeInt(index.size());
+        index.writeTo(dout);
+        for (byte[] data : sectionData) {
+            dout.write(data);
+        }
+        dout.flush();
+    }
+
+    private static void writeString(ByteArrayOutputStream out, String s) throws IOException {
+        byte[] utf8 = s.getBytes("UTF-8");
+        writeVarInt(out, utf8.length);
+        out.write(utf8, 0, utf8.length);
+    }
+
+    /**
+     * Writes the given non-negative integer seven bits at a time, least
+     * significant bits first, setting the high bit of every byte but the
+     * last.
+     */
+    static void writeVarInt(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7f) != 0) {
+            out.write((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+}
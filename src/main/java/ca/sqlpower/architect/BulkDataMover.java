@@ -0,0 +1,510 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package ca.sqlpower.architect;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.log4j.Logger;
+
+import ca.sqlpower.sqlobject.SQLDatabase;
+import ca.sqlpower.sqlobject.SQLObjectException;
+import ca.sqlpower.util.MonitorableImpl;
+
+/**
+ * Copies the rows of a set of tables from one database to another. Each table
+ * is read with a forward-only result set using a large fetch size and written
+ * with a batched prepared insert, committing every so many rows. Several
+ * tables are copied at the same time on a fixed number of threads, each with
+ * its own pair of connections.
+ * <p>
+ * A table is only started once all of its prerequisites (see
+ * {@link TableCopy#addPrerequisite(TableCopy)}) are finished, so parent tables
+ * are loaded before the tables that have foreign keys to them. The copies must
+ * be given to {@link #copyTables(List)} in an order where every prerequisite
+ * comes before the tables that depend on it, such as the finish order of a
+ * {@link DepthFirstSearch}.
+ * <p>
+ * The progress monitor counts finished tables, and its message shows how
+ * many rows the table copied most recently has done and how fast.
+ */
+public class BulkDataMover {
+
+    private static final Logger logger = Logger.getLogger(BulkDataMover.class);
+
+    /**
+     * The number of rows to copy between progress reports and checks for
+     * cancellation.
+     */
+    private static final int PROGRESS_INTERVAL = 1000;
+
+    /**
+     * One table to copy, along with the results of copying it.
+     */
+    public static class TableCopy {
+
+        private final String name;
+        private final SQLDatabase sourceDatabase;
+        private final String sourceTableName;
+        private final SQLDatabase destDatabase;
+        private final String destTableName;
+
+        /**
+         * The tables that have to be copied before this one.
+         */
+        private final List<TableCopy> prerequisites = new ArrayList<TableCopy>();
+
+        /**
+         * Counted down when this table is finished, whether it succeeded,
+         * failed or was skipped.
+         */
+        private final CountDownLatch finished = new CountDownLatch(1);
+
+        private volatile int rowCount;
+        private volatile long startTime;
+        private volatile long endTime;
+        private volatile Exception exception;
+
+        /**
+         * @param name
+         *            The name of the table, for progress messages.
+         * @param sourceDatabase
+         *            The database to copy the rows from.
+         * @param sourceTableName
+         *            The qualified and quoted name of the table to copy from.
+         * @param destDatabase
+         *            The database to copy the rows to.
+         * @param destTableName
+         *            The qualified and quoted name of the table to copy to. It
+         *            must already exist and have the same columns, in the
+         *            same order, as the source table.
+         */
+        public TableCopy(String name, SQLDatabase sourceDatabase, String sourceTableName,
+                SQLDatabase destDatabase, String destTableName) {
+            this.name = name;
+            this.sourceDatabase = sourceDatabase;
+            this.sourceTableName = sourceTableName;
+            this.destDatabase = destDatabase;
+            this.destTableName = destTableName;
+        }
+
+        /**
+         * Makes this table wait for the given table to be copied. If the
+         * given table fails, this one is not copied at all.
+         */
+        public void addPrerequisite(TableCopy prerequisite) {
+            prerequisites.add(prerequisite);
+        }
+
+        public List<TableCopy> getPrerequisites() {
+            return Collections.unmodifiableList(prerequisites);
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public SQLDatabase getSourceDatabase() {
+            return sourceDatabase;
+        }
+
+        public String getSourceTableName() {
+            return sourceTableName;
+        }
+
+        public SQLDatabase getDestDatabase() {
+            return destDatabase;
+        }
+
+        public String getDestTableName() {
+            return destTableName;
+        }
+
+        /**
+         * Returns the number of rows copied so far.
+         */
+        public int getRowCount() {
+            return rowCount;
+        }
+
+        /**
+         * Returns the exception that stopped this table from being copied,
+         * or null if it hasn't failed.
+         */
+        public Exception getException() {
+            return exception;
+        }
+
+        /**
+         * Returns true if every row of this table was copied.
+         */
+        public boolean isCompleted() {
+            return endTime != 0 && exception == null;
+        }
+
+        /**
+         * Returns the number of rows per second this table was copied at, up
+         * to now if it is still being copied.
+         */
+        public double getRowsPerSecond() {
+            if (startTime == 0) return 0;
+            long end = endTime == 0 ? System.currentTimeMillis() : endTime;
+            return rowCount * 1000.0 / Math.max(1, end - startTime);
+        }
+
+        @Override
+        public String toString() {
+            return name + ": " + rowCount + " rows (" + Math.round(getRowsPerSecond()) + " rows/s)";
+        }
+    }
+
+    private final MonitorableImpl progressMonitor = new MonitorableImpl();
+
+    /**
+     * The number of rows the JDBC driver is asked to fetch from the source
+     * database per round trip.
+     */
+    private int fetchSize = 1000;
+
+    /**
+     * The number of rows sent to the destination database in each batch.
+     */
+    private int batchSize = 500;
+
+    /**
+     * The number of rows inserted between commits. This should be a multiple
+     * of the batch size.
+     */
+    private int commitInterval = 10000;
+
+    /**
+     * The largest number of tables copied at the same time.
+     */
+    private int threadCount = 4;
+
+    /**
+     * If true, every row is deleted from each destination table before the
+     * new rows are copied in.
+     */
+    private boolean truncatingDestinationTable;
+
+    /**
+     * Copies the given tables, several at a time, and returns when they are
+     * all finished. Tables that fail don't stop the others; their exceptions
+     * are available from {@link TableCopy#getException()}.
+     * 
+     * @return The total number of rows copied.
+     */
+    public int copyTables(List<TableCopy> copies) throws InterruptedException {
+        progressMonitor.setJobSize(copies.size());
+        progressMonitor.setProgress(0);
+        progressMonitor.setStarted(true);
+        progressMonitor.setFinished(false);
+        final AtomicInteger tablesFinished = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(
+                Math.max(1, Math.min(threadCount, copies.size())), new ThreadFactory() {
+            private final AtomicInteger threadNumber = new AtomicInteger();
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "Data mover worker " + threadNumber.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        try {
+            for (final TableCopy copy : copies) {
+                // The pool runs tasks in the order they are submitted, so a
+                // table's prerequisites are always running or done by the
+                // time it starts waiting for them.
+                executor.execute(new Runnable() {
+                    public void run() {
+                        try {
+                            copyWhenReady(copy);
+                        } finally {
+                            copy.finished.countDown();
+                            progressMonitor.setProgress(tablesFinished.incrementAndGet());
+                        }
+                    }
+                });
+            }
+            executor.shutdown();
+            while (!executor.awaitTermination(1, TimeUnit.SECONDS)) {
+                // keep waiting
+            }
+        } finally {
+            executor.shutdownNow();
+            progressMonitor.setFinished(true);
+        }
+
+        int rowCount = 0;
+        for (TableCopy copy : copies) {
+            rowCount += copy.getRowCount();
+        }
+        return rowCount;
+    }
+
+    /**
+     * Waits for the given table's prerequisites, then copies it unless one
+     * of them failed or the copy has been cancelled.
+     */
+    private void copyWhenReady(TableCopy copy) {
+        Connection sourceCon = null;
+        Connection destCon = null;
+        try {
+            for (TableCopy prerequisite : copy.prerequisites) {
+                prerequisite.finished.await();
+                if (!prerequisite.isCompleted()) {
+                    logger.info("Not copying " + copy.getName() + " because " +
+                            prerequisite.getName() + " was not copied");
+                    copy.exception = new SQLException("Table " + copy.getName() +
+                            " was not copied because " + prerequisite.getName() + " was not copied",
+                            prerequisite.getException());
+                    return;
+                }
+            }
+            if (progressMonitor.isCancelled()) return;
+
+            sourceCon = openSourceConnection(copy);
+            destCon = openDestinationConnection(copy);
+            copyTable(sourceCon, destCon, copy);
+            logger.info("Copied " + copy);
+        } catch (Exception ex) {
+            logger.error("Failed to copy " + copy.getName(), ex);
+            copy.exception = ex;
+        } finally {
+            try {
+                if (sourceCon != null) sourceCon.close();
+            } catch (SQLException ex) {
+                logger.error("Couldn't close source connection", ex);
+            }
+            try {
+                if (destCon != null) destCon.close();
+            } catch (SQLException ex) {
+                logger.error("Couldn't close destination connection", ex);
+            }
+        }
+    }
+
+    /**
+     * Returns a new connection to the given table's source database.
+     */
+    protected Connection openSourceConnection(TableCopy copy) throws SQLObjectException {
+        return copy.getSourceDatabase().getConnection();
+    }
+
+    /**
+     * Returns a new connection to the given table's destination database.
+     */
+    protected Connection openDestinationConnection(TableCopy copy) throws SQLObjectException {
+        return copy.getDestDatabase().getConnection();
+    }
+
+    /**
+     * Copies every row of one table over the given connections. The rows
+     * already committed stay in the destination table if this fails or is
+     * cancelled part way through; the rest are rolled back.
+     * 
+     * @return The number of rows copied.
+     */
+    int copyTable(Connection sourceCon, Connection destCon, TableCopy copy) throws SQLException {
+        Statement select = null;
+        ResultSet rs = null;
+        PreparedStatement insert = null;
+        boolean autoCommit = destCon.getAutoCommit();
+        copy.startTime = System.currentTimeMillis();
+        try {
+            destCon.setAutoCommit(false);
+            if (truncatingDestinationTable) {
+                Statement delete = destCon.createStatement();
+                try {
+                    delete.executeUpdate("DELETE FROM " + copy.getDestTableName());
+                } finally {
+                    delete.close();
+                }
+            }
+
+            select = sourceCon.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            select.setFetchSize(fetchSize);
+            rs = select.executeQuery("SELECT * FROM " + copy.getSourceTableName());
+            ResultSetMetaData rsmd = rs.getMetaData();
+            int columnCount = rsmd.getColumnCount();
+            int[] columnTypes = new int[columnCount];
+            for (int i = 0; i < columnCount; i++) {
+                columnTypes[i] = rsmd.getColumnType(i + 1);
+            }
+            insert = destCon.prepareStatement(createInsertStatement(copy.getDestTableName(), rsmd));
+
+            int rowCount = 0;
+            while (rs.next()) {
+                for (int i = 1; i <= columnCount; i++) {
+                    Object value = rs.getObject(i);
+                    if (value == null) {
+                        insert.setNull(i, columnTypes[i - 1]);
+                    } else {
+                        insert.setObject(i, value);
+                    }
+                }
+                insert.addBatch();
+                rowCount++;
+                if (rowCount % batchSize == 0 || rowCount % commitInterval == 0) {
+                    insert.executeBatch();
+                }
+                if (rowCount % commitInterval == 0) {
+                    destCon.commit();
+                }
+                if (rowCount % PROGRESS_INTERVAL == 0) {
+                    copy.rowCount = rowCount;
+                    progressMonitor.setMessage(copy.toString());
+                    if (progressMonitor.isCancelled()) {
+                        destCon.rollback();
+                        throw new SQLException("Copying " + copy.getName() + " was cancelled after " +
+                                rowCount + " rows");
+                    }
+                }
+            }
+            if (rowCount % batchSize != 0) {
+                insert.executeBatch();
+            }
+            destCon.commit();
+            copy.rowCount = rowCount;
+            copy.endTime = System.currentTimeMillis();
+            progressMonitor.setMessage(copy.toString());
+            return rowCount;
+        } catch (SQLException ex) {
+            try {
+                destCon.rollback();
+            } catch (SQLException ex2) {
+                logger.error("Couldn't roll back failed copy of " + copy.getName(), ex2);
+            }
+            throw ex;
+        } finally {
+            try {
+                if (rs != null) rs.close();
+            } catch (SQLException ex) {
+                logger.error("Couldn't close result set", ex);
+            }
+            try {
+                if (select != null) select.close();
+            } catch (SQLException ex) {
+                logger.error("Couldn't close select statement", ex);
+            }
+            try {
+                if (insert != null) insert.close();
+            } catch (SQLException ex) {
+                logger.error("Couldn't close insert statement", ex);
+            }
+            try {
+                destCon.setAutoCommit(autoCommit);
+            } catch (SQLException ex) {
+                logger.error("Couldn't restore auto-commit", ex);
+            }
+        }
+    }
+
+    /**
+     * Creates the parameterized insert statement for the given table, with
+     * one parameter per column of the given result set.
+     */
+    static String createInsertStatement(String tableName, ResultSetMetaData rsmd) throws SQLException {
+        StringBuilder sql = new StringBuilder();
+        sql.append("INSERT INTO ").append(tableName).append(" (");
+        for (int i = 1; i <= rsmd.getColumnCount(); i++) {
+            if (i > 1) sql.append(", ");
+            sql.append(rsmd.getColumnName(i));
+        }
+        sql.append(") VALUES (");
+        for (int i = 1; i <= rsmd.getColumnCount(); i++) {
+            if (i > 1) sql.append(", ");
+            sql.append("?");
+        }
+        sql.append(")");
+        return sql.toString();
+    }
+
+    public MonitorableImpl getProgressMonitor() {
+        return progressMonitor;
+    }
+
+    public int getFetchSize() {
+        return fetchSize;
+    }
+
+    public void setFetchSize(int fetchSize) {
+        this.fetchSize = fetchSize;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public void setBatchSize(int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be at least 1");
+        }
+        this.batchSize = batchSize;
+    }
+
+    public int getCommitInterval() {
+        return commitInterval;
+    }
+
+    public void setCommitInterval(int commitInterval) {
+        if (commitInterval < 1) {
+            throw new IllegalArgumentException("Commit interval must be at least 1");
+        }
+        this.commitInterval = commitInterval;
+    }
+
+    public int getThreadCount() {
+        return threadCount;
+    }
+
+    /**
+     * Sets the largest number of tables to copy at the same time. Each one
+     * uses a connection to each of the source and destination databases.
+     */
+    public void setThreadCount(int threadCount) {
+        if (threadCount < 1) {
+            throw new IllegalArgumentException("Thread count must be at least 1");
+        }
+        this.threadCount = threadCount;
+    }
+
+    public boolean isTruncatingDestinationTable() {
+        return truncatingDestinationTable;
+    }
+
+    public void setTruncatingDestinationTable(boolean truncatingDestinationTable) {
+        this.truncatingDestinationTable = truncatingDestinationTable;
+    }
+}
@@ -27,13 +27,16 @@ import java.io.PrintWriter;
 import java.math.BigDecimal;
 import java.sql.SQLException;
 import java.sql.Timestamp;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 
 import javax.swing.JOptionPane;
 import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLStreamException;
 
 import org.apache.commons.beanutils.ConvertUtils;
 import org.apache.commons.digester.AbstractObjectCreationFactory;
@@ -43,10 +46,14 @@ import org.apache.commons.digester.SetPropertiesRule;
 import org.apache.log4j.Logger;
 import org.xml.sax.Attributes;
 import org.xml.sax.SAXException;
+import org.xml.sax.helpers.AttributesImpl;
 
+import ca.sqlpower.architect.BinaryProjectReader.Section;
 import ca.sqlpower.architect.ddl.GenericDDLGenerator;
 import ca.sqlpower.architect.profile.ColumnProfileResult;
 import ca.sqlpower.architect.profile.ColumnValueCount;
+import ca.sqlpower.architect.profile.ProfileManager;
+import ca.sqlpower.architect.profile.ProfileManagerImpl;
 import ca.sqlpower.architect.profile.TableProfileResult;
 import ca.sqlpower.sql.DataSourceCollection;
 import ca.sqlpower.sql.JDBCDataSource;
@@ -185,6 +192,71 @@ public class ProjectLoader {
      */
     protected String fileVersion;
 
+    /**
+     * If true, the SQL objects, data sources and profiles of the project file
+     * are read by a {@link StreamingProjectReader} instead of the Digester.
+     * See {@link #setStreamingParser(boolean)}.
+     */
+    private boolean streamingParser = Boolean.getBoolean(STREAMING_PARSER_PROPERTY);
+
+    /**
+     * The system property that turns on the streaming project reader for all
+     * new project loaders.
+     */
+    public static final String STREAMING_PARSER_PROPERTY = "ca.sqlpower.architect.streamingProjectLoader";
+
+    /**
+     * True while a file is being read by the {@link StreamingProjectReader}.
+     * Binary project files are always read by the Digester.
+     */
+    private boolean streamingLoad;
+
+    /**
+     * If true, this project is saved in the binary format of
+     * {@link BinaryProjectWriter} instead of XML. Loading a binary project
+     * file turns this on, so projects stay in the format they were opened in.
+     */
+    private boolean binaryFormat = Boolean.getBoolean(BINARY_FORMAT_PROPERTY);
+
+    /**
+     * The system property that makes all new project loaders save projects
+     * in the binary format.
+     */
+    public static final String BINARY_FORMAT_PROPERTY = "ca.sqlpower.architect.binaryProjectFormat";
+
+    /**
+     * The sections of a binary project file that are not loaded with the
+     * rest of the project, but only when they are first needed. See
+     * {@link #loadDeferredSection(String)}.
+     */
+    public static final List<String> DEFERRED_SECTIONS =
+        Arrays.asList("profiles", "create-kettle-job-settings");
+
+    /**
+     * The deferred sections of the binary project file that was loaded last
+     * which have not been loaded yet, by name.
+     */
+    private final Map<String, Section> deferredSections = new LinkedHashMap<String, Section>();
+
+    /**
+     * The root element of the binary project file that was loaded last. Each
+     * deferred section is wrapped in it when it is loaded so the Digester
+     * rules match the same way they do for the whole file.
+     */
+    private AttributesImpl deferredRootAttributes;
+
+    /**
+     * True while a deferred section is being loaded, which keeps the checks
+     * done on the root element from being repeated.
+     */
+    private boolean loadingDeferredSection;
+
+    /**
+     * A binary project file that was decoded by {@link #preloadBinary(InputStream)}
+     * ahead of the next load, so that load does not have to decode it again.
+     */
+    private BinaryProjectReader preloadedBinary;
+
     public ProjectLoader(ArchitectSession session) {
         this.session = session;
     }
@@ -210,6 +282,8 @@ public class ProjectLoader {
             ArchitectSession messageDelegate) throws IOException, SQLObjectException {
         UnclosableInputStream uin = new UnclosableInputStream(in);
         siblingSession = messageDelegate;
+        BinaryProjectReader preloaded = preloadedBinary;
+        preloadedBinary = null;
         try {
             dbcsLoadIdMap = new HashMap<String, JDBCDataSource>();
             sqlObjectLoadIdMap = new HashMap<String, SQLObject>();
@@ -218,8 +292,17 @@ public class ProjectLoader {
 
             // use digester to read from file
             try {
+                boolean binary = preloaded != null || BinaryProjectReader.isBinary(uin);
+                streamingLoad = isStreamingParser() && !binary;
                 digester = setupDigester();
-                digester.parse(uin);
+                if (binary) {
+                    parseBinary(preloaded != null ? preloaded : new BinaryProjectReader(uin), digester);
+                    binaryFormat = true;
+                } else if (streamingLoad) {
+                    parseStreaming(uin, digester);
+                } else {
+                    digester.parse(uin);
+                }
             } catch (SAXException ex) {
                 //The digester likes to wrap the cancelled exception in a SAXException.
                 if (ex.getException() instanceof DigesterCancelledException) {
@@ -230,12 +313,25 @@ public class ProjectLoader {
                 String message;
                 if (digester == null) {
                     message = "Couldn't create an XML parser";
+                } else if (digester.getDocumentLocator() == null) {
+                    message = "There is an error in the binary project file";
                 } else {
                     message = "There is an XML parsing error in project file at Line:" +
                     digester.getDocumentLocator().getLineNumber() + " Column:" +
                     digester.getDocumentLocator().getColumnNumber();
                 }
                 throw new SQLObjectException(message, ex);
+            } catch (XMLStreamException ex) {
+                logger.error("XML Stream Exception in project file parse!", ex);
+                String message = "There is an XML parsing error in project file";
+                if (ex.getLocation() != null) {
+                    message += " at Line:" + ex.getLocation().getLineNumber() +
+                        " Column:" + ex.getLocation().getColumnNumber();
+                }
+                throw new SQLObjectException(message, ex);
+            } catch (DigesterCancelledException ex) {
+                // The streaming reader was cancelled by the user. Do not load anything.
+                throw new RuntimeException(new InterruptedIOException("progress"));
             } catch (IOException ex) {
                 logger.error("IO Exception in project file parse!", ex);
                 throw new SQLObjectException("There was an I/O error while reading the file", ex);
@@ -333,33 +429,205 @@ public class ProjectLoader {
 
             setModified(false);
         } finally {
+            streamingLoad = false;
             uin.forceClose();
         }
     }
 
+    /**
+     * Decodes the binary project file in the given stream and keeps it for
+     * the next call to {@link #load(InputStream, DataSourceCollection, ArchitectSession)},
+     * which then uses it instead of reading the stream again. This is for
+     * subclasses that need to look at parts of the project before the rest
+     * of it is loaded.
+     */
+    protected BinaryProjectReader preloadBinary(InputStream in) throws IOException {
+        preloadedBinary = new BinaryProjectReader(in);
+        return preloadedBinary;
+    }
+
+    /**
+     * Reads a binary project file by replaying it into the given digester.
+     * The sections named in {@link #DEFERRED_SECTIONS} are skipped and kept
+     * undecoded until {@link #loadDeferredSection(String)} is called for
+     * them; the profile results are loaded by the profile manager the first
+     * time they are used.
+     */
+    private void parseBinary(BinaryProjectReader reader, Digester digester) throws IOException, SAXException {
+        synchronized (deferredSections) {
+            deferredSections.clear();
+            for (String name : DEFERRED_SECTIONS) {
+                Section section = reader.getSection(name);
+                if (section != null) {
+                    deferredSections.put(name, section);
+                }
+            }
+            deferredRootAttributes = new AttributesImpl(reader.getRootAttributes());
+        }
+        reader.replay(digester, DEFERRED_SECTIONS, true);
+
+        ProfileManager profileManager = getSession().getProfileManager();
+        if (profileManager instanceof ProfileManagerImpl) {
+            ((ProfileManagerImpl) profileManager).setDeferredResultsLoader(new Runnable() {
+                public void run() {
+                    try {
+                        loadDeferredSection("profiles");
+                    } catch (SQLObjectException e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+            });
+        } else {
+            try {
+                loadDeferredSection("profiles");
+            } catch (SQLObjectException e) {
+                throw new IOException(e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * Loads one of the {@link #DEFERRED_SECTIONS} of the binary project file
+     * this loader read last. Nothing happens if the section has already been
+     * loaded, or if the project was not loaded from a binary file or did not
+     * have the section. Anything that uses the contents of a deferred
+     * section has to call this first.
+     */
+    public void loadDeferredSection(String name) throws SQLObjectException {
+        Section section;
+        synchronized (deferredSections) {
+            section = deferredSections.remove(name);
+        }
+        if (section == null) return;
+        logger.debug("Loading deferred section " + name);
+        try {
+            Digester digester = setupDigester();
+            loadingDeferredSection = true;
+            digester.startDocument();
+            digester.startElement("", "architect-project", "architect-project", deferredRootAttributes);
+            BinaryProjectReader.replay(section, digester, true);
+            digester.endElement("", "architect-project", "architect-project");
+            digester.endDocument();
+        } catch (Exception ex) {
+            throw new SQLObjectException("Couldn't load the " + name + " section of the project", ex);
+        } finally {
+            loadingDeferredSection = false;
+        }
+    }
+
+    /**
+     * Reads the project with a {@link StreamingProjectReader}. If the given
+     * digester has any rules (subclasses add rules for the parts of the file
+     * they own, such as the play pen), the reader hands the elements it does
+     * not read itself to the digester in the same pass over the file. Those
+     * elements come after the SQL objects in the file, so the digester can
+     * look up every SQL object by its id.
+     */
+    private void parseStreaming(InputStream in, Digester digester)
+    throws IOException, SAXException, XMLStreamException, SQLObjectException {
+        boolean digesterRules = !digester.getRules().rules().isEmpty();
+        new StreamingProjectReader(this).read(in, digesterRules ? digester : null);
+    }
+
+    /**
+     * Creates the digester that reads the project file. When the streaming
+     * parser is in use, the digester this class creates has no rules at all,
+     * and subclasses only add the rules for the parts of the file the
+     * {@link StreamingProjectReader} does not read.
+     */
     protected Digester setupDigester() throws ParserConfigurationException, SAXException {
         Digester d = new Digester(new UnescapingSaxParser());
-        final ArchitectSession messageOwner = (siblingSession == null ? session : siblingSession);
         d.setValidating(false);
         d.push(session);
+        if (!streamingLoad) {
+            addProjectRules(d);
+        }
+        return d;
+    }
+
+    /**
+     * Returns the session that should display any prompts while loading.
+     */
+    ArchitectSession getMessageOwner() {
+        return (siblingSession == null ? session : siblingSession);
+    }
+
+    /**
+     * Tells the user that Enterprise projects cannot be opened here, and
+     * offers to take them to a web page where they can get the Enterprise
+     * Edition. Loading is always cancelled.
+     * 
+     * @throws DigesterCancelledException
+     *             always
+     */
+    void rejectEnterpriseProject() {
+        UserPrompter loadingWarningPrompt = getMessageOwner().createUserPrompter(
+                "This file contains an Enterprise project and can only\n" + 
+                "be opened in the Architect Enterprise Edition.",
+                UserPromptType.BOOLEAN, UserPromptOptions.OK_CANCEL,
+                UserPromptResponse.CANCEL, UserPromptResponse.CANCEL, "Get Enterprise", "Cancel");
+        UserPromptResponse upr = loadingWarningPrompt.promptUser();
+        if (upr == UserPromptResponse.OK) {
+            try {
+                BrowserUtil.launch("http://www.sqlpower.ca/page/architect-e");
+            } catch (IOException e) {
+                throw new DigesterCancelledException();
+            }
+        }
+        throw new DigesterCancelledException();
+    }
+
+    /**
+     * Remembers the version of the file being loaded, and asks the user
+     * whether to continue if the file is newer than this version of the
+     * Architect or its version cannot be read.
+     * 
+     * @param appVersion
+     *            The appversion attribute of the project element. May be null.
+     * @throws DigesterCancelledException
+     *             If the user decides not to load the file.
+     */
+    void checkFileVersion(String appVersion) throws IOException {
+        fileVersion = appVersion;
+        String loadingMessage;
+        try {
+            if (fileVersion == null) {
+                loadingMessage = "The version of the file cannot be found.";
+                fileVersion = "0";
+            } else if (ArchitectVersion.APP_FULL_VERSION.compareTo(
+                    new ArchitectVersion(fileVersion)) < 0) {
+                loadingMessage = "This file was last saved with a newer version.\n" +
+                		"Loading with an older version may cause data loss.";
+            } else {
+                return;
+            }
+        } catch (Exception e) {
+            loadingMessage = "The version of the file cannot be understood.";
+        }
+        UserPrompter loadingWarningPrompt = getMessageOwner().createUserPrompter(
+                loadingMessage + "\nDo you wish to try and open the file?",
+                UserPromptType.BOOLEAN, UserPromptOptions.OK_NOTOK_CANCEL,
+                UserPromptResponse.OK, UserPromptResponse.OK, "Try loading",
+                "Upgrade...", "Cancel");
+        UserPromptResponse response = loadingWarningPrompt.promptUser();
+        if (response == UserPromptResponse.OK) {
+            //continue to try loading
+        } else if (response == UserPromptResponse.NOT_OK) {
+            BrowserUtil.launch(SPSUtils.SQLP_ARCHITECT_URL);
+            throw new DigesterCancelledException();
+        } else if (response == UserPromptResponse.CANCEL) {
+            throw new DigesterCancelledException();
+        }
+    }
 
+    /**
+     * Adds the rules for everything this class loads to the given digester.
+     */
+    private void addProjectRules(Digester d) {
         d.addRule("architect-enterprise-project", new Rule() {
             @Override
             public void begin(String namespace, String name, Attributes attributes) throws Exception {
-                UserPrompter loadingWarningPrompt = messageOwner.createUserPrompter(
-                        "This file contains an Enterprise project and can only\n" + 
-                        "be opened in the Architect Enterprise Edition.",
-                        UserPromptType.BOOLEAN, UserPromptOptions.OK_CANCEL,
-                        UserPromptResponse.CANCEL, UserPromptResponse.CANCEL, "Get Enterprise", "Cancel");
-                UserPromptResponse upr = loadingWarningPrompt.promptUser();
-                if (upr == UserPromptResponse.OK) {
-                    try {
-                        BrowserUtil.launch("http://www.sqlpower.ca/page/architect-e");
-                    } catch (IOException e) {
-                        throw new DigesterCancelledException();
-                    }
-                }
-                throw new DigesterCancelledException();
+                rejectEnterpriseProject();
             }
         });
         
@@ -367,35 +635,8 @@ public class ProjectLoader {
         d.addRule("architect-project", new Rule() {
             @Override
             public void begin(String namespace, String name, Attributes attributes) throws Exception {
-                fileVersion = attributes.getValue("appversion");
-                String loadingMessage;
-                try {
-                    if (fileVersion == null) {
-                        loadingMessage = "The version of the file cannot be found.";
-                        fileVersion = "0";
-                    } else if (ArchitectVersion.APP_FULL_VERSION.compareTo(
-                            new ArchitectVersion(fileVersion)) < 0) {
-                        loadingMessage = "This file was last saved with a newer version.\n" +
-                        		"Loading with an older version may cause data loss.";
-                    } else {
-                        return;
-                    }
-                } catch (Exception e) {
-                    loadingMessage = "The version of the file cannot be understood.";
-                }
-                UserPrompter loadingWarningPrompt = messageOwner.createUserPrompter(
-                        loadingMessage + "\nDo you wish to try and open the file?",
-                        UserPromptType.BOOLEAN, UserPromptOptions.OK_NOTOK_CANCEL,
-                        UserPromptResponse.OK, UserPromptResponse.OK, "Try loading",
-                        "Upgrade...", "Cancel");
-                UserPromptResponse response = loadingWarningPrompt.promptUser();
-                if (response == UserPromptResponse.OK) {
-                    //continue to try loading
-                } else if (response == UserPromptResponse.NOT_OK) {
-                    BrowserUtil.launch(SPSUtils.SQLP_ARCHITECT_URL);
-                    throw new DigesterCancelledException();
-                } else if (response == UserPromptResponse.CANCEL) {
-                    throw new DigesterCancelledException();
+                if (!loadingDeferredSection) {
+                    checkFileVersion(attributes.getValue("appversion"));
                 }
             }
         });
@@ -541,6 +782,8 @@ public class ProjectLoader {
         d.addSetNext("*/profiles/table-profile-result/column-profile-result/minValue", "setMinValue");
         d.addFactoryCreate("*/profiles/table-profile-result/column-profile-result/maxValue", profileResultValueFactory);
         d.addSetNext("*/profiles/table-profile-result/column-profile-result/maxValue", "setMaxValue");
+        d.addFactoryCreate("*/profiles/table-profile-result/column-profile-result/medianValue", profileResultValueFactory);
+        d.addSetNext("*/profiles/table-profile-result/column-profile-result/medianValue", "setMedianValue");
 
         ProfileResultTopNValueFactory topNValueFactory = new ProfileResultTopNValueFactory();
         d.addFactoryCreate("*/profiles/table-profile-result/column-profile-result/topNvalue", topNValueFactory );
@@ -549,10 +792,6 @@ public class ProjectLoader {
         FileFactory fileFactory = new FileFactory();
         d.addFactoryCreate("*/file", fileFactory);
         d.addSetNext("*/file", "setFile");
-
-
-
-        return d;
     }
 
     /**
@@ -1113,6 +1352,42 @@ public class ProjectLoader {
         }
     }
 
+    /**
+     * See {@link #streamingParser}.
+     */
+    public boolean isStreamingParser() {
+        return streamingParser;
+    }
+
+    /**
+     * Chooses between the {@link StreamingProjectReader} and the Digester for
+     * loading project files. The streaming reader builds the SQL objects
+     * directly from a StAX pull parser, which makes loading large projects
+     * considerably faster and uses less memory. The default comes from the
+     * {@value #STREAMING_PARSER_PROPERTY} system property.
+     */
+    public void setStreamingParser(boolean streamingParser) {
+        this.streamingParser = streamingParser;
+    }
+
+    /**
+     * See {@link #binaryFormat}.
+     */
+    public boolean isBinaryFormat() {
+        return binaryFormat;
+    }
+
+    /**
+     * Chooses whether this project is saved in the compact binary format or
+     * as XML. Binary project files open faster, especially when they hold
+     * many profile results, but cannot be read by older versions or edited
+     * by hand. The default comes from the {@value #BINARY_FORMAT_PROPERTY}
+     * system property.
+     */
+    public void setBinaryFormat(boolean binaryFormat) {
+        this.binaryFormat = binaryFormat;
+    }
+
     /**
      * See {@link #modified}.
      */
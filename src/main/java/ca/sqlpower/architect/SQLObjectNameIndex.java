@@ -0,0 +1,340 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.architect;
+
+import java.beans.PropertyChangeEvent;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.log4j.Logger;
+
+import ca.sqlpower.object.AbstractSPListener;
+import ca.sqlpower.object.SPChildEvent;
+import ca.sqlpower.object.SPListener;
+import ca.sqlpower.sqlobject.SQLObject;
+import ca.sqlpower.sqlobject.SQLObjectException;
+
+/**
+ * An in-memory index of the logical and physical names of every
+ * {@link SQLObject} under a root object, for finding objects by name without
+ * walking the whole tree. Every name is broken up into its lower case
+ * trigrams (substrings of {@link #GRAM_LENGTH} characters), and each trigram
+ * maps to the objects whose names contain it. A substring or exact search
+ * only has to check the objects that contain the rarest trigram of the text
+ * searched for.
+ * <p>
+ * The index listens to the objects it contains and keeps itself up to date
+ * as objects are added, removed and renamed. Like the objects it listens to,
+ * it is not thread safe, and should only be used on the foreground thread.
+ * Call {@link #cleanup()} when the index is no longer needed to stop it
+ * listening.
+ */
+public class SQLObjectNameIndex {
+
+    private static final Logger logger = Logger.getLogger(SQLObjectNameIndex.class);
+
+    /**
+     * The length of the substrings the names are broken into. Searches for
+     * text shorter than this check every object in the index.
+     */
+    static final int GRAM_LENGTH = 3;
+
+    /**
+     * The names of an object that can be searched.
+     */
+    public enum NameProperty {
+        LOGICAL_NAME("name") { //$NON-NLS-1$
+            @Override
+            String getText(SQLObject obj) {
+                return obj.getName();
+            }
+        },
+        PHYSICAL_NAME("physicalName") { //$NON-NLS-1$
+            @Override
+            String getText(SQLObject obj) {
+                return obj.getPhysicalName();
+            }
+        };
+
+        private final String propertyName;
+
+        private NameProperty(String propertyName) {
+            this.propertyName = propertyName;
+        }
+
+        /**
+         * Returns the name of the bean property this name is stored in.
+         */
+        public String getPropertyName() {
+            return propertyName;
+        }
+
+        abstract String getText(SQLObject obj);
+    }
+
+    /**
+     * The names of an indexed object as they were when they were indexed,
+     * so they can be taken out of the index after they change.
+     */
+    private static class Entry {
+        private final int ordinal;
+        private final String[] names = new String[NameProperty.values().length];
+
+        Entry(int ordinal) {
+            this.ordinal = ordinal;
+        }
+    }
+
+    /**
+     * Keeps the index up to date as the objects in it change.
+     */
+    private final SPListener listener = new AbstractSPListener() {
+        @Override
+        public void childAdded(SPChildEvent e) {
+            if (e.getChild() instanceof SQLObject) {
+                add((SQLObject) e.getChild());
+            }
+        }
+
+        @Override
+        public void childRemoved(SPChildEvent e) {
+            if (e.getChild() instanceof SQLObject) {
+                remove((SQLObject) e.getChild());
+            }
+        }
+
+        @Override
+        public void propertyChanged(PropertyChangeEvent evt) {
+            for (NameProperty property : NameProperty.values()) {
+                if (property.getPropertyName().equals(evt.getPropertyName())) {
+                    SQLObject source = (SQLObject) evt.getSource();
+                    Entry entry = entries.get(source);
+                    if (entry != null) {
+                        unindexName(source, entry, property);
+                        indexName(source, entry, property);
+                    }
+                }
+            }
+        }
+    };
+
+    private final SQLObject root;
+
+    /**
+     * Every object in the index. The entries are numbered in the order the
+     * objects were added, which is depth first for the objects that were
+     * there when the index was created, so results can be returned in that
+     * order.
+     */
+    private final Map<SQLObject, Entry> entries = new IdentityHashMap<SQLObject, Entry>();
+
+    /**
+     * The objects containing each trigram, for each name property.
+     */
+    private final List<Map<String, Set<SQLObject>>> postings = new ArrayList<Map<String, Set<SQLObject>>>();
+
+    private int nextOrdinal;
+
+    /**
+     * Indexes the given object and all of its descendants, and starts
+     * listening to them for changes.
+     */
+    public SQLObjectNameIndex(SQLObject root) {
+        this.root = root;
+        for (int i = 0; i < NameProperty.values().length; i++) {
+            postings.add(new HashMap<String, Set<SQLObject>>());
+        }
+        long start = System.currentTimeMillis();
+        add(root);
+        if (logger.isDebugEnabled()) {
+            logger.debug("Indexed " + entries.size() + " objects in " +  //$NON-NLS-1$ //$NON-NLS-2$
+                    (System.currentTimeMillis() - start) + "ms"); //$NON-NLS-1$
+        }
+    }
+
+    /**
+     * Stops listening to the indexed objects. The index should not be used
+     * after this.
+     */
+    public void cleanup() {
+        for (SQLObject obj : entries.keySet()) {
+            obj.removeSPListener(listener);
+        }
+        entries.clear();
+        postings.clear();
+    }
+
+    /**
+     * Returns the number of objects in the index.
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Returns the indexed objects whose given name contains the given text,
+     * in depth first order.
+     */
+    public List<SQLObject> findSubstring(NameProperty property, String text, boolean ignoreCase) {
+        return find(property, text, false, ignoreCase);
+    }
+
+    /**
+     * Returns the indexed objects whose given name is equal to the given
+     * text, in depth first order.
+     */
+    public List<SQLObject> findExact(NameProperty property, String text, boolean ignoreCase) {
+        return find(property, text, true, ignoreCase);
+    }
+
+    private List<SQLObject> find(NameProperty property, String text, boolean exact, boolean ignoreCase) {
+        String lowerText = text.toLowerCase(Locale.ROOT);
+        Collection<SQLObject> candidates;
+        if (lowerText.length() < GRAM_LENGTH) {
+            candidates = entries.keySet();
+        } else {
+            Map<String, Set<SQLObject>> propertyPostings = postings.get(property.ordinal());
+            candidates = null;
+            for (String gram : grams(lowerText)) {
+                Set<SQLObject> posting = propertyPostings.get(gram);
+                if (posting == null) {
+                    return new ArrayList<SQLObject>();
+                } else if (candidates == null || posting.size() < candidates.size()) {
+                    candidates = posting;
+                }
+            }
+        }
+
+        List<SQLObject> results = new ArrayList<SQLObject>();
+        for (SQLObject candidate : candidates) {
+            String name = entries.get(candidate).names[property.ordinal()];
+            if (name == null) continue;
+            boolean matches;
+            if (ignoreCase) {
+                String lowerName = name.toLowerCase(Locale.ROOT);
+                matches = exact ? lowerName.equals(lowerText) : lowerName.contains(lowerText);
+            } else {
+                matches = exact ? name.equals(text) : name.contains(text);
+            }
+            if (matches) {
+                results.add(candidate);
+            }
+        }
+        Collections.sort(results, new Comparator<SQLObject>() {
+            public int compare(SQLObject o1, SQLObject o2) {
+                int ordinal1 = entries.get(o1).ordinal;
+                int ordinal2 = entries.get(o2).ordinal;
+                return ordinal1 < ordinal2 ? -1 : (ordinal1 == ordinal2 ? 0 : 1);
+            }
+        });
+        return results;
+    }
+
+    /**
+     * Adds the given object and its descendants to the index.
+     */
+    private void add(SQLObject obj) {
+        if (entries.containsKey(obj)) return;
+        Entry entry = new Entry(nextOrdinal++);
+        entries.put(obj, entry);
+        for (NameProperty property : NameProperty.values()) {
+            indexName(obj, entry, property);
+        }
+        obj.addSPListener(listener);
+        try {
+            for (SQLObject child : obj.getChildren()) {
+                add(child);
+            }
+        } catch (SQLObjectException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Removes the given object and its descendants from the index.
+     */
+    private void remove(SQLObject obj) {
+        Entry entry = entries.remove(obj);
+        if (entry == null) return;
+        obj.removeSPListener(listener);
+        for (NameProperty property : NameProperty.values()) {
+            unindexName(obj, entry, property);
+        }
+        for (SQLObject child : obj.getChildrenWithoutPopulating()) {
+            remove(child);
+        }
+    }
+
+    private void indexName(SQLObject obj, Entry entry, NameProperty property) {
+        String name = property.getText(obj);
+        entry.names[property.ordinal()] = name;
+        if (name == null) return;
+        Map<String, Set<SQLObject>> propertyPostings = postings.get(property.ordinal());
+        for (String gram : grams(name.toLowerCase(Locale.ROOT))) {
+            Set<SQLObject> posting = propertyPostings.get(gram);
+            if (posting == null) {
+                posting = Collections.newSetFromMap(new IdentityHashMap<SQLObject, Boolean>(4));
+                propertyPostings.put(gram, posting);
+            }
+            posting.add(obj);
+        }
+    }
+
+    private void unindexName(SQLObject obj, Entry entry, NameProperty property) {
+        String name = entry.names[property.ordinal()];
+        entry.names[property.ordinal()] = null;
+        if (name == null) return;
+        Map<String, Set<SQLObject>> propertyPostings = postings.get(property.ordinal());
+        for (String gram : grams(name.toLowerCase(Locale.ROOT))) {
+            Set<SQLObject> posting = propertyPostings.get(gram);
+            if (posting != null) {
+                posting.remove(obj);
+                if (posting.isEmpty()) {
+                    propertyPostings.remove(gram);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the distinct substrings of {@link #GRAM_LENGTH} characters in
+     * the given text.
+     */
+    static Set<String> grams(String text) {
+        Set<String> grams = new HashSet<String>();
+        for (int i = 0; i + GRAM_LENGTH <= text.length(); i++) {
+            grams.add(text.substring(i, i + GRAM_LENGTH));
+        }
+        return grams;
+    }
+
+    public SQLObject getRoot() {
+        return root;
+    }
+}
@@ -0,0 +1,932 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.architect;
+
+import java.beans.IntrospectionException;
+import java.beans.Introspector;
+import java.beans.PropertyDescriptor;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.swing.JOptionPane;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.apache.commons.beanutils.ConvertUtils;
+import org.apache.log4j.Logger;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.AttributesImpl;
+
+import ca.sqlpower.architect.ddl.GenericDDLGenerator;
+import ca.sqlpower.architect.profile.ColumnProfileResult;
+import ca.sqlpower.architect.profile.ColumnValueCount;
+import ca.sqlpower.architect.profile.ProfileManager;
+import ca.sqlpower.architect.profile.ProfileManagerImpl;
+import ca.sqlpower.architect.profile.TableProfileResult;
+import ca.sqlpower.sql.JDBCDataSource;
+import ca.sqlpower.sqlobject.SQLCatalog;
+import ca.sqlpower.sqlobject.SQLColumn;
+import ca.sqlpower.sqlobject.SQLDatabase;
+import ca.sqlpower.sqlobject.SQLIndex;
+import ca.sqlpower.sqlobject.SQLObject;
+import ca.sqlpower.sqlobject.SQLObjectException;
+import ca.sqlpower.sqlobject.SQLRelationship;
+import ca.sqlpower.sqlobject.SQLRelationship.SQLImportedKey;
+import ca.sqlpower.sqlobject.SQLSchema;
+import ca.sqlpower.sqlobject.SQLTable;
+import ca.sqlpower.sqlobject.UserDefinedSQLType;
+
+/**
+ * Reads the data sources, SQL objects, DDL generator settings and profile
+ * results of a project file with a StAX pull parser. This is a hand-written
+ * replacement for the Digester rules of {@link ProjectLoader}, and builds
+ * exactly the same objects: each element is turned into its object as soon as
+ * it is read, and id references are looked up in the loader's id maps as they
+ * are encountered, so the file is only read once and no intermediate object
+ * stack or rule matching is needed.
+ * <p>
+ * Attributes that are written straight from bean properties are still set
+ * through their setters, just like the Digester's set properties rule does,
+ * but the setters are looked up once per class instead of once per attribute.
+ * <p>
+ * Top-level elements this reader does not know about (such as the play pen)
+ * are either skipped or handed to a SAX {@link ContentHandler}, normally a
+ * Digester with the rules for those elements. The handler sees the document's
+ * root element and every element this reader does not read, in the same pass
+ * over the file, and by the time it does every SQL object before it in the
+ * file has been created and can be looked up by its id. Progress and
+ * cancellation come from the input stream: when the
+ * stream is a {@link javax.swing.ProgressMonitorInputStream}, its progress
+ * monitor advances as the file is read, and cancelling it stops the read with
+ * an {@link java.io.InterruptedIOException}.
+ * <p>
+ * Instances of this class are meant to be used for reading one file only.
+ */
+class StreamingProjectReader {
+
+    private static final Logger logger = Logger.getLogger(StreamingProjectReader.class);
+
+    /**
+     * The attributes of the old connection spec element and the data source
+     * properties they are stored in.
+     */
+    private static final Map<String, String> DBCS_PROPERTY_NAMES;
+    static {
+        Map<String, String> names = new HashMap<String, String>();
+        names.put("connection-name", "displayName");
+        names.put("driver-class", "driverClass");
+        names.put("jdbc-url", "url");
+        names.put("user-name", "user");
+        names.put("user-pass", "pass");
+        names.put("sequence-number", "seqNo");
+        names.put("single-login", "singleLogin");
+        DBCS_PROPERTY_NAMES = Collections.unmodifiableMap(names);
+    }
+
+    /**
+     * The profile result attribute that is never set as a property. It used
+     * to be a boolean, but the property is now an actual exception.
+     */
+    private static final Set<String> PROFILE_IGNORED_ATTRIBUTES = Collections.singleton("exception");
+
+    private final ProjectLoader loader;
+
+    private final ArchitectSession session;
+
+    /**
+     * The writable bean properties of each class read so far, by property
+     * name.
+     */
+    private final Map<Class<?>, Map<String, Method>> setters = new HashMap<Class<?>, Map<String, Method>>();
+
+    private XMLStreamReader r;
+
+    /**
+     * Receives the elements this reader does not read itself. Null if they
+     * should be skipped.
+     */
+    private ContentHandler handoff;
+
+    /**
+     * The table most recently read. Folders and primary key indexes belong to
+     * this table.
+     */
+    private SQLTable currentTable;
+
+    /**
+     * The most recent table result read from the old profile-result elements,
+     * which stored column results as siblings of their table result.
+     */
+    private TableProfileResult oldFormatTableResult;
+
+    /**
+     * @param loader
+     *            The loader whose session and id maps will be filled in. The
+     *            id maps must already have been created.
+     */
+    StreamingProjectReader(ProjectLoader loader) {
+        this.loader = loader;
+        this.session = loader.getSession();
+    }
+
+    /**
+     * Reads the project from the given stream, skipping the elements this
+     * reader does not know about. The stream is not closed.
+     *
+     * @throws DigesterCancelledException
+     *             If the user chose not to load the file.
+     */
+    public void read(InputStream in) throws IOException, XMLStreamException, SQLObjectException {
+        try {
+            read(in, null);
+        } catch (SAXException ex) {
+            // can't happen without a handler
+            throw new SQLObjectException("Unexpected SAX exception", ex);
+        }
+    }
+
+    /**
+     * Reads the project from the given stream. The stream is not closed.
+     * 
+     * @param handoff
+     *            Receives the root element and the top-level elements this
+     *            reader does not read itself, as SAX events. Attribute values
+     *            and text are unescaped the same way as for the rest of the
+     *            file. May be null, in which case those elements are skipped.
+     * @throws DigesterCancelledException
+     *             If the user chose not to load the file.
+     * @throws SAXException
+     *             If the handler fails.
+     */
+    public void read(InputStream in, ContentHandler handoff)
+    throws IOException, XMLStreamException, SQLObjectException, SAXException {
+        this.handoff = handoff;
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, Boolean.FALSE);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+        r = factory.createXMLStreamReader(in);
+        try {
+            r.nextTag();
+            if (r.getLocalName().equals("architect-enterprise-project")) {
+                loader.rejectEnterpriseProject();
+            } else if (r.getLocalName().equals("architect-project")) {
+                loader.checkFileVersion(attr("appversion"));
+            }
+            String rootName = r.getLocalName();
+            if (handoff != null) {
+                handoff.startDocument();
+                handoff.startElement("", rootName, rootName, currentAttributes());
+            }
+            readProject();
+            if (handoff != null) {
+                handoff.endElement("", rootName, rootName);
+                handoff.endDocument();
+            }
+        } catch (XMLStreamException ex) {
+            // StAX wraps I/O problems (including a cancelled progress monitor)
+            if (ex.getNestedException() instanceof IOException) {
+                throw (IOException) ex.getNestedException();
+            }
+            throw ex;
+        } finally {
+            r.close();
+        }
+    }
+
+    private void readProject() throws XMLStreamException, SQLObjectException, SAXException {
+        while (r.nextTag() == XMLStreamConstants.START_ELEMENT) {
+            String name = r.getLocalName();
+            if (name.equals("project-name")) {
+                session.setName(unescape(r.getElementText()));
+            } else if (name.equals("project-connection-specs")) {
+                while (nextChild("dbcs")) {
+                    readConnectionSpec();
+                }
+            } else if (name.equals("project-data-sources")) {
+                while (nextChild("data-source")) {
+                    readDataSource();
+                }
+            } else if (name.equals("source-databases")) {
+                List<SQLDatabase> databases = new LinkedList<SQLDatabase>();
+                while (nextChild("database")) {
+                    databases.add(readDatabase());
+                }
+                session.setSourceDatabaseList(databases);
+            } else if (name.equals("target-database")) {
+                readTargetDatabase();
+            } else if (name.equals("ddl-generator")) {
+                readDDLGenerator();
+            } else if (name.equals("liquibase-settings")) {
+                LiquibaseSettings settings = session.getLiquibaseSettings();
+                setProperties(settings);
+                skipElement();
+                session.setLiquibaseSettings(settings);
+            } else if (name.equals("profiles")) {
+                readProfiles();
+            } else if (handoff != null) {
+                handOffElement();
+            } else {
+                skipElement();
+            }
+        }
+    }
+
+    // ------------------------- data sources ----------------------------
+
+    private JDBCDataSource createDataSource() {
+        JDBCDataSource dbcs = new JDBCDataSource(session.getDataSources());
+        String id = attr("id");
+        if (id != null) {
+            loader.dbcsLoadIdMap.put(id, dbcs);
+        } else {
+            logger.info("No ID found in dbcs element while loading project! (this is normal for playpen db, but bad for other data sources!");
+        }
+        return dbcs;
+    }
+
+    /**
+     * Reads the connection spec element of old project files.
+     */
+    private void readConnectionSpec() throws XMLStreamException, SQLObjectException {
+        JDBCDataSource dbcs = createDataSource();
+        for (int i = 0; i < r.getAttributeCount(); i++) {
+            String property = DBCS_PROPERTY_NAMES.get(r.getAttributeLocalName(i));
+            if (property == null) {
+                property = r.getAttributeLocalName(i);
+            }
+            setProperty(dbcs, property, r.getAttributeValue(i));
+        }
+        dbcs.setName(unescape(r.getElementText()));
+    }
+
+    private void readDataSource() throws XMLStreamException {
+        JDBCDataSource dbcs = createDataSource();
+        while (r.nextTag() == XMLStreamConstants.START_ELEMENT) {
+            if (r.getLocalName().equals("property")) {
+                dbcs.put(attr("key"), attr("value"));
+            }
+            skipElement();
+        }
+    }
+
+    // ------------------------- SQL objects ----------------------------
+
+    private SQLDatabase readDatabase() throws XMLStreamException, SQLObjectException {
+        SQLDatabase db = new SQLDatabase();
+        String id = attr("id");
+        if (id != null) {
+            loader.sqlObjectLoadIdMap.put(id, db);
+        } else {
+            logger.warn("No ID found in database element while loading project!");
+        }
+        String dbcsid = attr("dbcs-ref");
+        if (dbcsid != null) {
+            db.setDataSource(loader.dbcsLoadIdMap.get(dbcsid));
+        }
+        if ("false".equals(attr("populated"))) {
+            db.setPopulated(false);
+        }
+        loadSQLObjectAttributes(db);
+        setProperties(db);
+        readSQLObjectChildren(db);
+        return db;
+    }
+
+    /**
+     * Reads the target database element into the session's existing play pen
+     * database.
+     */
+    private void readTargetDatabase() throws XMLStreamException, SQLObjectException {
+        SQLDatabase ppdb = session.getTargetDatabase();
+        String id = attr("id");
+        if (id == null) {
+            logger.warn("No ID found in database element while loading project!");
+        }
+        String dbcsid = attr("dbcs-ref");
+        if (dbcsid != null) {
+            ppdb.setDataSource(loader.dbcsLoadIdMap.get(dbcsid));
+        }
+        loader.sqlObjectLoadIdMap.put(id, ppdb);
+        setProperties(ppdb);
+        readSQLObjectChildren(ppdb);
+    }
+
+    /**
+     * Reads all of the child elements of the current element, adding the SQL
+     * objects they describe to the given parent. Returns after the end tag of
+     * the current element has been read.
+     */
+    private void readSQLObjectChildren(SQLObject parent) throws XMLStreamException, SQLObjectException {
+        while (r.nextTag() == XMLStreamConstants.START_ELEMENT) {
+            String name = r.getLocalName();
+            if (name.equals("catalog")) {
+                SQLCatalog catalog = new SQLCatalog();
+                setProperties(catalog);
+                readSQLObjectChildren(catalog);
+                parent.addChild(catalog);
+            } else if (name.equals("schema")) {
+                parent.addChild(readSchema());
+            } else if (name.equals("table")) {
+                parent.addChild(readTable());
+            } else if (name.equals("folder")) {
+                readFolder();
+                readSQLObjectChildren(currentTable);
+            } else if (name.equals("column")) {
+                readColumn(parent);
+            } else if (name.equals("relationships")) {
+                // the relationships element only groups the relationships together
+                readSQLObjectChildren(parent);
+            } else if (name.equals("relationship")) {
+                readRelationship();
+            } else if (name.equals("column-mapping")) {
+                parent.addChild(readColumnMapping());
+            } else if (name.equals("index")) {
+                parent.addChild(readIndex());
+            } else if (name.equals("index-column")) {
+                parent.addChild(readIndexColumn());
+            } else if (name.equals("remarks")) {
+                setProperty(parent, "remarks", r.getElementText());
+            } else if (name.equals("sql-exception")) {
+                parent.setChildrenInaccessibleReason(
+                        new SQLObjectException(attr("message")), SQLObject.class, false);
+                skipElement();
+            } else {
+                skipElement();
+            }
+        }
+    }
+
+    private SQLSchema readSchema() throws XMLStreamException, SQLObjectException {
+        SQLSchema schema = new SQLSchema("true".equals(attr("populated")));
+        String id = attr("id");
+        if (id != null) {
+            loader.sqlObjectLoadIdMap.put(id, schema);
+        } else {
+            logger.warn("No ID found in database element while loading project!");
+        }
+        loadSQLObjectAttributes(schema);
+        setProperties(schema);
+        readSQLObjectChildren(schema);
+        return schema;
+    }
+
+    private SQLTable readTable() throws XMLStreamException, SQLObjectException {
+        SQLTable tab = new SQLTable();
+        String id = attr("id");
+        String pkName = attr("primaryKeyName");
+        if (id != null) {
+            loader.sqlObjectLoadIdMap.put(id, tab);
+            loader.sqlObjectLoadIdMap.put(id + "." + pkName, tab);
+        } else {
+            logger.warn("No ID found in table element while loading project!");
+        }
+        if ("false".equals(attr("populated"))) {
+            tab.initFolders(false);
+        }
+        currentTable = tab;
+        loadSQLObjectAttributes(tab);
+        setProperties(tab);
+        readSQLObjectChildren(tab);
+        return tab;
+    }
+
+    /**
+     * Applies the populated flag and exception of a folder element to the
+     * current table. Folders are no longer part of the object model; their
+     * children belong to the table directly.
+     */
+    private void readFolder() throws SQLObjectException {
+        String type = attr("type"); //1=col, 2=import, 3=export, 4=index
+        boolean isPopulated = Boolean.valueOf(attr("populated"));
+        String message = attr("sql-exception");
+        Class<? extends SQLObject> childType;
+        if ("1".equals(type)) {
+            currentTable.setColumnsPopulated(isPopulated);
+            childType = SQLColumn.class;
+        } else if ("2".equals(type)) {
+            currentTable.setImportedKeysPopulated(isPopulated);
+            childType = SQLImportedKey.class;
+        } else if ("3".equals(type)) {
+            currentTable.setExportedKeysPopulated(isPopulated);
+            childType = SQLRelationship.class;
+        } else if ("4".equals(type)) {
+            currentTable.setIndicesPopulated(isPopulated);
+            childType = SQLIndex.class;
+        } else {
+            return;
+        }
+        if (message != null) {
+            currentTable.setChildrenInaccessibleReason(new SQLObjectException(message), childType, false);
+        }
+    }
+
+    private void readColumn(SQLObject parent) throws XMLStreamException, SQLObjectException {
+        SQLColumn col = new SQLColumn();
+        String id = attr("id");
+        if (id != null) {
+            loader.sqlObjectLoadIdMap.put(id, col);
+        } else {
+            logger.warn("No ID found in column element while loading project!");
+        }
+        String sourceId = attr("source-column-ref");
+        if (sourceId != null) {
+            col.setSourceColumn((SQLColumn) loader.sqlObjectLoadIdMap.get(sourceId));
+        }
+        String sqlTypeUUID = attr("userDefinedTypeUUID");
+        UserDefinedSQLType sqlType = null;
+        if (sqlTypeUUID != null) {
+            sqlType = session.findSQLTypeByUUID(sqlTypeUUID);
+        }
+        col.getUserDefinedSQLType().setUpstreamType(sqlType);
+        loadSQLObjectAttributes(col);
+
+        // the old name of sourceDataTypeName was sourceDBTypeName
+        String oldSourceTypeName = attr("sourceDBTypeName");
+        String sourceTypeName = attr("sourceDataTypeName");
+        setProperties(col);
+        readSQLObjectChildren(col);
+        parent.addChild(col);
+
+        // these have to be set last so generic types don't overwrite database specific types
+        if (sourceTypeName != null) {
+            col.setSourceDataTypeName(sourceTypeName);
+        }
+        if (oldSourceTypeName != null) {
+            col.setSourceDataTypeName(oldSourceTypeName);
+        }
+    }
+
+    /**
+     * Reads a relationship and attaches it to its primary and foreign key
+     * tables, which must already have been read.
+     */
+    private void readRelationship() throws XMLStreamException, SQLObjectException {
+        SQLRelationship rel = new SQLRelationship();
+        String id = attr("id");
+        if (id != null) {
+            loader.sqlObjectLoadIdMap.put(id, rel);
+        } else {
+            logger.warn("No ID found in relationship element while loading project!");
+        }
+
+        String fkTableId = attr("fk-table-ref");
+        String pkTableId = attr("pk-table-ref");
+        if (fkTableId != null && pkTableId != null) {
+            SQLTable fkTable = (SQLTable) loader.sqlObjectLoadIdMap.get(fkTableId);
+            SQLTable pkTable = (SQLTable) loader.sqlObjectLoadIdMap.get(pkTableId);
+            try {
+                rel.attachRelationship(pkTable, fkTable, false);
+            } catch (SQLObjectException e) {
+                logger.error("Couldn't attach relationship to pktable \""+pkTable.getName()+"\" and fktable \""+fkTable.getName()+"\"", e);
+                JOptionPane.showMessageDialog(null, "Failed to attach relationship to pktable \""+pkTable.getName()+"\" and fktable \""+fkTable.getName()+"\":\n"+e.getMessage());
+            }
+        } else {
+            JOptionPane.showMessageDialog(null, "Missing pktable or fktable references for relationship id \""+id+"\"");
+        }
+
+        loadSQLObjectAttributes(rel);
+        setProperties(rel);
+        readSQLObjectChildren(rel);
+    }
+
+    private SQLRelationship.ColumnMapping readColumnMapping() throws XMLStreamException, SQLObjectException {
+        SQLRelationship.ColumnMapping cmap = new SQLRelationship.ColumnMapping();
+        String id = attr("id");
+        if (id != null) {
+            loader.sqlObjectLoadIdMap.put(id, cmap);
+        } else {
+            logger.warn("No ID found in column-mapping element while loading project!");
+        }
+        String fkColumnId = attr("fk-column-ref");
+        if (fkColumnId != null) {
+            cmap.setFkColumn((SQLColumn) loader.sqlObjectLoadIdMap.get(fkColumnId));
+        }
+        String pkColumnId = attr("pk-column-ref");
+        if (pkColumnId != null) {
+            cmap.setPkColumn((SQLColumn) loader.sqlObjectLoadIdMap.get(pkColumnId));
+        }
+        String fkTableId = attr("fk-table");
+        if (fkTableId != null) {
+            cmap.setFkTable((SQLTable) loader.sqlObjectLoadIdMap.get(fkTableId));
+        }
+        String fkColName = attr("fk-col-name");
+        if (fkColName != null) {
+            cmap.setFkColName(fkColName);
+        }
+        setProperties(cmap);
+        readSQLObjectChildren(cmap);
+        return cmap;
+    }
+
+    private SQLIndex readIndex() throws XMLStreamException, SQLObjectException {
+        SQLIndex index;
+        if (Boolean.valueOf(attr("primaryKeyIndex"))) {
+            index = currentTable.getPrimaryKeyIndex();
+        } else {
+            index = new SQLIndex();
+        }
+        String id = attr("id");
+        if (id != null) {
+            loader.sqlObjectLoadIdMap.put(id, index);
+        } else {
+            logger.warn("No ID found in index element while loading project!");
+        }
+        index.setType(attr("index-type"));
+        loadSQLObjectAttributes(index);
+        setProperties(index);
+        readSQLObjectChildren(index);
+        return index;
+    }
+
+    private SQLIndex.Column readIndexColumn() throws XMLStreamException, SQLObjectException {
+        SQLIndex.Column col = new SQLIndex.Column();
+        String id = attr("id");
+        if (id != null) {
+            loader.sqlObjectLoadIdMap.put(id, col);
+        } else {
+            logger.warn("No ID found in index-column element while loading project!");
+        }
+        String referencedColId = attr("column-ref");
+        if (referencedColId != null) {
+            col.setColumn((SQLColumn) loader.sqlObjectLoadIdMap.get(referencedColId));
+        }
+        String ascendingOrDescending = attr("ascendingOrDescending");
+        if (ascendingOrDescending != null) {
+            col.setAscendingOrDescending(SQLIndex.AscendDescend.valueOf(ascendingOrDescending));
+        }
+        loadSQLObjectAttributes(col);
+        setProperties(col);
+        readSQLObjectChildren(col);
+        return col;
+    }
+
+    /**
+     * Loads the attributes common to all SQL objects that cannot be set
+     * through a bean property.
+     */
+    private void loadSQLObjectAttributes(SQLObject obj) throws SQLObjectException {
+        String message = attr("sql-exception");
+        if (message != null) {
+            obj.setChildrenInaccessibleReason(new SQLObjectException(message), SQLObject.class, false);
+        }
+    }
+
+    // ------------------------- other settings ----------------------------
+
+    private void readDDLGenerator() throws XMLStreamException, SQLObjectException {
+        GenericDDLGenerator ddlg;
+        try {
+            ddlg = (GenericDDLGenerator) Class.forName(attr("type"), true, ProjectLoader.class.getClassLoader()).newInstance();
+            ddlg.setTargetCatalog(attr("target-catalog"));
+            ddlg.setTargetSchema(attr("target-schema"));
+        } catch (Exception e) {
+            logger.debug("Couldn't create DDL Generator instance. Returning generic instance.", e);
+            try {
+                ddlg = new GenericDDLGenerator();
+            } catch (Exception ex) {
+                throw new SQLObjectException("Couldn't create a DDL generator", ex);
+            }
+        }
+        setProperties(ddlg);
+        skipElement();
+        session.setDDLGenerator(ddlg);
+    }
+
+    // ------------------------- profiles ----------------------------
+
+    private void readProfiles() throws XMLStreamException, SQLObjectException {
+        ProfileManager profileManager = session.getProfileManager();
+        setProperties(profileManager);
+        while (r.nextTag() == XMLStreamConstants.START_ELEMENT) {
+            String name = r.getLocalName();
+            if (name.equals("table-profile-result")) {
+                TableProfileResult tpr = readTableProfileResult();
+                ((ProfileManagerImpl) profileManager).addTableProfileResult(tpr);
+            } else if (name.equals("profile-result")) {
+                readOldProfileResult((ProfileManagerImpl) profileManager);
+            } else {
+                skipElement();
+            }
+        }
+    }
+
+    private TableProfileResult readTableProfileResult() throws XMLStreamException, SQLObjectException {
+        String refid = attr("ref-id");
+        if (refid == null) {
+            throw new SQLObjectException("Missing mandatory attribute \"ref-id\" in <table-profile-result> element");
+        }
+        SQLTable t = (SQLTable) loader.sqlObjectLoadIdMap.get(refid);
+        TableProfileResult tpr = new TableProfileResult(t, session.getProfileManager().getDefaultProfileSettings());
+        setProperties(tpr, PROFILE_IGNORED_ATTRIBUTES);
+        while (nextChild("column-profile-result")) {
+            tpr.addColumnProfileResult(readColumnProfileResult());
+        }
+        return tpr;
+    }
+
+    private ColumnProfileResult readColumnProfileResult() throws XMLStreamException, SQLObjectException {
+        String refid = attr("ref-id");
+        if (refid == null) {
+            throw new SQLObjectException("Missing mandatory attribute \"ref-id\" id <column-profile-result> element");
+        }
+        SQLColumn c = (SQLColumn) loader.sqlObjectLoadIdMap.get(refid);
+        ColumnProfileResult cpr = new ColumnProfileResult(c);
+        setProperties(cpr, PROFILE_IGNORED_ATTRIBUTES);
+        while (r.nextTag() == XMLStreamConstants.START_ELEMENT) {
+            String name = r.getLocalName();
+            if (name.equals("avgValue")) {
+                cpr.setAvgValue(readProfileValue());
+            } else if (name.equals("minValue")) {
+                cpr.setMinValue(readProfileValue());
+            } else if (name.equals("maxValue")) {
+                cpr.setMaxValue(readProfileValue());
+            } else if (name.equals("medianValue")) {
+                cpr.setMedianValue(readProfileValue());
+            } else if (name.equals("topNvalue")) {
+                cpr.addValueCount(readTopNValue());
+            }
+            skipElement();
+        }
+        return cpr;
+    }
+
+    /**
+     * Reads the profile results of project files from 0.9.16 and older, where
+     * column results were stored as siblings following their table result.
+     */
+    private void readOldProfileResult(ProfileManagerImpl profileManager) throws XMLStreamException, SQLObjectException {
+        String refid = attr("ref-id");
+        String className = attr("type");
+        if (refid == null) {
+            throw new SQLObjectException("Missing mandatory attribute \"ref-id\" in <profile-result> element");
+        }
+        if (className == null) {
+            throw new SQLObjectException("Missing mandatory attribute \"type\" in <profile-result> element");
+        } else if (className.equals(TableProfileResult.class.getName())) {
+            SQLTable t = (SQLTable) loader.sqlObjectLoadIdMap.get(refid);
+            // XXX we should actually store the settings together with each profile result, not rehash the current defaults
+            oldFormatTableResult = new TableProfileResult(t, session.getProfileManager().getDefaultProfileSettings());
+            setProperties(oldFormatTableResult, PROFILE_IGNORED_ATTRIBUTES);
+            skipElement();
+            profileManager.loadResult(oldFormatTableResult);
+        } else if (className.equals(ColumnProfileResult.class.getName())) {
+            SQLColumn c = (SQLColumn) loader.sqlObjectLoadIdMap.get(refid);
+            if (oldFormatTableResult == null) {
+                throw new IllegalArgumentException("Column result does not have a parent");
+            }
+            ColumnProfileResult cpr = new ColumnProfileResult(c);
+            oldFormatTableResult.addColumnProfileResult(cpr);
+            setProperties(cpr, PROFILE_IGNORED_ATTRIBUTES);
+            skipElement();
+            profileManager.loadResult(cpr);
+        } else {
+            throw new SQLObjectException("Profile result type \""+className+"\" not recognised");
+        }
+    }
+
+    private Object readProfileValue() throws SQLObjectException {
+        String className = attr("type");
+        String value = attr("value");
+        if (className == null) {
+            throw new SQLObjectException("Missing mandatory attribute \"type\" in <avgValue> or <minValue> or <maxValue> element");
+        }
+        return toProfileValue(className, value);
+    }
+
+    private ColumnValueCount readTopNValue() {
+        String className = attr("type");
+        int count = Integer.valueOf(attr("count"));
+        String per = attr("percent");
+        double percent = -1;
+        if (per != null) {
+            percent = Double.valueOf(per);
+        }
+        boolean otherValues = Boolean.parseBoolean(attr("otherValues"));
+        Object value;
+        if (className == null || className.length() == 0) {
+            value = null;
+        } else {
+            value = toProfileValue(className, attr("value"));
+        }
+        return new ColumnValueCount(value, count, percent, otherValues);
+    }
+
+    /**
+     * Converts a stored profile value back to its type. Types other than
+     * BigDecimal and Timestamp are loaded as strings.
+     */
+    private static Object toProfileValue(String className, String value) {
+        if (className.equals(BigDecimal.class.getName())) {
+            return new BigDecimal(value);
+        } else if (className.equals(Timestamp.class.getName())) {
+            return new Timestamp(Timestamp.valueOf(value).getTime());
+        } else {
+            return value;
+        }
+    }
+
+    // ------------------------- parsing helpers ----------------------------
+
+    /**
+     * Returns the unescaped value of the named attribute of the current
+     * element, or null if the element does not have that attribute.
+     */
+    private String attr(String name) {
+        return unescape(r.getAttributeValue(null, name));
+    }
+
+    /**
+     * Moves to the next child element of the current element, skipping any
+     * children that do not have the given name.
+     *
+     * @return true if the reader is now on the start tag of a child with the
+     *         given name, false if it has reached the end tag of the current
+     *         element.
+     */
+    private boolean nextChild(String name) throws XMLStreamException {
+        while (r.nextTag() == XMLStreamConstants.START_ELEMENT) {
+            if (r.getLocalName().equals(name)) {
+                return true;
+            }
+            skipElement();
+        }
+        return false;
+    }
+
+    /**
+     * Skips the rest of the current element, including all of its children.
+     * Afterwards the reader is on the element's end tag.
+     */
+    private void skipElement() throws XMLStreamException {
+        int depth = 1;
+        while (depth > 0) {
+            int event = r.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+            }
+        }
+    }
+
+    /**
+     * Sends the current element, including all of its children, to the
+     * {@link #handoff} handler. Afterwards the reader is on the element's end
+     * tag.
+     */
+    private void handOffElement() throws XMLStreamException, SAXException {
+        int depth = 0;
+        int event = r.getEventType();
+        for (;;) {
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+                String name = r.getLocalName();
+                handoff.startElement("", name, name, currentAttributes());
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                String name = r.getLocalName();
+                handoff.endElement("", name, name);
+                depth--;
+                if (depth == 0) return;
+            } else if (event == XMLStreamConstants.CHARACTERS || event == XMLStreamConstants.CDATA
+                    || event == XMLStreamConstants.SPACE) {
+                char[] text = unescape(r.getText()).toCharArray();
+                handoff.characters(text, 0, text.length);
+            }
+            event = r.next();
+        }
+    }
+
+    /**
+     * Returns the unescaped attributes of the current element as SAX
+     * attributes.
+     */
+    private AttributesImpl currentAttributes() {
+        AttributesImpl attributes = new AttributesImpl();
+        for (int i = 0; i < r.getAttributeCount(); i++) {
+            String name = r.getAttributeLocalName(i);
+            attributes.addAttribute("", name, name, "CDATA", unescape(r.getAttributeValue(i)));
+        }
+        return attributes;
+    }
+
+    /**
+     * Sets every attribute of the current element that has a matching
+     * writable property on the given bean, the same way the Digester's
+     * set properties rule does.
+     */
+    private void setProperties(Object bean) throws SQLObjectException {
+        setProperties(bean, Collections.<String>emptySet());
+    }
+
+    private void setProperties(Object bean, Set<String> ignoredAttributes) throws SQLObjectException {
+        for (int i = 0; i < r.getAttributeCount(); i++) {
+            String name = r.getAttributeLocalName(i);
+            if (!ignoredAttributes.contains(name)) {
+                setProperty(bean, name, r.getAttributeValue(i));
+            }
+        }
+    }
+
+    /**
+     * Sets the named property of the bean from its string form. Nothing
+     * happens if the bean does not have a writable property by that name.
+     */
+    private void setProperty(Object bean, String property, String value) throws SQLObjectException {
+        Method setter = findSetter(bean.getClass(), property);
+        if (setter == null) return;
+        Class<?> type = setter.getParameterTypes()[0];
+        Object converted;
+        if (type == String.class) {
+            converted = unescape(value);
+        } else {
+            converted = ConvertUtils.convert(value, type);
+        }
+        try {
+            setter.invoke(bean, converted);
+        } catch (IllegalArgumentException e) {
+            logger.warn("Couldn't convert \"" + value + "\" for property " + property + " of " + bean, e);
+        } catch (IllegalAccessException e) {
+            throw new SQLObjectException("Couldn't set property " + property + " of " + bean, e);
+        } catch (InvocationTargetException e) {
+            throw new SQLObjectException("Couldn't set property " + property + " of " + bean, e.getCause());
+        }
+    }
+
+    private Method findSetter(Class<?> beanClass, String property) {
+        Map<String, Method> classSetters = setters.get(beanClass);
+        if (classSetters == null) {
+            classSetters = new HashMap<String, Method>();
+            try {
+                for (PropertyDescriptor pd : Introspector.getBeanInfo(beanClass).getPropertyDescriptors()) {
+                    if (pd.getWriteMethod() != null) {
+                        classSetters.put(pd.getName(), pd.getWriteMethod());
+                    }
+                }
+            } catch (IntrospectionException e) {
+                logger.warn("Couldn't find the properties of " + beanClass, e);
+            }
+            setters.put(beanClass, classSetters);
+        }
+        return classSetters.get(property);
+    }
+
+    /**
+     * Reverses the escapes SQLPowerUtils.escapeXML() adds on top of the
+     * standard XML escapes: characters that XML 1.0 cannot carry at all are
+     * written as a backslash, a 'u' and four hex digits. The Digester gets
+     * this from its unescaping SAX parser.
+     */
+    static String unescape(String s) {
+        if (s == null || s.indexOf('\\') < 0) {
+            return s;
+        }
+        StringBuilder sb = new StringBuilder(s.length());
+        int i = 0;
+        while (i < s.length()) {
+            char ch = s.charAt(i);
+            if (ch == '\\' && i + 5 < s.length() && s.charAt(i + 1) == 'u') {
+                try {
+                    sb.append((char) Integer.parseInt(s.substring(i + 2, i + 6), 16));
+                    i += 6;
+                    continue;
+                } catch (NumberFormatException e) {
+                    // not an escape after all
+                }
+            }
+            sb.append(ch);
+            i++;
+        }
+        return sb.toString();
+    }
+}
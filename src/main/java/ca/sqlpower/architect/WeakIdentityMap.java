@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.architect;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A map that compares its keys by identity and does not keep them from being
+ * garbage collected, much like a {@link java.util.WeakHashMap} that uses
+ * <code>==</code>. This is for caches keyed on mutable objects such as data
+ * sources, whose equals and hash code change when they are edited, and which
+ * should not outlive the objects they are about.
+ * <p>
+ * This class is not thread safe.
+ */
+public class WeakIdentityMap<K, V> {
+
+    /**
+     * A weak reference that compares equal to another one that refers to
+     * the same object. Once cleared, it is only equal to itself.
+     */
+    private static class IdentityKey<K> extends WeakReference<K> {
+        private final int hash;
+
+        IdentityKey(K key, ReferenceQueue<? super K> queue) {
+            super(key, queue);
+            hash = System.identityHashCode(key);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof IdentityKey<?>)) {
+                return false;
+            }
+            Object key = get();
+            return key != null && key == ((IdentityKey<?>) obj).get();
+        }
+    }
+
+    private final Map<IdentityKey<K>, V> map = new HashMap<IdentityKey<K>, V>();
+
+    /**
+     * The keys that have been garbage collected, whose entries have to be
+     * removed.
+     */
+    private final ReferenceQueue<K> collected = new ReferenceQueue<K>();
+
+    public V get(K key) {
+        expungeCollected();
+        return map.get(new IdentityKey<K>(key, null));
+    }
+
+    public V put(K key, V value) {
+        expungeCollected();
+        return map.put(new IdentityKey<K>(key, collected), value);
+    }
+
+    public V remove(K key) {
+        expungeCollected();
+        return map.remove(new IdentityKey<K>(key, null));
+    }
+
+    public void clear() {
+        map.clear();
+        while (collected.poll() != null) {
+            // the entries are gone already
+        }
+    }
+
+    public int size() {
+        expungeCollected();
+        return map.size();
+    }
+
+    private void expungeCollected() {
+        Reference<? extends K> ref;
+        while ((ref = collected.poll()) != null) {
+            map.remove(ref);
+        }
+    }
+}
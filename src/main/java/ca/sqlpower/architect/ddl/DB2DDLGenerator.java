@@ -163,5 +163,14 @@ public class DB2DDLGenerator extends GenericDDLGenerator {
 	protected String getPlatformName() {
 	    return "DB2";
 	}
+
+	/**
+	 * DB2 uses the generic table, index and relationship statements, so it
+	 * can be generated in parallel.
+	 */
+	@Override
+	protected boolean supportsParallelGeneration() {
+	    return true;
+	}
 	
 }
@@ -19,6 +19,8 @@
 
 package ca.sqlpower.architect.ddl;
 
+import java.io.IOException;
+import java.io.Writer;
 import java.sql.SQLException;
 import java.util.Collection;
 import java.util.List;
@@ -80,6 +82,32 @@ public interface DDLGenerator {
      */
     public String generateDDLScript(ArchitectSwingSession architectSwingSession, Collection<SQLTable> tables) throws SQLException, SQLObjectException;
 
+    /**
+     * Generates the same statements as {@link #generateDDLStatements(Collection)},
+     * but hands each one to the given handler as soon as it is complete
+     * instead of collecting them. The statements are not added to
+     * {@link #getDdlStatements()}.
+     * 
+     * @param tables The collection of tables the generated statements should create.
+     * @param handler Receives the statements in the order they should be executed.
+     * @throws SQLException If there is a problem getting type info from the target DB.
+     * @throws SQLObjectException If there are problems with the Architect objects.
+     */
+    public void generateDDLStatements(Collection<SQLTable> tables, DDLStatementHandler handler)
+    throws SQLException, SQLObjectException;
+
+    /**
+     * Writes the same script as {@link #generateDDLScript(ArchitectSwingSession, Collection)}
+     * to the given writer, one statement at a time as the statements are
+     * generated, so the memory needed does not grow with the size of the
+     * script. The statements are not added to {@link #getDdlStatements()}.
+     * The writer is not closed.
+     * 
+     * @throws IOException If writing to the writer fails.
+     */
+    public void generateDDLScript(ArchitectSwingSession architectSwingSession, Collection<SQLTable> tables, Writer out)
+    throws SQLException, SQLObjectException, IOException;
+
 
     /**
      * Adds a comment (remark) to the passed object (table, column, view, ...)
@@ -0,0 +1,313 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package ca.sqlpower.architect.ddl;
+
+import java.sql.BatchUpdateException;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Runs a list of DDL statements against a database through a single JDBC
+ * {@link Statement}. When batch updates are turned on, the statements are
+ * sent to the database in groups with {@link Statement#addBatch(String)} and
+ * {@link Statement#executeBatch()}, which saves one network round trip per
+ * statement. The size of the batches adapts to how long each one takes to
+ * execute: fast batches make the next one bigger, slow ones make it smaller.
+ * <p>
+ * If a batch fails with a {@link BatchUpdateException}, the statements in it
+ * that the driver did not report as successful are executed again one at a
+ * time, so the statement that actually failed can be passed to
+ * {@link #statementFailed(DDLStatement, SQLException)} with its own exception.
+ * A batch that fails after it was sent without saying which statements
+ * succeeded is not run again, since there is no telling which of its
+ * statements were already applied.
+ * <p>
+ * Subclasses decide what to do about failed statements, and can override
+ * {@link #batchExecuted(int, int, long, long)} to report progress.
+ */
+public abstract class DDLScriptExecutor {
+
+    private static final Logger logger = Logger.getLogger(DDLScriptExecutor.class);
+
+    /**
+     * The number of statements in the first batch.
+     */
+    public static final int INITIAL_BATCH_SIZE = 16;
+
+    /**
+     * The largest number of statements that will be sent in one batch.
+     */
+    public static final int MAX_BATCH_SIZE = 1024;
+
+    /**
+     * The time in milliseconds each batch should take to execute. Batches
+     * that finish in less than half this time double the size of the next
+     * batch, and batches that take longer halve it. This keeps the progress
+     * reports and cancellation checks reasonably frequent on slow links.
+     */
+    public static final long TARGET_BATCH_MILLIS = 1000;
+
+    /**
+     * If true, statements are grouped into JDBC batches. Otherwise every
+     * statement is executed on its own with {@link Statement#executeUpdate(String)}.
+     */
+    private boolean batchUpdates;
+
+    /**
+     * True while the current call to {@link #execute(Statement, List)} is
+     * still sending batches. Starts out as {@link #batchUpdates} and is turned
+     * off if the driver fails a batch in a way that can't be recovered from
+     * statement by statement.
+     */
+    private boolean batching;
+
+    /**
+     * The number of statements that will go into the next batch.
+     */
+    private int batchSize = INITIAL_BATCH_SIZE;
+
+    /**
+     * The number of statements that have executed successfully in the
+     * current call to {@link #execute(Statement, List)}.
+     */
+    private int statementsCompleted;
+
+    /**
+     * Set when {@link #statementFailed(DDLStatement, SQLException)} asks for
+     * the execution to stop.
+     */
+    private boolean stopped;
+
+    /**
+     * Executes the given statements in order. Execution stops early if
+     * {@link #statementFailed(DDLStatement, SQLException)} returns false or
+     * {@link #isCancelled()} returns true.
+     * 
+     * @return The number of statements that executed successfully.
+     */
+    public int execute(Statement stmt, List<DDLStatement> statements) {
+        statementsCompleted = 0;
+        stopped = false;
+        batching = batchUpdates;
+        long startTime = System.currentTimeMillis();
+        int next = 0;
+        while (next < statements.size() && !stopped && !isCancelled()) {
+            int end = batching ? Math.min(next + batchSize, statements.size()) : next + 1;
+            List<DDLStatement> batch = statements.subList(next, end);
+            long batchStart = System.currentTimeMillis();
+            if (batching) {
+                executeBatch(stmt, batch);
+            } else {
+                executeEach(stmt, batch, null);
+            }
+            next = end;
+            long now = System.currentTimeMillis();
+            long batchMillis = now - batchStart;
+            if (batching) {
+                adjustBatchSize(batchMillis);
+            }
+            batchExecuted(next, batch.size(), batchMillis, now - startTime);
+        }
+        return statementsCompleted;
+    }
+
+    /**
+     * Sends the given statements to the database as one batch. If the batch
+     * fails, the statements that did not succeed are retried one at a time.
+     */
+    private void executeBatch(Statement stmt, List<DDLStatement> batch) {
+        int[] updateCounts;
+        boolean sent = false;
+        try {
+            for (DDLStatement ddlStmt : batch) {
+                logger.info("adding to batch: " + ddlStmt.getSQLText()); //$NON-NLS-1$
+                stmt.addBatch(ddlStmt.getSQLText());
+            }
+            sent = true;
+            stmt.executeBatch();
+            statementsCompleted += batch.size();
+            return;
+        } catch (BatchUpdateException ex) {
+            logger.info("batch of " + batch.size() + " statements failed: " + ex.getMessage()); //$NON-NLS-1$ //$NON-NLS-2$
+            updateCounts = ex.getUpdateCounts();
+            if (updateCounts == null) {
+                clearBatch(stmt);
+                batchFailedWithoutCounts(batch, ex);
+                return;
+            }
+        } catch (SQLException ex) {
+            logger.info("batch of " + batch.size() + " statements failed: " + ex.getMessage()); //$NON-NLS-1$ //$NON-NLS-2$
+            clearBatch(stmt);
+            if (sent) {
+                batchFailedWithoutCounts(batch, ex);
+            } else {
+                // the batch never reached the database, so it is safe to run
+                // every statement on its own.
+                batching = false;
+                executeEach(stmt, batch, null);
+            }
+            return;
+        }
+        clearBatch(stmt);
+        batchSize = Math.max(1, batchSize / 2);
+        executeEach(stmt, batch, updateCounts);
+    }
+
+    /**
+     * Handles a batch that was sent to the database and failed without saying
+     * which of its statements took effect. DDL is usually committed as it
+     * runs, so executing the batch again could repeat statements that already
+     * succeeded. Instead, the failure is reported once, against the first
+     * statement of the batch, and none of the batch is run again. The rest of
+     * the script is executed one statement at a time, so later failures can
+     * be pinned on the right statement.
+     */
+    private void batchFailedWithoutCounts(List<DDLStatement> batch, SQLException ex) {
+        batching = false;
+        if (!statementFailed(batch.get(0), ex)) {
+            stopped = true;
+        }
+    }
+
+    private void clearBatch(Statement stmt) {
+        try {
+            stmt.clearBatch();
+        } catch (SQLException ex) {
+            logger.warn("Couldn't clear failed batch", ex); //$NON-NLS-1$
+        }
+    }
+
+    /**
+     * Executes the given statements one at a time, skipping the ones the
+     * given update counts from a failed batch show as already executed. Some
+     * drivers stop at the first failure in a batch and only return the counts
+     * of the statements before it; others carry on and mark the failed
+     * statements with {@link Statement#EXECUTE_FAILED}. When the counts are
+     * null, every statement is executed.
+     */
+    private void executeEach(Statement stmt, List<DDLStatement> statements, int[] updateCounts) {
+        for (int i = 0; i < statements.size() && !stopped && !isCancelled(); i++) {
+            if (updateCounts != null && i < updateCounts.length && updateCounts[i] != Statement.EXECUTE_FAILED) {
+                statementsCompleted++;
+                continue;
+            }
+            DDLStatement ddlStmt = statements.get(i);
+            try {
+                logger.info("executing: " + ddlStmt.getSQLText()); //$NON-NLS-1$
+                stmt.executeUpdate(ddlStmt.getSQLText());
+                statementsCompleted++;
+            } catch (SQLException ex) {
+                logger.info("sql statement failed: " + ex.getMessage()); //$NON-NLS-1$
+                if (!statementFailed(ddlStmt, ex)) {
+                    stopped = true;
+                }
+            }
+        }
+    }
+
+    /**
+     * Grows or shrinks the next batch depending on how long the last one took.
+     */
+    private void adjustBatchSize(long batchMillis) {
+        if (batchMillis < TARGET_BATCH_MILLIS / 2) {
+            batchSize = Math.min(MAX_BATCH_SIZE, batchSize * 2);
+        } else if (batchMillis > TARGET_BATCH_MILLIS) {
+            batchSize = Math.max(1, batchSize / 2);
+        }
+    }
+
+    /**
+     * Called when a statement fails to execute on its own.
+     * 
+     * @return True to carry on with the rest of the statements, false to stop.
+     */
+    protected abstract boolean statementFailed(DDLStatement ddlStmt, SQLException ex);
+
+    /**
+     * Called after each batch, or after each statement when batch updates are
+     * off. Does nothing by default.
+     * 
+     * @param statementsProcessed
+     *            The number of statements executed or attempted so far.
+     * @param batchSize
+     *            The number of statements in the batch that just finished.
+     * @param batchMillis
+     *            The time the batch took, in milliseconds.
+     * @param elapsedMillis
+     *            The time since execution started, in milliseconds.
+     */
+    protected void batchExecuted(int statementsProcessed, int batchSize, long batchMillis, long elapsedMillis) {
+        // no-op
+    }
+
+    /**
+     * Returns true if execution should stop before the next statement or
+     * batch. Returns false by default.
+     */
+    protected boolean isCancelled() {
+        return false;
+    }
+
+    /**
+     * Returns the number of statements that have executed successfully so far.
+     */
+    public int getStatementsCompleted() {
+        return statementsCompleted;
+    }
+
+    /**
+     * Returns the number of statements per second executed successfully in
+     * the given amount of time.
+     */
+    public double getThroughput(long elapsedMillis) {
+        return statementsCompleted * 1000.0 / Math.max(1, elapsedMillis);
+    }
+
+    public boolean isBatchUpdates() {
+        return batchUpdates;
+    }
+
+    /**
+     * Turns batch execution on or off. Only turn this on if the driver
+     * supports batch updates (see
+     * {@link java.sql.DatabaseMetaData#supportsBatchUpdates()}).
+     */
+    public void setBatchUpdates(boolean batchUpdates) {
+        this.batchUpdates = batchUpdates;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * Sets the size of the next batch. It will still adapt after that.
+     */
+    public void setBatchSize(int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be at least 1");
+        }
+        this.batchSize = batchSize;
+    }
+}
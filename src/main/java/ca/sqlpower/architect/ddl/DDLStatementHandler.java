@@ -0,0 +1,38 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.architect.ddl;
+
+import java.util.Collection;
+
+/**
+ * Receives DDL statements one at a time as a {@link DDLGenerator} produces
+ * them. Passing a handler to
+ * {@link DDLGenerator#generateDDLStatements(Collection, DDLStatementHandler)}
+ * lets the caller write or execute each statement right away instead of
+ * holding the whole list in memory.
+ */
+public interface DDLStatementHandler {
+
+    /**
+     * Called once for each complete statement, in the order the statements
+     * should be executed.
+     */
+    void handleStatement(DDLStatement statement);
+}
@@ -0,0 +1,218 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package ca.sqlpower.architect.ddl;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+
+import ca.sqlpower.architect.WeakIdentityMap;
+import ca.sqlpower.sql.JDBCDataSource;
+import ca.sqlpower.sqlobject.SQLDatabase;
+import ca.sqlpower.sqlobject.SQLObjectException;
+
+/**
+ * Remembers the parts of a database's JDBC metadata that the DDL generators
+ * and profilers ask for over and over again: the type descriptors from
+ * {@link DatabaseMetaData#getTypeInfo()} and the identifier quote string.
+ * Reading these can mean opening a connection and making a network round trip,
+ * and a new DDL generator is created for every export, comparison and data
+ * move.
+ * <p>
+ * Entries are kept per {@link JDBCDataSource} instance, only for as long as
+ * the data source is in use, and expire after a time to live (see
+ * {@link #setTimeToLive(long)}). An entry is also dropped if the URL of its
+ * data source changes, and it can be dropped explicitly with
+ * {@link #invalidate(JDBCDataSource)}, which is what refreshing a database in
+ * the tree does.
+ * <p>
+ * This class is thread safe.
+ */
+public class DatabaseMetaDataCache {
+
+    private static final Logger logger = Logger.getLogger(DatabaseMetaDataCache.class);
+
+    /**
+     * The default time to live of a cache entry: ten minutes.
+     */
+    public static final long DEFAULT_TIME_TO_LIVE = 10 * 60 * 1000;
+
+    private static final DatabaseMetaDataCache instance = new DatabaseMetaDataCache();
+
+    /**
+     * Returns the cache shared by the whole application.
+     */
+    public static DatabaseMetaDataCache getInstance() {
+        return instance;
+    }
+
+    /**
+     * The metadata cached for one data source. Either part may still be null
+     * if nobody has asked for it yet.
+     */
+    private static class Entry {
+        final String url;
+        final long created;
+        Map<Integer, GenericTypeDescriptor> typeMap;
+        String identifierQuoteString;
+
+        Entry(String url, long created) {
+            this.url = url;
+            this.created = created;
+        }
+    }
+
+    /**
+     * The cache entries. Data sources are mutable and their equality depends
+     * on their properties, so they are compared by identity here. The keys
+     * are weak so data sources that were removed or replaced do not keep
+     * their entries for the life of the application.
+     */
+    private final WeakIdentityMap<JDBCDataSource, Entry> entries = new WeakIdentityMap<JDBCDataSource, Entry>();
+
+    private long timeToLive = DEFAULT_TIME_TO_LIVE;
+
+    /**
+     * Returns the type map read from the given database's
+     * {@link DatabaseMetaData#getTypeInfo()}, keyed by JDBC type code. A
+     * connection to the database is only made if the type map is not cached
+     * yet. The returned map cannot be modified; copy it if you need to.
+     */
+    public Map<Integer, GenericTypeDescriptor> getTypeMap(SQLDatabase db)
+    throws SQLException, SQLObjectException {
+        JDBCDataSource ds = db.getDataSource();
+        synchronized (this) {
+            Entry entry = getEntry(ds);
+            if (entry.typeMap != null) {
+                return entry.typeMap;
+            }
+        }
+
+        Map<Integer, GenericTypeDescriptor> typeMap = new HashMap<Integer, GenericTypeDescriptor>();
+        Connection con = null;
+        try {
+            con = db.getConnection();
+            ResultSet rs = con.getMetaData().getTypeInfo();
+            try {
+                while (rs.next()) {
+                    GenericTypeDescriptor td = new GenericTypeDescriptor(rs);
+                    typeMap.put(Integer.valueOf(td.getDataType()), td);
+                }
+            } finally {
+                rs.close();
+            }
+        } finally {
+            try {
+                if (con != null) con.close();
+            } catch (SQLException ex) {
+                logger.error("Couldn't close connection", ex);
+            }
+        }
+        typeMap = Collections.unmodifiableMap(typeMap);
+
+        synchronized (this) {
+            getEntry(ds).typeMap = typeMap;
+        }
+        return typeMap;
+    }
+
+    /**
+     * Returns the identifier quote string of the given data source, asking the
+     * given connection to it if the quote string is not cached yet.
+     */
+    public String getIdentifierQuoteString(JDBCDataSource ds, Connection con) throws SQLException {
+        synchronized (this) {
+            Entry entry = getEntry(ds);
+            if (entry.identifierQuoteString != null) {
+                return entry.identifierQuoteString;
+            }
+        }
+        String quote = con.getMetaData().getIdentifierQuoteString();
+        if (quote == null) {
+            quote = "";
+        }
+        synchronized (this) {
+            getEntry(ds).identifierQuoteString = quote;
+        }
+        return quote;
+    }
+
+    /**
+     * Returns the live cache entry for the given data source, replacing it
+     * with an empty one if it has expired or its URL has changed.
+     */
+    private Entry getEntry(JDBCDataSource ds) {
+        long now = currentTimeMillis();
+        Entry entry = entries.get(ds);
+        if (entry == null || now - entry.created >= timeToLive || !equal(entry.url, ds.getUrl())) {
+            if (entry != null) {
+                logger.debug("Discarding cached metadata for " + ds.getName());
+            }
+            entry = new Entry(ds.getUrl(), now);
+            entries.put(ds, entry);
+        }
+        return entry;
+    }
+
+    private static boolean equal(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    /**
+     * Forgets everything cached about the given data source.
+     */
+    public synchronized void invalidate(JDBCDataSource ds) {
+        entries.remove(ds);
+    }
+
+    /**
+     * Forgets everything cached about every data source.
+     */
+    public synchronized void invalidateAll() {
+        entries.clear();
+    }
+
+    public synchronized long getTimeToLive() {
+        return timeToLive;
+    }
+
+    /**
+     * Sets how long, in milliseconds, cached metadata stays valid. A time to
+     * live of 0 effectively turns the cache off.
+     */
+    public synchronized void setTimeToLive(long timeToLive) {
+        this.timeToLive = timeToLive;
+    }
+
+    /**
+     * Returns the current time. Tests override this to make entries expire
+     * without waiting.
+     */
+    protected long currentTimeMillis() {
+        return System.currentTimeMillis();
+    }
+}
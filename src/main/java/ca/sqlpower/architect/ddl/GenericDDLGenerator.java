@@ -18,6 +18,8 @@
  */
 package ca.sqlpower.architect.ddl;
 
+import java.io.IOException;
+import java.io.Writer;
 import java.sql.Connection;
 import java.sql.DatabaseMetaData;
 import java.sql.ResultSet;
@@ -26,10 +28,19 @@ import java.sql.Types;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.log4j.Logger;
 
@@ -94,15 +105,49 @@ public class GenericDDLGenerator implements DDLGenerator {
 
 	/**
 	 * This is where each DDL statement gets accumulated while it is
-	 * being generated.
+	 * being generated. It is emptied and reused after each statement.
 	 */
-	private StringBuffer ddl;
+	private StringBuilder ddl;
 
 	/**
 	 * Complete DDL statements (of type DDLStatement) are accumulated in this list.
 	 */
 	private List<DDLStatement> ddlStatements;
 
+	/**
+	 * If not null, complete DDL statements are handed to this handler
+	 * instead of being accumulated in {@link #ddlStatements}.
+	 */
+	private DDLStatementHandler statementHandler;
+
+	/**
+	 * While a table's statements are being generated on a worker thread (see
+	 * {@link #generateInParallel(List)}), this holds the buffer and the
+	 * finished statements of that table. Everything that would otherwise go
+	 * to {@link #ddl} and {@link #ddlStatements} goes here instead.
+	 */
+	private final ThreadLocal<TableOutput> tableOutput = new ThreadLocal<TableOutput>();
+
+	/**
+	 * Models with at least this many tables are generated in parallel, if
+	 * {@link #parallelGeneration} is on and the generator
+	 * {@link #supportsParallelGeneration() supports it}.
+	 */
+	private static final int PARALLEL_TABLE_THRESHOLD = 50;
+
+	/**
+	 * Whether {@link #generateDDLStatements(Collection, DDLStatementHandler)}
+	 * may generate the statements of different tables at the same time.
+	 */
+	private boolean parallelGeneration = true;
+
+	/**
+	 * The threads that generate the statements of large models in parallel,
+	 * shared by every generator. Created the first time it is needed; see
+	 * {@link #getParallelExecutor()}.
+	 */
+	private static ExecutorService parallelExecutor;
+
 	/**
 	 * This is initialized to the System line.separator property.
 	 */
@@ -115,11 +160,21 @@ public class GenericDDLGenerator implements DDLGenerator {
 	protected Map<Integer, GenericTypeDescriptor> typeMap;
 
 	/**
-	 * This variable will be a live, non-null connection to the target
-	 * database (set up by writeDDL) if allowConnection is true.
+	 * A connection to the target database given with {@link #setCon(Connection)}.
+	 * If there is no {@link #targetDatabase} and this is set and
+	 * allowConnection is true, the type map is read from it directly.
 	 */
 	protected Connection con;
 
+	/**
+	 * The database the tables being generated belong to, if allowConnection
+	 * is true and it is a real database rather than the play pen. The type
+	 * map is read from this database's metadata through the
+	 * {@link DatabaseMetaDataCache}, so a connection is only opened the first
+	 * time.
+	 */
+	protected SQLDatabase targetDatabase;
+
 	/**
 	 * As table and relationship creation statements are generated,
 	 * their SQL identifiers are stored in this map (key is name,
@@ -168,9 +223,9 @@ public class GenericDDLGenerator implements DDLGenerator {
     public GenericDDLGenerator(boolean allowConnection) throws SQLException {
         this.allowConnection = allowConnection;
         ddlStatements = new ArrayList<DDLStatement>();
-        ddl = new StringBuffer(500);
+        ddl = new StringBuilder(500);
         println("");
-        topLevelNames = new CaseInsensitiveHashMap();  // for tracking dup table/relationship names
+        topLevelNames = Collections.synchronizedMap(new CaseInsensitiveHashMap());  // for tracking dup table/relationship names
         createTypeMap();
     }
 
@@ -185,7 +240,7 @@ public class GenericDDLGenerator implements DDLGenerator {
         session = architectSwingSession;
         List<DDLStatement> statements = generateDDLStatements(tables);
 
-		ddl = new StringBuffer(4000);
+		ddl = new StringBuilder(4000);
 		writeHeader();
 		writeDDLTransactionBegin();
 
@@ -200,6 +255,55 @@ public class GenericDDLGenerator implements DDLGenerator {
 		return ddl.toString();
 	}
 
+    /**
+     * Writes the script one statement at a time. The header and transaction
+     * statements are still produced by {@link #writeHeader()},
+     * {@link #writeDDLTransactionBegin()} and {@link #writeDDLTransactionEnd()},
+     * and are copied out of the statement buffer before and after the
+     * statements are generated.
+     */
+    public void generateDDLScript(ArchitectSwingSession architectSwingSession, Collection<SQLTable> tables, final Writer out)
+    throws SQLException, SQLObjectException, IOException {
+        session = architectSwingSession;
+
+        ddl.setLength(0);
+        writeHeader();
+        writeDDLTransactionBegin();
+        out.write(ddl.toString());
+
+        final String terminator = getStatementTerminator() + EOL;
+        try {
+            generateDDLStatements(tables, new DDLStatementHandler() {
+                public void handleStatement(DDLStatement statement) {
+                    try {
+                        out.write(statement.getSQLText());
+                        out.write(terminator);
+                    } catch (IOException e) {
+                        throw new ScriptWriteException(e);
+                    }
+                }
+            });
+        } catch (ScriptWriteException e) {
+            throw (IOException) e.getCause();
+        }
+
+        ddl.setLength(0);
+        writeDDLTransactionEnd();
+        out.write(ddl.toString());
+        ddl.setLength(0);
+    }
+
+    /**
+     * Carries an {@link IOException} from the statement handler in
+     * {@link #generateDDLScript(ArchitectSwingSession, Collection, Writer)}
+     * out through the generator methods, which do not declare it.
+     */
+    private static class ScriptWriteException extends RuntimeException {
+        ScriptWriteException(IOException cause) {
+            super(cause);
+        }
+    }
+
 
 	/**
      * Creates a series of SQL DDL statements which will create the given list of
@@ -212,9 +316,23 @@ public class GenericDDLGenerator implements DDLGenerator {
 	 * @see ca.sqlpower.architect.ddl.DDLGenerator#generateDDLStatements(Collection)
 	 */
 	public final List<DDLStatement> generateDDLStatements(Collection<SQLTable> tables) throws SQLException, SQLObjectException {
+	    generateDDLStatements(tables, null);
+	    return ddlStatements;
+	}
+
+	/**
+	 * Generates the same statements as {@link #generateDDLStatements(Collection)},
+	 * handing each one to the given handler as soon as it is complete.
+	 * 
+	 * @param handler Receives the statements. If null, the statements are
+	 * collected in {@link #getDdlStatements()} as usual.
+	 */
+	public final void generateDDLStatements(Collection<SQLTable> tables, DDLStatementHandler handler)
+	throws SQLException, SQLObjectException {
 		ddlStatements = new ArrayList<DDLStatement>();
-		ddl = new StringBuffer(500);
-        topLevelNames = new CaseInsensitiveHashMap();
+		ddl.setLength(0);
+		statementHandler = handler;
+        topLevelNames = Collections.synchronizedMap(new CaseInsensitiveHashMap());
 
         /*
          * topological sort ensures parent tables are created before their
@@ -229,38 +347,249 @@ public class GenericDDLGenerator implements DDLGenerator {
 			if (allowConnection && tableList.size() > 0) {
                 SQLDatabase parentDb = SQLPowerUtils.getAncestor(tableList.get(0), SQLDatabase.class);
                 if (parentDb.isPlayPenDatabase()) {
-                    con = null;
+                    targetDatabase = null;
                 } else {
-                    con = parentDb.getConnection();
+                    targetDatabase = parentDb;
                 }
 			} else {
-				con = null;
+				targetDatabase = null;
 			}
 
 			createTypeMap();
 
-			for (SQLTable t : tableList) {
-
-				addTable(t);
-
-                for (SQLIndex index : t.getIndices()) {
-                   if (index.isPrimaryKeyIndex()) continue;
-                    addIndex(index);
-                }
-			}
+			if (parallelGeneration && supportsParallelGeneration()
+			        && tableList.size() >= PARALLEL_TABLE_THRESHOLD) {
+			    generateInParallel(tableList);
+			} else {
+			    for (SQLTable t : tableList) {
+			        addTableAndIndices(t);
+			    }
 
-            for (SQLTable t : tableList) {
-				writeExportedRelationships(t);
+			    for (SQLTable t : tableList) {
+			        writeExportedRelationships(t);
+			    }
 			}
 
 		} finally {
-			try {
-				if (con != null) con.close();
-			} catch (SQLException ex) {
-				logger.error("Couldn't close connection", ex);
-			}
+		    statementHandler = null;
+		    targetDatabase = null;
 		}
-		return ddlStatements;
+	}
+
+	private void addTableAndIndices(SQLTable t) throws SQLException, SQLObjectException {
+	    addTable(t);
+
+	    for (SQLIndex index : t.getIndices()) {
+	        if (index.isPrimaryKeyIndex()) continue;
+	        addIndex(index);
+	    }
+	}
+
+	/**
+	 * The statements of one table (or one table's relationships) generated
+	 * on a worker thread, waiting to be added to the output in order.
+	 */
+	private static class TableOutput {
+
+	    /**
+	     * The statement buffer for this table. Left holding whatever was
+	     * printed after the last statement once the table is done.
+	     */
+	    private final StringBuilder ddl = new StringBuilder(500);
+
+	    private final List<PendingStatement> statements = new ArrayList<PendingStatement>();
+	}
+
+	private static class PendingStatement {
+	    private final SQLObject object;
+	    private final StatementType type;
+	    private final String sqlText;
+
+	    PendingStatement(SQLObject object, StatementType type, String sqlText) {
+	        this.object = object;
+	        this.type = type;
+	        this.sqlText = sqlText;
+	    }
+	}
+
+	/**
+	 * Generates the statements of one table on a worker thread.
+	 */
+	private abstract class TableTask implements Callable<TableOutput> {
+	    protected final SQLTable table;
+
+	    TableTask(SQLTable table) {
+	        this.table = table;
+	    }
+
+	    public TableOutput call() throws SQLException, SQLObjectException {
+	        TableOutput output = new TableOutput();
+	        tableOutput.set(output);
+	        try {
+	            generate();
+	        } finally {
+	            tableOutput.remove();
+	        }
+	        return output;
+	    }
+
+	    protected abstract void generate() throws SQLException, SQLObjectException;
+	}
+
+	/**
+	 * Generates the table, index and relationship statements of the given
+	 * tables on a pool of threads, one task per table and phase, and adds
+	 * them to the output in the same order the serial loop in
+	 * {@link #generateDDLStatements(Collection, DDLStatementHandler)} does.
+	 * <p>
+	 * Each task prints into its own buffer. When the tasks' statements are
+	 * added in order, any text a task printed after its last statement is
+	 * carried into the first statement of the next task through {@link #ddl},
+	 * exactly as it would have been carried along in the shared buffer.
+	 * <p>
+	 * The physical names of all the objects are set up front on the calling
+	 * thread (see {@link #assignPhysicalNames(List)}) so that the model is
+	 * not modified, and no events are fired, from the worker threads.
+	 */
+	private void generateInParallel(List<SQLTable> tableList) throws SQLException, SQLObjectException {
+	    assignPhysicalNames(tableList);
+
+	    ExecutorService executor = getParallelExecutor();
+	    List<Future<TableOutput>> results = new ArrayList<Future<TableOutput>>(tableList.size() * 2);
+	    try {
+	        for (SQLTable t : tableList) {
+	            results.add(executor.submit(new TableTask(t) {
+	                protected void generate() throws SQLException, SQLObjectException {
+	                    addTableAndIndices(table);
+	                }
+	            }));
+	        }
+	        for (SQLTable t : tableList) {
+	            results.add(executor.submit(new TableTask(t) {
+	                protected void generate() throws SQLException, SQLObjectException {
+	                    writeExportedRelationships(table);
+	                }
+	            }));
+	        }
+
+	        for (Future<TableOutput> result : results) {
+	            TableOutput output;
+	            try {
+	                output = result.get();
+	            } catch (InterruptedException e) {
+	                Thread.currentThread().interrupt();
+	                throw new SQLObjectException("Interrupted while generating DDL", e);
+	            } catch (ExecutionException e) {
+	                Throwable cause = e.getCause();
+	                if (cause instanceof SQLException) {
+	                    throw (SQLException) cause;
+	                } else if (cause instanceof SQLObjectException) {
+	                    throw (SQLObjectException) cause;
+	                } else if (cause instanceof RuntimeException) {
+	                    throw (RuntimeException) cause;
+	                } else if (cause instanceof Error) {
+	                    throw (Error) cause;
+	                }
+	                throw new SQLObjectException("Error generating DDL", cause);
+	            }
+	            for (PendingStatement ps : output.statements) {
+	                addStatement(ps.object, ps.type, ddl.append(ps.sqlText).toString());
+	                ddl.setLength(0);
+	            }
+	            ddl.append(output.ddl);
+	        }
+	    } finally {
+	        // only does anything if a task failed or this thread was interrupted
+	        for (Future<TableOutput> result : results) {
+	            result.cancel(true);
+	        }
+	    }
+	}
+
+	/**
+	 * Returns the executor shared by all generators for parallel generation,
+	 * creating it if necessary. It has one daemon thread per processor, which
+	 * go away when they have been idle for a while.
+	 */
+	private static synchronized ExecutorService getParallelExecutor() {
+	    if (parallelExecutor == null) {
+	        int threads = Runtime.getRuntime().availableProcessors();
+	        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads,
+	                30, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+	                    private int count;
+	                    public synchronized Thread newThread(Runnable r) {
+	                        Thread t = new Thread(r, "DDL generator " + (++count));
+	                        t.setDaemon(true);
+	                        return t;
+	                    }
+	                });
+	        executor.allowCoreThreadTimeOut(true);
+	        parallelExecutor = executor;
+	    }
+	    return parallelExecutor;
+	}
+
+	/**
+	 * Calls {@link #createPhysicalName(Map, SQLObject)} on every object the
+	 * table, index and relationship statements of the given tables will name,
+	 * in the order the serial generation would. Once this is done the
+	 * generator methods only read the names.
+	 */
+	private void assignPhysicalNames(List<SQLTable> tableList) throws SQLObjectException {
+	    for (SQLTable t : tableList) {
+	        createPhysicalName(topLevelNames, t);
+	        Map<String, SQLObject> colNameMap = new HashMap<String, SQLObject>();
+	        for (SQLColumn c : t.getColumns()) {
+	            createPhysicalName(colNameMap, c);
+	        }
+	        SQLIndex pk = t.getPrimaryKeyIndex();
+	        if (pk.getChildCount() > 0) {
+	            createPhysicalName(topLevelNames, pk);
+	        }
+	        for (SQLIndex index : t.getIndices()) {
+	            if (index.isPrimaryKeyIndex()) continue;
+	            createPhysicalName(topLevelNames, index);
+	        }
+	    }
+	    for (SQLTable t : tableList) {
+	        for (SQLRelationship r : t.getExportedKeys()) {
+	            createPhysicalName(topLevelNames, r);
+	            Map<String, SQLObject> colNameMap = new HashMap<String, SQLObject>();
+	            for (ColumnMapping cm : r.getChildren(ColumnMapping.class)) {
+	                createPhysicalName(colNameMap, cm.getFkColumn());
+	                createPhysicalName(colNameMap, cm.getPkColumn());
+	            }
+	        }
+	    }
+	}
+
+	/**
+	 * Returns true if different tables' statements can be generated at the
+	 * same time. This is the case if every method that generates statements
+	 * only reads the generator's own state, writes its SQL through
+	 * {@link #print(String)}, {@link #println(String)} and
+	 * {@link #endStatement(StatementType, SQLObject)}, and only names the
+	 * objects that {@link #assignPhysicalNames(List)} names up front.
+	 * <p>
+	 * Platforms have to opt in by overriding this method, so it is only true
+	 * for the generic platform itself. Platforms whose identifiers or other
+	 * output depend on the order the statements are generated in should
+	 * leave it false.
+	 */
+	protected boolean supportsParallelGeneration() {
+	    return getClass() == GenericDDLGenerator.class;
+	}
+
+	public boolean isParallelGeneration() {
+	    return parallelGeneration;
+	}
+
+	/**
+	 * Sets whether large models are generated on several threads. The
+	 * statements are the same, and in the same order, either way.
+	 */
+	public void setParallelGeneration(boolean parallelGeneration) {
+	    this.parallelGeneration = parallelGeneration;
 	}
 
 	/**
@@ -271,15 +600,39 @@ public class GenericDDLGenerator implements DDLGenerator {
 	 * @param sqlObject the object to which the statement pertains
 	 */
 	public final void endStatement(StatementType type, SQLObject sqlObject) {
+	    StringBuilder buffer = currentBuffer();
 		if (logger.isInfoEnabled()) {
-			logger.info("endStatement: " + ddl.toString());
+			logger.info("endStatement: " + buffer.toString());
 		}
 
-		ddlStatements.add(new DDLStatement(sqlObject, type, ddl.toString(), getStatementTerminator(), getTargetCatalog(), getTargetSchema()));
-		ddl = new StringBuffer(500);
+		TableOutput output = tableOutput.get();
+		if (output != null) {
+		    output.statements.add(new PendingStatement(sqlObject, type, buffer.toString()));
+		} else {
+		    addStatement(sqlObject, type, buffer.toString());
+		}
+		buffer.setLength(0);
 		println("");
 	}
 
+	private void addStatement(SQLObject sqlObject, StatementType type, String sqlText) {
+	    DDLStatement statement = new DDLStatement(sqlObject, type, sqlText, getStatementTerminator(), getTargetCatalog(), getTargetSchema());
+	    if (statementHandler != null) {
+	        statementHandler.handleStatement(statement);
+	    } else {
+	        ddlStatements.add(statement);
+	    }
+	}
+
+	/**
+	 * Returns the buffer the statement being generated on this thread is
+	 * accumulated in.
+	 */
+	private StringBuilder currentBuffer() {
+	    TableOutput output = tableOutput.get();
+	    return output != null ? output.ddl : ddl;
+	}
+
 	public void writeHeader() {
 		println("-- Created by SQLPower Generic DDL Generator "+GENERATOR_VERSION+" --");
 	}
@@ -1067,10 +1420,20 @@ public class GenericDDLGenerator implements DDLGenerator {
 	 * DatabaseMetaData.  Subclasses for specific DB platforms will be
 	 * able to override this implementation with one that uses a
 	 * static, pre-defined type map.
+	 * <p>
+	 * The metadata of the target database comes from the shared
+	 * {@link DatabaseMetaDataCache}, so generators created one after the
+	 * other for the same data source only read it once.
 	 */
 	protected void createTypeMap() throws SQLException {
 		typeMap = new HashMap<Integer, GenericTypeDescriptor>();
-		if (con == null || !allowConnection) {
+		if (allowConnection && targetDatabase != null) {
+		    try {
+		        typeMap.putAll(DatabaseMetaDataCache.getInstance().getTypeMap(targetDatabase));
+		    } catch (SQLObjectException ex) {
+		        throw new SQLException("Couldn't connect to " + targetDatabase.getName(), ex);
+		    }
+		} else if (con == null || !allowConnection) {
 			// Add generic type map
 			typeMap.put(Integer.valueOf(Types.BIGINT), new GenericTypeDescriptor("BIGINT", Types.BIGINT, 38, null, null, DatabaseMetaData.columnNullable, false, false));
 			typeMap.put(Integer.valueOf(Types.BINARY), new GenericTypeDescriptor("BINARY", Types.BINARY, 2000, "0x", null, DatabaseMetaData.columnNullable, true, false));
@@ -1111,11 +1474,11 @@ public class GenericDDLGenerator implements DDLGenerator {
 	}
 
 	protected void println(String text) {
-		ddl.append(text).append(EOL);
+		currentBuffer().append(text).append(EOL);
 	}
 
 	protected void print(String text) {
-		ddl.append(text);
+		currentBuffer().append(text);
 	}
 
 	/**
@@ -1290,6 +1653,14 @@ public class GenericDDLGenerator implements DDLGenerator {
      */
 	protected String createPhysicalName(Map<String, SQLObject> dupCheck, SQLObject so) {
         logger.debug("transform identifier source: " + so.getPhysicalName());
+        if (tableOutput.get() != null) {
+            // on a worker thread, the names were assigned up front by
+            // assignPhysicalNames() and the model must not be changed.
+            if (so.getPhysicalName() != null && !so.getPhysicalName().trim().equals("")) {
+                return getPhysicalName(so);
+            }
+            return getQuotedPhysicalName(toIdentifier(so.getName()));
+        }
         if ((so instanceof SQLTable || so instanceof SQLColumn) &&
                 (so.getPhysicalName() != null && !so.getPhysicalName().trim().equals(""))) {
 		    String physicalName = so.getPhysicalName();
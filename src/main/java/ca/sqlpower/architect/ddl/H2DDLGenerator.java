@@ -76,6 +76,15 @@ public class H2DDLGenerator extends GenericDDLGenerator {
     protected String getPlatformName() {
         return "H2 Database";
     }
+
+    /**
+     * H2 tables are written in one statement from names that are assigned
+     * before generation starts, so large models can be generated in parallel.
+     */
+    @Override
+    protected boolean supportsParallelGeneration() {
+        return true;
+    }
     
     @Override
     public String columnType(SQLColumn c) {
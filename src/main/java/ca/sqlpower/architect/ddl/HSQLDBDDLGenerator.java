@@ -80,6 +80,15 @@ public class HSQLDBDDLGenerator extends GenericDDLGenerator {
     protected String getPlatformName() {
         return "HSQLDB";
     }
+
+    /**
+     * Only the type map and comments differ from the generic platform, so
+     * HSQLDB can be generated in parallel as well.
+     */
+    @Override
+    protected boolean supportsParallelGeneration() {
+        return true;
+    }
     
     @Override
     public String getDeferrabilityClause(SQLRelationship r) {
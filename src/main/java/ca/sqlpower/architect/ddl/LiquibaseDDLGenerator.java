@@ -192,6 +192,15 @@ public class LiquibaseDDLGenerator extends GenericDDLGenerator implements DDLGen
 		}
 	}
 
+	/**
+	 * Returns false because generated change set ids are numbered in the
+	 * order the statements are generated.
+	 */
+	@Override
+	protected boolean supportsParallelGeneration() {
+	    return false;
+	}
+
 	public void writeDDLTransactionBegin() {
 	}
 
@@ -558,6 +558,15 @@ public class MySqlDDLGenerator extends GenericDDLGenerator {
     protected String getPlatformName() {
         return "MySQL";
     }
+
+    /**
+     * The lower casing of identifiers does not depend on the order tables
+     * are generated in, so MySQL can be generated in parallel.
+     */
+    @Override
+    protected boolean supportsParallelGeneration() {
+        return true;
+    }
     
     @Override
     public void addIndex(SQLIndex index) throws SQLObjectException {
@@ -19,12 +19,22 @@ package ca.sqlpower.architect.diff;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.lang.StringUtils;
 import org.apache.log4j.Logger;
@@ -120,6 +130,20 @@ public class CompareSQL implements Monitorable {
 
 	private boolean useUUID;
 
+	/**
+	 * When true, {@link #generateTableDiffs(ArchitectSession)} matches tables
+	 * through hash maps and diffs the matched pairs on a pool of
+	 * {@link #threadCount} worker threads instead of walking the two sorted
+	 * table sets one pair at a time. The resulting list of diffs is the same
+	 * either way.
+	 */
+	private boolean hashJoin;
+
+	/**
+	 * The number of worker threads the hash join engine diffs table pairs on.
+	 */
+	private int threadCount = Runtime.getRuntime().availableProcessors();
+
 	public CompareSQL(
 			Collection<SQLTable> sourceTables,
 			Collection<SQLTable> targetTables, boolean suppressSimilarities) throws ArchitectDiffException {
@@ -178,6 +202,14 @@ public class CompareSQL implements Monitorable {
 		setStarted(true);
 		setFinished(false);
 	    try {
+	        if (hashJoin) {
+	            results.addAll(generateHashedTableDiffs(session));
+	            results.addAll(generateRelationshipDiffs(sourceTableSet, targetTableSet));
+	            if (compareIndex) {
+	                results.addAll(generateIndexDiffs(sourceTableSet, targetTableSet));
+	            }
+	            return results;
+	        }
 			Iterator<SQLTable> sourceIter = sourceTableSet.iterator();
 			Iterator<SQLTable> targetIter = targetTableSet.iterator();
 			SQLTable targetTable;
@@ -340,6 +372,219 @@ public class CompareSQL implements Monitorable {
 		return results;
 	}
 
+	/**
+	 * A source table and the target table it matches. Either side is null
+	 * when the table only exists on the other side.
+	 */
+	private static class TablePair {
+	    private final SQLTable source;
+	    private final SQLTable target;
+
+	    TablePair(SQLTable source, SQLTable target) {
+	        this.source = source;
+	        this.target = target;
+	    }
+
+	    /**
+	     * Returns the table this pair is sorted by. Matched tables compare
+	     * equal to each other, so either side will do.
+	     */
+	    SQLTable getTable() {
+	        return source != null ? source : target;
+	    }
+	}
+
+	/**
+	 * Creates the table and column diffs the same way the sorted walk in
+	 * {@link #generateTableDiffs(ArchitectSession)} does, but matches the
+	 * source and target tables by looking up their keys (see
+	 * {@link #getObjectKey(SQLObject)}) in a hash map, and diffs the matched
+	 * pairs in parallel. Populating the tables and setting their upstream
+	 * types touches the tables' databases and sessions, so that part is still
+	 * done on the calling thread, in the same order as before. The diffs of
+	 * each pair are collected in sorted table order, so the result does not
+	 * depend on which worker finished first.
+	 */
+	private List<DiffChunk<SQLObject>> generateHashedTableDiffs(ArchitectSession session)
+	throws SQLObjectException {
+	    Map<Object, SQLTable> targetsByKey = new HashMap<Object, SQLTable>();
+	    for (SQLTable t : targetTableSet) {
+	        targetsByKey.put(getObjectKey(t), t);
+	    }
+	    List<TablePair> pairs = new ArrayList<TablePair>(sourceTableSet.size() + targetTableSet.size());
+	    for (SQLTable t : sourceTableSet) {
+	        pairs.add(new TablePair(t, targetsByKey.remove(getObjectKey(t))));
+	    }
+	    for (SQLTable t : targetsByKey.values()) {
+	        pairs.add(new TablePair(null, t));
+	    }
+	    Collections.sort(pairs, new Comparator<TablePair>() {
+	        public int compare(TablePair p1, TablePair p2) {
+	            return getObjectComparator().compare(p1.getTable(), p2.getTable());
+	        }
+	    });
+
+	    for (TablePair pair : pairs) {
+	        if (pair.source != null) {
+	            pair.source.populate();
+	        }
+	        if (pair.target != null) {
+	            pair.target.populate();
+	        }
+	    }
+
+	    ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, threadCount), new ThreadFactory() {
+	        private int count;
+	        public synchronized Thread newThread(Runnable r) {
+	            Thread t = new Thread(r, "CompareSQL worker " + (++count));
+	            t.setDaemon(true);
+	            return t;
+	        }
+	    });
+	    try {
+	        List<Future<List<DiffChunk<SQLObject>>>> futures =
+	            new ArrayList<Future<List<DiffChunk<SQLObject>>>>(pairs.size());
+	        for (final TablePair pair : pairs) {
+	            if (isCancelled()) break;
+	            if (session != null) {
+	                if (pair.source != null) {
+	                    ArchitectUtils.setUpstreamTypesInTable(pair.source, session);
+	                }
+	                if (pair.target != null) {
+	                    ArchitectUtils.setUpstreamTypesInTable(pair.target, session);
+	                }
+	            }
+	            if (pair.source != null && pair.target != null) {
+	                futures.add(executor.submit(new Callable<List<DiffChunk<SQLObject>>>() {
+	                    public List<DiffChunk<SQLObject>> call() throws SQLObjectException {
+	                        if (isCancelled()) {
+	                            return Collections.emptyList();
+	                        }
+	                        return generateTablePairDiffs(pair.source, pair.target);
+	                    }
+	                }));
+	            } else {
+	                DiffChunk<SQLObject> chunk;
+	                if (pair.source != null) {
+	                    chunk = new DiffChunk<SQLObject>(pair.source, DiffType.LEFTONLY);
+	                } else {
+	                    chunk = new DiffChunk<SQLObject>(pair.target, DiffType.RIGHTONLY);
+	                }
+	                incProgress(1, pair.source, pair.target);
+	                futures.add(new ResolvedFuture<List<DiffChunk<SQLObject>>>(
+	                        Collections.singletonList(chunk)));
+	            }
+	        }
+
+	        List<DiffChunk<SQLObject>> diffs = new ArrayList<DiffChunk<SQLObject>>();
+	        for (Future<List<DiffChunk<SQLObject>>> future : futures) {
+	            try {
+	                diffs.addAll(future.get());
+	            } catch (InterruptedException e) {
+	                Thread.currentThread().interrupt();
+	                throw new SQLObjectException("Interrupted while comparing tables", e);
+	            } catch (ExecutionException e) {
+	                if (e.getCause() instanceof SQLObjectException) {
+	                    throw (SQLObjectException) e.getCause();
+	                } else if (e.getCause() instanceof RuntimeException) {
+	                    throw (RuntimeException) e.getCause();
+	                }
+	                throw new SQLObjectException("Error comparing tables", e.getCause());
+	            }
+	        }
+	        return diffs;
+	    } finally {
+	        executor.shutdownNow();
+	    }
+	}
+
+	/**
+	 * Creates the diff of a pair of matching tables followed by the diffs of
+	 * their columns. This is the body of the matched case of the sorted walk
+	 * in {@link #generateTableDiffs(ArchitectSession)}, and is safe to call
+	 * from several threads at once as long as the tables are already populated.
+	 */
+	private List<DiffChunk<SQLObject>> generateTablePairDiffs(SQLTable sourceTable, SQLTable targetTable)
+	throws SQLObjectException {
+	    DiffChunk<SQLObject> chunk;
+	    List<PropertyChange> changes = generatePropertyChanges(sourceTable, targetTable);
+	    if (changes.size() > 0) {
+	        if (nameComparator.compare(sourceTable, targetTable) != 0) {
+	            chunk = new DiffChunk<SQLObject>(targetTable, DiffType.NAME_CHANGED);
+	            chunk.setOriginalData(sourceTable);
+	        } else if (!StringUtils.equals(sourceTable.getRemarks(), targetTable.getRemarks())) {
+	            chunk = new DiffChunk<SQLObject>(sourceTable, DiffType.SQL_MODIFIED);
+	        } else {
+	            chunk = new DiffChunk<SQLObject>(sourceTable, DiffType.MODIFIED);
+	        }
+	        for (PropertyChange change : changes) {
+	            chunk.addPropertyChange(change);
+	        }
+	    } else {
+	        chunk = new DiffChunk<SQLObject>(sourceTable, DiffType.SAME);
+	    }
+	    incProgress(1, sourceTable, targetTable);
+	    List<DiffChunk<SQLObject>> columns = generateColumnDiffs(sourceTable, targetTable);
+	    List<DiffChunk<SQLObject>> diffs = new ArrayList<DiffChunk<SQLObject>>(columns.size() + 1);
+	    if (!(chunk.getType() == DiffType.SAME && suppressSimilarities) || columns.size() > 0) {
+	        diffs.add(chunk);
+	        diffs.addAll(columns);
+	    }
+	    return diffs;
+	}
+
+	/**
+	 * A future for a value that is already known, used for the tables that
+	 * only exist on one side so they can be merged with the diffs of the
+	 * matched pairs in order.
+	 */
+	private static class ResolvedFuture<V> implements Future<V> {
+	    private final V value;
+
+	    ResolvedFuture(V value) {
+	        this.value = value;
+	    }
+
+	    public boolean cancel(boolean mayInterruptIfRunning) {
+	        return false;
+	    }
+
+	    public boolean isCancelled() {
+	        return false;
+	    }
+
+	    public boolean isDone() {
+	        return true;
+	    }
+
+	    public V get() {
+	        return value;
+	    }
+
+	    public V get(long timeout, TimeUnit unit) {
+	        return value;
+	    }
+	}
+
+	/**
+	 * Returns a key for the given object that is equal to the key of another
+	 * object exactly when {@link #getObjectComparator()} considers the two
+	 * objects equal: the UUID when comparing by UUID, otherwise the lower case
+	 * physical name (or name, if there is no physical name).
+	 */
+	private Object getObjectKey(SQLObject o) {
+	    if (useUUID) {
+	        return o.getUUID();
+	    }
+	    String name;
+	    if (o.getPhysicalName() == null || o.getPhysicalName().trim().equals("")) {
+	        name = o.getName();
+	    } else {
+	        name = o.getPhysicalName();
+	    }
+	    return name == null ? null : name.toLowerCase(Locale.getDefault());
+	}
+
     private List<DiffChunk<SQLObject>> generateRelationshipDiffs(
 			Collection<SQLTable> sourceTables, Collection<SQLTable> targetTables) throws SQLObjectException {
 		SQLRelationshipComparator relComparator = new SQLRelationshipComparator(useUUID);
@@ -934,4 +1179,33 @@ public class CompareSQL implements Monitorable {
     public void setCompareIndices(boolean compareIndices) {
         this.compareIndex = compareIndices;
     }
+
+    /**
+     * Indicates whether tables are matched by hash lookups and diffed in
+     * parallel rather than by walking the sorted table sets.
+     */
+    public boolean isHashJoin() {
+        return hashJoin;
+    }
+
+    /**
+     * Switches between the sorted walk and the hash join engine for table
+     * diffs. Both produce the same diffs; the hash join engine is faster on
+     * large schemas because the table pairs are diffed in parallel.
+     */
+    public void setHashJoin(boolean hashJoin) {
+        this.hashJoin = hashJoin;
+    }
+
+    public int getThreadCount() {
+        return threadCount;
+    }
+
+    /**
+     * Sets the number of worker threads the hash join engine uses. Defaults
+     * to the number of available processors.
+     */
+    public void setThreadCount(int threadCount) {
+        this.threadCount = threadCount;
+    }
 }
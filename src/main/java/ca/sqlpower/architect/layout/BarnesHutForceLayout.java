@@ -0,0 +1,365 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.architect.layout;
+
+import java.awt.Point;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * A {@link FruchtermanReingoldForceLayout} that approximates the repulsive
+ * forces with the Barnes-Hut algorithm. Each frame, the centres of all the
+ * nodes are put into a quadtree, and a node far enough away from a quadrant
+ * (compared to the quadrant's size, see {@link #THETA}) is repelled by the
+ * quadrant as a whole instead of by every node in it. This brings the cost of
+ * a frame down from the square of the number of nodes to n log n, which makes
+ * auto layout usable on diagrams with thousands of tables.
+ * <p>
+ * Once the tree is built it is only read, so the forces on the nodes can be
+ * calculated on several threads at once; see {@link #setParallel(boolean)}.
+ * The attractive forces along the edges and the movement of the nodes are
+ * the same as in the superclass.
+ */
+public class BarnesHutForceLayout extends FruchtermanReingoldForceLayout {
+
+    /**
+     * A quadrant is treated as a single body when its width divided by its
+     * distance to the node is less than this. Smaller values are more exact
+     * and slower; 0 degenerates into the all pairs calculation.
+     */
+    private static final double THETA = 0.8;
+
+    /**
+     * Quadrants are not split any further than this, so nodes whose centres
+     * are (almost) on top of each other share a leaf instead of recursing
+     * forever.
+     */
+    private static final int MAX_DEPTH = 24;
+
+    /**
+     * Layouts with fewer nodes than this are not worth splitting among
+     * threads.
+     */
+    private static final int PARALLEL_THRESHOLD = 256;
+
+    /**
+     * The threads that calculate forces for all the parallel layouts. They
+     * are daemon threads, so an idle pool does not keep the application
+     * running.
+     */
+    private static ExecutorService forceExecutor;
+
+    /**
+     * The number of threads in {@link #forceExecutor}.
+     */
+    private static final int THREAD_COUNT = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * Whether the forces are calculated on several threads.
+     */
+    private boolean parallel = THREAD_COUNT > 1;
+
+    /**
+     * Adds the repulsive forces to the displacements by way of a quadtree
+     * instead of by checking every pair of nodes. The repulsive force the
+     * superclass uses between two nodes is proportional to the sum of their
+     * sizes, so every quadrant keeps both its node count and its total node
+     * size to be able to stand in for its nodes.
+     */
+    @Override
+    protected void calculateRepulsiveForces(Map<LayoutNode, Point> displacement) {
+        List<LayoutNode> nodes = getNodes();
+        int n = nodes.size();
+        separateCoincidentNodes(nodes);
+
+        final double[] x = new double[n];
+        final double[] y = new double[n];
+        final double[] size = new double[n];
+        double minX = Double.MAX_VALUE;
+        double minY = Double.MAX_VALUE;
+        double maxX = -Double.MAX_VALUE;
+        double maxY = -Double.MAX_VALUE;
+        for (int i = 0; i < n; i++) {
+            LayoutNode node = nodes.get(i);
+            x[i] = node.getX() + node.getWidth() / 2;
+            y[i] = node.getY() + node.getHeight() / 2;
+            size[i] = node.getWidth() + node.getHeight();
+            minX = Math.min(minX, x[i]);
+            minY = Math.min(minY, y[i]);
+            maxX = Math.max(maxX, x[i]);
+            maxY = Math.max(maxY, y[i]);
+        }
+        if (n == 0) return;
+
+        // one unit of slack keeps the nodes on the far edges strictly inside
+        final Quadrant root = new Quadrant(minX, minY, Math.max(maxX - minX, maxY - minY) + 1, 0);
+        for (int i = 0; i < n; i++) {
+            root.insert(i, x, y, size);
+        }
+        root.summarize(x, y, size);
+
+        final double[] forceX = new double[n];
+        final double[] forceY = new double[n];
+        if (parallel && n >= PARALLEL_THRESHOLD) {
+            List<Future<?>> futures = new ArrayList<Future<?>>();
+            int chunk = (n + THREAD_COUNT - 1) / THREAD_COUNT;
+            for (int start = 0; start < n; start += chunk) {
+                final int from = start;
+                final int to = Math.min(n, start + chunk);
+                futures.add(getForceExecutor().submit(new Runnable() {
+                    public void run() {
+                        calculateForces(root, from, to, x, y, size, forceX, forceY);
+                    }
+                }));
+            }
+            try {
+                for (Future<?> f : futures) {
+                    f.get();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            } catch (ExecutionException e) {
+                throw new RuntimeException(e.getCause());
+            }
+        } else {
+            calculateForces(root, 0, n, x, y, size, forceX, forceY);
+        }
+
+        for (int i = 0; i < n; i++) {
+            displacement.get(nodes.get(i)).translate(
+                    (int) Math.round(forceX[i]), (int) Math.round(forceY[i]));
+        }
+    }
+
+    /**
+     * Moves nodes that are at exactly the same location as an earlier node,
+     * the same way the superclass does. Nodes on top of each other would
+     * have no direction to push each other in.
+     */
+    private void separateCoincidentNodes(List<LayoutNode> nodes) {
+        // Point's hash code collides for most small integer coordinates
+        Set<Long> locations = new HashSet<Long>();
+        for (LayoutNode v : nodes) {
+            int x = v.getX();
+            int y = v.getY();
+            int spread = 5;
+            while (!locations.add(((long) x << 32) | (y & 0xffffffffL))) {
+                x = v.getX() + (int) Math.round(Math.random()*spread - spread/2);
+                y = v.getY() + (int) Math.round(Math.random()*spread - spread/2);
+                spread++;
+            }
+            if (x != v.getX() || y != v.getY()) {
+                v.setLocation(x, y);
+            }
+        }
+    }
+
+    /**
+     * Calculates the repulsive force on the nodes from index <tt>from</tt>
+     * (inclusive) to <tt>to</tt> (exclusive), storing the components in
+     * <tt>forceX</tt> and <tt>forceY</tt>. Only the given range of those
+     * arrays is written to, so different ranges can be calculated at once.
+     */
+    private void calculateForces(Quadrant root, int from, int to, double[] x, double[] y, double[] size,
+            double[] forceX, double[] forceY) {
+        double k = getK();
+        double cutoff = 5 * k;
+        double[] force = new double[2];
+        for (int i = from; i < to; i++) {
+            force[0] = 0;
+            force[1] = 0;
+            root.addForce(i, x, y, size, k, cutoff, force);
+            forceX[i] = force[0];
+            forceY[i] = force[1];
+        }
+    }
+
+    /**
+     * A square region of the layout and the nodes whose centres are in it.
+     * A quadrant either has four children or is a leaf with a list of nodes.
+     */
+    private static class Quadrant {
+        private final double minX;
+        private final double minY;
+        private final double width;
+        private final int depth;
+
+        private Quadrant[] children;
+
+        /**
+         * The indices of the nodes in this leaf, or null if this quadrant has
+         * children.
+         */
+        private int[] leafNodes = new int[1];
+        private int leafCount;
+
+        private int count;
+        private double totalSize;
+        private double centreX;
+        private double centreY;
+
+        Quadrant(double minX, double minY, double width, int depth) {
+            this.minX = minX;
+            this.minY = minY;
+            this.width = width;
+            this.depth = depth;
+        }
+
+        void insert(int node, double[] x, double[] y, double[] size) {
+            if (children == null) {
+                if (leafCount == 0 || depth >= MAX_DEPTH) {
+                    if (leafCount == leafNodes.length) {
+                        int[] newLeafNodes = new int[leafCount * 2];
+                        System.arraycopy(leafNodes, 0, newLeafNodes, 0, leafCount);
+                        leafNodes = newLeafNodes;
+                    }
+                    leafNodes[leafCount++] = node;
+                    return;
+                }
+                double half = width / 2;
+                children = new Quadrant[] {
+                        new Quadrant(minX, minY, half, depth + 1),
+                        new Quadrant(minX + half, minY, half, depth + 1),
+                        new Quadrant(minX, minY + half, half, depth + 1),
+                        new Quadrant(minX + half, minY + half, half, depth + 1) };
+                for (int i = 0; i < leafCount; i++) {
+                    childFor(leafNodes[i], x, y).insert(leafNodes[i], x, y, size);
+                }
+                leafNodes = null;
+                leafCount = 0;
+            }
+            childFor(node, x, y).insert(node, x, y, size);
+        }
+
+        private Quadrant childFor(int node, double[] x, double[] y) {
+            double half = width / 2;
+            int index = 0;
+            if (x[node] >= minX + half) index += 1;
+            if (y[node] >= minY + half) index += 2;
+            return children[index];
+        }
+
+        /**
+         * Calculates the node count, total size and centre of every quadrant
+         * from the bottom up. Has to be called once all the nodes are in.
+         */
+        void summarize(double[] x, double[] y, double[] size) {
+            double sumX = 0;
+            double sumY = 0;
+            if (children == null) {
+                for (int i = 0; i < leafCount; i++) {
+                    int node = leafNodes[i];
+                    sumX += x[node];
+                    sumY += y[node];
+                    totalSize += size[node];
+                }
+                count = leafCount;
+            } else {
+                for (Quadrant child : children) {
+                    child.summarize(x, y, size);
+                    sumX += child.centreX * child.count;
+                    sumY += child.centreY * child.count;
+                    totalSize += child.totalSize;
+                    count += child.count;
+                }
+            }
+            if (count > 0) {
+                centreX = sumX / count;
+                centreY = sumY / count;
+            }
+        }
+
+        /**
+         * Adds the force this quadrant's nodes push the given node with to
+         * <tt>force</tt>. Between two single nodes this is the same force as
+         * {@link FruchtermanReingoldForceLayout#repulsiveForce(double, LayoutNode, LayoutNode, double)}.
+         */
+        void addForce(int node, double[] x, double[] y, double[] size, double k, double cutoff, double[] force) {
+            if (count == 0) return;
+            if (children == null) {
+                for (int i = 0; i < leafCount; i++) {
+                    int other = leafNodes[i];
+                    if (other != node) {
+                        addPairForce(x[node] - x[other], y[node] - y[other],
+                                size[node] + size[other], k, cutoff, force);
+                    }
+                }
+                return;
+            }
+            double dx = x[node] - centreX;
+            double dy = y[node] - centreY;
+            double distance = Math.sqrt(dx * dx + dy * dy);
+            if (distance > 0 && width / distance < THETA && !contains(x[node], y[node])) {
+                addPairForce(dx, dy, size[node] * count + totalSize, k, cutoff, force);
+            } else {
+                for (Quadrant child : children) {
+                    child.addForce(node, x, y, size, k, cutoff, force);
+                }
+            }
+        }
+
+        private boolean contains(double px, double py) {
+            return px >= minX && px < minX + width && py >= minY && py < minY + width;
+        }
+
+        private static void addPairForce(double dx, double dy, double sizes, double k, double cutoff, double[] force) {
+            double distance = Math.sqrt(dx * dx + dy * dy);
+            if (distance == 0 || distance >= cutoff) return;
+            double magnitude = 0.1 * sizes * (k * k) / (distance * distance);
+            force[0] += dx / distance * magnitude;
+            force[1] += dy / distance * magnitude;
+        }
+    }
+
+    private static synchronized ExecutorService getForceExecutor() {
+        if (forceExecutor == null) {
+            forceExecutor = Executors.newFixedThreadPool(THREAD_COUNT, new ThreadFactory() {
+                private int count;
+                public synchronized Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "Layout force worker " + (++count));
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+        }
+        return forceExecutor;
+    }
+
+    public boolean isParallel() {
+        return parallel;
+    }
+
+    /**
+     * Sets whether the forces on large layouts are calculated on several
+     * threads. Defaults to true when there is more than one processor.
+     */
+    public void setParallel(boolean parallel) {
+        this.parallel = parallel;
+    }
+}
@@ -24,6 +24,7 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.Map;
 
 import org.apache.log4j.Logger;
 
@@ -145,29 +146,8 @@ public class FruchtermanReingoldForceLayout extends AbstractLayout {
 		}
 		// Calculate repulsive forces
 		if (nodes != null && !isDone()) {
-			for (int ii = 0; ii < nodes.size(); ii++) {
-				LayoutNode v = nodes.get(ii);
-				Point disp = displacement.get(v);
-				for (int jj = 0; jj < nodes.size(); jj++) {
-					LayoutNode u = nodes.get(jj);
-					if (u == v) continue;
-                    
-					while (v.getLocation().equals(u.getLocation())) {
-					    v.setLocation((int) Math.round(Math.random()*5-3),
-					                  (int) Math.round(Math.random()*5-3));
-					}
-					
-					Point delta = displacementBetween(u, v);
-					
-					if (delta.distance(0,0) < 5*k) {
-					    disp.translate(
-					      (int) Math.round(delta.x / magnitude(delta) * repulsiveForce(magnitude(delta), u, v, k)),
-					      (int) Math.round(delta.y / magnitude(delta) * repulsiveForce(magnitude(delta), u, v, k)));
-					}
+		    calculateRepulsiveForces(displacement);
 
-				}
-
-			}
 			// calculate Attractive force
 
 			for (LayoutEdge e : edges) {
@@ -234,6 +214,39 @@ public class FruchtermanReingoldForceLayout extends AbstractLayout {
         frameNum++;
 	}
 
+    /**
+     * Adds the repulsive force every node feels from every other node to the
+     * node's displacement for this frame. This checks every pair of nodes, so
+     * it takes time proportional to the square of the number of nodes.
+     * 
+     * @param displacement The displacement of each node in this frame.
+     */
+    protected void calculateRepulsiveForces(Map<LayoutNode, Point> displacement) {
+		for (int ii = 0; ii < nodes.size(); ii++) {
+			LayoutNode v = nodes.get(ii);
+			Point disp = displacement.get(v);
+			for (int jj = 0; jj < nodes.size(); jj++) {
+				LayoutNode u = nodes.get(jj);
+				if (u == v) continue;
+                    
+				while (v.getLocation().equals(u.getLocation())) {
+				    v.setLocation((int) Math.round(Math.random()*5-3),
+				                  (int) Math.round(Math.random()*5-3));
+				}
+				
+				Point delta = displacementBetween(u, v);
+				
+				if (delta.distance(0,0) < 5*k) {
+				    disp.translate(
+				      (int) Math.round(delta.x / magnitude(delta) * repulsiveForce(magnitude(delta), u, v, k)),
+				      (int) Math.round(delta.y / magnitude(delta) * repulsiveForce(magnitude(delta), u, v, k)));
+				}
+
+			}
+
+		}
+    }
+
     private Point displacementBetween(LayoutNode u, LayoutNode v) {
         Point dist = null;
      
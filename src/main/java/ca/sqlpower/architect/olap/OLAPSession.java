@@ -63,6 +63,12 @@ public class OLAPSession extends OLAPObject {
      * name change or gets removed.
      */
     private final SchemaWatcher schemaWatcher;
+
+    /**
+     * The tables that describe the columns of the views and joins in this
+     * session's schema.
+     */
+    private final RelationTableCache relationTableCache;
     
     /**
      * Creates the OLAP Session for the given schema. That schema must
@@ -81,6 +87,7 @@ public class OLAPSession extends OLAPObject {
         schema.setParent(this);
         this.schema = schema;
         schemaWatcher = new SchemaWatcher(schema);
+        relationTableCache = new RelationTableCache(schema);
     }
 
     /**
@@ -114,6 +121,7 @@ public class OLAPSession extends OLAPObject {
     public void setDatabase(SQLDatabase database) {
         SQLDatabase oldDB = this.database;
         this.database = database;
+        relationTableCache.clear();
         firePropertyChange("database", oldDB, database);
     }
     
@@ -124,6 +132,15 @@ public class OLAPSession extends OLAPObject {
     public Schema getSchema() {
         return schema;
     }
+
+    /**
+     * Returns the cache of tables {@link OLAPUtil} uses to describe the
+     * columns of views and joins in this session's schema.
+     */
+    @NonProperty
+    public RelationTableCache getRelationTableCache() {
+        return relationTableCache;
+    }
     
     public boolean allowsChildren() {
         return true;
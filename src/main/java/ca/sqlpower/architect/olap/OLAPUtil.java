@@ -20,6 +20,7 @@
 package ca.sqlpower.architect.olap;
 
 import java.sql.Connection;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
@@ -222,7 +223,7 @@ public class OLAPUtil {
             relation = owningCube.getFact();
         }
 
-        return tableForRelationOrJoin(database, relation);
+        return tableForRelationOrJoin(session, database, relation);
     }
     
     /**
@@ -240,12 +241,13 @@ public class OLAPUtil {
         SQLDatabase database = session.getDatabase();
         
         RelationOrJoin relation = cube.getFact();
-        return tableForRelationOrJoin(database, relation);
+        return tableForRelationOrJoin(session, database, relation);
     }
     
     /**
      * Helper method to find the SQLTable that a RelationOrJoin represents.
      * 
+     * @param session The session whose cache holds the tables of views and joins.
      * @param database The database to search for the table in.
      * @param relationOrJoin The RelationOrJoin identifying the table.
      * @return The SQLTable that the given relation represents, or null if non
@@ -253,7 +255,8 @@ public class OLAPUtil {
      * @throws SQLObjectException
      *             if populating the necessary SQLObjects fails
      */
-    private static SQLTable tableForRelationOrJoin(SQLDatabase database, RelationOrJoin relationOrJoin) throws SQLObjectException {
+    private static SQLTable tableForRelationOrJoin(OLAPSession session, SQLDatabase database, 
+            RelationOrJoin relationOrJoin) throws SQLObjectException {
         if (relationOrJoin == null) {
             return null;
         } else if (relationOrJoin instanceof Table) {
@@ -263,62 +266,121 @@ public class OLAPUtil {
                 return null;
             }
             String sql = ((View) relationOrJoin).getSelects().get(0).getText(); //TODO: Handle having multiple selects in one relation.
-            return getSQLTableFromSQLString(database, sql);
+            return getCachedSQLTable(session, database, sql);
         } else if (relationOrJoin instanceof InlineTable) {
             throw new UnsupportedOperationException("Inline tables not implemented yet");
         } else if (relationOrJoin instanceof Join) {
             Join join = (Join) relationOrJoin;
-            return getSQLTableFromSQLString(database, generateSQLFromJoin(join));
+            return getCachedSQLTable(session, database, generateSQLFromJoin(join));
         } else {
             throw new IllegalStateException("Can't produce SQLTable for unknown Relation type " +
                     relationOrJoin.getClass().getName());
         }
     }
 
-    private static SQLTable getSQLTableFromSQLString(SQLDatabase database, String sql) throws SQLObjectException {
+    /**
+     * Returns the table describing the result of the given query, from the
+     * session's {@link RelationTableCache} if it has been described before.
+     */
+    private static SQLTable getCachedSQLTable(OLAPSession session, SQLDatabase database, String sql) 
+    throws SQLObjectException {
+        RelationTableCache cache = session.getRelationTableCache();
+        SQLTable table = cache.get(database, sql);
+        if (table == null) {
+            table = getSQLTableFromSQLString(database, sql);
+            cache.put(database, sql, table);
+        }
+        return table;
+    }
+
+    /**
+     * Creates a table whose columns describe the result of the given query,
+     * without fetching any of its rows. The columns are read from the
+     * metadata of a prepared statement if the driver can describe one.
+     * Otherwise the query is wrapped in one that cannot return rows, and as
+     * a last resort the query is run with a row limit of one.
+     */
+    static SQLTable getSQLTableFromSQLString(SQLDatabase database, String sql) throws SQLObjectException {
         Connection con = null;
-        Statement stmt = null;
-        ResultSet rs = null;
         try {
             con = database.getConnection();
-            stmt = con.createStatement();
-            stmt.setMaxRows(0);
-            rs = stmt.executeQuery(sql);
-            SQLTable table = new SQLTable(database, true);
-            ResultSetMetaData rsmd = rs.getMetaData();
-            
-            for (int i = 1; i <= rsmd.getColumnCount(); i++) {
-                SQLColumn column = new SQLColumn(table, 
-                        rsmd.getColumnLabel(i), rsmd.getColumnType(i), 
-                        rsmd.getPrecision(i), rsmd.getScale(i));
-                table.addColumn(column);
+            PreparedStatement ps = null;
+            try {
+                ps = con.prepareStatement(sql);
+                ResultSetMetaData rsmd = ps.getMetaData();
+                if (rsmd != null && rsmd.getColumnCount() > 0) {
+                    return createTableFromMetaData(database, rsmd);
+                }
+            } catch (SQLException e) {
+                logger.debug("Could not describe " + sql + " without running it", e);
+            } finally {
+                closeStatement(ps);
             }
             
-            return table;
+            try {
+                return getSQLTableFromQuery(database, con, 
+                        "SELECT * FROM (" + sql + ") metadata_query WHERE 1=0", 0);
+            } catch (SQLException e) {
+                logger.debug("Could not describe " + sql + " by wrapping it", e);
+            }
+            return getSQLTableFromQuery(database, con, sql, 1);
         } catch (SQLException e) {
             logger.error("Running the statement " + sql + " on the database " + database.getName() + " caused an exception.", e);
             throw new RuntimeException("Creating a view on the database " + database.getName() + " caused an exception.", e);
         } finally {
-            if (rs != null) {
+            if (con != null) {
                 try {
-                    rs.close();
+                    con.close();
                 } catch (SQLException e) {
-                    logger.error("Exception while trying to close a result set used to create a view's table.", e);
+                    logger.error("Exception while trying to close a connection used to create a view's table.", e);
                 }
             }
-            if (stmt != null) {
+        }
+    }
+
+    /**
+     * Runs the given query, fetching at most the given number of rows (0
+     * for no limit), and creates a table from its result set's metadata.
+     */
+    private static SQLTable getSQLTableFromQuery(SQLDatabase database, Connection con, String sql, int maxRows) 
+    throws SQLException, SQLObjectException {
+        Statement stmt = null;
+        ResultSet rs = null;
+        try {
+            stmt = con.createStatement();
+            stmt.setMaxRows(maxRows);
+            rs = stmt.executeQuery(sql);
+            return createTableFromMetaData(database, rs.getMetaData());
+        } finally {
+            if (rs != null) {
                 try {
-                    stmt.close();
+                    rs.close();
                 } catch (SQLException e) {
-                    logger.error("Exception while trying to close a statement used to create a view's table.", e);
+                    logger.error("Exception while trying to close a result set used to create a view's table.", e);
                 }
             }
-            if (con != null) {
-                try {
-                    con.close();
-                } catch (SQLException e) {
-                    logger.error("Exception while trying to close a connection used to create a view's table.", e);
-                }
+            closeStatement(stmt);
+        }
+    }
+
+    private static SQLTable createTableFromMetaData(SQLDatabase database, ResultSetMetaData rsmd) 
+    throws SQLException, SQLObjectException {
+        SQLTable table = new SQLTable(database, true);
+        for (int i = 1; i <= rsmd.getColumnCount(); i++) {
+            SQLColumn column = new SQLColumn(table, 
+                    rsmd.getColumnLabel(i), rsmd.getColumnType(i), 
+                    rsmd.getPrecision(i), rsmd.getScale(i));
+            table.addColumn(column);
+        }
+        return table;
+    }
+
+    private static void closeStatement(Statement stmt) {
+        if (stmt != null) {
+            try {
+                stmt.close();
+            } catch (SQLException e) {
+                logger.error("Exception while trying to close a statement used to create a view's table.", e);
             }
         }
     }
@@ -0,0 +1,129 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.architect.olap;
+
+import java.beans.PropertyChangeEvent;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+
+import ca.sqlpower.architect.olap.MondrianModel.RelationOrJoin;
+import ca.sqlpower.architect.olap.MondrianModel.SQL;
+import ca.sqlpower.architect.olap.MondrianModel.Schema;
+import ca.sqlpower.object.AbstractSPListener;
+import ca.sqlpower.object.SPChildEvent;
+import ca.sqlpower.object.SPObject;
+import ca.sqlpower.sqlobject.SQLDatabase;
+import ca.sqlpower.sqlobject.SQLTable;
+import ca.sqlpower.util.SQLPowerUtils;
+
+/**
+ * Remembers the tables {@link OLAPUtil} builds to describe the columns of
+ * views and joins, so the database only has to describe a given query once.
+ * Tables are kept by database and SQL text.
+ * <p>
+ * Each {@link OLAPSession} has one of these watching its schema. The cache
+ * is emptied whenever a relation or join in the schema, or the SQL of a
+ * view, is added, removed or changed, and when the session switches to a
+ * different database.
+ */
+public class RelationTableCache extends AbstractSPListener {
+
+    private static final Logger logger = Logger.getLogger(RelationTableCache.class);
+
+    /**
+     * The cached tables, by database and then by SQL text.
+     */
+    private final Map<SQLDatabase, Map<String, SQLTable>> tables = 
+        new IdentityHashMap<SQLDatabase, Map<String, SQLTable>>();
+
+    /**
+     * Creates a cache that is emptied when the relations in the given schema
+     * change.
+     */
+    public RelationTableCache(Schema schema) {
+        SQLPowerUtils.listenToHierarchy(schema, this);
+    }
+
+    /**
+     * Returns the table that was cached for the given query on the given
+     * database, or null if there is none.
+     */
+    public synchronized SQLTable get(SQLDatabase database, String sql) {
+        Map<String, SQLTable> databaseTables = tables.get(database);
+        return databaseTables == null ? null : databaseTables.get(sql);
+    }
+
+    /**
+     * Caches the table that describes the result of the given query on the
+     * given database.
+     */
+    public synchronized void put(SQLDatabase database, String sql, SQLTable table) {
+        Map<String, SQLTable> databaseTables = tables.get(database);
+        if (databaseTables == null) {
+            databaseTables = new HashMap<String, SQLTable>();
+            tables.put(database, databaseTables);
+        }
+        databaseTables.put(sql, table);
+    }
+
+    /**
+     * Forgets all of the cached tables.
+     */
+    public synchronized void clear() {
+        if (!tables.isEmpty()) {
+            logger.debug("Clearing cached relation tables"); //$NON-NLS-1$
+        }
+        tables.clear();
+    }
+
+    /**
+     * Returns true if a change to the given object can change the SQL of a
+     * relation.
+     */
+    private static boolean isRelationPart(SPObject obj) {
+        return obj instanceof RelationOrJoin || obj instanceof SQL;
+    }
+
+    @Override
+    public void childAdded(SPChildEvent e) {
+        SQLPowerUtils.listenToHierarchy(e.getChild(), this);
+        if (isRelationPart(e.getSource()) || isRelationPart(e.getChild())) {
+            clear();
+        }
+    }
+
+    @Override
+    public void childRemoved(SPChildEvent e) {
+        SQLPowerUtils.unlistenToHierarchy(e.getChild(), this);
+        if (isRelationPart(e.getSource()) || isRelationPart(e.getChild())) {
+            clear();
+        }
+    }
+
+    @Override
+    public void propertyChanged(PropertyChangeEvent evt) {
+        if (isRelationPart((SPObject) evt.getSource())) {
+            clear();
+        }
+    }
+}
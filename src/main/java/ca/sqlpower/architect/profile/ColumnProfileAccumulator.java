@@ -0,0 +1,550 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.architect.profile;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Collects the running statistics for one column while the rows of its table
+ * are streamed past. All of the aggregates are kept in primitive fields, so
+ * updating an accumulator does not allocate anything except when a new value
+ * has to be tracked as a top N candidate. Whole number and floating point
+ * columns can be fed through {@link #add(long)} and {@link #add(double)},
+ * which don't box the value either.
+ * <p>
+ * Which statistics are gathered is decided by the {@link ProfileSettings}
+ * given at construction time; the work for statistics that are turned off is
+ * skipped entirely.
+ * <p>
+ * In approximate mode, distinct values are counted with a {@link HyperLogLog}
+ * instead of an exact {@link DistinctValueCounter}, so the memory used no
+ * longer grows with the number of distinct values, and the median of numeric
+ * columns is estimated with a {@link TDigest}.
+ * <p>
+ * Accumulators for the same column can be combined with
+ * {@link #merge(ColumnProfileAccumulator)}, which allows a table to be split
+ * into several row ranges that are profiled independently.
+ */
+class ColumnProfileAccumulator {
+
+    /**
+     * How many candidate values to track for each top value that is reported.
+     * Tracking more candidates than are reported makes the reported top N
+     * exact except on very flat distributions.
+     */
+    static final int TOP_N_CANDIDATE_FACTOR = 10;
+
+    private final boolean findingLengths;
+    private final boolean findingMinMax;
+
+    private long rowCount;
+    private long nullCount;
+
+    private long numericCount;
+    private double numericSum;
+
+    private long lengthSum;
+    private int minLength = Integer.MAX_VALUE;
+    private int maxLength = 0;
+
+    private Comparable minValue;
+    private Comparable maxValue;
+
+    /**
+     * The range of the values given to {@link #add(long)} since the last call
+     * to {@link #foldPrimitiveRange()}. Only meaningful if {@link #hasLongRange}.
+     */
+    private long minLong;
+    private long maxLong;
+    private boolean hasLongRange;
+
+    /**
+     * The range of the values given to {@link #add(double)} since the last
+     * call to {@link #foldPrimitiveRange()}. Only meaningful if
+     * {@link #hasDoubleRange}.
+     */
+    private double minDouble;
+    private double maxDouble;
+    private boolean hasDoubleRange;
+
+    /**
+     * Null when distinct counts are not wanted or when in approximate mode.
+     */
+    private final DistinctValueCounter distinctValues;
+
+    /**
+     * Null when distinct counts are not wanted or when not in approximate
+     * mode.
+     */
+    private final HyperLogLog approximateDistinctValues;
+
+    /**
+     * Null unless averages are wanted in approximate mode.
+     */
+    private final TDigest numericValues;
+
+    /**
+     * Null when top N values are not wanted.
+     */
+    private final TopNValueCounter topValues;
+
+    ColumnProfileAccumulator(ProfileSettings settings) {
+        findingLengths = settings.isFindingMinLength() || settings.isFindingMaxLength()
+                || settings.isFindingAvgLength();
+        findingMinMax = settings.isFindingMin() || settings.isFindingMax();
+        boolean approximate = settings.isApproximate();
+        distinctValues = settings.isFindingDistinctCount() && !approximate ? new DistinctValueCounter() : null;
+        approximateDistinctValues = settings.isFindingDistinctCount() && approximate ? new HyperLogLog() : null;
+        numericValues = settings.isFindingAvg() && approximate ? new TDigest() : null;
+        topValues = settings.isFindingTopTen() ?
+                new TopNValueCounter(Math.max(1, settings.getTopNCount() * TOP_N_CANDIDATE_FACTOR)) : null;
+    }
+
+    /**
+     * Updates the statistics with the next value from this column.
+     */
+    @SuppressWarnings("unchecked")
+    void add(Object val) {
+        rowCount++;
+        if (topValues != null) {
+            topValues.offer(val);
+        }
+        if (val == null) {
+            nullCount++;
+            return;
+        }
+        if (distinctValues != null) {
+            distinctValues.offer(val);
+        }
+        if (approximateDistinctValues != null) {
+            approximateDistinctValues.offer(val);
+        }
+        if (val instanceof Number) {
+            double d = ((Number) val).doubleValue();
+            numericCount++;
+            numericSum += d;
+            if (numericValues != null) {
+                numericValues.add(d);
+            }
+        }
+        if (findingLengths) {
+            addLength((val instanceof CharSequence) ?
+                    ((CharSequence) val).length() : String.valueOf(val).length());
+        }
+        if (findingMinMax && val instanceof Comparable) {
+            Comparable cval = (Comparable) val;
+            if (minValue == null || cval.compareTo(minValue) < 0) {
+                minValue = cval;
+            }
+            if (maxValue == null || cval.compareTo(maxValue) > 0) {
+                maxValue = cval;
+            }
+        }
+    }
+
+    /**
+     * Updates the statistics with the next value from a whole number column.
+     * This gives the same results as adding the value as a Long, without
+     * boxing it.
+     */
+    void add(long val) {
+        rowCount++;
+        if (topValues != null) {
+            topValues.offer(val);
+        }
+        if (distinctValues != null || approximateDistinctValues != null) {
+            long hash = DistinctValueCounter.hash64(val);
+            if (distinctValues != null) {
+                distinctValues.offerHash(hash);
+            }
+            if (approximateDistinctValues != null) {
+                approximateDistinctValues.offerHash(hash);
+            }
+        }
+        numericCount++;
+        numericSum += val;
+        if (numericValues != null) {
+            numericValues.add(val);
+        }
+        if (findingLengths) {
+            addLength(decimalLength(val));
+        }
+        if (findingMinMax) {
+            if (!hasLongRange || val < minLong) minLong = val;
+            if (!hasLongRange || val > maxLong) maxLong = val;
+            hasLongRange = true;
+        }
+    }
+
+    /**
+     * Updates the statistics with the next value from a floating point
+     * column. This gives the same results as adding the value as a Double,
+     * without boxing it.
+     */
+    void add(double val) {
+        rowCount++;
+        if (topValues != null) {
+            topValues.offer(val);
+        }
+        if (distinctValues != null || approximateDistinctValues != null) {
+            long hash = DistinctValueCounter.hash64(val);
+            if (distinctValues != null) {
+                distinctValues.offerHash(hash);
+            }
+            if (approximateDistinctValues != null) {
+                approximateDistinctValues.offerHash(hash);
+            }
+        }
+        numericCount++;
+        numericSum += val;
+        if (numericValues != null) {
+            numericValues.add(val);
+        }
+        if (findingLengths) {
+            // there is no cheap way to find the length of a double's string form
+            addLength(String.valueOf(val).length());
+        }
+        if (findingMinMax) {
+            if (!hasDoubleRange || Double.compare(val, minDouble) < 0) minDouble = val;
+            if (!hasDoubleRange || Double.compare(val, maxDouble) > 0) maxDouble = val;
+            hasDoubleRange = true;
+        }
+    }
+
+    private void addLength(int length) {
+        lengthSum += length;
+        if (length < minLength) minLength = length;
+        if (length > maxLength) maxLength = length;
+    }
+
+    /**
+     * Returns the length of the given number written out in decimal, the same
+     * as <code>String.valueOf(val).length()</code>.
+     */
+    static int decimalLength(long val) {
+        if (val == Long.MIN_VALUE) {
+            return 20;
+        }
+        int length = 1;
+        if (val < 0) {
+            length++;
+            val = -val;
+        }
+        while (val >= 10) {
+            val /= 10;
+            length++;
+        }
+        return length;
+    }
+
+    /**
+     * Moves the minimum and maximum of the values added as primitives into
+     * {@link #minValue} and {@link #maxValue}, boxing them once.
+     */
+    private void foldPrimitiveRange() {
+        if (hasLongRange) {
+            foldRange(Long.valueOf(minLong), Long.valueOf(maxLong));
+            hasLongRange = false;
+        }
+        if (hasDoubleRange) {
+            foldRange(Double.valueOf(minDouble), Double.valueOf(maxDouble));
+            hasDoubleRange = false;
+        }
+    }
+
+    private void foldRange(Comparable min, Comparable max) {
+        if (minValue == null || compare(min, minValue) < 0) {
+            minValue = min;
+        }
+        if (maxValue == null || compare(max, maxValue) > 0) {
+            maxValue = max;
+        }
+    }
+
+    /**
+     * Combines the statistics collected by another accumulator for the same
+     * column into this one.
+     */
+    @SuppressWarnings("unchecked")
+    void merge(ColumnProfileAccumulator other) {
+        foldPrimitiveRange();
+        other.foldPrimitiveRange();
+        rowCount += other.rowCount;
+        nullCount += other.nullCount;
+        numericCount += other.numericCount;
+        numericSum += other.numericSum;
+        lengthSum += other.lengthSum;
+        minLength = Math.min(minLength, other.minLength);
+        maxLength = Math.max(maxLength, other.maxLength);
+        if (other.minValue != null && (minValue == null || other.minValue.compareTo(minValue) < 0)) {
+            minValue = other.minValue;
+        }
+        if (other.maxValue != null && (maxValue == null || other.maxValue.compareTo(maxValue) > 0)) {
+            maxValue = other.maxValue;
+        }
+        if (distinctValues != null && other.distinctValues != null) {
+            distinctValues.merge(other.distinctValues);
+        }
+        if (approximateDistinctValues != null && other.approximateDistinctValues != null) {
+            approximateDistinctValues.merge(other.approximateDistinctValues);
+        }
+        if (numericValues != null && other.numericValues != null) {
+            numericValues.merge(other.numericValues);
+        }
+        if (topValues != null && other.topValues != null) {
+            topValues.merge(other.topValues);
+        }
+    }
+
+    /**
+     * Copies the accumulated statistics into the given column profile result.
+     * The result's parent table profile result must already have its row
+     * count set, because the top N value percentages are based on it.
+     */
+    void populate(ColumnProfileResult cpr, int topNCount) {
+        foldPrimitiveRange();
+        long nonNullCount = rowCount - nullCount;
+        cpr.setNullCount((int) nullCount);
+        if (distinctValues != null) {
+            cpr.setDistinctValueCount(distinctValues.getCount());
+        }
+        if (approximateDistinctValues != null) {
+            cpr.setDistinctValueCount((int) Math.min(nonNullCount, approximateDistinctValues.getEstimate()));
+            cpr.setEstimate(true);
+            cpr.setErrorBound(2 * approximateDistinctValues.getRelativeError());
+        }
+        if (numericValues != null && numericValues.getCount() > 0) {
+            cpr.setMedianValue(numericValues.quantile(0.5));
+            cpr.setEstimate(true);
+        }
+        cpr.setMinValue(minValue);
+        cpr.setMaxValue(maxValue);
+        if (numericCount > 0) {
+            cpr.setAvgValue(numericSum / numericCount);
+        }
+        if (nonNullCount > 0 && findingLengths) {
+            cpr.setMinLength(minLength);
+            cpr.setMaxLength(maxLength);
+            cpr.setAvgLength(lengthSum / (double) nonNullCount);
+        }
+        if (topValues != null) {
+            long sumOfTopNCount = 0;
+            for (TopNValueCounter.ValueCount vc : topValues.getTopN(topNCount)) {
+                cpr.addValueCount(vc.getValue(), (int) vc.getCount());
+                sumOfTopNCount += vc.getCount();
+            }
+            cpr.addValueCount(ColumnValueCount.OTHER_VALUE_OBJECT, (int) (rowCount - sumOfTopNCount));
+        }
+    }
+
+    /**
+     * Combines the statistics of an earlier profile of this column with the
+     * statistics accumulated from the rows that have been added to the table
+     * since, and stores the result in the given column profile result. The
+     * result's parent table profile result must already have its row count
+     * set to the combined row count.
+     * <p>
+     * Null counts, minimums, maximums and averages combine exactly. The
+     * earlier profile only kept its distinct count and its top N values, not
+     * the values themselves, so unless every added value is known to be new
+     * the combined distinct count is an upper bound, and values that were not
+     * in the earlier top N are assumed not to have occurred before. In both
+     * cases the result is marked as an estimate with an error bound that
+     * covers the worst case. The median can't be combined and is left out.
+     * 
+     * @param previous
+     *            The earlier profile of this column.
+     * @param previousRowCount
+     *            The row count of the table in the earlier profile.
+     * @param allValuesNew
+     *            True if none of the values added to this accumulator can
+     *            have occurred in the earlier rows, such as for an increasing
+     *            key column.
+     * @param jdbcType
+     *            The JDBC type of the column. The earlier and the new values
+     *            are both converted to the type
+     *            {@link IncrementalProfileCreator#toColumnValue(Object, int)}
+     *            gives for it before they are compared or counted, since
+     *            values from a reloaded project have lost their type.
+     * @throws IllegalArgumentException
+     *             if a value of the earlier profile can't be read as the
+     *             column's type.
+     */
+    @SuppressWarnings("unchecked")
+    void populateMerged(ColumnProfileResult cpr, ColumnProfileResult previous, int previousRowCount,
+            boolean allValuesNew, int topNCount, int jdbcType) {
+        foldPrimitiveRange();
+        long nonNullCount = rowCount - nullCount;
+        long previousNonNullCount = previousRowCount - previous.getNullCount();
+        long totalRowCount = previousRowCount + rowCount;
+        boolean estimate = previous.isEstimate();
+        double errorBound = previous.getErrorBound();
+
+        cpr.setNullCount((int) (previous.getNullCount() + nullCount));
+
+        if (distinctValues != null || approximateDistinctValues != null) {
+            long newDistinctCount;
+            if (distinctValues != null) {
+                newDistinctCount = distinctValues.getCount();
+            } else {
+                newDistinctCount = approximateDistinctValues.getEstimate();
+                estimate = true;
+                errorBound = Math.max(errorBound, 2 * approximateDistinctValues.getRelativeError());
+            }
+            long previousDistinctCount = previous.getDistinctValueCount();
+            long distinctCount = previousDistinctCount + newDistinctCount;
+            if (!allValuesNew && previousDistinctCount > 0 && newDistinctCount > 0) {
+                // values that occur in both the old and the new rows are counted twice
+                estimate = true;
+                errorBound = Math.max(errorBound,
+                        Math.min(previousDistinctCount, newDistinctCount) / (double) distinctCount);
+            }
+            cpr.setDistinctValueCount((int) Math.min(previousNonNullCount + nonNullCount, distinctCount));
+        }
+
+        Object min = IncrementalProfileCreator.toColumnValue(previous.getMinValue(), jdbcType);
+        Object newMin = toColumnType(minValue, jdbcType);
+        if (newMin != null && (min == null || compare((Comparable) newMin, min) < 0)) {
+            min = newMin;
+        }
+        cpr.setMinValue(min);
+        Object max = IncrementalProfileCreator.toColumnValue(previous.getMaxValue(), jdbcType);
+        Object newMax = toColumnType(maxValue, jdbcType);
+        if (newMax != null && (max == null || compare((Comparable) newMax, max) > 0)) {
+            max = newMax;
+        }
+        cpr.setMaxValue(max);
+
+        Double previousAvg = IncrementalProfileCreator.toAverage(previous.getAvgValue());
+        if (numericCount > 0 && previousAvg != null && previousNonNullCount > 0) {
+            double previousSum = previousAvg * previousNonNullCount;
+            cpr.setAvgValue((previousSum + numericSum) / (previousNonNullCount + numericCount));
+        } else if (numericCount > 0 && previousNonNullCount == 0) {
+            cpr.setAvgValue(numericSum / numericCount);
+        } else {
+            cpr.setAvgValue(previousAvg);
+        }
+
+        if (findingLengths && nonNullCount > 0 && previousNonNullCount > 0) {
+            cpr.setMinLength(Math.min(previous.getMinLength(), minLength));
+            cpr.setMaxLength(Math.max(previous.getMaxLength(), maxLength));
+            cpr.setAvgLength((previous.getAvgLength() * previousNonNullCount + lengthSum) /
+                    (previousNonNullCount + nonNullCount));
+        } else if (findingLengths && nonNullCount > 0) {
+            cpr.setMinLength(minLength);
+            cpr.setMaxLength(maxLength);
+            cpr.setAvgLength(lengthSum / (double) nonNullCount);
+        } else {
+            cpr.setMinLength(previous.getMinLength());
+            cpr.setMaxLength(previous.getMaxLength());
+            cpr.setAvgLength(previous.getAvgLength());
+        }
+
+        if (topValues != null) {
+            final Map<Object, Long> counts = new HashMap<Object, Long>();
+            long smallestPreviousCount = 0;
+            boolean previousHadOtherValues = false;
+            for (ColumnValueCount cvc : previous.getValueCount()) {
+                if (cvc.isOtherValues()) {
+                    previousHadOtherValues = cvc.getCount() > 0;
+                } else {
+                    // two saved values can stand for the same typed value, such as 5 and 5.0
+                    Object value = IncrementalProfileCreator.toColumnValue(cvc.getValue(), jdbcType);
+                    Long count = counts.get(value);
+                    counts.put(value, (count == null ? 0 : count) + cvc.getCount());
+                    if (smallestPreviousCount == 0 || cvc.getCount() < smallestPreviousCount) {
+                        smallestPreviousCount = cvc.getCount();
+                    }
+                }
+            }
+            Set<Object> previousTopValues = new HashSet<Object>(counts.keySet());
+            for (TopNValueCounter.ValueCount vc : topValues.getTopN(topValues.getCapacity())) {
+                Object value = toColumnType(vc.getValue(), jdbcType);
+                Long count = counts.get(value);
+                counts.put(value, (count == null ? 0 : count) + vc.getCount());
+            }
+            List<Object> values = new ArrayList<Object>(counts.keySet());
+            Collections.sort(values, new Comparator<Object>() {
+                public int compare(Object o1, Object o2) {
+                    return counts.get(o2).compareTo(counts.get(o1));
+                }
+            });
+            long sumOfTopNCount = 0;
+            for (Object value : values.subList(0, Math.min(topNCount, values.size()))) {
+                long count = counts.get(value);
+                cpr.addValueCount(value, (int) count);
+                sumOfTopNCount += count;
+                if (previousHadOtherValues && !previousTopValues.contains(value)) {
+                    // this value may have occurred up to this many times in the old rows
+                    estimate = true;
+                    errorBound = Math.max(errorBound, smallestPreviousCount / (double) totalRowCount);
+                }
+            }
+            cpr.addValueCount(ColumnValueCount.OTHER_VALUE_OBJECT, (int) (totalRowCount - sumOfTopNCount));
+        }
+
+        cpr.setEstimate(estimate);
+        cpr.setErrorBound(errorBound);
+    }
+
+    /**
+     * Converts a value read from the database into the type
+     * {@link IncrementalProfileCreator#toColumnValue(Object, int)} gives
+     * earlier values of the column, so the two can be compared and counted
+     * together. A value the driver returned in a form that can't be converted
+     * is kept as it is.
+     */
+    private static Object toColumnType(Object value, int jdbcType) {
+        try {
+            return IncrementalProfileCreator.toKeyValue(value, jdbcType);
+        } catch (IllegalArgumentException ex) {
+            return value;
+        }
+    }
+
+    /**
+     * Compares two values from the same column. Values that were loaded from a
+     * saved project may not be of the same class as ones fresh from the
+     * database, so numbers are compared by value and other values of
+     * different classes are compared as strings.
+     */
+    @SuppressWarnings("unchecked")
+    private static int compare(Comparable value, Object other) {
+        if (value instanceof Number && other instanceof Number) {
+            return Double.compare(((Number) value).doubleValue(), ((Number) other).doubleValue());
+        }
+        try {
+            return value.compareTo(other);
+        } catch (ClassCastException ex) {
+            return String.valueOf(value).compareTo(String.valueOf(other));
+        }
+    }
+
+    long getRowCount() {
+        return rowCount;
+    }
+}
@@ -52,6 +52,22 @@ public class ColumnProfileResult extends AbstractProfileResult<SQLColumn> {
     private int maxLength;
     private double avgLength;
     private int nullCount;
+    private Object medianValue;
+
+    /**
+     * True if the statistics in this result were estimated from a sample of
+     * the table or from approximate summaries rather than computed exactly.
+     */
+    private boolean estimate;
+
+    /**
+     * For estimated results, roughly how far off the counts in this result
+     * may be, as a fraction of the true value (0.05 means 5%), with about 95%
+     * confidence. Counts of rows, such as the null count and the top value
+     * counts, are relative to the row count. Always 0 for exact results.
+     */
+    private double errorBound;
+
     private List<ColumnValueCount> topTen = new ArrayList<ColumnValueCount>();
     
     /**
@@ -75,7 +91,11 @@ public class ColumnProfileResult extends AbstractProfileResult<SQLColumn> {
         this.maxLength = cprToCopy.maxLength;
         this.minLength = cprToCopy.minLength;
         this.minValue = cprToCopy.minValue;
+        this.maxValue = cprToCopy.maxValue;
         this.nullCount = cprToCopy.nullCount;
+        this.medianValue = cprToCopy.medianValue;
+        this.estimate = cprToCopy.estimate;
+        this.errorBound = cprToCopy.errorBound;
         setParent(cprToCopy.getParent());
         for (int i = 0; i < cprToCopy.getValueCount().size(); i++) {
             ColumnValueCount cvc = cprToCopy.getValueCount().get(i);
@@ -179,6 +199,46 @@ public class ColumnProfileResult extends AbstractProfileResult<SQLColumn> {
         firePropertyChange("minValue", oldVal, this.minValue);
     }
 
+    /**
+     * @return The estimated median value as a Number object, or null if it
+     * was not calculated.
+     */
+    @Accessor
+    public Object getMedianValue() {
+        return medianValue;
+    }
+
+    @Mutator
+    public void setMedianValue(Object medianValue) {
+        Object oldVal = this.medianValue;
+        this.medianValue = medianValue;
+        firePropertyChange("medianValue", oldVal, medianValue);
+    }
+
+    @Accessor
+    public boolean isEstimate() {
+        return estimate;
+    }
+
+    @Mutator
+    public void setEstimate(boolean estimate) {
+        boolean oldEstimate = this.estimate;
+        this.estimate = estimate;
+        firePropertyChange("estimate", oldEstimate, estimate);
+    }
+
+    @Accessor
+    public double getErrorBound() {
+        return errorBound;
+    }
+
+    @Mutator
+    public void setErrorBound(double errorBound) {
+        double oldBound = this.errorBound;
+        this.errorBound = errorBound;
+        firePropertyChange("errorBound", oldBound, errorBound);
+    }
+
     @Override
     public String toString() {
         return "[ColumnProfileResult:" +
@@ -189,7 +249,9 @@ public class ColumnProfileResult extends AbstractProfileResult<SQLColumn> {
         "; minValue: "+getMinValue()+
         "; maxValue: "+getMaxValue()+
         "; avgValue: "+avgValue+
-        "; nullCount: "+getNullCount()+ "]";
+        "; medianValue: "+medianValue+
+        "; nullCount: "+getNullCount()+
+        (estimate ? "; estimate: +/-"+errorBound : "")+ "]";
     }
 
     @Accessor
@@ -0,0 +1,243 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.architect.profile;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.Timestamp;
+import java.util.Date;
+
+/**
+ * Counts the distinct values in a stream of values without keeping the values
+ * themselves. Each value is reduced to a 64-bit hash, and the hashes are kept
+ * in an open-addressed table of primitive longs, so there is no per-value
+ * object allocation and the memory used is 8 to 16 bytes per distinct value.
+ * <p>
+ * Two different values are only counted once if their 64-bit hashes collide,
+ * which is vanishingly unlikely for the number of values in a database column,
+ * so for profiling purposes the count is exact.
+ * <p>
+ * Null values are not counted. This class is not thread safe.
+ */
+public class DistinctValueCounter {
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    /**
+     * Keeps the bits of doubles with a fractional part from hashing the same
+     * as the whole number with the same bits.
+     */
+    private static final long FRACTION_TAG = 0x5851f42d4c957f2dL;
+
+    /**
+     * The hash table. The value 0 marks an empty slot, so a value whose hash
+     * is 0 is tracked by {@link #containsZero} instead.
+     */
+    private long[] table = new long[INITIAL_CAPACITY];
+
+    /**
+     * The number of non-zero hashes in {@link #table}.
+     */
+    private int size;
+
+    private boolean containsZero;
+
+    /**
+     * Records the given value. Nulls are ignored.
+     */
+    public void offer(Object value) {
+        if (value == null) return;
+        offerHash(hash64(value));
+    }
+
+    /**
+     * Records a value that has already been hashed with {@link #hash64(Object)}.
+     */
+    public void offerHash(long hash) {
+        if (hash == 0) {
+            containsZero = true;
+            return;
+        }
+        if ((size + 1) * 2 > table.length) {
+            rehash(table.length * 2);
+        }
+        if (insert(table, hash)) {
+            size++;
+        }
+    }
+
+    /**
+     * Adds all the values recorded by the other counter to this one.
+     */
+    public void merge(DistinctValueCounter other) {
+        containsZero |= other.containsZero;
+        for (long hash : other.table) {
+            if (hash != 0) {
+                offerHash(hash);
+            }
+        }
+    }
+
+    /**
+     * Returns the number of distinct non-null values seen so far.
+     */
+    public int getCount() {
+        return size + (containsZero ? 1 : 0);
+    }
+
+    private void rehash(int newCapacity) {
+        long[] newTable = new long[newCapacity];
+        for (long hash : table) {
+            if (hash != 0) {
+                insert(newTable, hash);
+            }
+        }
+        table = newTable;
+    }
+
+    /**
+     * Inserts the hash into the table using linear probing.
+     *
+     * @return true if the hash was not already present.
+     */
+    private static boolean insert(long[] table, long hash) {
+        int mask = table.length - 1;
+        int i = (int) (hash ^ (hash >>> 32)) & mask;
+        while (table[i] != 0) {
+            if (table[i] == hash) return false;
+            i = (i + 1) & mask;
+        }
+        table[i] = hash;
+        return true;
+    }
+
+    /**
+     * Computes a well-mixed 64-bit hash of the given non-null value. Whole
+     * numbers hash the same regardless of their type (for example, Integer 1,
+     * Double 1.0 and BigDecimal 1.00), and strings are hashed from their
+     * characters without creating any intermediate objects.
+     * <p>
+     * Integers, BigIntegers and BigDecimals are hashed from their exact value,
+     * so large BIGINT or DECIMAL values that would round to the same double
+     * are still told apart, and Timestamps include their nanoseconds.
+     */
+    public static long hash64(Object value) {
+        if (value instanceof Long || value instanceof Integer
+                || value instanceof Short || value instanceof Byte) {
+            return hash64(((Number) value).longValue());
+        } else if (value instanceof BigDecimal) {
+            return hashBigDecimal((BigDecimal) value);
+        } else if (value instanceof BigInteger) {
+            return hashBigInteger((BigInteger) value, 0);
+        } else if (value instanceof Number) {
+            return hash64(((Number) value).doubleValue());
+        } else if (value instanceof Timestamp) {
+            Timestamp ts = (Timestamp) value;
+            // getTime() already includes the whole milliseconds of getNanos()
+            int subMillis = ts.getNanos() % 1000000;
+            long h = ts.getTime();
+            if (subMillis != 0) {
+                h = mix(h) + subMillis;
+            }
+            return mix(h);
+        } else if (value instanceof Date) {
+            return mix(((Date) value).getTime());
+        } else if (value instanceof CharSequence) {
+            return mix(hashChars((CharSequence) value));
+        } else if (value instanceof Boolean) {
+            return mix(((Boolean) value).booleanValue() ? 1231 : 1237);
+        } else {
+            return mix(hashChars(String.valueOf(value)));
+        }
+    }
+
+    /**
+     * Hashes a whole number. The same as {@link #hash64(Object)} on any boxed
+     * integer of the same value, without having to box it.
+     */
+    public static long hash64(long value) {
+        return mix(value);
+    }
+
+    /**
+     * Hashes a floating point number. The same as {@link #hash64(Object)} on
+     * a Double of the same value, without having to box it. Doubles that hold
+     * a whole number hash the same as that number.
+     */
+    public static long hash64(double value) {
+        if (value == Math.rint(value) && Math.abs(value) < 0x1p63) {
+            return hash64((long) value);
+        }
+        return mix(Double.doubleToLongBits(value) ^ FRACTION_TAG);
+    }
+
+    private static long hashBigDecimal(BigDecimal value) {
+        if (value.signum() == 0) {
+            // stripTrailingZeros() leaves the scale of zero alone on older JVMs
+            return hash64(0L);
+        }
+        BigDecimal stripped = value.stripTrailingZeros();
+        if (stripped.scale() <= 0) {
+            return hashBigInteger(stripped.toBigInteger(), 0);
+        }
+        return hashBigInteger(stripped.unscaledValue(), stripped.scale());
+    }
+
+    /**
+     * Hashes the number unscaledValue * 10^-scale. Scale must be 0 unless
+     * unscaledValue has no trailing zeros.
+     */
+    private static long hashBigInteger(BigInteger unscaledValue, int scale) {
+        if (scale == 0 && unscaledValue.bitLength() < 64) {
+            return hash64(unscaledValue.longValue());
+        }
+        long h = 0xcbf29ce484222325L;
+        for (byte b : unscaledValue.toByteArray()) {
+            h ^= b & 0xff;
+            h *= 0x100000001b3L;
+        }
+        return mix(mix(h) + scale);
+    }
+
+    /**
+     * 64-bit FNV-1a over the characters of the given sequence.
+     */
+    private static long hashChars(CharSequence s) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < s.length(); i++) {
+            h ^= s.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        return h;
+    }
+
+    /**
+     * The finalisation step of MurmurHash3. Spreads the bits of hashes that
+     * come from similar inputs (such as consecutive integers) over all 64 bits.
+     */
+    static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
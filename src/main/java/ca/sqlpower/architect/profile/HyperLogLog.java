@@ -0,0 +1,162 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package ca.sqlpower.architect.profile;
+
+/**
+ * Estimates the number of distinct values in a stream of values using a fixed
+ * amount of memory, no matter how many distinct values there are. This is the
+ * HyperLogLog algorithm of Flajolet et al.: each value's 64-bit hash picks one
+ * of 2<sup>precision</sup> registers, and each register remembers the longest
+ * run of leading zero bits seen among the rest of the hashes that picked it.
+ * <p>
+ * The relative standard error of the estimate is about
+ * <code>1.04 / sqrt(2<sup>precision</sup>)</code> (see
+ * {@link #getRelativeError()}), so the default precision of 14 uses 16KB and
+ * is usually within 1% of the true count. Unlike the
+ * {@link DistinctValueCounter}, which is exact but grows with every new value,
+ * this is the one to use for columns that may have hundreds of millions of
+ * distinct values.
+ * <p>
+ * Values are hashed with {@link DistinctValueCounter#hash64(Object)}, so the
+ * two counters treat the same values as equal. Null values are not counted.
+ * This class is not thread safe; use one per thread and combine them with
+ * {@link #merge(HyperLogLog)}.
+ */
+public class HyperLogLog {
+
+    /**
+     * The precision used by the no-args constructor.
+     */
+    public static final int DEFAULT_PRECISION = 14;
+
+    public static final int MIN_PRECISION = 4;
+
+    public static final int MAX_PRECISION = 18;
+
+    private final int precision;
+
+    /**
+     * The number of leading zeros plus one in the longest run seen by each
+     * register. Never more than 65 - precision, so a byte is plenty.
+     */
+    private final byte[] registers;
+
+    public HyperLogLog() {
+        this(DEFAULT_PRECISION);
+    }
+
+    /**
+     * @param precision
+     *            The base 2 logarithm of the number of registers to use.
+     *            Each extra bit of precision doubles the memory used and
+     *            divides the error by the square root of 2.
+     */
+    public HyperLogLog(int precision) {
+        if (precision < MIN_PRECISION || precision > MAX_PRECISION) {
+            throw new IllegalArgumentException("Precision must be between " + MIN_PRECISION +
+                    " and " + MAX_PRECISION + " (got " + precision + ")");
+        }
+        this.precision = precision;
+        registers = new byte[1 << precision];
+    }
+
+    /**
+     * Records the given value. Nulls are ignored.
+     */
+    public void offer(Object value) {
+        if (value == null) return;
+        offerHash(DistinctValueCounter.hash64(value));
+    }
+
+    /**
+     * Records a value that has already been hashed with
+     * {@link DistinctValueCounter#hash64(Object)}.
+     */
+    public void offerHash(long hash) {
+        int index = (int) (hash >>> (64 - precision));
+        long rest = hash << precision;
+        int rank = (rest == 0) ? 64 - precision + 1 : Long.numberOfLeadingZeros(rest) + 1;
+        if (rank > registers[index]) {
+            registers[index] = (byte) rank;
+        }
+    }
+
+    /**
+     * Adds all the values recorded by the other sketch to this one. Both
+     * sketches must have the same precision.
+     */
+    public void merge(HyperLogLog other) {
+        if (other.precision != precision) {
+            throw new IllegalArgumentException("Can't merge a sketch of precision " + other.precision +
+                    " into one of precision " + precision);
+        }
+        for (int i = 0; i < registers.length; i++) {
+            if (other.registers[i] > registers[i]) {
+                registers[i] = other.registers[i];
+            }
+        }
+    }
+
+    /**
+     * Returns the estimated number of distinct non-null values seen so far.
+     */
+    public long getEstimate() {
+        int m = registers.length;
+        double sum = 0;
+        int emptyRegisters = 0;
+        for (byte r : registers) {
+            sum += Math.scalb(1.0, -r);
+            if (r == 0) emptyRegisters++;
+        }
+        double estimate = alpha(m) * m * m / sum;
+        if (estimate <= 2.5 * m && emptyRegisters > 0) {
+            // small range correction: linear counting is more accurate here
+            estimate = m * Math.log((double) m / emptyRegisters);
+        }
+        // with 64-bit hashes, no large range correction is needed
+        return Math.round(estimate);
+    }
+
+    private static double alpha(int m) {
+        switch (m) {
+        case 16:
+            return 0.673;
+        case 32:
+            return 0.697;
+        case 64:
+            return 0.709;
+        default:
+            return 0.7213 / (1 + 1.079 / m);
+        }
+    }
+
+    /**
+     * Returns the relative standard error of {@link #getEstimate()}. About 95%
+     * of estimates are within twice this fraction of the true count.
+     */
+    public double getRelativeError() {
+        return 1.04 / Math.sqrt(registers.length);
+    }
+
+    public int getPrecision() {
+        return precision;
+    }
+}
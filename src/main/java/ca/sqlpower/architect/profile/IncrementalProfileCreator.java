@@ -0,0 +1,531 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package ca.sqlpower.architect.profile;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.Date;
+import java.util.List;
+
+import org.apache.log4j.Logger;
+
+import ca.sqlpower.architect.ddl.DDLUtils;
+import ca.sqlpower.architect.ddl.DatabaseMetaDataCache;
+import ca.sqlpower.sql.JDBCDataSourceType;
+import ca.sqlpower.sqlobject.SQLColumn;
+import ca.sqlpower.sqlobject.SQLObjectException;
+import ca.sqlpower.sqlobject.SQLTable;
+import ca.sqlpower.util.MonitorableImpl;
+
+/**
+ * A profile creator that re-profiles a table by building on an earlier
+ * profile of the same table instead of starting from scratch.
+ * <ul>
+ * <li>If the table has the same number of rows as before, and the platform's
+ * {@link TableChangeSQLFunction} (if it has one) returns the same value as
+ * before, the table is considered unchanged and the earlier results are
+ * copied without reading any rows.
+ * <li>If the table has an increasing key column and has grown, only the rows
+ * with a key greater than the largest key in the earlier profile are read, and
+ * their statistics are merged into the earlier results. This is only done if
+ * the number of new rows accounts for all of the growth of the table;
+ * otherwise rows must have been deleted and the table is profiled in full.
+ * <li>Otherwise, the table is profiled in full by the given profile creator.
+ * </ul>
+ * Merging assumes the table is append-only: rows that were updated in place
+ * below the largest earlier key are not noticed. This is why incremental
+ * profiling has to be turned on in the {@link ProfileSettings}.
+ */
+public class IncrementalProfileCreator extends AbstractTableProfileCreator {
+
+    private static final Logger logger = Logger.getLogger(IncrementalProfileCreator.class);
+
+    /**
+     * This class is used to hold the platform specific query that tells
+     * whether a table has changed. The descriptor is a query whose first
+     * column of the first row changes whenever the table's data does, with
+     * every <code>?</code> replaced by the qualified table name. For example,
+     * <code>SELECT MAX(ORA_ROWSCN) FROM ?</code> for Oracle,
+     * <code>SELECT CHECKSUM_AGG(BINARY_CHECKSUM(*)) FROM ?</code> for SQL
+     * Server and <code>CHECKSUM TABLE ?</code> for MySQL, which returns the
+     * checksum in its second column, so it is looked up by name if there is
+     * a column named CHECKSUM.
+     * <p>
+     * This function is optional. On platforms without one, a table whose row
+     * count has not changed is assumed not to have changed at all.
+     */
+    public static class TableChangeSQLFunction {
+
+        private final String query;
+
+        public TableChangeSQLFunction(String query) {
+            this.query = query;
+        }
+
+        /**
+         * Returns the change probe query for the given qualified table name.
+         */
+        public String getTableChangeSQLFunction(String qualifiedTableName) {
+            return query.trim().replace("?", qualifiedTableName);
+        }
+    }
+
+    /**
+     * The settings for this profile creator.
+     */
+    private final ProfileSettings settings;
+
+    /**
+     * Profiles the table when the earlier results can't be reused.
+     */
+    private final AbstractTableProfileCreator fullProfileCreator;
+
+    /**
+     * The earlier profile of the table. Its column profile results must be
+     * for the columns of the table being profiled.
+     */
+    private final TableProfileResult previous;
+
+    /**
+     * The name of a column whose values only ever increase as rows are added
+     * to the table, or null if the table doesn't have one.
+     */
+    private final String keyColumnName;
+
+    /**
+     * @param settings
+     *            The settings for this profile creator.
+     * @param fullProfileCreator
+     *            The creator to fall back on when the table has to be
+     *            profiled from scratch.
+     * @param previous
+     *            The earlier profile to build on.
+     * @param keyColumnName
+     *            The name of an increasing key column of the table, or null
+     *            if new rows can't be told apart from old ones.
+     */
+    public IncrementalProfileCreator(ProfileSettings settings, AbstractTableProfileCreator fullProfileCreator,
+            TableProfileResult previous, String keyColumnName) {
+        if (settings == null) {
+            throw new NullPointerException("Null settings");
+        }
+        if (previous == null) {
+            throw new NullPointerException("Null previous profile");
+        }
+        this.settings = settings;
+        this.fullProfileCreator = fullProfileCreator;
+        this.previous = previous;
+        this.keyColumnName = keyColumnName;
+    }
+
+    @Override
+    protected boolean doProfileImpl(TableProfileResult tpr) throws Exception {
+        SQLTable table = tpr.getProfiledObject();
+        MonitorableImpl pm = (MonitorableImpl) tpr.getProgressMonitor();
+        pm.setJobSize(null);
+        pm.setProgress(0);
+
+        String changeProbe = null;
+        Connection con = null;
+        try {
+            con = table.getParentDatabase().getConnection();
+            String quote = DatabaseMetaDataCache.getInstance().getIdentifierQuoteString(
+                    table.getParentDatabase().getDataSource(), con);
+            if (quote == null || quote.trim().length() == 0) {
+                quote = "";
+            }
+            String qualifiedName = DDLUtils.toQualifiedName(table.getCatalogName(),
+                    table.getSchemaName(),
+                    table.getName(),
+                    quote,
+                    quote);
+            int rowCount = countRows(con, qualifiedName);
+            changeProbe = probeForChanges(con, table, qualifiedName);
+            if (pm.isCancelled()) return false;
+
+            if (!columnsMatchPrevious(table)) {
+                logger.debug("Columns of " + table.getName() + " changed since the last profile");
+            } else if (rowCount == previous.getRowCount() &&
+                    (changeProbe == null || changeProbe.equals(previous.getChangeProbe()))) {
+                logger.debug(table.getName() + " has not changed since the last profile");
+                copyPrevious(tpr);
+                tpr.setChangeProbe(changeProbe);
+                return true;
+            } else if (keyColumnName != null && rowCount > previous.getRowCount()) {
+                if (profileNewRows(tpr, con, quote, qualifiedName, rowCount)) {
+                    tpr.setChangeProbe(changeProbe);
+                    return !pm.isCancelled();
+                }
+            }
+        } finally {
+            try {
+                if (con != null) con.close();
+            } catch (SQLException ex) {
+                logger.error("Failed to close connection. Squishing this exception: ", ex);
+            }
+        }
+
+        logger.debug("Profiling all of " + table.getName());
+        boolean finished = fullProfileCreator.doProfileImpl(tpr);
+        tpr.setChangeProbe(changeProbe);
+        return finished;
+    }
+
+    /**
+     * Returns true if the earlier profile has a successful result for every
+     * column of the table, in the same order.
+     */
+    private boolean columnsMatchPrevious(SQLTable table) throws SQLObjectException {
+        List<SQLColumn> columns = table.getColumns();
+        List<ColumnProfileResult> previousResults = previous.getColumnProfileResults();
+        if (previous.getException() != null || columns.size() != previousResults.size()) {
+            return false;
+        }
+        for (int i = 0; i < columns.size(); i++) {
+            ColumnProfileResult cpr = previousResults.get(i);
+            if (cpr.getException() != null || !cpr.getProfiledObject().getName().equals(columns.get(i).getName())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Fills in the given result with a copy of the earlier results.
+     */
+    private void copyPrevious(TableProfileResult tpr) {
+        tpr.setRowCount(previous.getRowCount());
+        for (ColumnProfileResult cpr : previous.getColumnProfileResults()) {
+            ColumnProfileResult copy = new ColumnProfileResult(cpr, cpr.getProfiledObject());
+            copy.setCreateStartTime(tpr.getCreateStartTime());
+            copy.setCreateEndTime(System.currentTimeMillis());
+            tpr.addColumnProfileResult(copy);
+        }
+    }
+
+    /**
+     * Reads the rows whose key is greater than any key in the earlier profile,
+     * and fills in the given result with their statistics merged into the
+     * earlier ones.
+     * 
+     * @return true if the given result was filled in; false if the new rows
+     *         don't account for the table's growth, in which case the table
+     *         must be profiled from scratch.
+     */
+    private boolean profileNewRows(TableProfileResult tpr, Connection con, String quote,
+            String qualifiedName, int rowCount) throws SQLException, SQLObjectException {
+        SQLTable table = tpr.getProfiledObject();
+        List<SQLColumn> columns = table.getColumns();
+        List<ColumnProfileResult> previousResults = previous.getColumnProfileResults();
+
+        Object lastKey = null;
+        for (ColumnProfileResult cpr : previousResults) {
+            if (cpr.getProfiledObject().getName().equals(keyColumnName)) {
+                try {
+                    lastKey = toKeyValue(cpr.getMaxValue(), cpr.getProfiledObject().getType());
+                } catch (IllegalArgumentException ex) {
+                    logger.info("Can't use the last profile's maximum " + cpr.getMaxValue() +
+                            " of " + keyColumnName + " as a key", ex);
+                }
+            }
+        }
+        if (lastKey == null) {
+            logger.debug("The last profile of " + table.getName() + " has no maximum for " + keyColumnName);
+            return false;
+        }
+        for (int i = 0; i < columns.size(); i++) {
+            if (!hasTypedValues(previousResults.get(i), columns.get(i).getType())) {
+                return false;
+            }
+        }
+
+        MonitorableImpl pm = (MonitorableImpl) tpr.getProgressMonitor();
+        ColumnProfileAccumulator[] accumulators = new ColumnProfileAccumulator[columns.size()];
+        for (int i = 0; i < accumulators.length; i++) {
+            accumulators[i] = new ColumnProfileAccumulator(settings);
+        }
+
+        long columnStartTime = System.currentTimeMillis();
+        int newRowCount;
+        PreparedStatement stmt = null;
+        ResultSet rs = null;
+        String lastSQL = StreamingProfileCreator.createSelectStatement(table, quote) +
+            "\nWHERE " + quote + keyColumnName + quote + " > ?";
+        try {
+            logger.debug("About to execute incremental profiling query: " + lastSQL);
+            stmt = con.prepareStatement(lastSQL, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            stmt.setFetchSize(1000);
+            stmt.setObject(1, lastKey);
+            rs = stmt.executeQuery();
+            newRowCount = StreamingProfileCreator.readRows(rs, accumulators, pm);
+            if (newRowCount < 0) {
+                return true;
+            }
+        } catch (SQLException ex) {
+            logger.error("Incremental profile query failed. Query was:\n" + lastSQL);
+            throw ex;
+        } finally {
+            try {
+                if (rs != null) rs.close();
+            } catch (SQLException ex) {
+                logger.error("Couldn't clean up result set", ex);
+            }
+            try {
+                if (stmt != null) stmt.close();
+            } catch (SQLException ex) {
+                logger.error("Couldn't clean up statement", ex);
+            }
+        }
+
+        if (previous.getRowCount() + newRowCount != rowCount) {
+            logger.info(table.getName() + " grew by " + (rowCount - previous.getRowCount()) +
+                    " rows but only " + newRowCount + " rows are new; it is not append-only");
+            return false;
+        }
+
+        logger.debug("Merging " + newRowCount + " new rows of " + table.getName() + " into the last profile");
+        tpr.setRowCount(rowCount);
+        long columnEndTime = System.currentTimeMillis();
+        for (int i = 0; i < accumulators.length; i++) {
+            SQLColumn col = columns.get(i);
+            ColumnProfileResult cpr = new ColumnProfileResult(col);
+            tpr.addColumnProfileResult(cpr);
+            cpr.setCreateStartTime(columnStartTime);
+            accumulators[i].populateMerged(cpr, previousResults.get(i), previous.getRowCount(),
+                    col.getName().equals(keyColumnName), settings.getTopNCount(), col.getType());
+            cpr.setCreateEndTime(columnEndTime);
+        }
+        return true;
+    }
+
+    private static int countRows(Connection con, String qualifiedName) throws SQLException {
+        Statement stmt = null;
+        ResultSet rs = null;
+        try {
+            stmt = con.createStatement();
+            stmt.setEscapeProcessing(false);
+            rs = stmt.executeQuery("SELECT COUNT(*) AS ROW__COUNT\nFROM " + qualifiedName);
+            if (!rs.next()) {
+                throw new AssertionError("No rows came back from COUNT(*) query!");
+            }
+            return rs.getInt("ROW__COUNT");
+        } finally {
+            try {
+                if (rs != null) rs.close();
+                if (stmt != null) stmt.close();
+            } catch (SQLException ex) {
+                logger.error("Couldn't clean up result set", ex);
+            }
+        }
+    }
+
+    /**
+     * Returns true if the minimum, maximum, average and top N values of the
+     * given earlier column profile can all be converted back to the type of
+     * the column's values. If they can't, the earlier profile can't be merged
+     * with new rows and the table has to be profiled from scratch.
+     */
+    private static boolean hasTypedValues(ColumnProfileResult cpr, int jdbcType) {
+        try {
+            toColumnValue(cpr.getMinValue(), jdbcType);
+            toColumnValue(cpr.getMaxValue(), jdbcType);
+            toAverage(cpr.getAvgValue());
+            for (ColumnValueCount cvc : cpr.getValueCount()) {
+                if (!cvc.isOtherValues()) {
+                    toColumnValue(cvc.getValue(), jdbcType);
+                }
+            }
+            return true;
+        } catch (IllegalArgumentException ex) {
+            logger.info("Can't merge with the last profile of " + cpr.getProfiledObject().getName(), ex);
+            return false;
+        }
+    }
+
+    /**
+     * Converts a value of an earlier profile of a column into the Java type
+     * the column's values are compared and counted as, like
+     * {@link #toKeyValue(Object, int)}. A string that is left over for a
+     * column that isn't of a character type has lost its type when the
+     * project was saved and can't be compared with new values.
+     * 
+     * @throws IllegalArgumentException
+     *             if the value can't be read as the column's type.
+     */
+    static Object toColumnValue(Object value, int jdbcType) {
+        Object typed = toKeyValue(value, jdbcType);
+        if (typed instanceof String && !isCharacterType(jdbcType)) {
+            throw new IllegalArgumentException("Don't know the type of " + value);
+        }
+        return typed;
+    }
+
+    /**
+     * Converts the average value of an earlier profile into a Double. Saved
+     * profiles give back averages that aren't BigDecimals as strings.
+     * 
+     * @throws IllegalArgumentException
+     *             if the value isn't a number.
+     */
+    static Double toAverage(Object value) {
+        if (value == null) {
+            return null;
+        } else if (value instanceof Number) {
+            return ((Number) value).doubleValue();
+        }
+        return Double.valueOf(value.toString().trim());
+    }
+
+    private static boolean isCharacterType(int jdbcType) {
+        return jdbcType == Types.CHAR || jdbcType == Types.VARCHAR || jdbcType == Types.LONGVARCHAR ||
+            jdbcType == Types.NCHAR || jdbcType == Types.NVARCHAR;
+    }
+
+    /**
+     * Converts the maximum key value of an earlier profile into the Java type
+     * the key column's JDBC type is bound as. Profiles that were saved in a
+     * project only keep BigDecimals and Timestamps as such, so after a
+     * project is reloaded the value of an integer key column is a string.
+     * 
+     * @throws IllegalArgumentException
+     *             if the value can't be read as the column's type.
+     */
+    static Object toKeyValue(Object value, int jdbcType) {
+        if (value == null) {
+            return null;
+        }
+        switch (jdbcType) {
+        case Types.TINYINT:
+        case Types.SMALLINT:
+        case Types.INTEGER:
+        case Types.BIGINT:
+            if (value instanceof Number && !(value instanceof BigDecimal)) {
+                return ((Number) value).longValue();
+            }
+            try {
+                return new BigDecimal(value.toString().trim()).longValueExact();
+            } catch (ArithmeticException ex) {
+                throw new IllegalArgumentException("Not a whole number: " + value, ex);
+            }
+        case Types.DECIMAL:
+        case Types.NUMERIC:
+            if (value instanceof BigDecimal) {
+                return value;
+            }
+            return new BigDecimal(value.toString().trim());
+        case Types.REAL:
+        case Types.FLOAT:
+        case Types.DOUBLE:
+            if (value instanceof Number) {
+                return ((Number) value).doubleValue();
+            }
+            return Double.valueOf(value.toString().trim());
+        case Types.DATE:
+        case Types.TIME:
+        case Types.TIMESTAMP:
+            if (value instanceof Timestamp) {
+                return value;
+            } else if (value instanceof Date) {
+                return new Timestamp(((Date) value).getTime());
+            }
+            String text = value.toString().trim();
+            if (jdbcType == Types.DATE && text.indexOf(':') < 0) {
+                // a java.sql.Date saves as just the date
+                return new Timestamp(java.sql.Date.valueOf(text).getTime());
+            } else if (jdbcType == Types.TIME && text.indexOf('-') < 0) {
+                return new Timestamp(Time.valueOf(text).getTime());
+            }
+            return Timestamp.valueOf(text);
+        case Types.BIT:
+        case Types.BOOLEAN:
+            if (value instanceof Boolean) {
+                return value;
+            } else if ("true".equalsIgnoreCase(value.toString().trim())) {
+                return Boolean.TRUE;
+            } else if ("false".equalsIgnoreCase(value.toString().trim())) {
+                return Boolean.FALSE;
+            }
+            throw new IllegalArgumentException("Not a boolean: " + value);
+        case Types.CHAR:
+        case Types.VARCHAR:
+        case Types.LONGVARCHAR:
+        case Types.NCHAR:
+        case Types.NVARCHAR:
+            return value.toString();
+        default:
+            return value;
+        }
+    }
+
+    /**
+     * Runs the platform's change probe query on the given table.
+     * 
+     * @return The probe's value as a string, or null if the platform does
+     *         not have a change probe or the probe failed.
+     */
+    private static String probeForChanges(Connection con, SQLTable table, String qualifiedName) {
+        JDBCDataSourceType dsType = table.getParentDatabase().getDataSource().getParentType();
+        String function = dsType.getProperty(RemoteDatabaseProfileCreator.propName(TableChangeSQLFunction.class));
+        if (function == null || function.trim().length() == 0) {
+            return null;
+        }
+        String lastSQL = new TableChangeSQLFunction(function).getTableChangeSQLFunction(qualifiedName);
+        Statement stmt = null;
+        ResultSet rs = null;
+        try {
+            stmt = con.createStatement();
+            stmt.setEscapeProcessing(false);
+            rs = stmt.executeQuery(lastSQL);
+            if (!rs.next()) {
+                return null;
+            }
+            int column = 1;
+            for (int i = 1; i <= rs.getMetaData().getColumnCount(); i++) {
+                if ("CHECKSUM".equalsIgnoreCase(rs.getMetaData().getColumnLabel(i))) {
+                    column = i;
+                }
+            }
+            return String.valueOf(rs.getObject(column));
+        } catch (SQLException ex) {
+            logger.info("Change probe failed; relying on the row count alone. Query was:\n" + lastSQL, ex);
+            return null;
+        } finally {
+            try {
+                if (rs != null) rs.close();
+                if (stmt != null) stmt.close();
+            } catch (SQLException ex) {
+                logger.error("Couldn't clean up result set", ex);
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "Incremental (" + fullProfileCreator + ")";
+    }
+}
@@ -75,9 +75,12 @@ public interface ProfileManager extends SPObject {
     /**
      * Creates TableProfileResult objects for each of the tables in the
      * given list, then adds them to this ProfileManager in an unpopulated
-     * state.  Then starts a new worker thread which will populate the results
-     * one after the other.  It is likely that none of the profiles will be
-     * populated yet by the time this method returns.
+     * state.  Then schedules the results to be populated on worker threads,
+     * largest tables first. Tables from different data sources may be
+     * populated at the same time. It is likely that none of the profiles will
+     * be populated yet by the time this method returns.
+     * <p>
+     * The futures are returned in the same order as the given tables.
      */
     public Collection<Future<TableProfileResult>> asynchCreateProfiles(Collection<SQLTable> tables);
 
@@ -18,15 +18,15 @@
  */
 package ca.sqlpower.architect.profile;
 
+import java.sql.Types;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 
 import org.apache.log4j.Logger;
@@ -47,6 +47,7 @@ import ca.sqlpower.object.annotation.NonBound;
 import ca.sqlpower.object.annotation.NonProperty;
 import ca.sqlpower.object.annotation.Transient;
 import ca.sqlpower.sql.DataSourceCollection;
+import ca.sqlpower.sql.JDBCDataSource;
 import ca.sqlpower.sql.PlDotIni;
 import ca.sqlpower.sql.SPDataSource;
 import ca.sqlpower.sqlobject.SQLColumn;
@@ -65,7 +66,10 @@ import ca.sqlpower.util.UserPrompterFactory.UserPromptType;
 
 /**
  * The default ProfileManager implementation. Creates profiles of tables,
- * optionally using a separate worker thread.
+ * optionally using a pool of worker threads. Tables from different data
+ * sources are profiled in parallel, and a limited number of tables from the
+ * same data source are profiled at once (see
+ * {@link #setMaxConcurrentProfilesPerDataSource(int)}).
  * 
  * @version $Id$
  */
@@ -139,6 +143,19 @@ public class ProfileManagerImpl extends AbstractSPObject implements ProfileManag
      * {@link #removeResults(List)}, and {@link #clear()}.
      */
     private final List<TableProfileResult> results = new ArrayList<TableProfileResult>();
+
+    /**
+     * Adds the profile results that were left out when the project was
+     * loaded, or null if there are none. See
+     * {@link #setDeferredResultsLoader(Runnable)}.
+     */
+    private Runnable deferredResultsLoader;
+
+    /**
+     * True once a thread other than the foreground thread has asked for the
+     * deferred results to be loaded, so they are only asked for once.
+     */
+    private boolean deferredResultsRequested;
     
     /**
      * The defaults that new profile results will be created with.
@@ -147,10 +164,10 @@ public class ProfileManagerImpl extends AbstractSPObject implements ProfileManag
     private ProfileSettings defaultProfileSettings = new ProfileSettings();
 
     /**
-     * The Profile Executor manages the thread that actually does the work
+     * The Profile Scheduler manages the threads that actually do the work
      * of creating the profiles.
      */
-    private ExecutorService profileExecutor = Executors.newSingleThreadExecutor();
+    private final ProfileScheduler profileScheduler = new ProfileScheduler();
 
     /**
      * The creator that will be used to create profiles.
@@ -167,7 +184,9 @@ public class ProfileManagerImpl extends AbstractSPObject implements ProfileManag
      */
     private List<TableProfileCreator> profileCreators = Arrays.asList(
             (TableProfileCreator)new RemoteDatabaseProfileCreator(getDefaultProfileSettings()),
-            new LocalReservoirProfileCreator(getDefaultProfileSettings()));
+            new RemoteDatabaseProfileCreator(getDefaultProfileSettings(), 20),
+            new LocalReservoirProfileCreator(getDefaultProfileSettings()),
+            new StreamingProfileCreator(getDefaultProfileSettings()));
 
     /**
      * A Callable interface which populates a single profile result then returns
@@ -200,11 +219,32 @@ public class ProfileManagerImpl extends AbstractSPObject implements ProfileManag
          */
         private final TableProfileResult tpr;
 
-        ProfileResultCallable(TableProfileResult actualTPR) {
+        /**
+         * A copy of an earlier profile of the same table for an incremental
+         * profile to build on, or null to profile the table from scratch.
+         */
+        private final TableProfileResult previousTPR;
+
+        /**
+         * The name of the increasing key column of the table, or null if it
+         * doesn't have one. Only used for incremental profiles.
+         */
+        private final String keyColumnName;
+
+        /**
+         * @param previousTPR
+         *            An earlier profile of the same table to profile
+         *            incrementally from, or null.
+         * @param keyColumnName
+         *            The name of the increasing key column of the table, or
+         *            null.
+         */
+        ProfileResultCallable(TableProfileResult actualTPR, TableProfileResult previousTPR, String keyColumnName) {
             if (actualTPR == null) throw new NullPointerException("Can't populate a null profile result!");
             this.actualTPR = actualTPR;
             SQLTable table;
             TableProfileResult tempTPR;
+            TableProfileResult tempPreviousTPR = null;
             try {
                 SQLTable profileTable = actualTPR.getProfiledObject();
                 table = new SQLTable(profileTable.getParentDatabase(), true);
@@ -226,6 +266,10 @@ public class ProfileManagerImpl extends AbstractSPObject implements ProfileManag
                 ProfileManager backgroundPM = new ProfileManagerImpl();
                 backgroundPM.setUUID(actualTPR.getParent().getUUID());
                 tempTPR.setParent(backgroundPM);
+                
+                if (previousTPR != null) {
+                    tempPreviousTPR = new TableProfileResult(previousTPR, table);
+                }
             } catch (Exception e) {
                 //If an exception is thrown during setup define the profile to have an exception on
                 //it and handle appropriately when doing the profile.
@@ -233,6 +277,8 @@ public class ProfileManagerImpl extends AbstractSPObject implements ProfileManag
                 actualTPR.setException(e);
             }
             tpr = tempTPR;
+            this.previousTPR = tempPreviousTPR;
+            this.keyColumnName = keyColumnName;
         }
         
         /**
@@ -243,7 +289,12 @@ public class ProfileManagerImpl extends AbstractSPObject implements ProfileManag
             if (actualTPR.getException() != null) {
                 throw actualTPR.getException();
             }
-            creator.doProfile(tpr);
+            TableProfileCreator jobCreator = creator;
+            if (previousTPR != null && creator instanceof AbstractTableProfileCreator) {
+                jobCreator = new IncrementalProfileCreator(getDefaultProfileSettings(),
+                        (AbstractTableProfileCreator) creator, previousTPR, keyColumnName);
+            }
+            jobCreator.doProfile(tpr);
             Runnable runner = new Runnable() {
                 public void run() {
                     //None of the profiling creates or saves any data source information so an
@@ -308,7 +359,63 @@ public class ProfileManagerImpl extends AbstractSPObject implements ProfileManag
         return (ArchitectProject) super.getParent();
     }
     
+    /**
+     * Sets the task that adds the profile results the project loader put off
+     * loading, so a project can be opened without reading all of its profile
+     * results first. The task is run the first time anything looks at or
+     * changes the results of this profile manager on the session's
+     * foreground thread, since it builds profile results and fires events
+     * for them. When another thread gets there first, the task is handed to
+     * the foreground thread and that thread carries on without the deferred
+     * results; it finds out about them through
+     * {@link ProfileChangeListener#profilesAdded(ProfileChangeEvent)} like
+     * any other new results.
+     */
+    public synchronized void setDeferredResultsLoader(Runnable loader) {
+        deferredResultsLoader = loader;
+        deferredResultsRequested = false;
+    }
+
+    /**
+     * Runs the deferred results loader, if there still is one. This never
+     * waits for the foreground thread, since it may be called from a thread
+     * the foreground thread is waiting for.
+     */
+    private void loadDeferredResults() {
+        boolean foreground;
+        try {
+            foreground = getRunnableDispatcher().isForegroundThread();
+        } catch (SessionNotFoundException e) {
+            foreground = true;
+        }
+        Runnable loader;
+        synchronized (this) {
+            if (deferredResultsLoader == null) {
+                return;
+            } else if (!foreground) {
+                if (deferredResultsRequested) return;
+                deferredResultsRequested = true;
+                loader = null;
+            } else {
+                // cleared before it runs, as it adds its results through
+                // the methods that call this
+                loader = deferredResultsLoader;
+                deferredResultsLoader = null;
+            }
+        }
+        if (loader != null) {
+            loader.run();
+        } else {
+            getRunnableDispatcher().runInForeground(new Runnable() {
+                public void run() {
+                    loadDeferredResults();
+                }
+            });
+        }
+    }
+    
     public void addTableProfileResult(TableProfileResult child) {
+        loadDeferredResults();
         results.add(child);
         child.setParent(this);
         fireProfilesAdded(Collections.singletonList(child));
@@ -324,6 +431,7 @@ public class ProfileManagerImpl extends AbstractSPObject implements ProfileManag
      * such as when loading from an Architect server.
      */
     private void addResults(List<TableProfileResult> newResults, boolean overrideCompletion) {
+        loadDeferredResults();
         results.addAll(newResults);
         for (TableProfileResult tpr : newResults) {
             tpr.setParent(this);
@@ -344,7 +452,7 @@ public class ProfileManagerImpl extends AbstractSPObject implements ProfileManag
         addResults(Collections.singletonList(tpr), false);
         
         try {
-            profileExecutor.submit(new ProfileResultCallable(tpr)).get();
+            scheduleProfile(tpr).get();
             assert (tpr.getProgressMonitor().isFinished());
         } catch (InterruptedException ex) {
             logger.info("Profiling was interrupted (likely because this manager is being shut down)");
@@ -365,20 +473,133 @@ public class ProfileManagerImpl extends AbstractSPObject implements ProfileManag
         
         addResults(profiles, false);
         
-        List<Future<TableProfileResult>> results = new ArrayList<Future<TableProfileResult>>();
-        for (TableProfileResult tpr : profiles) {
-            results.add(scheduleProfile(tpr));
+        // Submit the most expensive tables first so they start as soon as a
+        // worker is free instead of being left to run alone at the end.
+        final long[] costs = new long[profiles.size()];
+        List<Integer> submissionOrder = new ArrayList<Integer>();
+        for (int i = 0; i < profiles.size(); i++) {
+            costs[i] = estimateProfileCost(profiles.get(i).getProfiledObject());
+            submissionOrder.add(i);
+        }
+        Collections.sort(submissionOrder, new Comparator<Integer>() {
+            public int compare(Integer o1, Integer o2) {
+                if (costs[o1] == costs[o2]) return 0;
+                return costs[o1] > costs[o2] ? -1 : 1;
+            }
+        });
+        
+        List<Future<TableProfileResult>> results = new ArrayList<Future<TableProfileResult>>(
+                Collections.<Future<TableProfileResult>>nCopies(profiles.size(), null));
+        for (int i : submissionOrder) {
+            results.set(i, submitProfile(profiles.get(i), costs[i]));
         }
         return results;
     }
 
     /* docs inherited from interface */
     public Future<TableProfileResult> scheduleProfile(TableProfileResult result) {
-        return profileExecutor.submit(new ProfileResultCallable(result));
+        return submitProfile(result, estimateProfileCost(result.getProfiledObject()));
+    }
+
+    /**
+     * Queues the given result to be populated on the scheduler for its table's
+     * data source. If incremental profiling is turned on and the table has
+     * been profiled before, the job builds on the most recent earlier profile.
+     */
+    private Future<TableProfileResult> submitProfile(TableProfileResult result, long cost) {
+        SQLTable table = result.getProfiledObject();
+        JDBCDataSource ds = null;
+        if (table.getParentDatabase() != null) {
+            ds = table.getParentDatabase().getDataSource();
+        }
+        TableProfileResult previous = null;
+        String keyColumnName = null;
+        if (getDefaultProfileSettings().isIncremental()) {
+            previous = findLatestResult(table);
+            if (previous != null) {
+                keyColumnName = findIncreasingKey(table);
+            }
+        }
+        return profileScheduler.submit(new ProfileResultCallable(result, previous, keyColumnName), ds, cost);
+    }
+
+    /**
+     * Returns the most recent profile of the given table that finished
+     * without an exception, or null if there isn't one.
+     */
+    private TableProfileResult findLatestResult(SQLTable table) {
+        loadDeferredResults();
+        TableProfileResult latest = null;
+        for (TableProfileResult tpr : results) {
+            if (tpr.getProfiledObject().equals(table) && tpr.getException() == null
+                    && tpr.getProgressMonitor().isFinished()
+                    && (latest == null || tpr.getCreateStartTime() > latest.getCreateStartTime())) {
+                latest = tpr;
+            }
+        }
+        return latest;
+    }
+
+    /**
+     * Guesses which column of the given table only increases as rows are
+     * added: its primary key, as long as the key is a single numeric or date
+     * column. Returns null if there is no such column.
+     */
+    private String findIncreasingKey(SQLTable table) {
+        SQLColumn key = null;
+        try {
+            for (SQLColumn col : table.getColumns()) {
+                if (col.isPrimaryKey()) {
+                    if (key != null) return null;
+                    key = col;
+                }
+            }
+        } catch (SQLObjectException e) {
+            logger.debug("Could not get the columns of " + table + " to find its key", e);
+            return null;
+        }
+        if (key == null) return null;
+        switch (key.getType()) {
+        case Types.TINYINT:
+        case Types.SMALLINT:
+        case Types.INTEGER:
+        case Types.BIGINT:
+        case Types.NUMERIC:
+        case Types.DECIMAL:
+        case Types.DATE:
+        case Types.TIMESTAMP:
+            return key.getName();
+        default:
+            return null;
+        }
+    }
+
+    /**
+     * Estimates the relative cost of profiling the given table so the
+     * scheduler can start the largest tables first. The estimate is the
+     * number of columns times the row count from the most recent existing
+     * profile of the table, or just the number of columns if the table has not
+     * been profiled before.
+     */
+    private long estimateProfileCost(SQLTable table) {
+        long columnCount;
+        try {
+            columnCount = Math.max(1, table.getColumns().size());
+        } catch (SQLObjectException e) {
+            logger.debug("Could not get the columns of " + table + " to estimate its profiling cost", e);
+            columnCount = 1;
+        }
+        long rowCount = 1;
+        TableProfileResult latest = findLatestResult(table);
+        if (latest != null) {
+            rowCount = Math.max(1, latest.getRowCount());
+        }
+        return columnCount * rowCount;
     }
     
     /* docs inherited from interface */
     public void clear() {
+        loadDeferredResults();
         List<TableProfileResult> oldResults = new ArrayList<TableProfileResult>(results);
         results.clear();
         fireProfilesRemoved(oldResults);
@@ -404,6 +625,7 @@ public class ProfileManagerImpl extends AbstractSPObject implements ProfileManag
     /* docs inherited from interface */
     @NonProperty
     public List<TableProfileResult> getResults() {
+        loadDeferredResults();
         // this could be optimized by caching the current result list snapshot, but enh.
         return Collections.unmodifiableList(new ArrayList<TableProfileResult>(results));
     }
@@ -411,6 +633,7 @@ public class ProfileManagerImpl extends AbstractSPObject implements ProfileManag
     /* docs inherited from interface */
     @NonProperty
     public List<TableProfileResult> getResults(SQLTable t) {
+        loadDeferredResults();
         List<TableProfileResult> someResults = new ArrayList<TableProfileResult>();
         for (TableProfileResult tpr : results) {
             if (tpr.getProfiledObject().equals(t)) {
@@ -422,6 +645,7 @@ public class ProfileManagerImpl extends AbstractSPObject implements ProfileManag
 
     /* docs inherited from interface */
     public boolean removeProfile(TableProfileResult victim) {
+        loadDeferredResults();
         int index = results.indexOf(victim);
         boolean removed = results.remove(victim);
         if (removed) {
@@ -534,7 +758,26 @@ public class ProfileManagerImpl extends AbstractSPObject implements ProfileManag
     }
 
     public void close() {
-        profileExecutor.shutdown();
+        profileScheduler.shutdown();
+    }
+
+    /**
+     * Returns the maximum number of tables that will be profiled at the same
+     * time against a single data source.
+     */
+    @NonBound
+    public int getMaxConcurrentProfilesPerDataSource() {
+        return profileScheduler.getMaxConcurrentPerDataSource();
+    }
+
+    /**
+     * Sets the maximum number of tables that will be profiled at the same time
+     * against a single data source. Setting this to 1 profiles the tables of
+     * each data source one after the other.
+     */
+    @NonBound
+    public void setMaxConcurrentProfilesPerDataSource(int max) {
+        profileScheduler.setMaxConcurrentPerDataSource(max);
     }
 
     @NonBound
@@ -600,6 +843,7 @@ public class ProfileManagerImpl extends AbstractSPObject implements ProfileManag
 
     @NonProperty
     public List<? extends SPObject> getChildren() {
+        loadDeferredResults();
         List<SPObject> allChildren = new ArrayList<SPObject>();        
         allChildren.add(defaultProfileSettings);
         allChildren.addAll(results);
@@ -0,0 +1,222 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.architect.profile;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RunnableFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+
+import ca.sqlpower.sql.JDBCDataSource;
+
+/**
+ * Runs profiling jobs in parallel while limiting how many jobs run against
+ * each data source at once, so profiling a large schema does not swamp a
+ * single database server with concurrent full table scans. Jobs for different
+ * data sources do not wait on each other at all.
+ * <p>
+ * Within a data source, queued jobs are started in order of their estimated
+ * cost, most expensive first, so the longest running tables are not left to
+ * run alone at the end of a batch. Jobs with the same cost are started in the
+ * order they were submitted.
+ */
+class ProfileScheduler {
+
+    private static final Logger logger = Logger.getLogger(ProfileScheduler.class);
+
+    /**
+     * The default maximum number of tables that will be profiled at the same
+     * time on any one data source.
+     */
+    public static final int DEFAULT_MAX_CONCURRENT_PER_DATA_SOURCE = 2;
+
+    /**
+     * A future for a profiling job that knows its place in the queue.
+     */
+    private static class PrioritizedTask<V> extends FutureTask<V> implements Comparable<PrioritizedTask<?>> {
+
+        private final long cost;
+        private final long sequence;
+
+        PrioritizedTask(Callable<V> callable, long cost, long sequence) {
+            super(callable);
+            this.cost = cost;
+            this.sequence = sequence;
+        }
+
+        public int compareTo(PrioritizedTask<?> o) {
+            if (cost != o.cost) {
+                return cost > o.cost ? -1 : 1;
+            }
+            if (sequence == o.sequence) return 0;
+            return sequence < o.sequence ? -1 : 1;
+        }
+    }
+
+    /**
+     * A thread pool whose queue hands out the most expensive job first.
+     * Profiling jobs are queued as {@link PrioritizedTask}s with their
+     * estimated cost. Anything submitted through the plain
+     * {@link java.util.concurrent.ExecutorService} methods is given a cost of
+     * {@link #DEFAULT_COST}, so it runs after the profiling jobs that are
+     * already queued.
+     */
+    private static class PriorityThreadPool extends ThreadPoolExecutor {
+
+        /**
+         * The cost given to jobs that were not submitted with one.
+         */
+        static final long DEFAULT_COST = 0;
+
+        private final AtomicLong sequence;
+
+        PriorityThreadPool(int threads, ThreadFactory threadFactory, AtomicLong sequence) {
+            super(threads, threads, 30, TimeUnit.SECONDS,
+                    new PriorityBlockingQueue<Runnable>(), threadFactory);
+            this.sequence = sequence;
+            allowCoreThreadTimeOut(true);
+        }
+
+        @Override
+        protected <T> RunnableFuture<T> newTaskFor(Callable<T> callable) {
+            return new PrioritizedTask<T>(callable, DEFAULT_COST, sequence.getAndIncrement());
+        }
+
+        @Override
+        protected <T> RunnableFuture<T> newTaskFor(Runnable runnable, T value) {
+            return newTaskFor(Executors.callable(runnable, value));
+        }
+
+        /**
+         * Wraps plain runnables in a {@link PrioritizedTask}, because the
+         * priority queue can only order those.
+         */
+        @Override
+        public void execute(Runnable command) {
+            if (command instanceof PrioritizedTask<?>) {
+                super.execute(command);
+            } else {
+                super.execute(newTaskFor(command, null));
+            }
+        }
+    }
+
+    /**
+     * One pool per data source. Tables that do not belong to a data source
+     * (which cannot really be profiled anyway) share the pool under the null
+     * key.
+     */
+    private final Map<JDBCDataSource, PriorityThreadPool> pools =
+        new HashMap<JDBCDataSource, PriorityThreadPool>();
+
+    /**
+     * Breaks ties between jobs of equal cost so they run first come, first
+     * served.
+     */
+    private final AtomicLong sequence = new AtomicLong();
+
+    private final AtomicInteger threadCount = new AtomicInteger();
+
+    private final ThreadFactory threadFactory = new ThreadFactory() {
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "Profiler-" + threadCount.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        }
+    };
+
+    private int maxConcurrentPerDataSource = DEFAULT_MAX_CONCURRENT_PER_DATA_SOURCE;
+
+    private boolean shutdown;
+
+    /**
+     * Queues the given job to run against the given data source.
+     *
+     * @param job
+     *            The profiling job.
+     * @param ds
+     *            The data source the job will connect to. May be null.
+     * @param cost
+     *            The estimated relative cost of the job. Queued jobs with a
+     *            higher cost are started first.
+     * @return A future that can be used to wait for or cancel the job.
+     */
+    public synchronized <V> Future<V> submit(Callable<V> job, JDBCDataSource ds, long cost) {
+        if (shutdown) {
+            throw new IllegalStateException("This profile scheduler has been shut down");
+        }
+        PriorityThreadPool pool = pools.get(ds);
+        if (pool == null) {
+            pool = new PriorityThreadPool(maxConcurrentPerDataSource, threadFactory, sequence);
+            pools.put(ds, pool);
+        }
+        PrioritizedTask<V> task = new PrioritizedTask<V>(job, cost, sequence.getAndIncrement());
+        logger.debug("Queueing profile job on " + ds + " with cost " + cost);
+        pool.execute(task);
+        return task;
+    }
+
+    /**
+     * Stops accepting new jobs. Jobs that have already been submitted will
+     * still be run.
+     */
+    public synchronized void shutdown() {
+        shutdown = true;
+        for (PriorityThreadPool pool : pools.values()) {
+            pool.shutdown();
+        }
+    }
+
+    public synchronized int getMaxConcurrentPerDataSource() {
+        return maxConcurrentPerDataSource;
+    }
+
+    /**
+     * Sets the maximum number of jobs that can run at once against any single
+     * data source. This applies to data sources that already have jobs
+     * scheduled as well as to new ones.
+     */
+    public synchronized void setMaxConcurrentPerDataSource(int max) {
+        if (max < 1) {
+            throw new IllegalArgumentException("At least one job must be allowed per data source");
+        }
+        for (PriorityThreadPool pool : pools.values()) {
+            if (max > pool.getMaximumPoolSize()) {
+                pool.setMaximumPoolSize(max);
+                pool.setCorePoolSize(max);
+            } else {
+                pool.setCorePoolSize(max);
+                pool.setMaximumPoolSize(max);
+            }
+        }
+        maxConcurrentPerDataSource = max;
+    }
+}
@@ -65,6 +65,26 @@ public class ProfileSettings extends AbstractSPObject {
 
     private int topNCount = 10;
 
+    /**
+     * If true, profile creators may trade accuracy for speed by sampling the
+     * table and summarizing the values with fixed-size sketches. Results
+     * created this way are marked with {@link ColumnProfileResult#isEstimate()}.
+     */
+    private boolean approximate = false;
+
+    /**
+     * The percentage of the table's rows to read when profiling in
+     * approximate mode on a platform that can sample tables.
+     */
+    private double samplePercent = 1.0;
+
+    /**
+     * If true, tables that already have a profile are re-profiled with an
+     * {@link IncrementalProfileCreator}, which skips unchanged tables and only
+     * reads the new rows of append-only tables.
+     */
+    private boolean incremental = false;
+
     public ProfileSettings() {
         setName("Profile Settings");
     }
@@ -194,6 +214,46 @@ public class ProfileSettings extends AbstractSPObject {
         setTopNCount(Integer.valueOf(topNCount));
     }
 
+    @Accessor
+    public boolean isApproximate() {
+        return approximate;
+    }
+
+    @Mutator
+    public void setApproximate(boolean approximate) {
+        boolean oldApproximate = this.approximate;
+        this.approximate = approximate;
+        firePropertyChange("approximate", oldApproximate, approximate);
+    }
+
+    @Accessor
+    public double getSamplePercent() {
+        return samplePercent;
+    }
+
+    @Mutator
+    public void setSamplePercent(double samplePercent) {
+        if (samplePercent <= 0 || samplePercent > 100) {
+            throw new IllegalArgumentException("Sample percent must be greater than 0 and at most 100 (got " +
+                    samplePercent + ")");
+        }
+        double oldPercent = this.samplePercent;
+        this.samplePercent = samplePercent;
+        firePropertyChange("samplePercent", oldPercent, samplePercent);
+    }
+
+    @Accessor
+    public boolean isIncremental() {
+        return incremental;
+    }
+
+    @Mutator
+    public void setIncremental(boolean incremental) {
+        boolean oldIncremental = this.incremental;
+        this.incremental = incremental;
+        firePropertyChange("incremental", oldIncremental, incremental);
+    }
+
     @Override
     protected boolean removeChildImpl(SPObject child) {
         return false;
@@ -19,16 +19,23 @@
 
 package ca.sqlpower.architect.profile;
 
+import java.math.BigDecimal;
 import java.sql.Connection;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
 import org.apache.log4j.Logger;
 
 import ca.sqlpower.architect.ddl.DDLUtils;
+import ca.sqlpower.architect.ddl.DatabaseMetaDataCache;
 import ca.sqlpower.sql.JDBCDataSourceType;
 import ca.sqlpower.sqlobject.SQLObjectException;
 import ca.sqlpower.sqlobject.SQLColumn;
@@ -55,6 +62,13 @@ import ca.sqlpower.util.MonitorableImpl;
  * given SQLTable's data source.  See {@link #createProfileFunctions(JDBCDataSourceType)}
  * for details.
  * <p>
+ * In approximate mode (see {@link ProfileSettings#isApproximate()}), tables on
+ * platforms that have a {@link TableSampleSQLFunction} are profiled from a
+ * server-side sample of {@link ProfileSettings#getSamplePercent()} percent of
+ * their rows. Only the row count is still computed over the whole table; the
+ * other counts are scaled up from the sample and the column profile results
+ * are marked as estimates.
+ * <p>
  * For a profiler better suited for use on large tables, see
  * {@link LocalReservoirProfileCreator}.
  */
@@ -62,12 +76,6 @@ public class RemoteDatabaseProfileCreator extends AbstractTableProfileCreator {
 
     private static final Logger logger = Logger.getLogger(RemoteDatabaseProfileCreator.class);
     
-    /**
-     * A map from data type names used in Architect to the database's actual
-     * data type stored in a profile function descriptor.
-     */
-    private Map<String, ProfileFunctionDescriptor> profileFunctionMap;
-    
     /**
      * This class is used to hold the specific start and end to a LENGTH
      * SQL command based on the database in use.
@@ -180,43 +188,198 @@ public class RemoteDatabaseProfileCreator extends AbstractTableProfileCreator {
     }
     
     /**
-     * An object to store the string length function for the database.
+     * This class is used to hold the platform specific way of limiting a
+     * query to its first N rows. The descriptor has the form
+     * <code>before:after</code>, where <i>before</i> goes between the SELECT
+     * keyword and the select list, <i>after</i> goes at the end of the query,
+     * and every <code>?</code> in either part is replaced by N. For example,
+     * <code>:LIMIT ?</code> for PostgreSQL and MySQL, <code>TOP ? :</code> for
+     * SQL Server and <code>:FETCH FIRST ? ROWS ONLY</code> for DB2.
+     * <p>
+     * This function is optional. Platforms without one have their top N
+     * queries limited by the JDBC driver instead.
      */
-    private StringLengthSQLFunction stringLengthSQLFunction;
+    public class TopNSQLFunction {
+        
+        /**
+         * The part of the limited query that comes after SELECT but before
+         * the select list.
+         */
+        private String afterSelect;
+        
+        /**
+         * The part of the limited query that comes after the rest of the query.
+         */
+        private String afterQuery;
+        
+        public TopNSQLFunction(String afterSelect, String afterQuery) {
+            this.afterSelect = afterSelect;
+            this.afterQuery = afterQuery;
+        }
+        
+        /**
+         * Returns a query that selects the first <tt>n</tt> rows of the
+         * query "SELECT <i>selectListAndRest</i>".
+         */
+        public String getTopNSQLFunction(String selectListAndRest, int n) {
+            String count = String.valueOf(n);
+            StringBuilder sql = new StringBuilder("SELECT ");
+            if (afterSelect.trim().length() > 0) {
+                sql.append(afterSelect.trim().replace("?", count)).append(" ");
+            }
+            sql.append(selectListAndRest);
+            if (afterQuery.trim().length() > 0) {
+                sql.append(" ").append(afterQuery.trim().replace("?", count));
+            }
+            return sql.toString();
+        }
+    }
     
     /**
-     * An object to store the average function for the database.
+     * This class is used to hold the platform specific way of reading only a
+     * sample of a table's rows. The descriptor is appended after the table
+     * name in the FROM clause of every profiling query, with every
+     * <code>?</code> replaced by the sample percentage. For example,
+     * <code>TABLESAMPLE SYSTEM (?)</code> for PostgreSQL,
+     * <code>TABLESAMPLE (? PERCENT)</code> for SQL Server and
+     * <code>SAMPLE (?)</code> for Oracle. Platforms without a sampling clause
+     * can use a filter instead, such as
+     * <code>WHERE MOD(ROWNUM, 100) &lt; ?</code>.
+     * <p>
+     * This function is optional. Platforms without one are always profiled
+     * exactly, even in approximate mode.
      */
-    private AverageSQLFunction averageSQLFunction;
+    public class TableSampleSQLFunction {
+        
+        /**
+         * The part of the FROM clause that comes after the table name.
+         */
+        private String afterTable;
+        
+        public TableSampleSQLFunction(String afterTable) {
+            this.afterTable = afterTable;
+        }
+        
+        /**
+         * Returns the given table reference followed by the clause that
+         * limits it to the given percentage of its rows.
+         */
+        public String getTableSampleSQLFunction(String table, double percent) {
+            String percentString = BigDecimal.valueOf(percent).stripTrailingZeros().toPlainString();
+            return table + " " + afterTable.trim().replace("?", percentString);
+        }
+    }
     
     /**
-     * An object to store the case when null function for the database.
+     * The database specific profiling functions for one profiling run. These
+     * are set up from the data source type at the start of every run and
+     * passed along rather than kept in fields of the creator, so a single
+     * creator can profile several tables on different threads at once.
      */
-    private CaseWhenNullSQLFunction caseWhenNullSQLFunction;
+    private class PlatformFunctions {
+        
+        /**
+         * A map from data type names used in Architect to the database's actual
+         * data type stored in a profile function descriptor.
+         */
+        private final Map<String, ProfileFunctionDescriptor> profileFunctionMap =
+            new HashMap<String, ProfileFunctionDescriptor>();
+        
+        /**
+         * An object to store the string length function for the database.
+         */
+        private StringLengthSQLFunction stringLengthSQLFunction;
+        
+        /**
+         * An object to store the average function for the database.
+         */
+        private AverageSQLFunction averageSQLFunction;
+        
+        /**
+         * An object to store the case when null function for the database.
+         */
+        private CaseWhenNullSQLFunction caseWhenNullSQLFunction;
+        
+        /**
+         * An object to store the top N rows function for the database, or
+         * null if the platform does not have one.
+         */
+        private TopNSQLFunction topNSQLFunction;
+        
+        /**
+         * An object to store the table sample function for the database, or
+         * null if the platform does not have one.
+         */
+        private TableSampleSQLFunction tableSampleSQLFunction;
+        
+        /**
+         * True if the column queries of this run read only a sample of the
+         * table. Decided once the table's row count is known.
+         */
+        private boolean sampling;
+        
+        /**
+         * The number of rows in the table for every row in the sample. Counts
+         * of rows in the sample are multiplied by this to estimate the counts
+         * for the whole table.
+         */
+        private double sampleScale = 1.0;
+        
+        /**
+         * The number of rows in the sample.
+         */
+        private int sampledRowCount;
+    }
 
     /**
      * The settings for this profile creator.
      */
     private final ProfileSettings settings;
+
+    /**
+     * The number of columns whose aggregates are computed by the same query.
+     * A value of 1 profiles each column with its own queries.
+     */
+    private int columnBatchSize;
     
     public RemoteDatabaseProfileCreator(ProfileSettings settings) {
+        this(settings, 1);
+    }
+
+    /**
+     * Creates a remote database profile creator that profiles the columns of
+     * a table in batches. See {@link #setColumnBatchSize(int)}.
+     */
+    public RemoteDatabaseProfileCreator(ProfileSettings settings, int columnBatchSize) {
         this.settings = settings;
+        setColumnBatchSize(columnBatchSize);
     }
     
     public boolean doProfileImpl(TableProfileResult tpr) {
         MonitorableImpl pm = (MonitorableImpl) tpr.getProgressMonitor();
         try {
             
-            doTableProfile(tpr);
-            
             SQLTable table = tpr.getProfiledObject();
             JDBCDataSourceType dsType = table.getParentDatabase().getDataSource().getParentType();
-            createProfileFunctions(dsType);
-            for (SQLColumn col : table.getColumns()) {
-                ColumnProfileResult columnResult = new ColumnProfileResult(col);
-                tpr.addColumnProfileResult(columnResult);
-                doColumnProfile(columnResult, pm);
-                pm.setProgress(pm.getProgress() + 1);
+            PlatformFunctions functions = createProfileFunctions(dsType);
+            
+            doTableProfile(tpr, functions);
+            
+            if (columnBatchSize > 1) {
+                List<ColumnProfileResult> columnResults = new ArrayList<ColumnProfileResult>();
+                for (SQLColumn col : table.getColumns()) {
+                    ColumnProfileResult columnResult = new ColumnProfileResult(col);
+                    tpr.addColumnProfileResult(columnResult);
+                    columnResults.add(columnResult);
+                }
+                doBatchedColumnProfiles(columnResults, functions, pm);
+            } else {
+                for (SQLColumn col : table.getColumns()) {
+                    ColumnProfileResult columnResult = new ColumnProfileResult(col);
+                    tpr.addColumnProfileResult(columnResult);
+                    doColumnProfile(columnResult, functions, pm);
+                    pm.setProgress(pm.getProgress() + 1);
+                }
             }
 
             return !pm.isCancelled();
@@ -228,11 +391,13 @@ public class RemoteDatabaseProfileCreator extends AbstractTableProfileCreator {
     
     /**
      * Performs just the overall table part of the profiling.  No column profiling
-     * is performed.
+     * is performed. In approximate mode, this also counts the rows of the sample
+     * so the column queries know how to scale their counts up to the whole table.
      * 
      * @param tpr The table profile result to populate.
+     * @param functions The database specific SQL functions to use.
      */
-    private void doTableProfile(TableProfileResult tpr) throws SQLException, SQLObjectException {
+    private void doTableProfile(TableProfileResult tpr, PlatformFunctions functions) throws SQLException, SQLObjectException {
         logger.debug("Doing profile for table " + tpr.getProfiledObject());
         MonitorableImpl pm = (MonitorableImpl) tpr.getProgressMonitor();
         pm.setProgress(0);
@@ -246,7 +411,7 @@ public class RemoteDatabaseProfileCreator extends AbstractTableProfileCreator {
             conn = db.getConnection();
             String databaseIdentifierQuoteString = null;
 
-            databaseIdentifierQuoteString = conn.getMetaData().getIdentifierQuoteString();
+            databaseIdentifierQuoteString = DatabaseMetaDataCache.getInstance().getIdentifierQuoteString(db.getDataSource(), conn);
 
             StringBuffer sql = new StringBuffer();
             sql.append("SELECT COUNT(*) AS ROW__COUNT");
@@ -269,6 +434,26 @@ public class RemoteDatabaseProfileCreator extends AbstractTableProfileCreator {
             } else {
                 throw new AssertionError("No rows came back from COUNT(*) query!");
             }
+            rs.close();
+            rs = null;
+            
+            if (settings.isApproximate() && settings.getSamplePercent() < 100 &&
+                    functions.tableSampleSQLFunction != null && tpr.getRowCount() > 0) {
+                functions.sampling = true;
+                lastSQL = "SELECT COUNT(*) AS ROW__COUNT\nFROM " +
+                    fromClause(table, databaseIdentifierQuoteString, functions);
+                rs = stmt.executeQuery(lastSQL);
+                int sampledRowCount = rs.next() ? rs.getInt("ROW__COUNT") : 0;
+                if (sampledRowCount > 0) {
+                    functions.sampledRowCount = sampledRowCount;
+                    functions.sampleScale = tpr.getRowCount() / (double) sampledRowCount;
+                    logger.debug("Sampled " + sampledRowCount + " of " + tpr.getRowCount() +
+                            " rows of " + table.getName());
+                } else {
+                    logger.debug("Sample of " + table.getName() + " is empty; profiling the whole table");
+                    functions.sampling = false;
+                }
+            }
 
             // XXX: add where filter later
         } finally {
@@ -288,6 +473,189 @@ public class RemoteDatabaseProfileCreator extends AbstractTableProfileCreator {
         }
     }
 
+    /**
+     * Appends the aggregate profiling functions for one column to the select
+     * list of a profiling query. Each expression is given an alias ending in
+     * <code>_i</code>, so several columns can be profiled in the same query
+     * as long as they are given different values of <tt>i</tt>.
+     * 
+     * @return The number of expressions that were appended.
+     */
+    private int appendAggregateFunctions(
+            StringBuilder sql,
+            ProfileFunctionDescriptor pfd,
+            String quotedColumnName,
+            int i,
+            PlatformFunctions functions) {
+        int tryCount = 0;
+        if (settings.isFindingDistinctCount() && pfd.isCountDist() && !functions.sampling) {
+            sql.append(",\n COUNT(DISTINCT ");
+            sql.append(quotedColumnName);
+            sql.append(") AS DISTINCTCOUNT_"+i);
+            tryCount++;
+        }
+        if (settings.isFindingMin() && pfd.isMinValue() ) {
+            sql.append(",\n MIN(");
+            sql.append(quotedColumnName);
+            sql.append(") AS MINVALUE_"+i);
+            tryCount++;
+        }
+        if (settings.isFindingMax() && pfd.isMaxValue() ) {
+            sql.append(",\n MAX(");
+            sql.append(quotedColumnName);
+            sql.append(") AS MAXVALUE_"+i);
+            tryCount++;
+        }
+        if (settings.isFindingAvg() && pfd.isAvgValue() ) {
+            sql.append(",\n ");
+            sql.append(functions.averageSQLFunction.getAverageSQLFunction(quotedColumnName));
+            sql.append(" AS AVGVALUE_"+i);
+            tryCount++;
+        }
+        if (settings.isFindingMinLength() && pfd.isMinLength() ) {
+            sql.append(",\n MIN(");
+            sql.append(functions.stringLengthSQLFunction.getStringLengthSQLFunction(quotedColumnName));
+            sql.append(") AS MINLENGTH_"+i);
+            tryCount++;
+        }
+        if (settings.isFindingMaxLength() && pfd.isMaxLength() ) {
+            sql.append(",\n MAX(");
+            sql.append(functions.stringLengthSQLFunction.getStringLengthSQLFunction(quotedColumnName));
+            sql.append(") AS MAXLENGTH_"+i);
+            tryCount++;
+        }
+        if (settings.isFindingAvgLength() && pfd.isAvgLength() ) {
+            sql.append(",\n AVG(");
+            sql.append(functions.stringLengthSQLFunction.getStringLengthSQLFunction(quotedColumnName));
+            sql.append(") AS AVGLENGTH_"+i);
+            tryCount++;
+        }
+        if (settings.isFindingNullCount() && pfd.isSumDecode() ) {
+            sql.append(",\n SUM(");
+            sql.append(functions.caseWhenNullSQLFunction.getCaseWhenNullSQLFunction(quotedColumnName, "1"));
+            sql.append(") AS NULLCOUNT_"+i);
+            tryCount++;
+        }
+        return tryCount;
+    }
+
+    /**
+     * Reads the results of the expressions added by
+     * {@link #appendAggregateFunctions(StringBuilder, ProfileFunctionDescriptor, String, int, PlatformFunctions)}
+     * for the same value of <tt>i</tt> from the current row of the result set
+     * into the given column profile result. Counts taken from a sample are
+     * scaled up to the whole table.
+     */
+    private void readAggregateResults(
+            ResultSet rs,
+            ColumnProfileResult cpr,
+            ProfileFunctionDescriptor pfd,
+            int i,
+            PlatformFunctions functions) throws SQLException {
+        if (settings.isFindingDistinctCount() && pfd.isCountDist() && !functions.sampling) {
+            cpr.setDistinctValueCount(rs.getInt("DISTINCTCOUNT_"+i));
+        }
+        if (settings.isFindingMin() && pfd.isMinValue() ) {
+            cpr.setMinValue(rs.getObject("MINVALUE_"+i));
+        }
+        if (settings.isFindingMax() && pfd.isMaxValue() ) {
+            cpr.setMaxValue(rs.getObject("MAXVALUE_"+i));
+        }
+        if (settings.isFindingAvg() && pfd.isAvgValue() ) {
+            cpr.setAvgValue(rs.getObject("AVGVALUE_"+i));
+        }
+        if (settings.isFindingMinLength() && pfd.isMinLength() ) {
+            cpr.setMinLength(rs.getInt("MINLENGTH_"+i));
+        }
+        if (settings.isFindingMaxLength() && pfd.isMaxLength() ) {
+            cpr.setMaxLength(rs.getInt("MAXLENGTH_"+i));
+        }
+        if (settings.isFindingAvgLength() && pfd.isAvgLength() ) {
+            cpr.setAvgLength(rs.getDouble("AVGLENGTH_"+i));
+        }
+        if (settings.isFindingNullCount() && pfd.isSumDecode() ) {
+            cpr.setNullCount(scaleCount(rs.getInt("NULLCOUNT_"+i), functions));
+        }
+    }
+
+    /**
+     * Scales a count of rows in the sample up to an estimate for the whole
+     * table. Counts are returned unchanged when the table is not sampled.
+     */
+    private static int scaleCount(int count, PlatformFunctions functions) {
+        if (!functions.sampling) return count;
+        return (int) Math.round(count * functions.sampleScale);
+    }
+
+    /**
+     * Returns the table reference for the FROM clause of a profiling query,
+     * including the platform's sampling clause if this run is sampling the
+     * table.
+     */
+    private String fromClause(SQLTable table, String quote, PlatformFunctions functions) {
+        String tableName = DDLUtils.toQualifiedName(table.getCatalogName(),
+                table.getSchemaName(),
+                table.getName(),
+                quote,
+                quote);
+        if (functions.sampling) {
+            return functions.tableSampleSQLFunction.getTableSampleSQLFunction(tableName, settings.getSamplePercent());
+        }
+        return tableName;
+    }
+
+    /**
+     * Creates the query that finds the most frequent values of a column. If
+     * the platform has a {@link TopNSQLFunction}, the database is asked to
+     * return only the top N rows; otherwise it is up to the JDBC driver's max
+     * rows setting to keep the rest of the distinct values from being sent.
+     * 
+     * @param columnIndex
+     *            If not null, an extra COLUMN__INDEX column is selected with
+     *            this value so the results of several of these queries can be
+     *            combined with UNION ALL.
+     */
+    private String createTopNQuery(
+            SQLTable table,
+            String quotedColumnName,
+            String quote,
+            Integer columnIndex,
+            PlatformFunctions functions) {
+        StringBuilder sql = new StringBuilder();
+        if (columnIndex != null) {
+            sql.append(columnIndex).append(" AS COLUMN__INDEX, ");
+        }
+        sql.append(quotedColumnName);
+        sql.append(" AS MYVALUE, COUNT(*) AS COUNT1 FROM ");
+        sql.append(fromClause(table, quote, functions));
+        sql.append(" GROUP BY ").append(quotedColumnName);
+        sql.append(" ORDER BY COUNT1 DESC");
+        if (functions.topNSQLFunction != null) {
+            return functions.topNSQLFunction.getTopNSQLFunction(sql.toString(), settings.getTopNCount());
+        } else {
+            return "SELECT " + sql;
+        }
+    }
+
+    /**
+     * Adds the given top values to the column profile result, followed by
+     * the count of all the other values. Counts taken from a sample are
+     * scaled up to the whole table.
+     */
+    private void addTopNValues(ColumnProfileResult cpr, List<Object> values, List<Integer> counts,
+            PlatformFunctions functions) {
+        int topNSum = 0;
+        for (int n = 0; n < values.size() && n < settings.getTopNCount(); n++) {
+            int count = scaleCount(counts.get(n), functions);
+            cpr.addValueCount(values.get(n), count);
+            topNSum += count;
+        }
+        int remainingCount = cpr.getParent().getRowCount() - topNSum;
+        if (remainingCount > 0) {
+            cpr.addValueCount(ColumnValueCount.OTHER_VALUE_OBJECT, remainingCount);
+        }
+    }
+
     /**
      * Executes all of the profile functions defined in the given descriptor.  These
      * functions are executed against the given column, and the results are stored
@@ -299,6 +667,7 @@ public class RemoteDatabaseProfileCreator extends AbstractTableProfileCreator {
      * aggregate functions differ by platform).
      * @param col The column to perform the profiling on.
      * @param con The connection to use to the database <tt>col</tt> is in.
+     * @param functions The database specific SQL functions to use.
      * @param pm The progress monitor for this operation.  It will be polled to see if the current
      * profiling operation has been cancelled.  It will not be manipulated in any other way.
      * @throws SQLException If profiling fails.  This is most likely due to an incorrect
@@ -309,100 +678,34 @@ public class RemoteDatabaseProfileCreator extends AbstractTableProfileCreator {
             ProfileFunctionDescriptor pfd,
             SQLColumn col,
             Connection con,
+            PlatformFunctions functions,
             Monitorable pm) throws SQLException {
 
         logger.debug("Starting execProfileFunctions for " + col);
         long createStartTime = System.currentTimeMillis();
         final int i = 0;
-        StringBuffer sql = new StringBuffer();
+        StringBuilder sql = new StringBuilder();
         Statement stmt = null;
         ResultSet rs = null;
         String lastSQL = null;
-        String columnName = null;
         String databaseIdentifierQuoteString = null;
         cpr.setCreateStartTime(createStartTime);
         SQLTable table = col.getParent();
 
         try {
-            databaseIdentifierQuoteString = con.getMetaData().getIdentifierQuoteString();
+            databaseIdentifierQuoteString = DatabaseMetaDataCache.getInstance().getIdentifierQuoteString(
+                    table.getParentDatabase().getDataSource(), con);
+            String quotedColumnName = databaseIdentifierQuoteString + col.getName() + databaseIdentifierQuoteString;
             sql.append("SELECT 1");
-            int tryCount = 0;
-            if (settings.isFindingDistinctCount() && pfd.isCountDist() ) {
-                sql.append(",\n COUNT(DISTINCT ");
-                sql.append(databaseIdentifierQuoteString);
-                sql.append(col.getName());
-                sql.append(databaseIdentifierQuoteString);
-                sql.append(") AS DISTINCTCOUNT_"+i);
-                tryCount++;
-            }
-            if (settings.isFindingMin() && pfd.isMinValue() ) {
-                sql.append(",\n MIN(");
-                sql.append(databaseIdentifierQuoteString);
-                sql.append(col.getName());
-                sql.append(databaseIdentifierQuoteString);
-                sql.append(") AS MINVALUE_"+i);
-                tryCount++;
-            }
-            if (settings.isFindingMax() && pfd.isMaxValue() ) {
-                sql.append(",\n MAX(");
-                sql.append(databaseIdentifierQuoteString);
-                sql.append(col.getName());
-                sql.append(databaseIdentifierQuoteString);
-                sql.append(") AS MAXVALUE_"+i);
-                tryCount++;
-            }
-            if (settings.isFindingAvg() && pfd.isAvgValue() ) {
-                sql.append(",\n ");
-                sql.append(averageSQLFunction.getAverageSQLFunction(databaseIdentifierQuoteString+
-                        col.getName()+
-                        databaseIdentifierQuoteString));
-                sql.append(" AS AVGVALUE_"+i);
-                tryCount++;
-            }
-            if (settings.isFindingMinLength() && pfd.isMinLength() ) {
-                sql.append(",\n MIN(");
-                sql.append(stringLengthSQLFunction.getStringLengthSQLFunction(databaseIdentifierQuoteString+
-                        col.getName()+databaseIdentifierQuoteString));
-                sql.append(") AS MINLENGTH_"+i);
-                tryCount++;
-            }
-            if (settings.isFindingMaxLength() && pfd.isMaxLength() ) {
-                sql.append(",\n MAX(");
-                sql.append(stringLengthSQLFunction.getStringLengthSQLFunction(databaseIdentifierQuoteString+
-                        col.getName()+databaseIdentifierQuoteString));
-                sql.append(") AS MAXLENGTH_"+i);
-                tryCount++;
-            }
-            if (settings.isFindingAvgLength() && pfd.isAvgLength() ) {
-                sql.append(",\n AVG(");
-                sql.append(stringLengthSQLFunction.getStringLengthSQLFunction(databaseIdentifierQuoteString+
-                        col.getName()+databaseIdentifierQuoteString));
-                sql.append(") AS AVGLENGTH_"+i);
-                tryCount++;
-            }
-
-            if (settings.isFindingNullCount() && pfd.isSumDecode() ) {
-                sql.append(",\n SUM(");
-                sql.append(caseWhenNullSQLFunction.getCaseWhenNullSQLFunction(
-                        databaseIdentifierQuoteString+
-                        col.getName()+
-                        databaseIdentifierQuoteString,
-                "1"));
-                sql.append(") AS NULLCOUNT_"+i);
-                tryCount++;
-            }
+            int tryCount = appendAggregateFunctions(sql, pfd, quotedColumnName, i, functions);
+
+            stmt = con.createStatement();
+            stmt.setEscapeProcessing(false);
 
             if ( tryCount > 0 && !pm.isCancelled() ) {
                 sql.append("\n FROM ");
 
-                sql.append(DDLUtils.toQualifiedName(table.getCatalogName(),
-                        table.getSchemaName(),
-                        table.getName(),
-                        databaseIdentifierQuoteString,
-                        databaseIdentifierQuoteString));
-
-                stmt = con.createStatement();
-                stmt.setEscapeProcessing(false);
+                sql.append(fromClause(table, databaseIdentifierQuoteString, functions));
 
                 lastSQL = sql.toString();
                 
@@ -411,78 +714,37 @@ public class RemoteDatabaseProfileCreator extends AbstractTableProfileCreator {
                 if (pm.isCancelled()) return;
 
                 if (rs.next()) {
-                    if (settings.isFindingDistinctCount() && pfd.isCountDist() ) {
-                        columnName = "DISTINCTCOUNT_"+i;
-                        cpr.setDistinctValueCount(rs.getInt(columnName));
-                    }
-                    if (settings.isFindingMin() && pfd.isMinValue() ) {
-                        columnName = "MINVALUE_"+i;
-                        cpr.setMinValue(rs.getObject(columnName));
-                    }
-                    if (settings.isFindingMax() && pfd.isMaxValue() ) {
-                        columnName = "MAXVALUE_"+i;
-                        cpr.setMaxValue(rs.getObject(columnName));
-                    }
-                    if (settings.isFindingAvg() && pfd.isAvgValue() ) {
-                        columnName = "AVGVALUE_"+i;
-                        cpr.setAvgValue(rs.getObject(columnName));
-                    }
-                    if (settings.isFindingMinLength() && pfd.isMinLength() ) {
-                        columnName = "MINLENGTH_"+i;
-                        cpr.setMinLength(rs.getInt(columnName));
-                    }
-                    if (settings.isFindingMaxLength() && pfd.isMaxLength() ) {
-                        columnName = "MAXLENGTH_"+i;
-                        cpr.setMaxLength(rs.getInt(columnName));
-                    }
-                    if (settings.isFindingAvgLength() && pfd.isAvgLength() ) {
-                        columnName = "AVGLENGTH_"+i;
-                        cpr.setAvgLength(rs.getDouble(columnName));
-                    }
-
-                    if (settings.isFindingNullCount() && pfd.isSumDecode() ) {
-                        columnName = "NULLCOUNT_"+i;
-                        cpr.setNullCount(rs.getInt(columnName));
-                    }
+                    readAggregateResults(rs, cpr, pfd, i, functions);
                 }
                 else {
-                    throw new IllegalStateException("Query executed, but returns no rows:\n" +
-                            lastSQL + "\nColumn Name: " + columnName );
+                    throw new IllegalStateException("Query executed, but returns no rows:\n" + lastSQL);
                 }
                 rs.close();
                 rs = null;
             }
 
-            if (settings.isFindingTopTen() && pfd.isCountDist() && !pm.isCancelled() ) {
-                sql = new StringBuffer();
-                sql.append("SELECT ").append(databaseIdentifierQuoteString);
-                sql.append(col.getName()).append(databaseIdentifierQuoteString);
-                sql.append(" AS MYVALUE, COUNT(*) AS COUNT1 FROM ");
-                sql.append(DDLUtils.toQualifiedName(table.getCatalogName(),
-                        table.getSchemaName(),
-                        table.getName(),
-                        databaseIdentifierQuoteString,
-                        databaseIdentifierQuoteString));
-                sql.append(" GROUP BY ").append(databaseIdentifierQuoteString);
-                sql.append(col.getName()).append(databaseIdentifierQuoteString);
-                sql.append(" ORDER BY COUNT1 DESC");
+            if (functions.sampling && settings.isFindingDistinctCount() && pfd.isCountDist() && !pm.isCancelled()) {
+                execSampledDistinctCount(cpr, quotedColumnName, table, databaseIdentifierQuoteString, con, functions);
+            }
 
-                lastSQL = sql.toString();
+            if (settings.isFindingTopTen() && pfd.isCountDist() && !pm.isCancelled() ) {
+                lastSQL = createTopNQuery(table, quotedColumnName, databaseIdentifierQuoteString, null, functions);
+                stmt.setMaxRows(settings.getTopNCount());
                 rs = stmt.executeQuery(lastSQL);
-                int topNCount = settings.getTopNCount();
-                int topNSum = 0;
-                for (int n = 0; rs.next() && n < topNCount; n++) {
-                    cpr.addValueCount(rs.getObject("MYVALUE"), rs.getInt("COUNT1"));
-                    topNSum += rs.getInt("COUNT1");
-                }
-                int remainingCount = cpr.getParent().getRowCount() - topNSum;
-                if (remainingCount > 0) {
-                    cpr.addValueCount(ColumnValueCount.OTHER_VALUE_OBJECT, remainingCount);
+                List<Object> values = new ArrayList<Object>();
+                List<Integer> counts = new ArrayList<Integer>();
+                while (rs.next() && values.size() < settings.getTopNCount()) {
+                    values.add(rs.getObject("MYVALUE"));
+                    counts.add(rs.getInt("COUNT1"));
                 }
+                addTopNValues(cpr, values, counts, functions);
                 rs.close();
                 rs = null;
             }
 
+            if (functions.sampling) {
+                markEstimate(cpr, pfd, functions);
+            }
             cpr.setCreateEndTime(System.currentTimeMillis());
 
         } catch (SQLException ex) {
@@ -501,16 +763,388 @@ public class RemoteDatabaseProfileCreator extends AbstractTableProfileCreator {
         }
 
     }
+
+    /**
+     * Profiles the given columns with as few passes over the table as the
+     * platform allows. The aggregate functions for each batch of
+     * {@link #getColumnBatchSize()} columns are computed by a single query. If
+     * the platform has a {@link TopNSQLFunction}, the top N queries for the
+     * columns of a batch that share a data type are combined with UNION ALL so
+     * the database returns only N rows per column in one round trip. If a
+     * combined query fails, the columns of that batch are profiled one at a
+     * time instead so the failure can be attributed to the right column.
+     * 
+     * @param results
+     *            The column profile results to populate. They must already be
+     *            children of their table profile result.
+     */
+    private void doBatchedColumnProfiles(
+            List<ColumnProfileResult> results,
+            PlatformFunctions functions,
+            MonitorableImpl pm) throws SQLException, SQLObjectException {
+        if (results.isEmpty()) return;
+        SQLTable table = results.get(0).getParent().getProfiledObject();
+        Connection con = null;
+        try {
+            con = table.getParentDatabase().getConnection();
+            String quote = DatabaseMetaDataCache.getInstance().getIdentifierQuoteString(
+                    table.getParentDatabase().getDataSource(), con);
+
+            // find the profile functions for every column up front
+            Map<ColumnProfileResult, ProfileFunctionDescriptor> descriptors =
+                new LinkedHashMap<ColumnProfileResult, ProfileFunctionDescriptor>();
+            for (ColumnProfileResult cpr : results) {
+                if (pm.isCancelled()) return;
+                SQLColumn col = cpr.getProfiledObject();
+                ProfileFunctionDescriptor pfd = functions.profileFunctionMap.get(col.getSourceDataTypeName());
+                if (pfd == null) {
+                    logger.debug(col.getName()+ " Unknown DataType:(" + col.getSourceDataTypeName() + ").");
+                    pfd = discoverProfileFunctionDescriptor(col, con, functions, pm);
+                    functions.profileFunctionMap.put(col.getSourceDataTypeName(), pfd);
+                }
+                descriptors.put(cpr, pfd);
+            }
+
+            for (int start = 0; start < results.size() && !pm.isCancelled(); start += columnBatchSize) {
+                List<ColumnProfileResult> batch =
+                    results.subList(start, Math.min(results.size(), start + columnBatchSize));
+                long batchStartTime = System.currentTimeMillis();
+                for (ColumnProfileResult cpr : batch) {
+                    cpr.setCreateStartTime(batchStartTime);
+                }
+                try {
+                    execBatchedAggregates(batch, start, descriptors, table, quote, con, functions, pm);
+                    if (functions.sampling && settings.isFindingDistinctCount()) {
+                        for (ColumnProfileResult cpr : batch) {
+                            if (!descriptors.get(cpr).isCountDist() || pm.isCancelled()) continue;
+                            String quotedColumnName = quote + cpr.getProfiledObject().getName() + quote;
+                            execSampledDistinctCount(cpr, quotedColumnName, table, quote, con, functions);
+                        }
+                    }
+                    if (settings.isFindingTopTen() && functions.topNSQLFunction != null) {
+                        execBatchedTopN(batch, start, descriptors, table, quote, con, functions, pm);
+                    } else if (settings.isFindingTopTen()) {
+                        for (ColumnProfileResult cpr : batch) {
+                            execSingleTopN(cpr, descriptors.get(cpr), table, quote, con, functions, pm);
+                        }
+                    }
+                    long batchEndTime = System.currentTimeMillis();
+                    for (ColumnProfileResult cpr : batch) {
+                        if (functions.sampling) {
+                            markEstimate(cpr, descriptors.get(cpr), functions);
+                        }
+                        cpr.setCreateEndTime(batchEndTime);
+                    }
+                } catch (SQLException ex) {
+                    logger.info("Batched profile of columns " + start + " to " + (start + batch.size() - 1) +
+                            " of " + table.getName() + " failed; falling back to one column at a time", ex);
+                    for (ColumnProfileResult cpr : batch) {
+                        clearColumnProfile(cpr);
+                        try {
+                            execProfileFunctions(cpr, descriptors.get(cpr), cpr.getProfiledObject(), con, functions, pm);
+                        } catch (Exception colEx) {
+                            cpr.setCreateStartTime(batchStartTime);
+                            cpr.setException(colEx);
+                            cpr.setCreateEndTime(System.currentTimeMillis());
+                            logger.error("Error in Column Profiling", colEx);
+                        }
+                    }
+                }
+                pm.setProgress(pm.getProgress() + batch.size());
+            }
+        } finally {
+            if (con != null) {
+                con.close();
+            }
+        }
+    }
+
+    /**
+     * Computes the aggregate functions for all columns of a batch in a single
+     * query. The alias suffix of each column's expressions is its index in
+     * the table.
+     */
+    private void execBatchedAggregates(
+            List<ColumnProfileResult> batch,
+            int firstIndex,
+            Map<ColumnProfileResult, ProfileFunctionDescriptor> descriptors,
+            SQLTable table,
+            String quote,
+            Connection con,
+            PlatformFunctions functions,
+            Monitorable pm) throws SQLException {
+        StringBuilder sql = new StringBuilder("SELECT 1");
+        int tryCount = 0;
+        for (int i = 0; i < batch.size(); i++) {
+            ColumnProfileResult cpr = batch.get(i);
+            String quotedColumnName = quote + cpr.getProfiledObject().getName() + quote;
+            tryCount += appendAggregateFunctions(sql, descriptors.get(cpr), quotedColumnName, firstIndex + i, functions);
+        }
+        if (tryCount == 0 || pm.isCancelled()) return;
+        sql.append("\n FROM ");
+        sql.append(fromClause(table, quote, functions));
+
+        String lastSQL = sql.toString();
+        Statement stmt = null;
+        ResultSet rs = null;
+        try {
+            stmt = con.createStatement();
+            stmt.setEscapeProcessing(false);
+            rs = stmt.executeQuery(lastSQL);
+            if (!rs.next()) {
+                throw new IllegalStateException("Query executed, but returns no rows:\n" + lastSQL);
+            }
+            for (int i = 0; i < batch.size(); i++) {
+                ColumnProfileResult cpr = batch.get(i);
+                readAggregateResults(rs, cpr, descriptors.get(cpr), firstIndex + i, functions);
+            }
+        } catch (SQLException ex) {
+            logger.debug("Batched profiling query failed. Query was:\n" + lastSQL);
+            throw ex;
+        } finally {
+            try {
+                if (rs != null) rs.close();
+                if (stmt != null) stmt.close();
+            } catch (SQLException ex) {
+                logger.error("Couldn't clean up result set", ex);
+            }
+        }
+    }
+
+    /**
+     * Finds the top N values of the columns in a batch. Columns that have the
+     * same data type are combined into a single UNION ALL query of
+     * server-side limited top N queries, so only N rows per column are sent
+     * back. This requires the platform to have a {@link TopNSQLFunction}.
+     */
+    private void execBatchedTopN(
+            List<ColumnProfileResult> batch,
+            int firstIndex,
+            Map<ColumnProfileResult, ProfileFunctionDescriptor> descriptors,
+            SQLTable table,
+            String quote,
+            Connection con,
+            PlatformFunctions functions,
+            Monitorable pm) throws SQLException {
+        // UNION ALL needs every branch to have the same value type
+        Map<Integer, List<Integer>> indicesByType = new LinkedHashMap<Integer, List<Integer>>();
+        for (int i = 0; i < batch.size(); i++) {
+            ColumnProfileResult cpr = batch.get(i);
+            if (!descriptors.get(cpr).isCountDist()) continue;
+            Integer type = cpr.getProfiledObject().getType();
+            List<Integer> indices = indicesByType.get(type);
+            if (indices == null) {
+                indices = new ArrayList<Integer>();
+                indicesByType.put(type, indices);
+            }
+            indices.add(i);
+        }
+
+        for (List<Integer> indices : indicesByType.values()) {
+            if (pm.isCancelled()) return;
+            StringBuilder sql = new StringBuilder();
+            for (int i : indices) {
+                ColumnProfileResult cpr = batch.get(i);
+                String quotedColumnName = quote + cpr.getProfiledObject().getName() + quote;
+                if (sql.length() > 0) {
+                    sql.append("\nUNION ALL\n");
+                }
+                sql.append("SELECT * FROM (");
+                sql.append(createTopNQuery(table, quotedColumnName, quote, firstIndex + i, functions));
+                sql.append(") TOPN_").append(firstIndex + i);
+            }
+
+            Map<Integer, List<Object>> values = new HashMap<Integer, List<Object>>();
+            Map<Integer, List<Integer>> counts = new HashMap<Integer, List<Integer>>();
+            for (int i : indices) {
+                values.put(firstIndex + i, new ArrayList<Object>());
+                counts.put(firstIndex + i, new ArrayList<Integer>());
+            }
+
+            String lastSQL = sql.toString();
+            Statement stmt = null;
+            ResultSet rs = null;
+            try {
+                stmt = con.createStatement();
+                stmt.setEscapeProcessing(false);
+                rs = stmt.executeQuery(lastSQL);
+                while (rs.next()) {
+                    int columnIndex = rs.getInt("COLUMN__INDEX");
+                    values.get(columnIndex).add(rs.getObject("MYVALUE"));
+                    counts.get(columnIndex).add(rs.getInt("COUNT1"));
+                }
+            } catch (SQLException ex) {
+                logger.debug("Batched top N query failed. Query was:\n" + lastSQL);
+                throw ex;
+            } finally {
+                try {
+                    if (rs != null) rs.close();
+                    if (stmt != null) stmt.close();
+                } catch (SQLException ex) {
+                    logger.error("Couldn't clean up result set", ex);
+                }
+            }
+
+            // the order of rows from a UNION ALL is not defined, so re-sort each column's values
+            for (int i : indices) {
+                final List<Integer> columnCounts = counts.get(firstIndex + i);
+                List<Object> columnValues = values.get(firstIndex + i);
+                List<Integer> order = new ArrayList<Integer>();
+                for (int n = 0; n < columnCounts.size(); n++) {
+                    order.add(n);
+                }
+                Collections.sort(order, new Comparator<Integer>() {
+                    public int compare(Integer o1, Integer o2) {
+                        return columnCounts.get(o2).compareTo(columnCounts.get(o1));
+                    }
+                });
+                List<Object> sortedValues = new ArrayList<Object>();
+                List<Integer> sortedCounts = new ArrayList<Integer>();
+                for (int n : order) {
+                    sortedValues.add(columnValues.get(n));
+                    sortedCounts.add(columnCounts.get(n));
+                }
+                addTopNValues(batch.get(i), sortedValues, sortedCounts, functions);
+            }
+        }
+    }
+
+    /**
+     * Finds the top N values of a single column, limiting the number of rows
+     * returned through the JDBC driver's max rows setting.
+     */
+    private void execSingleTopN(
+            ColumnProfileResult cpr,
+            ProfileFunctionDescriptor pfd,
+            SQLTable table,
+            String quote,
+            Connection con,
+            PlatformFunctions functions,
+            Monitorable pm) throws SQLException {
+        if (!pfd.isCountDist() || pm.isCancelled()) return;
+        String quotedColumnName = quote + cpr.getProfiledObject().getName() + quote;
+        String lastSQL = createTopNQuery(table, quotedColumnName, quote, null, functions);
+        Statement stmt = null;
+        ResultSet rs = null;
+        try {
+            stmt = con.createStatement();
+            stmt.setEscapeProcessing(false);
+            stmt.setMaxRows(settings.getTopNCount());
+            rs = stmt.executeQuery(lastSQL);
+            List<Object> values = new ArrayList<Object>();
+            List<Integer> counts = new ArrayList<Integer>();
+            while (rs.next() && values.size() < settings.getTopNCount()) {
+                values.add(rs.getObject("MYVALUE"));
+                counts.add(rs.getInt("COUNT1"));
+            }
+            addTopNValues(cpr, values, counts, functions);
+        } catch (SQLException ex) {
+            logger.debug("Top N query failed. Query was:\n" + lastSQL);
+            throw ex;
+        } finally {
+            try {
+                if (rs != null) rs.close();
+                if (stmt != null) stmt.close();
+            } catch (SQLException ex) {
+                logger.error("Couldn't clean up result set", ex);
+            }
+        }
+    }
+
+    /**
+     * Estimates the number of distinct values in a column from a sample of
+     * its table. Counting the distinct values in the sample alone would badly
+     * underestimate, since most values of a high cardinality column do not
+     * appear in a small sample at all. Instead this uses the "guaranteed error
+     * estimator" of Charikar et al.: values that appear more than once in the
+     * sample are assumed to be common and are counted once, while each value
+     * that appears exactly once stands for <code>sqrt(1 / f)</code> distinct
+     * values of the table, where <code>f</code> is the sampled fraction. The
+     * estimate is within a factor of <code>sqrt(1 / f)</code> of the true
+     * count.
+     */
+    private void execSampledDistinctCount(
+            ColumnProfileResult cpr,
+            String quotedColumnName,
+            SQLTable table,
+            String quote,
+            Connection con,
+            PlatformFunctions functions) throws SQLException {
+        StringBuilder sql = new StringBuilder();
+        sql.append("SELECT COUNT(MYVALUE) AS DISTINCTCOUNT,");
+        sql.append("\n SUM(CASE WHEN COUNT1 = 1 AND MYVALUE IS NOT NULL THEN 1 ELSE 0 END) AS SINGLETONCOUNT");
+        sql.append("\nFROM (SELECT ").append(quotedColumnName).append(" AS MYVALUE, COUNT(*) AS COUNT1");
+        sql.append(" FROM ").append(fromClause(table, quote, functions));
+        sql.append(" GROUP BY ").append(quotedColumnName).append(") SAMPLE__VALUES");
+        String lastSQL = sql.toString();
+        Statement stmt = null;
+        ResultSet rs = null;
+        try {
+            stmt = con.createStatement();
+            stmt.setEscapeProcessing(false);
+            rs = stmt.executeQuery(lastSQL);
+            if (!rs.next()) {
+                throw new IllegalStateException("Query executed, but returns no rows:\n" + lastSQL);
+            }
+            int sampleDistinct = rs.getInt("DISTINCTCOUNT");
+            int singletons = rs.getInt("SINGLETONCOUNT");
+            double estimate = Math.sqrt(functions.sampleScale) * singletons + (sampleDistinct - singletons);
+            int nonNullRows = cpr.getParent().getRowCount() - cpr.getNullCount();
+            cpr.setDistinctValueCount((int) Math.max(sampleDistinct, Math.min(nonNullRows, Math.round(estimate))));
+        } catch (SQLException ex) {
+            logger.debug("Sampled distinct count query failed. Query was:\n" + lastSQL);
+            throw ex;
+        } finally {
+            try {
+                if (rs != null) rs.close();
+                if (stmt != null) stmt.close();
+            } catch (SQLException ex) {
+                logger.error("Couldn't clean up result set", ex);
+            }
+        }
+    }
+
+    /**
+     * Marks the given column profile result as an estimate made from a sample
+     * of the table, and works out its error bound. Counts of rows are off by
+     * at most about <code>1 / sqrt(n)</code> of the row count for a sample of
+     * <code>n</code> rows, and sampled distinct counts by the factor given in
+     * {@link #execSampledDistinctCount(ColumnProfileResult, String, SQLTable, String, Connection, PlatformFunctions)}.
+     */
+    private void markEstimate(ColumnProfileResult cpr, ProfileFunctionDescriptor pfd, PlatformFunctions functions) {
+        double errorBound = 1 / Math.sqrt(functions.sampledRowCount);
+        if (settings.isFindingDistinctCount() && pfd.isCountDist()) {
+            errorBound = Math.max(errorBound, Math.sqrt(functions.sampleScale) - 1);
+        }
+        cpr.setEstimate(true);
+        cpr.setErrorBound(errorBound);
+    }
+
+    /**
+     * Removes anything a failed batch may have already stored in the given
+     * column profile result, so it can be profiled again on its own.
+     */
+    private void clearColumnProfile(ColumnProfileResult cpr) {
+        for (ColumnValueCount cvc : new ArrayList<ColumnValueCount>(cpr.getValueCount())) {
+            try {
+                cpr.removeChild(cvc);
+            } catch (Exception ex) {
+                throw new RuntimeException(ex);
+            }
+        }
+    }
     
     /**
      * Performs profiling at the column level by issuing a SELECT statement against
      * the column referenced by <tt>cpr</tt>.
      * 
      * @param cpr The profile result to populate
+     * @param functions The database specific SQL functions to use.
      * @param pm The progress monitor.  This progress monitor is only used for checking
      * if the operation is canceled; it is not updated with progress information.
      */
-    protected void doColumnProfile(ColumnProfileResult cpr, MonitorableImpl pm) throws SQLException, SQLObjectException {
+    private void doColumnProfile(ColumnProfileResult cpr, PlatformFunctions functions, MonitorableImpl pm)
+    throws SQLException, SQLObjectException {
         logger.debug("Doing profile for column " + cpr.getProfiledObject().getName());
         if (pm.isCancelled()) {
             return;
@@ -527,19 +1161,19 @@ public class RemoteDatabaseProfileCreator extends AbstractTableProfileCreator {
             stmt = con.createStatement();
             stmt.setEscapeProcessing(false);
             
-            ProfileFunctionDescriptor pfd = profileFunctionMap.get(col.getSourceDataTypeName());
+            ProfileFunctionDescriptor pfd = functions.profileFunctionMap.get(col.getSourceDataTypeName());
             long profileStartTime = System.currentTimeMillis();
 
             if (pfd == null) {
                 logger.debug(col.getName()+ " Unknown DataType:(" +
                         col.getSourceDataTypeName() + ").");
-                logger.debug("Known data types are: " + profileFunctionMap.keySet());
-                pfd = discoverProfileFunctionDescriptor(col, con, pm);
-                profileFunctionMap.put(col.getSourceDataTypeName(), pfd);
+                logger.debug("Known data types are: " + functions.profileFunctionMap.keySet());
+                pfd = discoverProfileFunctionDescriptor(col, con, functions, pm);
+                functions.profileFunctionMap.put(col.getSourceDataTypeName(), pfd);
             }
 
             try {
-                execProfileFunctions(cpr, pfd, col, con, pm);
+                execProfileFunctions(cpr, pfd, col, con, functions, pm);
             } catch (Exception ex) {
                 cpr.setCreateStartTime(profileStartTime);
                 cpr.setException(ex);
@@ -578,9 +1212,9 @@ public class RemoteDatabaseProfileCreator extends AbstractTableProfileCreator {
      * function, and case when null SQL function as they are also database
      * specific.
      */
-    private void createProfileFunctions(JDBCDataSourceType dsType) {
+    private PlatformFunctions createProfileFunctions(JDBCDataSourceType dsType) {
         
-        profileFunctionMap = new HashMap<String, ProfileFunctionDescriptor>();
+        PlatformFunctions functions = new PlatformFunctions();
         logger.debug("The property to retrieve is " + ProfileFunctionDescriptor.class.getName() + "_(number)");
         
         for (int dataTypeCount = 0;; dataTypeCount += 1) {
@@ -588,7 +1222,7 @@ public class RemoteDatabaseProfileCreator extends AbstractTableProfileCreator {
             if (dataTypeToParse == null) break;
             
             ProfileFunctionDescriptor pfd = ProfileFunctionDescriptor.parseDescriptorString(dataTypeToParse);
-            profileFunctionMap.put(pfd.getArchitectSpecificName(), pfd);
+            functions.profileFunctionMap.put(pfd.getArchitectSpecificName(), pfd);
         }
         
         logger.debug("The property to retrieve is " + propName(StringLengthSQLFunction.class));
@@ -601,7 +1235,7 @@ public class RemoteDatabaseProfileCreator extends AbstractTableProfileCreator {
                 "Current setting for your database is '" + function + "'"
                 );
         }
-        stringLengthSQLFunction = new StringLengthSQLFunction(functionParts[0], functionParts[1]);
+        functions.stringLengthSQLFunction = new StringLengthSQLFunction(functionParts[0], functionParts[1]);
         
         function = dsType.getProperty(propName(AverageSQLFunction.class));
         functionParts = function.split(":");
@@ -612,7 +1246,7 @@ public class RemoteDatabaseProfileCreator extends AbstractTableProfileCreator {
                 "Current setting for your database is '" + function + "'"
                 );
         }
-        averageSQLFunction = new AverageSQLFunction(functionParts[0], functionParts[1]);
+        functions.averageSQLFunction = new AverageSQLFunction(functionParts[0], functionParts[1]);
         
         function = dsType.getProperty(propName(CaseWhenNullSQLFunction.class));
         functionParts = function.split(":");
@@ -623,8 +1257,27 @@ public class RemoteDatabaseProfileCreator extends AbstractTableProfileCreator {
                 "Current setting for your database is '" + function + "'"
                 );
         }
-        caseWhenNullSQLFunction = new CaseWhenNullSQLFunction(functionParts[0], functionParts[1], functionParts[2]);
+        functions.caseWhenNullSQLFunction = new CaseWhenNullSQLFunction(functionParts[0], functionParts[1], functionParts[2]);
+        
+        function = dsType.getProperty(propName(TopNSQLFunction.class));
+        if (function != null && function.trim().length() > 0) {
+            functionParts = function.split(":", -1);
+            if (functionParts.length != 2) {
+                throw new RuntimeException(
+                    "Configuration error in SQL Top N Function Descriptor for " + dsType.getName() + ":\n" +
+                    "Function descriptor must have exactly one : character in it (eg. ':LIMIT ?')\n" +
+                    "Current setting for your database is '" + function + "'"
+                    );
+            }
+            functions.topNSQLFunction = new TopNSQLFunction(functionParts[0], functionParts[1]);
+        }
+        
+        function = dsType.getProperty(propName(TableSampleSQLFunction.class));
+        if (function != null && function.trim().length() > 0) {
+            functions.tableSampleSQLFunction = new TableSampleSQLFunction(function);
+        }
         
+        return functions;
     }
 
     /**
@@ -633,10 +1286,12 @@ public class RemoteDatabaseProfileCreator extends AbstractTableProfileCreator {
      * 
      * @param col The column to figureout how to profile
      * @param conn A connection to col's database
+     * @param functions The database specific SQL functions to use.
      * @return A ProfileFunctionDescriptor that is properly configured for the data
      * type of col.
      */
-    private ProfileFunctionDescriptor discoverProfileFunctionDescriptor(SQLColumn col, Connection conn, Monitorable pm) {
+    private ProfileFunctionDescriptor discoverProfileFunctionDescriptor(SQLColumn col, Connection conn,
+            PlatformFunctions functions, Monitorable pm) {
         ProfileFunctionDescriptor pfd = new ProfileFunctionDescriptor(col.getSourceDataTypeName(),
                 col.getType(),false,false,false,false,false,false,false,false);
 
@@ -651,7 +1306,7 @@ public class RemoteDatabaseProfileCreator extends AbstractTableProfileCreator {
         
         try {
             pfd.setCountDist(true);
-            execProfileFunctions(dummy, pfd, col, conn, pm);
+            execProfileFunctions(dummy, pfd, col, conn, functions, pm);
             logger.debug("countDist worked");
         } catch (Exception e) {
             logger.debug("countDist failed", e);
@@ -663,7 +1318,7 @@ public class RemoteDatabaseProfileCreator extends AbstractTableProfileCreator {
         try {
             pfd.setMaxValue(true);
             pfd.setMinValue(true);
-            execProfileFunctions(dummy, pfd, col, conn, pm);
+            execProfileFunctions(dummy, pfd, col, conn, functions, pm);
             logger.debug("min/max worked");
         } catch (Exception e) {
             logger.debug("min/max failed", e);
@@ -675,7 +1330,7 @@ public class RemoteDatabaseProfileCreator extends AbstractTableProfileCreator {
 
         try {
             pfd.setAvgValue(true);
-            execProfileFunctions(dummy, pfd, col, conn, pm);
+            execProfileFunctions(dummy, pfd, col, conn, functions, pm);
             logger.debug("avg worked");
         } catch (Exception e) {
             logger.debug("avg failed", e);
@@ -688,7 +1343,7 @@ public class RemoteDatabaseProfileCreator extends AbstractTableProfileCreator {
             pfd.setMaxLength(true);
             pfd.setMinLength(true);
             pfd.setAvgLength(true);
-            execProfileFunctions(dummy, pfd, col, conn, pm);
+            execProfileFunctions(dummy, pfd, col, conn, functions, pm);
             logger.debug("min/max/avg length worked");
         } catch (Exception e) {
             logger.debug("min/max/avg length failed", e);
@@ -701,7 +1356,7 @@ public class RemoteDatabaseProfileCreator extends AbstractTableProfileCreator {
 
         try {
             pfd.setSumDecode(true);
-            execProfileFunctions(dummy, pfd, col, conn, pm);
+            execProfileFunctions(dummy, pfd, col, conn, functions, pm);
             logger.debug("sumDecode worked");
         } catch (Exception e) {
             logger.debug("sumDecode failed", e);
@@ -734,8 +1389,30 @@ public class RemoteDatabaseProfileCreator extends AbstractTableProfileCreator {
         }
     }
     
+    public int getColumnBatchSize() {
+        return columnBatchSize;
+    }
+
+    /**
+     * Sets how many columns are profiled by each query. With a batch size of
+     * 1, every column is profiled by its own aggregate query and its own top N
+     * query. With a larger batch size, the aggregates of a whole batch of
+     * columns are computed in a single pass over the table, and if the
+     * platform has a {@link TopNSQLFunction} the top N values of the columns in
+     * a batch that share a data type are found with one UNION ALL query.
+     */
+    public void setColumnBatchSize(int columnBatchSize) {
+        if (columnBatchSize < 1) {
+            throw new IllegalArgumentException("Column batch size must be at least 1");
+        }
+        this.columnBatchSize = columnBatchSize;
+    }
+    
     @Override
     public String toString() {
+        if (columnBatchSize > 1) {
+            return "Remote Database (batched)";
+        }
         return "Remote Database";
     }
 }
@@ -0,0 +1,290 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.architect.profile;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.List;
+
+import org.apache.log4j.Logger;
+
+import ca.sqlpower.architect.ddl.DDLUtils;
+import ca.sqlpower.architect.ddl.DatabaseMetaDataCache;
+import ca.sqlpower.sqlobject.SQLColumn;
+import ca.sqlpower.sqlobject.SQLObjectException;
+import ca.sqlpower.sqlobject.SQLTable;
+import ca.sqlpower.util.MonitorableImpl;
+
+/**
+ * A profile creator that reads every row of the table exactly once and
+ * updates the statistics of all of the columns as each row goes by. Unlike the
+ * {@link LocalReservoirProfileCreator}, no sample of the table is ever held in
+ * memory: the memory used depends only on the number of columns, the number of
+ * distinct values in each column and the number of top values requested.
+ * <p>
+ * The top N values are tracked with a bounded heavy hitters counter (see
+ * {@link TopNValueCounter}), and distinct values are counted by their hashes
+ * (see {@link DistinctValueCounter}), so neither keeps the full set of column
+ * values around. Numeric aggregates are accumulated in primitive fields.
+ * <p>
+ * In approximate mode (see {@link ProfileSettings#isApproximate()}) every row
+ * is still read, but distinct values are counted with a HyperLogLog sketch and
+ * the median of numeric columns is estimated with a t-digest, so the memory
+ * used no longer depends on the number of distinct values at all.
+ * <p>
+ * Since every row of the table travels over the network, this profiler is a
+ * good choice when the database is close by and the table is too wide for the
+ * column-at-a-time queries of the {@link RemoteDatabaseProfileCreator}.
+ */
+public class StreamingProfileCreator extends AbstractTableProfileCreator {
+
+    private static final Logger logger = Logger.getLogger(StreamingProfileCreator.class);
+
+    /**
+     * The number of rows to process between checks of the progress monitor
+     * for cancellation and updates of its progress.
+     */
+    private static final int PROGRESS_INTERVAL = 1000;
+
+    /**
+     * How {@link #readRows(ResultSet, ColumnProfileAccumulator[], MonitorableImpl)}
+     * reads each column: as a primitive long or double, as a String, or as
+     * whatever object the driver returns.
+     */
+    private static final int READ_OBJECT = 0;
+    private static final int READ_LONG = 1;
+    private static final int READ_DOUBLE = 2;
+    private static final int READ_STRING = 3;
+
+    /**
+     * The settings for this profile creator.
+     */
+    private final ProfileSettings settings;
+
+    /**
+     * The number of rows the JDBC driver is asked to fetch per round trip.
+     */
+    private int fetchSize = 1000;
+
+    public StreamingProfileCreator(ProfileSettings settings) {
+        if (settings == null) {
+            throw new NullPointerException("Null settings");
+        }
+        this.settings = settings;
+    }
+
+    @Override
+    protected boolean doProfileImpl(TableProfileResult tpr) throws SQLException, SQLObjectException {
+        SQLTable table = tpr.getProfiledObject();
+        List<SQLColumn> columns = table.getColumns();
+        MonitorableImpl pm = (MonitorableImpl) tpr.getProgressMonitor();
+        pm.setJobSize(null);
+        pm.setProgress(0);
+
+        ColumnProfileAccumulator[] accumulators = new ColumnProfileAccumulator[columns.size()];
+        for (int i = 0; i < accumulators.length; i++) {
+            accumulators[i] = new ColumnProfileAccumulator(settings);
+        }
+
+        long columnStartTime = System.currentTimeMillis();
+        int rowCount = 0;
+        Connection con = null;
+        Statement stmt = null;
+        ResultSet rs = null;
+        String lastSQL = null;
+        try {
+            con = table.getParentDatabase().getConnection();
+            lastSQL = createSelectStatement(table, DatabaseMetaDataCache.getInstance().getIdentifierQuoteString(
+                    table.getParentDatabase().getDataSource(), con));
+            logger.debug("About to execute profiling query: " + lastSQL);
+
+            stmt = con.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            stmt.setEscapeProcessing(false);
+            stmt.setFetchSize(fetchSize);
+            rs = stmt.executeQuery(lastSQL);
+
+            rowCount = readRows(rs, accumulators, pm);
+            if (rowCount < 0) {
+                return false;
+            }
+        } catch (SQLException ex) {
+            logger.error("Streaming profile query failed. Query was:\n" + lastSQL);
+            throw ex;
+        } finally {
+            try {
+                if (rs != null) rs.close();
+            } catch (SQLException ex) {
+                logger.error("Couldn't clean up result set", ex);
+            }
+            try {
+                if (stmt != null) stmt.close();
+            } catch (SQLException ex) {
+                logger.error("Couldn't clean up statement", ex);
+            }
+            try {
+                if (con != null) con.close();
+            } catch (SQLException ex) {
+                logger.error("Failed to close connection. Squishing this exception: ", ex);
+            }
+        }
+
+        logger.debug("Finished streaming " + rowCount + " rows of " + table.getName());
+        tpr.setRowCount(rowCount);
+        long columnEndTime = System.currentTimeMillis();
+        for (int i = 0; i < accumulators.length; i++) {
+            ColumnProfileResult cpr = new ColumnProfileResult(columns.get(i));
+            tpr.addColumnProfileResult(cpr);
+            cpr.setCreateStartTime(columnStartTime);
+            accumulators[i].populate(cpr, settings.getTopNCount());
+            cpr.setCreateEndTime(columnEndTime);
+        }
+        return !pm.isCancelled();
+    }
+
+    /**
+     * Adds every remaining row of the given result set to the accumulators,
+     * the first accumulator getting the first column and so on. Integer and
+     * floating point columns are read with the primitive getters so the values
+     * are never boxed, and character columns are read as strings. Exact
+     * numerics such as DECIMAL are still read as objects, because reading
+     * them as doubles would lose precision.
+     * 
+     * @return The number of rows read, or -1 if the progress monitor was
+     *         cancelled part way through.
+     */
+    static int readRows(ResultSet rs, ColumnProfileAccumulator[] accumulators, MonitorableImpl pm)
+    throws SQLException {
+        int[] readAs = new int[accumulators.length];
+        ResultSetMetaData rsmd = rs.getMetaData();
+        for (int i = 0; i < readAs.length; i++) {
+            readAs[i] = readAs(rsmd.getColumnType(i + 1));
+        }
+        int rowCount = 0;
+        while (rs.next()) {
+            for (int i = 0; i < accumulators.length; i++) {
+                int col = i + 1;
+                switch (readAs[i]) {
+                case READ_LONG:
+                    long l = rs.getLong(col);
+                    if (rs.wasNull()) {
+                        accumulators[i].add((Object) null);
+                    } else {
+                        accumulators[i].add(l);
+                    }
+                    break;
+                case READ_DOUBLE:
+                    double d = rs.getDouble(col);
+                    if (rs.wasNull()) {
+                        accumulators[i].add((Object) null);
+                    } else {
+                        accumulators[i].add(d);
+                    }
+                    break;
+                case READ_STRING:
+                    accumulators[i].add(rs.getString(col));
+                    break;
+                default:
+                    accumulators[i].add(rs.getObject(col));
+                }
+            }
+            rowCount++;
+            if (rowCount % PROGRESS_INTERVAL == 0) {
+                if (pm.isCancelled()) {
+                    return -1;
+                }
+                pm.setProgress(rowCount);
+            }
+        }
+        return rowCount;
+    }
+
+    /**
+     * Picks the getter to read a column of the given JDBC type with.
+     */
+    private static int readAs(int jdbcType) {
+        switch (jdbcType) {
+        case Types.TINYINT:
+        case Types.SMALLINT:
+        case Types.INTEGER:
+        case Types.BIGINT:
+            return READ_LONG;
+        case Types.REAL:
+        case Types.FLOAT:
+        case Types.DOUBLE:
+            return READ_DOUBLE;
+        case Types.CHAR:
+        case Types.VARCHAR:
+        case Types.LONGVARCHAR:
+        case Types.NCHAR:
+        case Types.NVARCHAR:
+        case Types.LONGNVARCHAR:
+            return READ_STRING;
+        default:
+            return READ_OBJECT;
+        }
+    }
+
+    /**
+     * Creates the query that selects every profiled column of the given table,
+     * in the same order as the table's column list.
+     */
+    static String createSelectStatement(SQLTable table, String quote) throws SQLObjectException {
+        if (quote == null || quote.trim().length() == 0) {
+            quote = "";
+        }
+        StringBuilder sql = new StringBuilder();
+        sql.append("SELECT ");
+        boolean first = true;
+        for (SQLColumn col : table.getColumns()) {
+            if (!first) sql.append(", ");
+            sql.append(quote).append(col.getName()).append(quote);
+            first = false;
+        }
+        sql.append("\nFROM ");
+        sql.append(DDLUtils.toQualifiedName(table.getCatalogName(),
+                table.getSchemaName(),
+                table.getName(),
+                quote,
+                quote));
+        return sql.toString();
+    }
+
+    public int getFetchSize() {
+        return fetchSize;
+    }
+
+    /**
+     * Sets the number of rows the JDBC driver should fetch from the database
+     * at a time. Larger values mean fewer network round trips at the expense
+     * of a larger buffer in the driver.
+     */
+    public void setFetchSize(int fetchSize) {
+        this.fetchSize = fetchSize;
+    }
+
+    @Override
+    public String toString() {
+        return "Streaming";
+    }
+}
@@ -0,0 +1,281 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package ca.sqlpower.architect.profile;
+
+/**
+ * Estimates quantiles (such as the median) of a stream of numbers using a
+ * small, bounded amount of memory. This is the "merging" variant of Ted
+ * Dunning's t-digest: the numbers are summarized by a sorted list of
+ * centroids, each of which is a mean and the number of values it stands for.
+ * Centroids near the middle of the distribution are allowed to stand for many
+ * values and centroids near either end for only a few, so quantile estimates
+ * are most accurate in the tails and still within a fraction of a percent of
+ * rank in the middle.
+ * <p>
+ * New values are collected in a buffer and folded into the centroids in
+ * batches, so only one in every few hundred calls to {@link #add(double)}
+ * does any real work. The number of centroids kept is roughly twice the
+ * compression.
+ * <p>
+ * This class is not thread safe; use one per thread and combine them with
+ * {@link #merge(TDigest)}.
+ */
+public class TDigest {
+
+    /**
+     * The compression used by the no-args constructor.
+     */
+    public static final double DEFAULT_COMPRESSION = 100;
+
+    private final double compression;
+
+    private double[] means;
+    private double[] weights;
+    private int centroidCount;
+
+    /**
+     * The total weight of the centroids, not counting the buffer.
+     */
+    private double centroidWeight;
+
+    private final double[] bufferMeans;
+    private final double[] bufferWeights;
+    private int bufferCount;
+
+    private double min = Double.POSITIVE_INFINITY;
+    private double max = Double.NEGATIVE_INFINITY;
+
+    public TDigest() {
+        this(DEFAULT_COMPRESSION);
+    }
+
+    /**
+     * @param compression
+     *            Controls the trade off between accuracy and size. Larger
+     *            values keep more centroids and give more accurate quantiles.
+     */
+    public TDigest(double compression) {
+        if (compression < 10) {
+            throw new IllegalArgumentException("Compression must be at least 10 (got " + compression + ")");
+        }
+        this.compression = compression;
+        int capacity = (int) Math.ceil(compression * 2) + 10;
+        means = new double[capacity];
+        weights = new double[capacity];
+        bufferMeans = new double[capacity * 5];
+        bufferWeights = new double[capacity * 5];
+    }
+
+    /**
+     * Records one value. NaN is ignored.
+     */
+    public void add(double value) {
+        add(value, 1);
+    }
+
+    private void add(double mean, double weight) {
+        if (Double.isNaN(mean)) return;
+        if (bufferCount == bufferMeans.length) {
+            compress();
+        }
+        bufferMeans[bufferCount] = mean;
+        bufferWeights[bufferCount] = weight;
+        bufferCount++;
+        if (mean < min) min = mean;
+        if (mean > max) max = mean;
+    }
+
+    /**
+     * Adds all the values recorded by the other digest to this one.
+     */
+    public void merge(TDigest other) {
+        for (int i = 0; i < other.centroidCount; i++) {
+            add(other.means[i], other.weights[i]);
+        }
+        for (int i = 0; i < other.bufferCount; i++) {
+            add(other.bufferMeans[i], other.bufferWeights[i]);
+        }
+        if (other.min < min) min = other.min;
+        if (other.max > max) max = other.max;
+    }
+
+    /**
+     * Folds the buffered values into the centroids.
+     */
+    private void compress() {
+        if (bufferCount == 0) return;
+
+        int n = centroidCount + bufferCount;
+        double[] allMeans = new double[n];
+        double[] allWeights = new double[n];
+        System.arraycopy(means, 0, allMeans, 0, centroidCount);
+        System.arraycopy(weights, 0, allWeights, 0, centroidCount);
+        System.arraycopy(bufferMeans, 0, allMeans, centroidCount, bufferCount);
+        System.arraycopy(bufferWeights, 0, allWeights, centroidCount, bufferCount);
+        sort(allMeans, allWeights, 0, n - 1);
+
+        double total = centroidWeight;
+        for (int i = 0; i < bufferCount; i++) {
+            total += bufferWeights[i];
+        }
+
+        int out = 0;
+        double weightBefore = 0;
+        double currentMean = allMeans[0];
+        double currentWeight = allWeights[0];
+        for (int i = 1; i < n; i++) {
+            double proposedWeight = currentWeight + allWeights[i];
+            double q = (weightBefore + proposedWeight / 2) / total;
+            if (proposedWeight <= 4 * total * q * (1 - q) / compression) {
+                currentMean += (allMeans[i] - currentMean) * allWeights[i] / proposedWeight;
+                currentWeight = proposedWeight;
+            } else {
+                out = appendCentroid(out, currentMean, currentWeight);
+                weightBefore += currentWeight;
+                currentMean = allMeans[i];
+                currentWeight = allWeights[i];
+            }
+        }
+        out = appendCentroid(out, currentMean, currentWeight);
+
+        centroidCount = out;
+        centroidWeight = total;
+        bufferCount = 0;
+    }
+
+    private int appendCentroid(int index, double mean, double weight) {
+        if (index == means.length) {
+            double[] newMeans = new double[means.length * 2];
+            double[] newWeights = new double[weights.length * 2];
+            System.arraycopy(means, 0, newMeans, 0, index);
+            System.arraycopy(weights, 0, newWeights, 0, index);
+            means = newMeans;
+            weights = newWeights;
+        }
+        means[index] = mean;
+        weights[index] = weight;
+        return index + 1;
+    }
+
+    /**
+     * Sorts the given parallel arrays by mean, in place.
+     */
+    private static void sort(double[] m, double[] w, int lo, int hi) {
+        while (hi - lo > 16) {
+            double pivot = m[(lo + hi) >>> 1];
+            int i = lo;
+            int j = hi;
+            while (i <= j) {
+                while (m[i] < pivot) i++;
+                while (m[j] > pivot) j--;
+                if (i <= j) {
+                    swap(m, w, i, j);
+                    i++;
+                    j--;
+                }
+            }
+            // recurse into the smaller half to bound the stack depth
+            if (j - lo < hi - i) {
+                sort(m, w, lo, j);
+                lo = i;
+            } else {
+                sort(m, w, i, hi);
+                hi = j;
+            }
+        }
+        for (int i = lo + 1; i <= hi; i++) {
+            for (int j = i; j > lo && m[j - 1] > m[j]; j--) {
+                swap(m, w, j, j - 1);
+            }
+        }
+    }
+
+    private static void swap(double[] m, double[] w, int i, int j) {
+        double tm = m[i];
+        m[i] = m[j];
+        m[j] = tm;
+        double tw = w[i];
+        w[i] = w[j];
+        w[j] = tw;
+    }
+
+    /**
+     * Returns the estimated value at the given quantile, which must be
+     * between 0 and 1. For example, <code>quantile(0.5)</code> estimates the
+     * median. Returns NaN if no values have been recorded.
+     */
+    public double quantile(double q) {
+        if (q < 0 || q > 1) {
+            throw new IllegalArgumentException("Quantile must be between 0 and 1 (got " + q + ")");
+        }
+        compress();
+        if (centroidCount == 0) return Double.NaN;
+        if (centroidCount == 1) return means[0];
+
+        double index = q * centroidWeight;
+        if (index < weights[0] / 2) {
+            return min + (means[0] - min) * index / (weights[0] / 2);
+        }
+        double weightSoFar = weights[0] / 2;
+        for (int i = 0; i < centroidCount - 1; i++) {
+            double gap = (weights[i] + weights[i + 1]) / 2;
+            if (weightSoFar + gap > index) {
+                double fraction = (index - weightSoFar) / gap;
+                return means[i] + (means[i + 1] - means[i]) * fraction;
+            }
+            weightSoFar += gap;
+        }
+        double lastHalf = weights[centroidCount - 1] / 2;
+        double fraction = Math.min(1, (index - weightSoFar) / lastHalf);
+        return means[centroidCount - 1] + (max - means[centroidCount - 1]) * fraction;
+    }
+
+    /**
+     * Returns the number of values recorded so far.
+     */
+    public long getCount() {
+        double total = centroidWeight;
+        for (int i = 0; i < bufferCount; i++) {
+            total += bufferWeights[i];
+        }
+        return Math.round(total);
+    }
+
+    /**
+     * Returns the smallest value recorded, or positive infinity if there
+     * are none.
+     */
+    public double getMin() {
+        return min;
+    }
+
+    /**
+     * Returns the largest value recorded, or negative infinity if there are
+     * none.
+     */
+    public double getMax() {
+        return max;
+    }
+
+    public double getCompression() {
+        return compression;
+    }
+}
@@ -62,6 +62,13 @@ public class TableProfileResult extends AbstractProfileResult<SQLTable> {
     private static final Logger logger = Logger.getLogger(TableProfileResult.class);
 
     private int rowCount;
+
+    /**
+     * The value the platform's change probe query returned just before this
+     * result was profiled, or null if the platform does not have one. See
+     * {@link IncrementalProfileCreator.TableChangeSQLFunction}.
+     */
+    private String changeProbe;
     
     /**
      * The "children" of this profile result: the profile results for the columns
@@ -109,6 +116,7 @@ public class TableProfileResult extends AbstractProfileResult<SQLTable> {
         super(tprToCopy, table);
         setName("New Table Profile");
         this.rowCount = tprToCopy.rowCount;
+        this.changeProbe = tprToCopy.changeProbe;
         this.progressMonitor = tprToCopy.progressMonitor;
         for (SQLColumn col : table.getColumns()) {
             for (ColumnProfileResult cpr : tprToCopy.getColumnProfileResults()) {
@@ -146,6 +154,23 @@ public class TableProfileResult extends AbstractProfileResult<SQLTable> {
         firePropertyChange("rowCount", oldCount, rowCount);
     }
 
+    /**
+     * Returns the value of the table's change probe at the time it was
+     * profiled. If the probe returns the same value later on, the table has
+     * not changed and does not need to be profiled again.
+     */
+    @Accessor
+    public String getChangeProbe() {
+        return changeProbe;
+    }
+
+    @Mutator
+    public void setChangeProbe(String changeProbe) {
+        String oldProbe = this.changeProbe;
+        this.changeProbe = changeProbe;
+        firePropertyChange("changeProbe", oldProbe, changeProbe);
+    }
+
     /**
      * This printf format string is used in our toString() but is also
      * made public for use in UI controls that need an approximation
@@ -0,0 +1,316 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.architect.profile;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps track of the most frequently occurring values in a stream of values
+ * using a fixed amount of memory. This is an implementation of the
+ * "Space-Saving" heavy hitters algorithm: at most {@link #getCapacity()}
+ * values are tracked at once, and when a value that is not being tracked
+ * arrives while the counter is full, the least frequent tracked value is
+ * replaced by the new one. The new value inherits the evicted count, which is
+ * remembered as the maximum amount its count may have been overestimated by.
+ * <p>
+ * Any value that occurs more than <code>n / capacity</code> times in a stream
+ * of <code>n</code> values is guaranteed to be among the tracked values, so
+ * keeping a capacity several times larger than the number of top values
+ * wanted gives the exact top N for all but the flattest distributions.
+ * <p>
+ * Null is a legal value. This class is not thread safe; use one counter per
+ * thread and combine them with {@link #merge(TopNValueCounter)}.
+ */
+public class TopNValueCounter {
+
+    /**
+     * One tracked value and its (possibly overestimated) frequency.
+     */
+    public static class ValueCount {
+
+        private Object value;
+
+        private long count;
+
+        private long error;
+
+        private ValueCount(Object value, long count, long error) {
+            this.value = value;
+            this.count = count;
+            this.error = error;
+        }
+
+        public Object getValue() {
+            return value;
+        }
+
+        /**
+         * The number of times this value has been seen, possibly overestimated
+         * by up to {@link #getError()}.
+         */
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * The maximum amount {@link #getCount()} can exceed the true frequency
+         * of this value by. This is 0 for values that have been tracked since
+         * the first time they were seen.
+         */
+        public long getError() {
+            return error;
+        }
+
+        @Override
+        public String toString() {
+            return value + "=" + count + "(+/-" + error + ")";
+        }
+    }
+
+    /**
+     * Orders value counts from most frequent to least frequent.
+     */
+    private static final Comparator<ValueCount> DESCENDING_COUNT = new Comparator<ValueCount>() {
+        public int compare(ValueCount o1, ValueCount o2) {
+            if (o1.count == o2.count) return 0;
+            return o1.count > o2.count ? -1 : 1;
+        }
+    };
+
+    /**
+     * The maximum number of values tracked at once.
+     */
+    private final int capacity;
+
+    /**
+     * The tracked values, keyed by the value itself.
+     */
+    private final Map<Object, ValueCount> counters;
+
+    /**
+     * Counters that had the lowest count in the table the last time it was
+     * scanned. Counts only ever increase, so an entry whose count has since
+     * grown is stale and is simply skipped. This avoids a full scan of the
+     * counters for every eviction, which would otherwise happen on every value
+     * of a high-cardinality column.
+     */
+    private final List<ValueCount> minCandidates = new ArrayList<ValueCount>();
+
+    /**
+     * The count shared by every non-stale entry of {@link #minCandidates}.
+     */
+    private long minCount;
+
+    /**
+     * The total number of values offered to this counter.
+     */
+    private long total;
+
+    /**
+     * Looks up tracked Longs by a primitive value. See {@link #offer(long)}.
+     */
+    private final LongKey longKey = new LongKey();
+
+    /**
+     * Looks up tracked Doubles by a primitive value. See
+     * {@link #offer(double)}.
+     */
+    private final DoubleKey doubleKey = new DoubleKey();
+
+    /**
+     * @param capacity
+     *            The maximum number of distinct values to track. Must be at
+     *            least 1.
+     */
+    public TopNValueCounter(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be at least 1 (got " + capacity + ")");
+        }
+        this.capacity = capacity;
+        counters = new HashMap<Object, ValueCount>(capacity * 2);
+    }
+
+    /**
+     * Records one occurrence of the given value.
+     */
+    public void offer(Object value) {
+        offer(value, 1, 0);
+    }
+
+    /**
+     * Records one occurrence of the given whole number. This is the same as
+     * offering a Long of the same value, except that the value is only boxed
+     * when it is not already being tracked.
+     */
+    public void offer(long value) {
+        longKey.value = value;
+        ValueCount vc = counters.get(longKey);
+        if (vc != null) {
+            total++;
+            vc.count++;
+        } else {
+            offer(Long.valueOf(value), 1, 0);
+        }
+    }
+
+    /**
+     * Records one occurrence of the given number. This is the same as
+     * offering a Double of the same value, except that the value is only
+     * boxed when it is not already being tracked.
+     */
+    public void offer(double value) {
+        doubleKey.bits = Double.doubleToLongBits(value);
+        ValueCount vc = counters.get(doubleKey);
+        if (vc != null) {
+            total++;
+            vc.count++;
+        } else {
+            offer(Double.valueOf(value), 1, 0);
+        }
+    }
+
+    private void offer(Object value, long count, long error) {
+        total += count;
+        ValueCount vc = counters.get(value);
+        if (vc != null) {
+            vc.count += count;
+            vc.error += error;
+        } else if (counters.size() < capacity) {
+            counters.put(value, new ValueCount(value, count, error));
+            minCandidates.clear();
+        } else {
+            ValueCount victim = findMin();
+            counters.remove(victim.value);
+            victim.value = value;
+            victim.error = victim.count + error;
+            victim.count += count;
+            counters.put(value, victim);
+        }
+    }
+
+    /**
+     * Returns the counter with the lowest count, reusing the results of the
+     * previous scan where possible.
+     */
+    private ValueCount findMin() {
+        while (!minCandidates.isEmpty()) {
+            ValueCount candidate = minCandidates.remove(minCandidates.size() - 1);
+            if (candidate.count == minCount && counters.get(candidate.value) == candidate) {
+                return candidate;
+            }
+        }
+        minCount = Long.MAX_VALUE;
+        for (ValueCount vc : counters.values()) {
+            if (vc.count < minCount) {
+                minCount = vc.count;
+                minCandidates.clear();
+            }
+            if (vc.count == minCount) {
+                minCandidates.add(vc);
+            }
+        }
+        return minCandidates.remove(minCandidates.size() - 1);
+    }
+
+    /**
+     * Adds all of the counts tracked by the given counter to this one. The
+     * result is the same as if every value offered to the other counter had
+     * been offered to this one, within the combined error bounds of both.
+     */
+    public void merge(TopNValueCounter other) {
+        for (ValueCount vc : other.counters.values()) {
+            offer(vc.value, vc.count, vc.error);
+        }
+        total += other.total - sumOfCounts(other.counters.values());
+    }
+
+    private static long sumOfCounts(Iterable<ValueCount> counts) {
+        long sum = 0;
+        for (ValueCount vc : counts) {
+            sum += vc.count;
+        }
+        return sum;
+    }
+
+    /**
+     * Returns up to n of the most frequent values, most frequent first.
+     */
+    public List<ValueCount> getTopN(int n) {
+        List<ValueCount> sorted = new ArrayList<ValueCount>(counters.values());
+        Collections.sort(sorted, DESCENDING_COUNT);
+        if (sorted.size() > n) {
+            return new ArrayList<ValueCount>(sorted.subList(0, n));
+        }
+        return sorted;
+    }
+
+    /**
+     * Returns the total number of values offered to this counter so far,
+     * including ones that are no longer tracked.
+     */
+    public long getTotal() {
+        return total;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * A reusable map key that is equal to the Long of the same value, so
+     * tracked Longs can be found without boxing the value being looked up.
+     */
+    private static class LongKey {
+        long value;
+
+        @Override
+        public int hashCode() {
+            return (int) (value ^ (value >>> 32));
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof Long && ((Long) obj).longValue() == value;
+        }
+    }
+
+    /**
+     * A reusable map key that is equal to the Double with the same bits, so
+     * tracked Doubles can be found without boxing the value being looked up.
+     */
+    private static class DoubleKey {
+        long bits;
+
+        @Override
+        public int hashCode() {
+            return (int) (bits ^ (bits >>> 32));
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof Double && Double.doubleToLongBits(((Double) obj).doubleValue()) == bits;
+        }
+    }
+}
@@ -55,10 +55,13 @@ import ca.sqlpower.architect.ddl.SQLServer2005DDLGenerator;
 import ca.sqlpower.architect.ddl.SQLServerDDLGenerator;
 import ca.sqlpower.architect.profile.ColumnProfileResult;
 import ca.sqlpower.architect.profile.ProfileFunctionDescriptor;
+import ca.sqlpower.architect.profile.IncrementalProfileCreator.TableChangeSQLFunction;
 import ca.sqlpower.architect.profile.RemoteDatabaseProfileCreator;
 import ca.sqlpower.architect.profile.RemoteDatabaseProfileCreator.AverageSQLFunction;
 import ca.sqlpower.architect.profile.RemoteDatabaseProfileCreator.CaseWhenNullSQLFunction;
 import ca.sqlpower.architect.profile.RemoteDatabaseProfileCreator.StringLengthSQLFunction;
+import ca.sqlpower.architect.profile.RemoteDatabaseProfileCreator.TableSampleSQLFunction;
+import ca.sqlpower.architect.profile.RemoteDatabaseProfileCreator.TopNSQLFunction;
 import ca.sqlpower.sql.JDBCDataSourceType;
 import ca.sqlpower.sqlobject.SQLIndex;
 import ca.sqlpower.sqlobject.SQLType;
@@ -267,6 +270,9 @@ public class ArchitectPropertiesDataSourceTypeOptionPanel implements DataSourceT
     private final JTextField averageSQLFunctionField = new JTextField();
     private final JTextField stringLengthSQLFuncField = new JTextField();
     private final JTextField caseWhenNullSQLFuncField = new JTextField();
+    private final JTextField topNSQLFuncField = new JTextField();
+    private final JTextField tableSampleSQLFuncField = new JTextField();
+    private final JTextField tableChangeSQLFuncField = new JTextField();
     private final JCheckBox updatableRSField = new JCheckBox("Supports Updatable Result Sets");
     private final JCheckBox quotesNameCheckBox = new JCheckBox(Messages.getString("ArchitectPropertiesDataSourceTypeOptionPanel.quotingNameLabel"));
     private final JComboBox ddlGeneratorCombo = new JComboBox(KnownDDLGenerators.values());
@@ -297,6 +303,9 @@ public class ArchitectPropertiesDataSourceTypeOptionPanel implements DataSourceT
         averageSQLFunctionField.setText("");
         stringLengthSQLFuncField.setText("");
         caseWhenNullSQLFuncField.setText("");
+        topNSQLFuncField.setText("");
+        tableSampleSQLFuncField.setText("");
+        tableChangeSQLFuncField.setText("");
         updatableRSField.setSelected(false);
         quotesNameCheckBox.setVisible(false);
         ddlGeneratorCombo.setSelectedItem(KnownDDLGenerators.GENERIC);
@@ -335,6 +344,12 @@ public class ArchitectPropertiesDataSourceTypeOptionPanel implements DataSourceT
                     String descriptorString = dsType.getProperty(property);
                     final ProfileFunctionDescriptor pfd = ProfileFunctionDescriptor.parseDescriptorString(descriptorString);
                     profileFunctionTableModel.addProfileFunctionDescriptor(pfd);
+                } else if (property.equals(RemoteDatabaseProfileCreator.propName(TopNSQLFunction.class))) {
+                    topNSQLFuncField.setText(dsType.getProperty(property));
+                } else if (property.equals(RemoteDatabaseProfileCreator.propName(TableSampleSQLFunction.class))) {
+                    tableSampleSQLFuncField.setText(dsType.getProperty(property));
+                } else if (property.equals(RemoteDatabaseProfileCreator.propName(TableChangeSQLFunction.class))) {
+                    tableChangeSQLFuncField.setText(dsType.getProperty(property));
                 } else if (property.contains(ColumnProfileResult.class.getName())) {
                     if (property.equals(RemoteDatabaseProfileCreator.propName(AverageSQLFunction.class))) {
                         averageSQLFunctionField.setText(dsType.getProperty(property));
@@ -399,7 +414,7 @@ public class ArchitectPropertiesDataSourceTypeOptionPanel implements DataSourceT
         
         panel.removeAll();
         DefaultFormBuilder fb = new DefaultFormBuilder(new FormLayout("4dlu, pref, 4dlu, pref:grow, 4dlu", 
-                "pref, 4dlu, pref, 4dlu, pref, 2dlu, pref, 2dlu, pref, 4dlu, fill:min:grow, 2dlu, pref, 4dlu, pref, 2dlu, pref,2dlu, pref"));
+                "pref, 4dlu, pref, 4dlu, pref, 2dlu, pref, 2dlu, pref, 2dlu, pref, 2dlu, pref, 2dlu, pref, 4dlu, fill:min:grow, 2dlu, pref, 4dlu, pref, 2dlu, pref,2dlu, pref"));
         fb.nextColumn();
         fb.append(updatableRSField, quotesNameCheckBox);
         fb.nextLine();
@@ -421,6 +436,18 @@ public class ArchitectPropertiesDataSourceTypeOptionPanel implements DataSourceT
         fb.nextLine();
         fb.nextLine();
         fb.nextColumn();
+        fb.append("Top N SQL Function", topNSQLFuncField);
+        fb.nextLine();
+        fb.nextLine();
+        fb.nextColumn();
+        fb.append("Table Sample SQL Function", tableSampleSQLFuncField);
+        fb.nextLine();
+        fb.nextLine();
+        fb.nextColumn();
+        fb.append("Table Change SQL Function", tableChangeSQLFuncField);
+        fb.nextLine();
+        fb.nextLine();
+        fb.nextColumn();
         fb.append(new JScrollPane(profileFunctionTable), 3);
         fb.nextLine();
         fb.nextLine();
@@ -450,6 +477,9 @@ public class ArchitectPropertiesDataSourceTypeOptionPanel implements DataSourceT
         currentDSType.putProperty(RemoteDatabaseProfileCreator.propName(AverageSQLFunction.class), averageSQLFunctionField.getText());
         currentDSType.putProperty(RemoteDatabaseProfileCreator.propName(StringLengthSQLFunction.class), stringLengthSQLFuncField.getText());
         currentDSType.putProperty(RemoteDatabaseProfileCreator.propName(CaseWhenNullSQLFunction.class), caseWhenNullSQLFuncField.getText());
+        currentDSType.putProperty(RemoteDatabaseProfileCreator.propName(TopNSQLFunction.class), topNSQLFuncField.getText());
+        currentDSType.putProperty(RemoteDatabaseProfileCreator.propName(TableSampleSQLFunction.class), tableSampleSQLFuncField.getText());
+        currentDSType.putProperty(RemoteDatabaseProfileCreator.propName(TableChangeSQLFunction.class), tableChangeSQLFuncField.getText());
         
         for (int i = 0; i < profileFunctionTableModel.getProfileFunctionDescriptors().size(); i++) {
             currentDSType.putProperty(ProfileFunctionDescriptor.class.getName() + "_" + i, ProfileFunctionDescriptor.createDescriptorString(profileFunctionTableModel.getProfileFunctionDescriptors().get(i)));
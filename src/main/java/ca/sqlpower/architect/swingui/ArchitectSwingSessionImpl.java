@@ -141,8 +141,29 @@ public class ArchitectSwingSessionImpl implements ArchitectSwingSession {
     private Saver saveBehaviour = new Saver() {
         public boolean save(ArchitectSwingSession session, boolean showChooser, boolean separateThread) {
             final boolean finalSeparateThread = separateThread;
-            final ProgressMonitor pm = new ProgressMonitor
-            (frame, Messages.getString("ArchitectSwingSessionImpl.saveProgressDialogTitle"), "", 0, 100); //$NON-NLS-1$ //$NON-NLS-2$
+
+            /**
+             * Serialises the project into memory on the event dispatch
+             * thread, between events, so the snapshot is a consistent copy of
+             * everything the project file holds. It also disables saving and
+             * asks whether to overwrite a project file from another version.
+             * Writing the snapshot to disk is left to the save thread.
+             */
+            class SnapshotTask implements Runnable {
+                byte[] snapshot;
+                Exception exception;
+
+                public void run() {
+                    try {
+                        getArchitectFrame().setEnableSaveOption(false);
+                        if (getProjectLoader().confirmOverwrite()) {
+                            snapshot = getProjectLoader().saveSnapshot(null);
+                        }
+                    } catch (Exception ex) {
+                        exception = ex;
+                    }
+                }
+            }
 
             class SaverTask implements Runnable {
                 boolean success;
@@ -151,15 +172,19 @@ public class ArchitectSwingSessionImpl implements ArchitectSwingSession {
                     SwingUIProjectLoader project = getProjectLoader();
                     try {
                         success = false;
+                        project.setSaveInProgress(true);
                         if (finalSeparateThread) {
-                            SwingUtilities.invokeAndWait(new Runnable() {
-                                public void run() {
-                                    getArchitectFrame().setEnableSaveOption(false);
-                                }
-                            });
+                            SnapshotTask snapshotTask = new SnapshotTask();
+                            SwingUtilities.invokeAndWait(snapshotTask);
+                            if (snapshotTask.exception != null) {
+                                throw snapshotTask.exception;
+                            }
+                            if (snapshotTask.snapshot != null) {
+                                project.writeSnapshot(snapshotTask.snapshot);
+                            }
+                        } else {
+                            project.save((ProgressMonitor) null);
                         }
-                        project.setSaveInProgress(true);
-                        project.save(finalSeparateThread ? pm : null);
                         success = true;
                     } catch (Exception ex) {
                         success = false;
@@ -907,6 +932,11 @@ public class ArchitectSwingSessionImpl implements ArchitectSwingSession {
     }
 
     public KettleJob getKettleJob() {
+        try {
+            getProjectLoader().loadDeferredSection("create-kettle-job-settings"); //$NON-NLS-1$
+        } catch (SQLObjectException e) {
+            throw new RuntimeException(e);
+        }
         return kettleJob;
     }
 
@@ -166,6 +166,11 @@ public class BasicRelationshipUI extends RelationshipUI implements java.io.Seria
 			throw new NullPointerException("Relationship c is null");
 		}
 			
+		// at low detail, the labels and terminations are too small to read
+		PlayPen pp = r.getPlayPen();
+		final boolean lowDetail = pp != null && pp.isPaintingLowDetail();
+		final boolean showLabels = !lowDetail && r.displayRelationshipLabel();
+
 		g2.translate(-c.getX(), -c.getY()); // playpen coordinate space
 
 		if (logger.isDebugEnabled()) {
@@ -218,10 +223,14 @@ public class BasicRelationshipUI extends RelationshipUI implements java.io.Seria
              */
             Point childTranslate;
 
-            Rectangle2D parentBounds = fm.getStringBounds(r.getTextForParentLabel(), g2);
-            Rectangle2D childBounds = fm.getStringBounds(r.getTextForChildLabel(), g2);
-            int pkStringWidth = parentBounds.getBounds().width;
-            int fkStringWidth = childBounds.getBounds().width;
+            int pkStringWidth = 0;
+            int fkStringWidth = 0;
+            if (showLabels) {
+                Rectangle2D parentBounds = fm.getStringBounds(r.getTextForParentLabel(), g2);
+                Rectangle2D childBounds = fm.getStringBounds(r.getTextForChildLabel(), g2);
+                pkStringWidth = parentBounds.getBounds().width;
+                fkStringWidth = childBounds.getBounds().width;
+            }
             int maxStringWidth = Math.max(pkStringWidth, fkStringWidth);
             int pkLabelDistance = 0;
             int fkLabelDistance = 0;
@@ -262,7 +271,7 @@ public class BasicRelationshipUI extends RelationshipUI implements java.io.Seria
              * The lowest point is actually bigger than the highest point
              */
             float lowest = 0;
-            if (r.displayRelationshipLabel()) {
+            if (showLabels) {
                 if (lineStart.x > lineEnd.x) {
                     logger.debug("Parent is at the right side of child");
                     leftmost = lineEnd.x;
@@ -303,7 +312,7 @@ public class BasicRelationshipUI extends RelationshipUI implements java.io.Seria
                 containmentPath.lineTo(end.x, end.y);
                 path = new GeneralPath(containmentPath);
                 // draw relationship labels
-                if (r.displayRelationshipLabel()) {
+                if (showLabels) {
                     leftmost = lineEnd.x - getTerminationLength();
                     rightmost = lineStart.x;
                     parentToChildLabelStartX = calculateRelationshipLabelStart(leftmost, rightmost, 
@@ -339,7 +348,7 @@ public class BasicRelationshipUI extends RelationshipUI implements java.io.Seria
                 containmentPath.lineTo(end.x, end.y);
 				path = new GeneralPath(containmentPath);
 				// draw relationship labels
-				if (r.displayRelationshipLabel()) {
+				if (showLabels) {
 	                parentToChild.setIcon(null);
 	                childToParent.setIcon(null);
                     if (lineStart.x > lineEnd.x) {
@@ -404,7 +413,7 @@ public class BasicRelationshipUI extends RelationshipUI implements java.io.Seria
                 containmentPath.lineTo(end.x, end.y);
 				path = new GeneralPath(containmentPath);
 				// draw relationship labels
-				if (r.displayRelationshipLabel()) {
+				if (showLabels) {
 				    parentToChild.setIcon(null);
 				    childToParent.setIcon(null);
 				    if (lineStart.x > lineEnd.x) {
@@ -466,7 +475,7 @@ public class BasicRelationshipUI extends RelationshipUI implements java.io.Seria
                 containmentPath.lineTo(end.x, end.y);
                 path = new GeneralPath(containmentPath);
                 // draw relationship labels
-                if (r.displayRelationshipLabel()) {
+                if (showLabels) {
                     parentToChild.setIcon(null);
                     childToParent.setIcon(null);
                     if (Math.abs(lineStart.x - lineEnd.x) > maxStringWidth || Math.abs(lineStart.x - lineEnd.x) > Math.abs(lineStart.y - lineEnd.y)) {
@@ -490,7 +499,7 @@ public class BasicRelationshipUI extends RelationshipUI implements java.io.Seria
                 containmentPath.lineTo(end.x, end.y);
                 path = new GeneralPath(containmentPath);
                 // draw relationship labels
-                if (r.displayRelationshipLabel()) {
+                if (showLabels) {
                     parentToChild.setIcon(null);
                     childToParent.setIcon(null);
                     if(Math.abs(lineStart.x - lineEnd.x) > maxStringWidth || Math.abs(lineStart.x - lineEnd.x) > Math.abs(lineStart.y - lineEnd.y)) {
@@ -517,7 +526,7 @@ public class BasicRelationshipUI extends RelationshipUI implements java.io.Seria
                 parentToChild.setIcon(null);
                 childToParent.setIcon(null);
 			}
-            if(r.displayRelationshipLabel()) {
+            if(showLabels) {
                 int mult = pkLabelDistance > fkLabelDistance ? 1 : -1;
                 if(rotate) {
                     parentTranslate = new Point(pkLabelDistance + mult * fm.getDescent(), (int)parentToChildLabelStartY);
@@ -544,7 +553,9 @@ public class BasicRelationshipUI extends RelationshipUI implements java.io.Seria
 
 			Stroke oldStroke = g2.getStroke();
 			
-			if (relationship.getModel().isIdentifying()) {
+			if (lowDetail) {
+			    g2.setStroke(new BasicStroke(getStrokeWidth()));
+			} else if (relationship.getModel().isIdentifying()) {
 				g2.setStroke(getIdentifyingStroke());
 			} else {
 				g2.setStroke(getNonIdentifyingStroke());
@@ -553,8 +564,10 @@ public class BasicRelationshipUI extends RelationshipUI implements java.io.Seria
 			g2.draw(path);
 			if (logger.isDebugEnabled()) logger.debug("Drew path "+path);
 
-			g2.setStroke(new BasicStroke(getStrokeWidth()));
-			paintTerminations(g2, start, end, orientation);
+			if (!lowDetail) {
+			    g2.setStroke(new BasicStroke(getStrokeWidth()));
+			    paintTerminations(g2, start, end, orientation);
+			}
 			g2.setStroke(oldStroke);
 		} finally {
 			g2.translate(c.getX(), c.getY()); // playpen coordinate space
@@ -30,6 +30,8 @@ import java.awt.Point;
 import java.awt.Rectangle;
 import java.awt.Stroke;
 import java.awt.font.FontRenderContext;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
 import java.beans.PropertyChangeEvent;
 import java.sql.DatabaseMetaData;
 import java.sql.SQLException;
@@ -87,6 +89,13 @@ public class BasicTablePaneUI extends TablePaneUI implements java.io.Serializabl
 	private static final BasicStroke DASHED_STROKE = new BasicStroke(1.0f, BasicStroke.CAP_BUTT, BasicStroke.JOIN_BEVEL, 1.0f, new float[] {15.0f, 4.0f}, 0.0f);
 	private static final BasicStroke NORMAL_STROKE = new BasicStroke(1.0f);
 	
+	/**
+	 * The kinds of transforms a table pane can be painted through from an
+	 * image in the {@link TablePaneRenderCache}. Anything that rotates,
+	 * shears or flips the table is painted from scratch instead.
+	 */
+	private static final int CACHEABLE_TRANSFORMS = AffineTransform.TYPE_TRANSLATION | AffineTransform.TYPE_UNIFORM_SCALE;
+	
 	/**
 	 * Colour of the text background for selected columns.
 	 */
@@ -107,7 +116,42 @@ public class BasicTablePaneUI extends TablePaneUI implements java.io.Serializabl
     }
 
     public void paint(Graphics2D g) {
-    	paint(g,tablePane);
+        PlayPen pp = tablePane.getPlayPen();
+        TablePaneRenderCache cache = pp == null ? null : pp.getActiveTablePaneRenderCache();
+        AffineTransform transform = g.getTransform();
+        if (cache == null || (transform.getType() & ~CACHEABLE_TRANSFORMS) != 0) {
+            paint(g, tablePane);
+            return;
+        }
+        
+        double scale = transform.getScaleX();
+        BufferedImage image = cache.get(tablePane, scale);
+        if (image == null) {
+            int width = (int) Math.ceil(tablePane.getWidth() * scale);
+            int height = (int) Math.ceil(tablePane.getHeight() * scale);
+            if (width <= 0 || height <= 0 || !cache.fits(width, height)) {
+                paint(g, tablePane);
+                return;
+            }
+            image = g.getDeviceConfiguration().createCompatibleImage(width, height);
+            Graphics2D imageGraphics = image.createGraphics();
+            try {
+                imageGraphics.setRenderingHints(g.getRenderingHints());
+                imageGraphics.setFont(g.getFont());
+                imageGraphics.scale(scale, scale);
+                paint(imageGraphics, tablePane);
+            } finally {
+                imageGraphics.dispose();
+            }
+            cache.put(tablePane, scale, image);
+        }
+        
+        // the image is already at device resolution, so it is copied to the
+        // nearest whole device pixel without any scaling
+        g.setTransform(AffineTransform.getTranslateInstance(
+                Math.round(transform.getTranslateX()), Math.round(transform.getTranslateY())));
+        g.drawImage(image, 0, 0, null);
+        g.setTransform(transform);
     }
     
     public void paint(Graphics g, TablePane tp) {
@@ -196,6 +240,14 @@ public class BasicTablePaneUI extends TablePaneUI implements java.io.Serializabl
 				throw new IllegalStateException("FontHeight is negative"); //$NON-NLS-1$
 			}
 			
+			if (tp.getPlayPen().isPaintingLowDetail()) {
+			    // the columns can't be read at this scale, so they are left out
+			    paintBox(g2, tp, fontHeight, width, height);
+			    g2.setStroke(oldStroke);
+			    g.translate(-insets.left, -insets.top);
+			    return;
+			}
+			
 			y += GAP + BOX_LINE_THICKNESS + tp.getMargin().top;
 
 			// print columns
@@ -235,15 +287,7 @@ public class BasicTablePaneUI extends TablePaneUI implements java.io.Serializabl
 			    i++;
 			}
 			
-			// draw box around columns
-     		g2.setColor(Color.BLACK);
-			if (tp.isRounded()) {
-	                g2.drawRoundRect(0, fontHeight+GAP, width-BOX_LINE_THICKNESS, 
-	                        height-(fontHeight+GAP+BOX_LINE_THICKNESS), ARC_LENGTH, ARC_LENGTH);
-	            } else {
-	                g2.drawRect(0, fontHeight+GAP, width-BOX_LINE_THICKNESS, 
-	                        height-(fontHeight+GAP+BOX_LINE_THICKNESS));
-	            }
+			paintBox(g2, tp, fontHeight, width, height);
 			if (currentColor != null) {
 				g2.setColor(Color.BLACK);
 			}
@@ -286,6 +330,21 @@ public class BasicTablePaneUI extends TablePaneUI implements java.io.Serializabl
 		}
 	}
 
+    /**
+     * Draws the box around the columns of the given table pane, below its
+     * title.
+     */
+    private void paintBox(Graphics2D g2, TablePane tp, int fontHeight, int width, int height) {
+        g2.setColor(Color.BLACK);
+        if (tp.isRounded()) {
+            g2.drawRoundRect(0, fontHeight+GAP, width-BOX_LINE_THICKNESS, 
+                    height-(fontHeight+GAP+BOX_LINE_THICKNESS), ARC_LENGTH, ARC_LENGTH);
+        } else {
+            g2.drawRect(0, fontHeight+GAP, width-BOX_LINE_THICKNESS, 
+                    height-(fontHeight+GAP+BOX_LINE_THICKNESS));
+        }
+    }
+
     /**
      * Generates the string to be displayed for the given column. Includes the column's name,
      * data type, and any "tags" (such as PK and FK) are enabled in the user prefs.
@@ -445,6 +504,9 @@ public class BasicTablePaneUI extends TablePaneUI implements java.io.Serializabl
 	public void propertyChanged(PropertyChangeEvent e) {
 		logger.debug("BasicTablePaneUI notices change of "+e.getPropertyName() //$NON-NLS-1$
 					 +" from "+e.getOldValue()+" to "+e.getNewValue()+" on "+e.getSource()); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+		if (!e.getPropertyName().equals("topLeftCorner")) { //$NON-NLS-1$
+		    tablePane.invalidateRenderCache();
+		}
 		if (e.getPropertyName().equals("UI")) return; //$NON-NLS-1$
 		else if (e.getPropertyName().equals("preferredSize")) return; //$NON-NLS-1$
 		else if (e.getPropertyName().equals("insertionPoint")) return; //$NON-NLS-1$
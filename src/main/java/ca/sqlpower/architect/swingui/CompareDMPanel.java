@@ -1283,10 +1283,12 @@ public class CompareDMPanel extends JPanel {
 				        session.getCompareDMSettings().getSuppressSimilarities(),
 						useUUID);
                 sourceComp.setCompareIndices(includeIndexes.isSelected());
+                sourceComp.setHashJoin(true);
 				targetComp = new CompareSQL(targetTables, sourceTables, 
 				        session.getCompareDMSettings().getSuppressSimilarities(),
 						useUUID);
                 targetComp.setCompareIndices(includeIndexes.isSelected());
+                targetComp.setHashJoin(true);
 
 			} catch (SQLObjectException ex) {
 			    reenableGUIComponents();
@@ -70,7 +70,6 @@ import ca.sqlpower.architect.swingui.dbtree.DBTreeCellRenderer;
 import ca.sqlpower.architect.swingui.dbtree.DBTreeModel;
 import ca.sqlpower.object.ObjectDependentException;
 import ca.sqlpower.object.SPListener;
-import ca.sqlpower.object.SPObject;
 import ca.sqlpower.object.SPObjectSnapshot;
 import ca.sqlpower.sql.JDBCDataSource;
 import ca.sqlpower.sql.SPDataSource;
@@ -151,6 +150,8 @@ public class DBTree extends JTree implements DragSourceListener {
         } else {
             treeModel = new DBTreeModel(session.getRootObject(), this);
         }
+        // populate source databases without blocking the event dispatch thread
+        treeModel.setBackgroundPopulation(!GraphicsEnvironment.isHeadless());
         setModel(treeModel);
 		setUI(new MultiDragTreeUI());
 		setRootVisible(false);
@@ -1120,7 +1121,7 @@ public class DBTree extends JTree implements DragSourceListener {
     public void clearNonPlayPenSelections() {
         if (getSelectionPaths() == null) return;
         for (TreePath tp : getSelectionPaths()) {
-            SPObject obj = (SPObject) tp.getLastPathComponent();
+            Object obj = tp.getLastPathComponent();
             if (!(obj instanceof SQLTable || obj instanceof SQLRelationship || obj instanceof SQLColumn || obj instanceof SQLRelationship.SQLImportedKey)) {
                 removeSelectionPath(tp);
             }
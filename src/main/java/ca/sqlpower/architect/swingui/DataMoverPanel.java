@@ -27,7 +27,9 @@ import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import javax.swing.AbstractAction;
 import javax.swing.Action;
@@ -37,20 +39,22 @@ import javax.swing.JOptionPane;
 import javax.swing.JPanel;
 import javax.swing.JScrollPane;
 import javax.swing.JTree;
+import javax.swing.ProgressMonitor;
 import javax.swing.event.TreeSelectionEvent;
 import javax.swing.event.TreeSelectionListener;
 import javax.swing.tree.TreePath;
 
 import ca.sqlpower.architect.ArchitectProject;
+import ca.sqlpower.architect.BulkDataMover;
 import ca.sqlpower.architect.DepthFirstSearch;
 import ca.sqlpower.architect.ddl.DDLGenerator;
 import ca.sqlpower.architect.ddl.DDLStatement;
 import ca.sqlpower.architect.ddl.DDLUtils;
+import ca.sqlpower.architect.ddl.DatabaseMetaDataCache;
 import ca.sqlpower.architect.swingui.action.DatabaseConnectionManagerAction;
 import ca.sqlpower.architect.swingui.dbtree.DBTreeCellRenderer;
 import ca.sqlpower.architect.swingui.dbtree.DBTreeModel;
 import ca.sqlpower.object.ObjectDependentException;
-import ca.sqlpower.sql.DataMover;
 import ca.sqlpower.sql.DatabaseListChangeEvent;
 import ca.sqlpower.sql.DatabaseListChangeListener;
 import ca.sqlpower.sql.JDBCDataSource;
@@ -61,9 +65,12 @@ import ca.sqlpower.sqlobject.SQLObject;
 import ca.sqlpower.sqlobject.SQLObjectException;
 import ca.sqlpower.sqlobject.SQLObjectRoot;
 import ca.sqlpower.sqlobject.SQLObjectUtils;
+import ca.sqlpower.sqlobject.SQLRelationship;
 import ca.sqlpower.sqlobject.SQLSchema;
 import ca.sqlpower.sqlobject.SQLTable;
+import ca.sqlpower.swingui.ProgressWatcher;
 import ca.sqlpower.swingui.SPSUtils;
+import ca.sqlpower.swingui.SPSwingWorker;
 import ca.sqlpower.util.SQLPowerUtils;
 
 import com.jgoodies.forms.builder.PanelBuilder;
@@ -249,8 +256,6 @@ public class DataMoverPanel {
     
     public void doDataMove() throws SQLException, SQLObjectException {
         final TreePath[] sourcePaths = sourceTree.getSelectionPaths();
-        int tableCount = 0;
-        int rowCount = 0;
         
         List<SQLTable> sourceTables = new ArrayList<SQLTable>();
         for (TreePath sourcePath : sourcePaths) {
@@ -259,29 +264,103 @@ public class DataMoverPanel {
         
         DepthFirstSearch dfs = new DepthFirstSearch(sourceTables);
         
+        // Prepare the destination tables one at a time, since this may ask
+        // the user questions and create tables, then copy the data in bulk.
+        Map<SQLTable, BulkDataMover.TableCopy> copies = new LinkedHashMap<SQLTable, BulkDataMover.TableCopy>();
         for (SQLTable sourceTable : dfs.getFinishOrder()) {
-            int thisCount = moveSingleTable(sourceTable);
-            if (thisCount == -1) {
+            if (!prepareTableCopy(sourceTable, copies)) {
                 int choice = JOptionPane.showConfirmDialog(panel, Messages.getString("DataMoverPanel.continueCopyingRemainingTablesOption")); //$NON-NLS-1$
                 if (choice != JOptionPane.YES_OPTION) {
+                    // the tables prepared so far are still copied, as they
+                    // were when each table was copied as soon as it was ready
                     break;
                 }
-            } else {
-                tableCount += 1;
-                rowCount += thisCount;
             }
         }
-        JOptionPane.showMessageDialog(panel, Messages.getString("DataMoverPanel.dataCopyResults", String.valueOf(tableCount), String.valueOf(rowCount))); //$NON-NLS-1$
+        
+        // a child table can't be loaded before the parent tables it refers to
+        List<SQLTable> order = new ArrayList<SQLTable>(copies.keySet());
+        for (int i = 0; i < order.size(); i++) {
+            SQLTable parent = order.get(i);
+            for (SQLRelationship r : parent.getExportedKeys()) {
+                int childIndex = order.indexOf(r.getFkTable());
+                if (childIndex > i) {
+                    copies.get(r.getFkTable()).addPrerequisite(copies.get(parent));
+                }
+            }
+        }
+        
+        BulkDataMover mover = new BulkDataMover();
+        mover.setTruncatingDestinationTable(truncateDestinationTableBox.isSelected());
+        ProgressMonitor pm = new ProgressMonitor(panel,
+                Messages.getString("DataMoverPanel.copyingTableData"), //$NON-NLS-1$
+                "...", //$NON-NLS-1$
+                0,
+                100);
+        DataMoveTask task = new DataMoveTask(mover, new ArrayList<BulkDataMover.TableCopy>(copies.values()), pm);
+        new Thread(task, "Data-Mover").start(); //$NON-NLS-1$
+    }
+
+    /**
+     * Copies the prepared tables on a separate thread and reports the results
+     * when it is done.
+     */
+    private class DataMoveTask extends SPSwingWorker {
+        
+        private final BulkDataMover mover;
+        private final List<BulkDataMover.TableCopy> copies;
+        
+        public DataMoveTask(BulkDataMover mover, List<BulkDataMover.TableCopy> copies, ProgressMonitor pm) {
+            super(session);
+            this.mover = mover;
+            this.copies = copies;
+            ProgressWatcher.watchProgress(pm, mover.getProgressMonitor());
+        }
+        
+        @Override
+        public void doStuff() throws Exception {
+            mover.copyTables(copies);
+        }
+        
+        @Override
+        public void cleanup() throws Exception {
+            if (getDoStuffException() != null) {
+                ASUtils.showExceptionDialog(session, Messages.getString("DataMoverPanel.failedToMoveData"), getDoStuffException()); //$NON-NLS-1$
+                return;
+            }
+            int tableCount = 0;
+            int rowCount = 0;
+            Exception firstFailure = null;
+            for (BulkDataMover.TableCopy copy : copies) {
+                if (copy.isCompleted()) {
+                    tableCount++;
+                } else if (firstFailure == null) {
+                    firstFailure = copy.getException();
+                }
+                rowCount += copy.getRowCount();
+            }
+            if (firstFailure != null) {
+                ASUtils.showExceptionDialog(session, Messages.getString("DataMoverPanel.failedToMoveData"), firstFailure); //$NON-NLS-1$
+            }
+            JOptionPane.showMessageDialog(panel, Messages.getString("DataMoverPanel.dataCopyResults", String.valueOf(tableCount), String.valueOf(rowCount))); //$NON-NLS-1$
+        }
     }
     
     /**
-     * Moves the data from the table identified by 
-     * @param sourcePath
-     * @return The number of rows moved, or -1 if the user cancelled the operation.
+     * Finds or creates the destination table for the given source table and
+     * adds the copy of its data to the given map.
+     * 
+     * @param sourceTable
+     *            The table to copy.
+     * @param copies
+     *            The map to add the table copy to. Nothing is added if the
+     *            user chooses to skip the table.
+     * @return False if the user cancelled the operation.
      * @throws SQLException
      * @throws SQLObjectException
      */
-    private int moveSingleTable(final SQLTable sourceTable) throws SQLException, SQLObjectException {
+    private boolean prepareTableCopy(final SQLTable sourceTable, Map<SQLTable, BulkDataMover.TableCopy> copies)
+    throws SQLException, SQLObjectException {
         final SQLDatabase sourceDB = SQLPowerUtils.getAncestor(sourceTable, SQLDatabase.class);
         
         final TreePath destPath = destTree.getSelectionPath();
@@ -327,8 +406,9 @@ public class DataMoverPanel {
             sourceCon = sourceDB.getConnection();
             destCon = destDB.getConnection();
             
-            String sourceQuoteString = sourceCon.getMetaData().getIdentifierQuoteString();
-            String destQuoteString = destCon.getMetaData().getIdentifierQuoteString();
+            DatabaseMetaDataCache metaDataCache = DatabaseMetaDataCache.getInstance();
+            String sourceQuoteString = metaDataCache.getIdentifierQuoteString(sourceDB.getDataSource(), sourceCon);
+            String destQuoteString = metaDataCache.getIdentifierQuoteString(destDB.getDataSource(), destCon);
 
             final String sourceQualifiedName = DDLUtils.toQualifiedName(
                     sourceTable.getCatalogName(),
@@ -350,15 +430,15 @@ public class DataMoverPanel {
                             JOptionPane.OK_CANCEL_OPTION, JOptionPane.WARNING_MESSAGE,
                             null, new String[] { "Skip", "Abort" }, "Skip");
                     if (choice == 0) {
-                        return 0; // copied 0 rows
+                        return true; // skip this table
                     } else {
-                        return -1; // abort
+                        return false; // abort
                     }
                 } else {
                     int choice = JOptionPane.showConfirmDialog(
                             panel,
                             Messages.getString("DataMoverPanel.destinationTableDoesNotExist", destQualifiedName));
-                    if (choice != JOptionPane.YES_OPTION) return -1;
+                    if (choice != JOptionPane.YES_OPTION) return false;
                 }
                 
                 // check for common problems
@@ -396,17 +476,9 @@ public class DataMoverPanel {
                 }
             }
             
-            DataMover mover = new DataMover(destCon, sourceCon);
-            mover.setCreatingDestinationTable(false);
-            mover.setTruncatingDestinationTable(truncateDestinationTableBox.isSelected());
-            mover.setDebug(true);  // when true, debug data goes to System.out
-
-//            JOptionPane.showMessageDialog(panel,
-//                    "About to copy\n"+sourceQualifiedName+"\nto\n"+destQualifiedName);
-            
-            int count = mover.copyTable(destQualifiedName, sourceQualifiedName);
-            
-            return count;
+            copies.put(sourceTable, new BulkDataMover.TableCopy(
+                    sourceTable.getName(), sourceDB, sourceQualifiedName, destDB, destQualifiedName));
+            return true;
         } catch (InstantiationException ex) {
             throw new RuntimeException("Couldn't create DDL Generator", ex); //$NON-NLS-1$
         } catch (IllegalAccessException ex) {
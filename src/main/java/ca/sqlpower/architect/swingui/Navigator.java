@@ -37,10 +37,19 @@ import java.beans.PropertyChangeListener;
 import javax.swing.JDialog;
 import javax.swing.JPanel;
 import javax.swing.JScrollPane;
-import javax.swing.RepaintManager;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
 
+import ca.sqlpower.architect.swingui.event.SelectionEvent;
+import ca.sqlpower.architect.swingui.event.SelectionListener;
+import ca.sqlpower.object.AbstractSPListener;
 import ca.sqlpower.object.SPChildEvent;
 import ca.sqlpower.object.SPListener;
+import ca.sqlpower.object.SPObject;
+import ca.sqlpower.sqlobject.SQLDatabase;
+import ca.sqlpower.sqlobject.SQLObject;
+import ca.sqlpower.sqlobject.SQLRelationship;
+import ca.sqlpower.sqlobject.SQLTable;
 import ca.sqlpower.util.SQLPowerUtils;
 import ca.sqlpower.util.TransactionEvent;
 
@@ -48,6 +57,11 @@ import ca.sqlpower.util.TransactionEvent;
  * Navigator defines the behaviours of the overview navigation dialog. It
  * captures the whole Playpen and scales it down so that a user can easily
  * navigate to parts of the Playpen.
+ * <p>
+ * The scaled down Playpen is kept in a {@link NavigatorThumbnail}, which only
+ * draws the parts of the Playpen that changed since it was last shown, so
+ * scrolling the Playpen or changing a few tables does not paint the whole
+ * diagram again.
  * 
  * @author kaiyi
  * 
@@ -67,6 +81,65 @@ public class Navigator extends JDialog implements SPListener, PropertyChangeList
      */
     private double scaleFactor;
 
+    /**
+     * The scaled down picture of the current session's Playpen.
+     */
+    private NavigatorThumbnail thumbnail;
+
+    /**
+     * Tells the {@link #thumbnail} about components that are added to or
+     * removed from the Playpen.
+     */
+    private final SPListener contentPaneListener = new AbstractSPListener() {
+        @Override
+        public void childAdded(SPChildEvent e) {
+            thumbnail.componentChanged((PlayPenComponent) e.getChild());
+            navigationPanel.repaint();
+        }
+
+        @Override
+        public void childRemoved(SPChildEvent e) {
+            thumbnail.componentRemoved((PlayPenComponent) e.getChild());
+            navigationPanel.repaint();
+        }
+    };
+
+    /**
+     * Redraws the whole {@link #thumbnail} when the project settings change,
+     * since they change the way every table and relationship looks.
+     */
+    private final SPListener settingsListener = new AbstractSPListener() {
+        @Override
+        public void propertyChanged(PropertyChangeEvent evt) {
+            thumbnail.invalidate();
+            navigationPanel.repaint();
+        }
+    };
+
+    /**
+     * Redraws tables and relationships in the {@link #thumbnail} when they are
+     * selected or deselected, which fires no {@link SPListener} event.
+     */
+    private final SelectionListener selectionListener = new SelectionListener() {
+        public void itemSelected(SelectionEvent e) {
+            componentRepainted((PlayPenComponent) e.getSource());
+        }
+
+        public void itemDeselected(SelectionEvent e) {
+            componentRepainted((PlayPenComponent) e.getSource());
+        }
+    };
+
+    /**
+     * Redraws tables in the {@link #thumbnail} when they ask to be repainted,
+     * which also covers column selection and highlights.
+     */
+    private final ChangeListener tablePaneRepaintListener = new ChangeListener() {
+        public void stateChanged(ChangeEvent e) {
+            componentRepainted((PlayPenComponent) e.getSource());
+        }
+    };
+
     /**
      * Creates a Navigator dialog that displays a scaled down version of the playpen.
      * 
@@ -81,8 +154,6 @@ public class Navigator extends JDialog implements SPListener, PropertyChangeList
         
         SQLPowerUtils.listenToHierarchy(frame.getCurrentSession().getTargetDatabase(), this);
 
-        getPlayPen().getContentPane().addComponentPropertyListener(this);
-        
         JScrollPane playpenScrollPane = frame.getCurrentSession().getPlayPenScrollPane();
         playpenScrollPane.getVerticalScrollBar().addAdjustmentListener(this);
         playpenScrollPane.getHorizontalScrollBar().addAdjustmentListener(this);
@@ -98,23 +169,8 @@ public class Navigator extends JDialog implements SPListener, PropertyChangeList
                         getPlayPen().getViewportSize().getHeight());
 
                 scaleFactor = Math.min(SCALED_IMAGE_WIDTH / width, SCALED_IMAGE_HEIGHT / height);
+                thumbnail.paint((Graphics2D) g, scaleFactor * getPlayPen().getZoom());
                 ((Graphics2D) g).scale(scaleFactor, scaleFactor);
-                RepaintManager currentManager = RepaintManager.currentManager(this);
-                try {
-                    currentManager.setDoubleBufferingEnabled(false);
-                    if (getPlayPen().isRenderingAntialiased() == true) {
-                        try {
-                            getPlayPen().setRenderingAntialiased(false);
-                            getPlayPen().paintComponent(g);
-                        } finally {
-                            getPlayPen().setRenderingAntialiased(true);
-                        }
-                    } else {
-                        getPlayPen().paintComponent(g);
-                    }
-                } finally {
-                    currentManager.setDoubleBufferingEnabled(true);
-                }
 
                 Rectangle view = getPlayPen().getVisibleRect();
                 g.setColor(Color.GREEN);
@@ -123,6 +179,13 @@ public class Navigator extends JDialog implements SPListener, PropertyChangeList
             }
         };
         
+        thumbnail = new NavigatorThumbnail(getPlayPen(), navigationPanel, SCALED_IMAGE_WIDTH, SCALED_IMAGE_HEIGHT);
+        getPlayPen().getContentPane().addComponentPropertyListener(this);
+        getPlayPen().getContentPane().addSPListener(contentPaneListener);
+        getPlayPen().addSelectionListener(selectionListener);
+        getPlayPen().addTablePaneRepaintListener(tablePaneRepaintListener);
+        frame.getCurrentSession().getProjectSettings().addSPListener(settingsListener);
+        
         navigationPanel.addMouseListener(new MouseAdapter() {
             public void mouseReleased(MouseEvent e) {
                 adjustViewPort(e.getPoint());
@@ -203,6 +266,11 @@ public class Navigator extends JDialog implements SPListener, PropertyChangeList
      * Refreshes the navigator upon a visible property change
      */
     public void propertyChanged(PropertyChangeEvent evt) {
+        if (evt.getSource() instanceof PlayPenComponent) {
+            thumbnail.componentChanged((PlayPenComponent) evt.getSource());
+        } else {
+            modelChanged((SPObject) evt.getSource());
+        }
         navigationPanel.repaint();
     }
 
@@ -211,6 +279,8 @@ public class Navigator extends JDialog implements SPListener, PropertyChangeList
      */
     public void childAdded(SPChildEvent e) {
         SQLPowerUtils.listenToHierarchy(e.getChild(), this);
+        modelChanged(e.getSource());
+        navigationPanel.repaint();
     }
 
     /**
@@ -218,6 +288,49 @@ public class Navigator extends JDialog implements SPListener, PropertyChangeList
      */
     public void childRemoved(SPChildEvent e) {
         SQLPowerUtils.unlistenToHierarchy(e.getChild(), this);
+        modelChanged(e.getSource());
+        navigationPanel.repaint();
+    }
+
+    /**
+     * Tells the {@link #thumbnail} that the given component looks different
+     * now. Components that are not in the Playpen yet are left to the
+     * {@link #contentPaneListener}.
+     */
+    private void componentRepainted(PlayPenComponent c) {
+        if (c.getParent() == null) return;
+        thumbnail.componentChanged(c);
+        navigationPanel.repaint();
+    }
+
+    /**
+     * Tells the {@link #thumbnail} which part of the Playpen shows the given
+     * changed object. Tables and relationships coming and going are left to
+     * the {@link #contentPaneListener}, and a change to anything the Playpen
+     * cannot be searched for redraws the whole thumbnail.
+     */
+    private void modelChanged(SPObject source) {
+        if (source instanceof SQLDatabase) return;
+        PlayPenComponent c = null;
+        if (source instanceof SQLObject) {
+            SQLObject so = (SQLObject) source;
+            SQLRelationship relationship = so instanceof SQLRelationship ?
+                    (SQLRelationship) so : SQLPowerUtils.getAncestor(so, SQLRelationship.class);
+            if (relationship != null) {
+                c = getPlayPen().findRelationship(relationship);
+            } else {
+                SQLTable table = so instanceof SQLTable ?
+                        (SQLTable) so : SQLPowerUtils.getAncestor(so, SQLTable.class);
+                if (table != null) {
+                    c = getPlayPen().findTablePane(table);
+                }
+            }
+        }
+        if (c != null) {
+            thumbnail.componentChanged(c);
+        } else {
+            thumbnail.invalidate();
+        }
     }
     
     public void transactionStarted(TransactionEvent e) {
@@ -245,6 +358,11 @@ public class Navigator extends JDialog implements SPListener, PropertyChangeList
     public void cleanup() {
         SQLPowerUtils.unlistenToHierarchy(getPlayPen().getSession().getTargetDatabase(), this);
         getPlayPen().getContentPane().removeComponentPropertyListener(this);
+        getPlayPen().getContentPane().removeSPListener(contentPaneListener);
+        getPlayPen().removeSelectionListener(selectionListener);
+        getPlayPen().removeTablePaneRepaintListener(tablePaneRepaintListener);
+        getPlayPen().getSession().getProjectSettings().removeSPListener(settingsListener);
+        thumbnail.dispose();
         frame.removePropertyChangeListener(this);
         JScrollPane playpenScrollPane = frame.getCurrentSession().getPlayPenScrollPane();
         playpenScrollPane.getVerticalScrollBar().removeAdjustmentListener(this);
@@ -257,12 +375,22 @@ public class Navigator extends JDialog implements SPListener, PropertyChangeList
             
             SQLPowerUtils.unlistenToHierarchy(oldSession.getTargetDatabase(), this);
             oldSession.getPlayPen().getContentPane().removeComponentPropertyListener(this);
+            oldSession.getPlayPen().getContentPane().removeSPListener(contentPaneListener);
+            oldSession.getPlayPen().removeSelectionListener(selectionListener);
+            oldSession.getPlayPen().removeTablePaneRepaintListener(tablePaneRepaintListener);
+            oldSession.getProjectSettings().removeSPListener(settingsListener);
+            thumbnail.dispose();
             JScrollPane oldScrollPane = oldSession.getPlayPenScrollPane();
             oldScrollPane.getVerticalScrollBar().removeAdjustmentListener(this);
             oldScrollPane.getHorizontalScrollBar().removeAdjustmentListener(this);
             
             SQLPowerUtils.listenToHierarchy(frame.getCurrentSession().getTargetDatabase(), this);
             frame.getCurrentSession().getPlayPen().getContentPane().addComponentPropertyListener(this);
+            frame.getCurrentSession().getPlayPen().getContentPane().addSPListener(contentPaneListener);
+            frame.getCurrentSession().getPlayPen().addSelectionListener(selectionListener);
+            frame.getCurrentSession().getPlayPen().addTablePaneRepaintListener(tablePaneRepaintListener);
+            frame.getCurrentSession().getProjectSettings().addSPListener(settingsListener);
+            thumbnail = new NavigatorThumbnail(getPlayPen(), navigationPanel, SCALED_IMAGE_WIDTH, SCALED_IMAGE_HEIGHT);
             JScrollPane newScrollPane = frame.getCurrentSession().getPlayPenScrollPane();
             newScrollPane.getVerticalScrollBar().addAdjustmentListener(this);
             newScrollPane.getHorizontalScrollBar().addAdjustmentListener(this);
@@ -0,0 +1,401 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.architect.swingui;
+
+import java.awt.Color;
+import java.awt.Component;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+
+import javax.swing.RepaintManager;
+import javax.swing.SwingWorker;
+import javax.swing.Timer;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Keeps a scaled down picture of a play pen for the {@link Navigator}, so the
+ * navigator can be repainted as often as the play pen scrolls without painting
+ * the whole diagram a second time.
+ * <p>
+ * The picture is only brought up to date where something changed: the
+ * navigator reports every play pen component that was added, removed, moved
+ * or otherwise changed, and the next {@link #paint(Graphics2D, double)} draws
+ * just the regions those components covered before and after the change.
+ * <p>
+ * When the scale of the picture changes, because the diagram grew or shrank or
+ * the play pen was zoomed, the old picture is stretched to the new scale on a
+ * background thread and shown until then. Once the scale has stayed the same
+ * for {@link #REFRESH_DELAY} milliseconds the picture is drawn again from
+ * scratch, so repeated stretching does not blur it.
+ * <p>
+ * Like the rest of the play pen, this class is not thread safe and should only
+ * be used on the Swing event dispatch thread.
+ */
+class NavigatorThumbnail {
+
+    private static final Logger logger = Logger.getLogger(NavigatorThumbnail.class);
+
+    /**
+     * The number of milliseconds the scale has to stay the same after the
+     * picture was stretched before it is drawn again from scratch.
+     */
+    static final int REFRESH_DELAY = 1000;
+
+    /**
+     * Once this many separate regions are waiting to be drawn, they are
+     * combined into a single region that covers them all.
+     */
+    private static final int MAX_DIRTY_REGIONS = 16;
+
+    private final PlayPen playPen;
+
+    /**
+     * The component that shows this picture. It is asked to repaint when a
+     * stretched or refreshed picture is ready.
+     */
+    private final Component display;
+
+    private final int width;
+
+    private final int height;
+
+    /**
+     * The current picture. Null until it is first painted.
+     */
+    private BufferedImage image;
+
+    /**
+     * The number of picture pixels per play pen model unit in {@link #image}.
+     */
+    private double scale;
+
+    /**
+     * True if the whole picture has to be drawn again on the next paint.
+     */
+    private boolean stale = true;
+
+    /**
+     * The regions of the play pen, in model coordinates, that changed since
+     * they were last drawn into the picture.
+     */
+    private final List<Rectangle> dirtyRegions = new ArrayList<Rectangle>();
+
+    /**
+     * The bounds each component had the last time it was reported to this
+     * picture, so the region it used to cover can be drawn again when it moves
+     * or goes away.
+     */
+    private final Map<PlayPenComponent, Rectangle> knownBounds = new IdentityHashMap<PlayPenComponent, Rectangle>();
+
+    /**
+     * The worker stretching the picture to a new scale, or null if no such
+     * work is going on. The picture is not drawn into while this is set,
+     * because the worker is reading it.
+     */
+    private SwingWorker<BufferedImage, Void> rescaler;
+
+    /**
+     * The scale {@link #rescaler} is stretching the picture to.
+     */
+    private double rescalerTarget;
+
+    /**
+     * Marks the picture stale {@link #REFRESH_DELAY} milliseconds after it was
+     * last stretched.
+     */
+    private final Timer refreshTimer;
+
+    /**
+     * @param playPen
+     *            The play pen to take the picture of.
+     * @param display
+     *            The component the picture is shown in.
+     * @param width
+     *            The width of the picture in pixels.
+     * @param height
+     *            The height of the picture in pixels.
+     */
+    NavigatorThumbnail(PlayPen playPen, Component display, int width, int height) {
+        this.playPen = playPen;
+        this.display = display;
+        this.width = width;
+        this.height = height;
+        refreshTimer = new Timer(REFRESH_DELAY, new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                invalidate();
+                NavigatorThumbnail.this.display.repaint();
+            }
+        });
+        refreshTimer.setRepeats(false);
+    }
+
+    /**
+     * Records that the given component was added or changed in some way, so
+     * the regions it covers now and covered before are drawn again on the next
+     * paint.
+     */
+    void componentChanged(PlayPenComponent c) {
+        Rectangle bounds = c.getBounds();
+        Rectangle oldBounds = knownBounds.put(c, bounds);
+        if (oldBounds != null && !oldBounds.equals(bounds)) {
+            addDirtyRegion(oldBounds);
+        }
+        addDirtyRegion(bounds);
+    }
+
+    /**
+     * Records that the given component was removed from the play pen, so the
+     * region it covered is drawn again on the next paint.
+     */
+    void componentRemoved(PlayPenComponent c) {
+        Rectangle oldBounds = knownBounds.remove(c);
+        addDirtyRegion(oldBounds != null ? oldBounds : c.getBounds());
+    }
+
+    /**
+     * Makes the next paint draw the whole picture again.
+     */
+    void invalidate() {
+        stale = true;
+        dirtyRegions.clear();
+    }
+
+    private void addDirtyRegion(Rectangle r) {
+        if (stale || r.isEmpty()) return;
+        Rectangle region = new Rectangle(r);
+        for (int i = dirtyRegions.size() - 1; i >= 0; i--) {
+            if (dirtyRegions.get(i).intersects(region)) {
+                region.add(dirtyRegions.remove(i));
+            }
+        }
+        dirtyRegions.add(region);
+        if (dirtyRegions.size() > MAX_DIRTY_REGIONS) {
+            for (int i = dirtyRegions.size() - 2; i >= 0; i--) {
+                region.add(dirtyRegions.remove(i));
+            }
+        }
+    }
+
+    /**
+     * Brings the picture up to date and draws it at the origin of the given
+     * graphics.
+     * 
+     * @param scale
+     *            The number of pixels per play pen model unit the picture
+     *            should be drawn at.
+     */
+    void paint(Graphics2D g, double scale) {
+        if (!playPen.isPaintingEnabled()) {
+            // whatever is in the picture now will have to do.
+        } else if (image == null || stale) {
+            if (rescaler != null) {
+                // the worker may still be reading the old picture, and its
+                // result would replace this one, so it is dropped and the
+                // picture is drawn into a new image.
+                rescaler.cancel(false);
+                rescaler = null;
+                image = null;
+            }
+            render(scale, null);
+            stale = false;
+            dirtyRegions.clear();
+        } else if (!sameScale(scale, this.scale)) {
+            rescale(scale);
+        } else if (rescaler == null) {
+            for (Rectangle region : dirtyRegions) {
+                render(scale, region);
+            }
+            dirtyRegions.clear();
+        }
+
+        if (image == null) return;
+        if (sameScale(scale, this.scale)) {
+            g.drawImage(image, 0, 0, null);
+        } else {
+            double ratio = scale / this.scale;
+            g.drawImage(image, AffineTransform.getScaleInstance(ratio, ratio), null);
+        }
+    }
+
+    /**
+     * Draws the given region of the play pen, in model coordinates, into the
+     * picture at the given scale. The whole picture is drawn if the region is
+     * null.
+     */
+    private void render(double scale, Rectangle region) {
+        if (image == null) {
+            image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        }
+        this.scale = scale;
+        if (region == null) {
+            knownBounds.clear();
+            for (PlayPenComponent c : playPen.getContentPane().getChildren()) {
+                knownBounds.put(c, c.getBounds());
+            }
+        }
+        Graphics2D g = image.createGraphics();
+        try {
+            if (region != null) {
+                // a pixel of slack on each side for lines that land on the edge.
+                Rectangle deviceRegion = new Rectangle(
+                        (int) Math.floor(region.x * scale) - 1, (int) Math.floor(region.y * scale) - 1, 0, 0);
+                deviceRegion.add(Math.ceil((region.x + region.width) * scale) + 1,
+                        Math.ceil((region.y + region.height) * scale) + 1);
+                g.clip(deviceRegion);
+            }
+            // the play pen only fills its own bounds, which may not reach the
+            // edges of the picture.
+            g.setColor(playPen.getBackground());
+            g.fillRect(0, 0, width, height);
+
+            double playPenScale = scale / playPen.getZoom();
+            g.scale(playPenScale, playPenScale);
+            RepaintManager currentManager = RepaintManager.currentManager(display);
+            boolean antialiased = playPen.isRenderingAntialiased();
+            try {
+                currentManager.setDoubleBufferingEnabled(false);
+                if (antialiased) {
+                    playPen.setRenderingAntialiased(false);
+                }
+                playPen.paintOverview(g);
+            } finally {
+                if (antialiased) {
+                    playPen.setRenderingAntialiased(true);
+                }
+                currentManager.setDoubleBufferingEnabled(true);
+            }
+        } finally {
+            g.dispose();
+        }
+    }
+
+    /**
+     * Starts stretching the picture to the given scale on a background thread,
+     * unless that is already in progress.
+     */
+    private void rescale(final double scale) {
+        if (rescaler != null) {
+            if (sameScale(scale, rescalerTarget)) return;
+            rescaler.cancel(false);
+        }
+        final BufferedImage source = image;
+        final double ratio = scale / this.scale;
+        final Color background = playPen.getBackground();
+        rescalerTarget = scale;
+        rescaler = new SwingWorker<BufferedImage, Void>() {
+            @Override
+            protected BufferedImage doInBackground() {
+                BufferedImage scaled = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+                Graphics2D g = scaled.createGraphics();
+                try {
+                    g.setColor(background);
+                    g.fillRect(0, 0, width, height);
+                    g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+                    g.drawImage(source, AffineTransform.getScaleInstance(ratio, ratio), null);
+                } finally {
+                    g.dispose();
+                }
+                return scaled;
+            }
+
+            @Override
+            protected void done() {
+                if (rescaler != this) return;
+                rescaler = null;
+                try {
+                    double oldScale = NavigatorThumbnail.this.scale;
+                    image = get();
+                    NavigatorThumbnail.this.scale = scale;
+                    if (scale < oldScale) {
+                        // the part of the play pen that was outside the old
+                        // picture has to be drawn properly.
+                        int oldWidth = (int) Math.floor(width / oldScale);
+                        int oldHeight = (int) Math.floor(height / oldScale);
+                        int newWidth = (int) Math.ceil(width / scale);
+                        int newHeight = (int) Math.ceil(height / scale);
+                        addDirtyRegion(new Rectangle(oldWidth, 0, newWidth - oldWidth, newHeight));
+                        addDirtyRegion(new Rectangle(0, oldHeight, oldWidth, newHeight - oldHeight));
+                    }
+                    refreshTimer.restart();
+                } catch (InterruptedException e) {
+                    logger.error("Interrupted while stretching the navigator picture", e);
+                    invalidate();
+                } catch (ExecutionException e) {
+                    logger.error("Could not stretch the navigator picture", e);
+                    invalidate();
+                }
+                display.repaint();
+            }
+        };
+        rescaler.execute();
+    }
+
+    private static boolean sameScale(double a, double b) {
+        return Math.abs(a - b) <= Math.abs(b) * 1e-9;
+    }
+
+    /**
+     * Stops any background work on the picture and lets go of it.
+     */
+    void dispose() {
+        refreshTimer.stop();
+        if (rescaler != null) {
+            rescaler.cancel(false);
+            rescaler = null;
+        }
+        image = null;
+        knownBounds.clear();
+        dirtyRegions.clear();
+        stale = true;
+    }
+
+    /**
+     * Returns the current picture, or null if it has never been painted.
+     */
+    BufferedImage getImage() {
+        return image;
+    }
+
+    /**
+     * Returns the number of picture pixels per play pen model unit the
+     * current picture was drawn at.
+     */
+    double getScale() {
+        return scale;
+    }
+
+    /**
+     * Tells whether the picture is being stretched to a new scale right now.
+     */
+    boolean isRescaling() {
+        return rescaler != null;
+    }
+}
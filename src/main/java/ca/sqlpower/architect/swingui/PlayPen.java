@@ -90,6 +90,8 @@ import javax.swing.ProgressMonitor;
 import javax.swing.Scrollable;
 import javax.swing.SwingConstants;
 import javax.swing.SwingUtilities;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
 import javax.swing.event.MouseInputAdapter;
 import javax.swing.tree.TreePath;
 
@@ -172,6 +174,13 @@ public class PlayPen extends JPanel
 	}
  // actionCommand identifier for actions shared by Playpen
     public static final String ACTION_COMMAND_SRC_PLAYPEN = "PlayPen";
+
+    /**
+     * The scale, in device pixels per unzoomed play pen unit, below which the
+     * play pen is painted at low detail on the screen and in the navigator.
+     * See {@link #isPaintingLowDetail()}.
+     */
+    public static final double LOW_DETAIL_SCALE = 0.3;
     
 	private static Logger logger = Logger.getLogger(PlayPen.class);
 
@@ -377,11 +386,71 @@ public class PlayPen extends JPanel
 	    return paintingEnabled;
 	}
 
+	@Override
+	public void paint(Graphics g) {
+	    paintingToScreen = !isPaintingForPrint();
+	    try {
+	        super.paint(g);
+	    } finally {
+	        paintingToScreen = false;
+	    }
+	}
+
+	/**
+	 * Paints the whole play pen the way the {@link Navigator} shows it. This
+	 * is the same as {@link #paintComponent(Graphics)}, except that the play
+	 * pen drops to low detail if the given graphics are scaled down far
+	 * enough, just like it does on the screen. See
+	 * {@link #isPaintingLowDetail()}.
+	 */
+	public void paintOverview(Graphics g) {
+	    paintingOverview = true;
+	    try {
+	        paintComponent(g);
+	    } finally {
+	        paintingOverview = false;
+	    }
+	}
+
+	/**
+	 * Tells whether the play pen is being painted at low detail right now.
+	 * When the play pen is painted on the screen or in the {@link Navigator}
+	 * at a scale below {@link #LOW_DETAIL_SCALE}, component UIs should skip
+	 * everything that can't be read at that size: table panes draw a box and
+	 * their title only, and relationships draw a plain line without labels
+	 * or crow's feet. Printing and exports always get full detail.
+	 * <p>
+	 * This is only meaningful while the play pen is painting; at any other
+	 * time it returns false.
+	 */
+	public boolean isPaintingLowDetail() {
+	    return paintingLowDetail;
+	}
+
+	/**
+	 * Returns the table pane image cache if the play pen is currently being
+	 * painted on the screen, or null if table panes should draw themselves
+	 * from scratch. See {@link #paintingToScreen}.
+	 */
+	TablePaneRenderCache getActiveTablePaneRenderCache() {
+	    return paintingToScreen ? tablePaneRenderCache : null;
+	}
+
+	/**
+	 * Returns this play pen's table pane image cache, whether or not the
+	 * play pen is being painted right now.
+	 */
+	TablePaneRenderCache getTablePaneRenderCache() {
+	    return tablePaneRenderCache;
+	}
+
 	public void paintComponent(Graphics g) {
 	    if (!paintingEnabled) return;
 
-	    logger.debug("start of paintComponent, width=" + this.getWidth() +
-	            ",height=" + this.getHeight()); //$NON-NLS-1$ //$NON-NLS-2$
+	    if (logger.isDebugEnabled()) {
+	        logger.debug("start of paintComponent, width=" + this.getWidth() +
+	                ",height=" + this.getHeight()); //$NON-NLS-1$ //$NON-NLS-2$
+	    }
 	    Graphics2D g2 = (Graphics2D) g;
 	    g2.setColor(this.getBackground());
 	    g2.fillRect(0, 0, this.getWidth(), this.getHeight());
@@ -401,53 +470,62 @@ public class PlayPen extends JPanel
 	        }
 	    }
 
-	    Rectangle bounds = new Rectangle();
 	    AffineTransform backup = g2.getTransform();
 	    g2.scale(zoom, zoom);
 	    AffineTransform zoomedOrigin = g2.getTransform();
+	    paintingLowDetail = (paintingToScreen || paintingOverview) &&
+	        Math.abs(zoomedOrigin.getScaleX()) < LOW_DETAIL_SCALE;
 
-	    List<PlayPenComponent> relationshipsLast = new ArrayList<PlayPenComponent>();
-	    List<Relationship> relations = contentPane.getChildren(Relationship.class);
-	    List<UsageComponent> usages = contentPane.getChildren(UsageComponent.class);
-	    relationshipsLast.addAll(contentPane.getAllChildren());
-	    relationshipsLast.removeAll(relations);
-	    relationshipsLast.addAll(relations);
-	    relationshipsLast.removeAll(usages);	  
-	    relationshipsLast.addAll(usages);
-	    
-	    // counting down so visual z-order matches click detection z-order
-	    for (int i = relationshipsLast.size() - 1; i >= 0; i--) {
-	        PlayPenComponent c = relationshipsLast.get(i);
-	        c.getBounds(bounds);
-	        //expanding width and height by 1 as lines have 0 width or height when vertical/horizontal
-	        if ( g2.hitClip(bounds.x, bounds.y, bounds.width + 1, bounds.height + 1)) {
-	            if (logger.isDebugEnabled()) logger.debug("Painting visible component "+c); //$NON-NLS-1$
-	            g2.translate(c.getLocation().x, c.getLocation().y);
-	            Font g2Font = g2.getFont();
-	            c.paint(g2);
-	            g2.setFont(g2Font);
-	            g2.setTransform(zoomedOrigin);
-	        } else {
-	            if (logger.isDebugEnabled()) logger.debug("paint: SKIPPING "+c); //$NON-NLS-1$
-	            logger.debug(" skipped bounds are: x=" + bounds.x + " y=" + bounds.y + " width=" + bounds.width + " height=" + bounds.height);
-	            logger.debug(" clipping rectangle: x=" + g2.getClipBounds().x + " y=" + g2.getClipBounds().y + " width=" + g2.getClipBounds().width + " height=" + g2.getClipBounds().height);
+	    try {
+	        // only the components near the clipping region need to be looked at.
+	        // Without a clip, getClipBounds leaves the rectangle alone, so it is
+	        // reset to cover everything first.
+	        paintClip.setBounds(Integer.MIN_VALUE / 2, Integer.MIN_VALUE / 2, Integer.MAX_VALUE, Integer.MAX_VALUE);
+	        g2.getClipBounds(paintClip);
+	        List<PlayPenComponent> renderOrder = contentPane.getRenderOrder();
+	        if (paintIndices.length < renderOrder.size()) {
+	            paintIndices = new int[renderOrder.size()];
+	        }
+	        int visibleCount = contentPane.collectRenderIndices(paintClip, paintIndices);
+	        Arrays.sort(paintIndices, 0, visibleCount);
+
+	        // counting down so visual z-order matches click detection z-order
+	        for (int i = visibleCount - 1; i >= 0; i--) {
+	            PlayPenComponent c = renderOrder.get(paintIndices[i]);
+	            c.getBounds(paintBounds);
+	            //expanding width and height by 1 as lines have 0 width or height when vertical/horizontal
+	            if ( g2.hitClip(paintBounds.x, paintBounds.y, paintBounds.width + 1, paintBounds.height + 1)) {
+	                if (logger.isDebugEnabled()) logger.debug("Painting visible component "+c); //$NON-NLS-1$
+	                g2.translate(c.getX(), c.getY());
+	                Font g2Font = g2.getFont();
+	                c.paint(g2);
+	                g2.setFont(g2Font);
+	                g2.setTransform(zoomedOrigin);
+	            } else if (logger.isDebugEnabled()) {
+	                logger.debug("paint: SKIPPING "+c); //$NON-NLS-1$
+	                logger.debug(" skipped bounds are: x=" + paintBounds.x + " y=" + paintBounds.y + " width=" + paintBounds.width + " height=" + paintBounds.height);
+	                logger.debug(" clipping rectangle: x=" + paintClip.x + " y=" + paintClip.y + " width=" + paintClip.width + " height=" + paintClip.height);
+	            }
 	        }
-	    }
 
-	    if (rubberBand != null && !rubberBand.isEmpty()) {
-	        if (logger.isDebugEnabled()) logger.debug("painting rubber band "+rubberBand); //$NON-NLS-1$
-	        g2.setColor(rubberBandColor);
-	        Composite backupComp = g2.getComposite();
-	        g2.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER, 0.3f));
-	        g2.fillRect(rubberBand.x, rubberBand.y, rubberBand.width-1, rubberBand.height-1);
-	        g2.setComposite(backupComp);
-	        g2.drawRect(rubberBand.x, rubberBand.y, rubberBand.width-1, rubberBand.height-1);
+	        if (rubberBand != null && !rubberBand.isEmpty()) {
+	            if (logger.isDebugEnabled()) logger.debug("painting rubber band "+rubberBand); //$NON-NLS-1$
+	            g2.setColor(rubberBandColor);
+	            Composite backupComp = g2.getComposite();
+	            g2.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER, 0.3f));
+	            g2.fillRect(rubberBand.x, rubberBand.y, rubberBand.width-1, rubberBand.height-1);
+	            g2.setComposite(backupComp);
+	            g2.drawRect(rubberBand.x, rubberBand.y, rubberBand.width-1, rubberBand.height-1);
+	        }
+	    } finally {
+	        g2.setTransform(backup);
+	        paintingLowDetail = false;
 	    }
 
-	    g2.setTransform(backup);
-
-	    logger.debug("end of paintComponent, width=" + this.getWidth() +
-	            ",height=" + this.getHeight()); //$NON-NLS-1$ //$NON-NLS-2$
+	    if (logger.isDebugEnabled()) {
+	        logger.debug("end of paintComponent, width=" + this.getWidth() +
+	                ",height=" + this.getHeight()); //$NON-NLS-1$ //$NON-NLS-2$
+	    }
 
 	}
 
@@ -576,6 +654,50 @@ public class PlayPen extends JPanel
      */
     private boolean paintingEnabled = true;
 
+    /**
+     * Scratch space for {@link #paintComponent(Graphics)}, kept between calls
+     * so painting a frame does not create any objects of its own: the clip
+     * bounds in unzoomed co-ordinates, the bounds of the component being
+     * painted, and the positions of the visible components in the content
+     * pane's render order. These are only touched on the event dispatch
+     * thread.
+     */
+    private final Rectangle paintClip = new Rectangle();
+
+    /** See {@link #paintClip}. */
+    private final Rectangle paintBounds = new Rectangle();
+
+    /** See {@link #paintClip}. */
+    private int[] paintIndices = new int[0];
+
+    /**
+     * Images of the table panes in this play pen, reused while painting the
+     * play pen on the screen. See {@link #paintingToScreen}.
+     */
+    private final TablePaneRenderCache tablePaneRenderCache = new TablePaneRenderCache();
+
+    /**
+     * True while Swing is painting this play pen on the screen. The table
+     * pane images in {@link #tablePaneRenderCache} are only used then: the
+     * navigator, print preview, printing and PDF export all paint the play
+     * pen through {@link #paintComponent(Graphics)} directly, and they either
+     * work at other scales or need real vector output.
+     */
+    private boolean paintingToScreen;
+
+    /**
+     * True while the {@link Navigator} is painting its overview of this play
+     * pen. See {@link #paintOverview(Graphics)}.
+     */
+    private boolean paintingOverview;
+
+    /**
+     * True while a paint is in progress at a scale too small for column names,
+     * relationship labels and crow's feet to be read. See
+     * {@link #isPaintingLowDetail()}.
+     */
+    private boolean paintingLowDetail;
+
 	private boolean normalizing;
 
     /**
@@ -2033,6 +2155,31 @@ public class PlayPen extends JPanel
 		}
 	}
 	
+	// --------------------- TABLE PANE REPAINT SUPPORT ---------------------
+
+	/**
+	 * Told about every table pane that asks to be repainted. Some changes to
+	 * the way a table pane looks, such as selecting or highlighting its
+	 * columns, fire no other event. The source of each event is the table pane.
+	 */
+	private final List<ChangeListener> tablePaneRepaintListeners = new ArrayList<ChangeListener>();
+
+	void addTablePaneRepaintListener(ChangeListener l) {
+	    tablePaneRepaintListeners.add(l);
+	}
+
+	void removeTablePaneRepaintListener(ChangeListener l) {
+	    tablePaneRepaintListeners.remove(l);
+	}
+
+	void fireTablePaneRepaint(TablePane tp) {
+	    if (tablePaneRepaintListeners.isEmpty()) return;
+	    ChangeEvent e = new ChangeEvent(tp);
+	    for (int i = tablePaneRepaintListeners.size() - 1; i >= 0; i--) {
+	        tablePaneRepaintListeners.get(i).stateChanged(e);
+	    }
+	}
+
 	// Cancel Support
 	protected LinkedList<CancelableListener> cancelableListeners = new LinkedList<CancelableListener>();
 
@@ -718,13 +718,15 @@ implements Selectable {
      */
     @Mutator
     public void setTopLeftCorner(Point topLeftCorner) {
-        repaint();
+        // moving doesn't change what the component looks like, so this skips
+        // repaint(), which subclasses may take as a sign that it did
+        repaint(getBounds());
         
         Point old = this.topLeftCorner;
         this.topLeftCorner = topLeftCorner;
         firePropertyChange("topLeftCorner", old, topLeftCorner);
         
-        repaint();
+        repaint(getBounds());
     }
 
     @Accessor
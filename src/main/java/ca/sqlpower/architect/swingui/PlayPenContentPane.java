@@ -19,15 +19,19 @@
 package ca.sqlpower.architect.swingui;
 
 import java.awt.Point;
+import java.awt.Rectangle;
 import java.awt.event.MouseEvent;
 import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import org.apache.log4j.Logger;
 
@@ -114,14 +118,66 @@ public class PlayPenContentPane extends AbstractSPObject {
 
         @Override
         public void propertyChanged(PropertyChangeEvent evt) {
-            if ((evt.getPropertyName().equals("topLeftCorner") || 
-                    evt.getPropertyName().equals("lengths")) && playPen != null) {
-                playPen.revalidate();
+            if (evt.getPropertyName().equals("topLeftCorner") || 
+                    evt.getPropertyName().equals("lengths")) {
+                PlayPenComponent ppc = (PlayPenComponent) evt.getSource();
+                if (spatialIndex.contains(ppc)) {
+                    spatialIndex.update(ppc);
+                }
+                if (playPen != null) {
+                    playPen.revalidate();
+                }
             }
         }
 
     };
 
+    /**
+     * The bounds of every child and badge in this content pane, kept up to date
+     * by {@link #componentBoundChanges}, so hit testing and painting only have
+     * to look at the components near the point or region of interest.
+     */
+    private final PlayPenSpatialIndex spatialIndex = new PlayPenSpatialIndex();
+
+    /**
+     * The position of every component in {@link #getAllChildren()}, used to
+     * put the components found through the {@link #spatialIndex} back in
+     * z-order. This is null when the children have changed since it was last
+     * built; see {@link #getChildOrder()}.
+     */
+    private Map<PlayPenComponent, Integer> childOrder;
+
+    /**
+     * The children and badges of this content pane in the order they are
+     * painted in, back to front when walked from the end: everything in the
+     * order of {@link #getAllChildren()}, except that all relationships come
+     * before all usage components. This is null when the children have changed
+     * since it was last built; see {@link #getRenderOrder()}.
+     */
+    private List<PlayPenComponent> renderOrder;
+
+    /**
+     * The position of every component in {@link #renderOrder}. Built and
+     * discarded along with it.
+     */
+    private Map<PlayPenComponent, Integer> renderPositions;
+
+    /**
+     * Scratch space for {@link #collectRenderIndices(Rectangle, int[])}, as
+     * long as {@link #renderOrder}.
+     */
+    private boolean[] renderScratch;
+
+    /**
+     * Sorts components in the order of {@link #getAllChildren()}.
+     */
+    private final Comparator<PlayPenComponent> childOrderComparator = new Comparator<PlayPenComponent>() {
+        public int compare(PlayPenComponent o1, PlayPenComponent o2) {
+            Map<PlayPenComponent, Integer> order = getChildOrder();
+            return order.get(o1).compareTo(order.get(o2));
+        }
+    };
+
     /**
      * Each badge in this list marks a UI object to have criticisms on the UI or
      * model object that is the subject of the badge. These badges are transient
@@ -231,7 +287,7 @@ public class PlayPenContentPane extends AbstractSPObject {
      */
     @NonBound
     public PlayPenComponent getComponentAt(Point p) {
-        for (PlayPenComponent ppc : getAllChildren()) {
+        for (PlayPenComponent ppc : sortByChildOrder(spatialIndex.getCandidates(p))) {
             if (ppc.contains(p)) {
                 return ppc;
             }
@@ -239,6 +295,107 @@ public class PlayPenContentPane extends AbstractSPObject {
         return null;
     }
 
+    /**
+     * Returns the children and badges of this content pane that may intersect
+     * the given region, in the same order as {@link #getAllChildren()}. Only
+     * components near the region are considered, so the list can be a lot
+     * shorter than the full list of children, but it may still contain a few
+     * components that are close to the region without actually touching it.
+     * 
+     * @param region
+     *            The region to look in, in unzoomed play pen co-ordinates.
+     */
+    @NonBound
+    public List<PlayPenComponent> getComponentsIntersecting(Rectangle region) {
+        return sortByChildOrder(spatialIndex.getCandidates(region));
+    }
+
+    private List<PlayPenComponent> sortByChildOrder(Set<PlayPenComponent> candidates) {
+        List<PlayPenComponent> sorted = new ArrayList<PlayPenComponent>(candidates);
+        if (sorted.size() > 1) {
+            Collections.sort(sorted, childOrderComparator);
+        }
+        return sorted;
+    }
+
+    /**
+     * Returns the children and badges of this content pane in painting order
+     * (see {@link #renderOrder}). The list is only rebuilt when children or
+     * badges are added or removed, so the same list is returned again and
+     * again while the diagram is scrolled or zoomed. It must not be modified.
+     */
+    List<PlayPenComponent> getRenderOrder() {
+        if (renderOrder == null) {
+            List<PlayPenComponent> order = new ArrayList<PlayPenComponent>(components.size() +
+                    badges.size() + dependentComponents.size());
+            order.addAll(components);
+            order.addAll(badges.values());
+            for (PlayPenComponent ppc : dependentComponents) {
+                if (ppc instanceof Relationship) {
+                    order.add(ppc);
+                }
+            }
+            for (PlayPenComponent ppc : dependentComponents) {
+                if (!(ppc instanceof Relationship)) {
+                    order.add(ppc);
+                }
+            }
+            renderPositions = new IdentityHashMap<PlayPenComponent, Integer>(order.size() * 2);
+            for (int i = 0; i < order.size(); i++) {
+                renderPositions.put(order.get(i), i);
+            }
+            renderScratch = new boolean[order.size()];
+            renderOrder = Collections.unmodifiableList(order);
+        }
+        return renderOrder;
+    }
+
+    /**
+     * Finds the components that may intersect the given region, the same way
+     * as {@link #getComponentsIntersecting(Rectangle)}, but without creating
+     * any objects. Instead of the components themselves, this fills in their
+     * positions in {@link #getRenderOrder()}, in no particular order.
+     * 
+     * @param region
+     *            The region to look in, in unzoomed play pen co-ordinates.
+     * @param found
+     *            Receives the positions of the components found. It must be at
+     *            least as long as the render order.
+     * @return The number of positions filled in.
+     */
+    int collectRenderIndices(Rectangle region, int[] found) {
+        getRenderOrder();
+        return spatialIndex.collect(region, renderPositions, renderScratch, found);
+    }
+
+    /**
+     * Discards the cached orderings of the children, to be built again the
+     * next time they are needed. This has to be called whenever children or
+     * badges are added or removed.
+     */
+    private void invalidateChildOrder() {
+        childOrder = null;
+        renderOrder = null;
+        renderPositions = null;
+        renderScratch = null;
+    }
+
+    /**
+     * Returns the position of each component in {@link #getAllChildren()},
+     * building the map again if the children have changed since the last
+     * call.
+     */
+    private Map<PlayPenComponent, Integer> getChildOrder() {
+        if (childOrder == null) {
+            List<? extends PlayPenComponent> allChildren = getAllChildren();
+            childOrder = new IdentityHashMap<PlayPenComponent, Integer>(allChildren.size() * 2);
+            for (int i = 0; i < allChildren.size(); i++) {
+                childOrder.put(allChildren.get(i), i);
+            }
+        }
+        return childOrder;
+    }
+
     @NonBound
     public int getFirstDependentComponentIndex() {
         return components.size();
@@ -287,6 +444,8 @@ public class PlayPenContentPane extends AbstractSPObject {
             ppc.addSelectionListener(getPlayPen());
         }
         ppc.addSPListener(componentBoundChanges);
+        invalidateChildOrder();
+        spatialIndex.update(ppc);
         ppc.connect();
         fireChildAdded(ppc.getClass(), ppc, pos);
         ppc.revalidate();
@@ -306,6 +465,8 @@ public class PlayPenContentPane extends AbstractSPObject {
         }
         if (!removed)
             return false;
+        invalidateChildOrder();
+        spatialIndex.remove((PlayPenComponent) child);
         fireChildRemoved(child.getClass(), child, index);
         child.setParent(null);
         if (getPlayPen() != null) {
@@ -313,6 +474,9 @@ public class PlayPenContentPane extends AbstractSPObject {
         }
         child.removeSPListener(componentBoundChanges);
         if (playPen != null) {
+            if (child instanceof TablePane) {
+                playPen.getTablePaneRenderCache().invalidate((TablePane) child);
+            }
             playPen.repaint();
         }
         return true;
@@ -457,6 +621,9 @@ public class PlayPenContentPane extends AbstractSPObject {
      */
     public void removeModelBadge(ModelBadge badge) {
         badges.remove(badge.getSubject());
+        badge.removeSPListener(componentBoundChanges);
+        spatialIndex.remove(badge);
+        invalidateChildOrder();
         badge.cleanup();
     }
 
@@ -467,7 +634,14 @@ public class PlayPenContentPane extends AbstractSPObject {
      */
     public void addModelBadge(ModelBadge badge) {
         badge.setParent(PlayPenContentPane.this);
-        badges.put(badge.getSubject(), badge);
+        ModelBadge oldBadge = badges.put(badge.getSubject(), badge);
+        if (oldBadge != null && oldBadge != badge) {
+            oldBadge.removeSPListener(componentBoundChanges);
+            spatialIndex.remove(oldBadge);
+        }
+        badge.addSPListener(componentBoundChanges);
+        spatialIndex.update(badge);
+        invalidateChildOrder();
     }
 
     /**
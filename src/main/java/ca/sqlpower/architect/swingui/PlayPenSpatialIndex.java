@@ -0,0 +1,312 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.architect.swingui;
+
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A uniform grid over the bounds of the components in a play pen, used to
+ * find the components near a point or inside a region without looking at
+ * every component in the diagram. Each component is recorded in every cell
+ * its (slightly enlarged) bounds touch, so a query only has to look at the
+ * cells the point or region falls in.
+ * <p>
+ * The index only knows what it is told: the owner has to call
+ * {@link #update(PlayPenComponent)} whenever a component's bounds change and
+ * {@link #remove(PlayPenComponent)} when the component goes away. The
+ * components returned by the queries are only candidates; callers still have
+ * to check {@link PlayPenComponent#contains(Point)} or the exact bounds.
+ * <p>
+ * This class is not thread safe. Like the rest of the play pen it should only
+ * be used on the Swing event dispatch thread.
+ */
+class PlayPenSpatialIndex {
+
+    /**
+     * The width and height of a grid cell, in unzoomed play pen coordinates.
+     * This is about the size of a small table pane, so most components only
+     * touch a handful of cells.
+     */
+    static final int CELL_SIZE = 256;
+
+    /**
+     * The number of pixels each component's bounds are grown by on every side
+     * before they are indexed. Relationships and usage components report that
+     * they contain points a few pixels outside of their bounds so they are
+     * easier to click on, and those points still have to find them.
+     */
+    static final int MARGIN = 8;
+
+    /**
+     * The cells of the grid. Empty cells are removed.
+     */
+    private final Map<Cell, List<PlayPenComponent>> cells = new HashMap<Cell, List<PlayPenComponent>>();
+
+    /**
+     * A cell that is reused for every lookup in {@link #cells}, so finding the
+     * components near a point or region does not create any objects. Only the
+     * keys actually stored in the map have to be separate instances.
+     */
+    private final Cell probe = new Cell(0, 0);
+
+    /**
+     * The range of cells each component was last recorded in, as a rectangle
+     * of cell co-ordinates. This is what lets a moved or removed component be
+     * taken out of its old cells without searching the grid.
+     */
+    private final Map<PlayPenComponent, Rectangle> cellRanges = new IdentityHashMap<PlayPenComponent, Rectangle>();
+
+    /**
+     * Records the current bounds of the given component, replacing wherever it
+     * was recorded before.
+     */
+    public void update(PlayPenComponent ppc) {
+        Rectangle range = cellRange(ppc.getBounds());
+        Rectangle oldRange = cellRanges.get(ppc);
+        if (range.equals(oldRange)) return;
+        if (oldRange != null) {
+            removeFromCells(ppc, oldRange);
+        }
+        cellRanges.put(ppc, range);
+        for (int cx = range.x; cx < range.x + range.width; cx++) {
+            for (int cy = range.y; cy < range.y + range.height; cy++) {
+                List<PlayPenComponent> cell = cells.get(probe.moveTo(cx, cy));
+                if (cell == null) {
+                    cell = new ArrayList<PlayPenComponent>(4);
+                    cells.put(new Cell(cx, cy), cell);
+                }
+                cell.add(ppc);
+            }
+        }
+    }
+
+    /**
+     * Forgets the given component. Does nothing if the component was not in
+     * the index.
+     */
+    public void remove(PlayPenComponent ppc) {
+        Rectangle oldRange = cellRanges.remove(ppc);
+        if (oldRange != null) {
+            removeFromCells(ppc, oldRange);
+        }
+    }
+
+    public boolean contains(PlayPenComponent ppc) {
+        return cellRanges.containsKey(ppc);
+    }
+
+    public int size() {
+        return cellRanges.size();
+    }
+
+    public void clear() {
+        cells.clear();
+        cellRanges.clear();
+    }
+
+    /**
+     * Returns the components whose bounds, grown by {@link #MARGIN}, might
+     * contain the given point, in no particular order.
+     */
+    public Set<PlayPenComponent> getCandidates(Point p) {
+        List<PlayPenComponent> cell = cells.get(probe.moveTo(cellOf(p.x), cellOf(p.y)));
+        if (cell == null) return Collections.emptySet();
+        Set<PlayPenComponent> candidates = Collections.newSetFromMap(new IdentityHashMap<PlayPenComponent, Boolean>());
+        candidates.addAll(cell);
+        return candidates;
+    }
+
+    /**
+     * Returns the components whose bounds, grown by {@link #MARGIN}, might
+     * intersect the given region, in no particular order.
+     */
+    public Set<PlayPenComponent> getCandidates(Rectangle region) {
+        Set<PlayPenComponent> candidates = Collections.newSetFromMap(new IdentityHashMap<PlayPenComponent, Boolean>());
+        int minX = cellOf(region.x);
+        int minY = cellOf(region.y);
+        int maxX = cellOf(region.x + Math.max(region.width, 1) - 1);
+        int maxY = cellOf(region.y + Math.max(region.height, 1) - 1);
+        if ((long) (maxX - minX + 1) * (maxY - minY + 1) > cells.size()) {
+            // the region covers more cells than there are occupied ones, so
+            // it is cheaper to go through the occupied cells instead
+            for (Map.Entry<Cell, List<PlayPenComponent>> entry : cells.entrySet()) {
+                if (entry.getKey().isIn(minX, minY, maxX, maxY)) {
+                    candidates.addAll(entry.getValue());
+                }
+            }
+        } else {
+            for (int cx = minX; cx <= maxX; cx++) {
+                for (int cy = minY; cy <= maxY; cy++) {
+                    List<PlayPenComponent> cell = cells.get(probe.moveTo(cx, cy));
+                    if (cell != null) {
+                        candidates.addAll(cell);
+                    }
+                }
+            }
+        }
+        return candidates;
+    }
+
+    /**
+     * Finds the components whose bounds, grown by {@link #MARGIN}, might
+     * intersect the given region, without creating any objects along the way
+     * (other than a map iterator for very large regions). This is meant for
+     * code such as painting that runs many times a second.
+     * 
+     * @param region
+     *            The region to look in.
+     * @param positions
+     *            A number for every component of interest, such as its
+     *            position in z-order. Components that are not in this map are
+     *            skipped.
+     * @param seen
+     *            Scratch space that must be larger than every number in
+     *            positions and all false. It is all false again when this
+     *            method returns.
+     * @param found
+     *            Receives the numbers from positions of the components found,
+     *            each one once, in no particular order. It must be at least as
+     *            long as seen.
+     * @return The number of entries of found that were filled in.
+     */
+    public int collect(Rectangle region, Map<PlayPenComponent, Integer> positions, boolean[] seen, int[] found) {
+        int count = 0;
+        int minX = cellOf(region.x);
+        int minY = cellOf(region.y);
+        int maxX = cellOf(region.x + Math.max(region.width, 1) - 1);
+        int maxY = cellOf(region.y + Math.max(region.height, 1) - 1);
+        if ((long) (maxX - minX + 1) * (maxY - minY + 1) > cells.size()) {
+            for (Map.Entry<Cell, List<PlayPenComponent>> entry : cells.entrySet()) {
+                if (entry.getKey().isIn(minX, minY, maxX, maxY)) {
+                    count = collect(entry.getValue(), positions, seen, found, count);
+                }
+            }
+        } else {
+            for (int cx = minX; cx <= maxX; cx++) {
+                for (int cy = minY; cy <= maxY; cy++) {
+                    List<PlayPenComponent> cell = cells.get(probe.moveTo(cx, cy));
+                    if (cell != null) {
+                        count = collect(cell, positions, seen, found, count);
+                    }
+                }
+            }
+        }
+        for (int i = 0; i < count; i++) {
+            seen[found[i]] = false;
+        }
+        return count;
+    }
+
+    private static int collect(List<PlayPenComponent> cell, Map<PlayPenComponent, Integer> positions,
+            boolean[] seen, int[] found, int count) {
+        for (int i = 0; i < cell.size(); i++) {
+            Integer position = positions.get(cell.get(i));
+            if (position != null && !seen[position]) {
+                seen[position] = true;
+                found[count++] = position;
+            }
+        }
+        return count;
+    }
+
+    private void removeFromCells(PlayPenComponent ppc, Rectangle range) {
+        for (int cx = range.x; cx < range.x + range.width; cx++) {
+            for (int cy = range.y; cy < range.y + range.height; cy++) {
+                List<PlayPenComponent> cell = cells.get(probe.moveTo(cx, cy));
+                if (cell == null) continue;
+                for (int i = cell.size() - 1; i >= 0; i--) {
+                    if (cell.get(i) == ppc) {
+                        cell.remove(i);
+                        break;
+                    }
+                }
+                if (cell.isEmpty()) {
+                    cells.remove(probe);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the cells the given bounds touch once they are grown by
+     * {@link #MARGIN}, as a rectangle in cell co-ordinates. Empty bounds still
+     * occupy the cell their corner is in.
+     */
+    private static Rectangle cellRange(Rectangle bounds) {
+        int minX = cellOf(bounds.x - MARGIN);
+        int minY = cellOf(bounds.y - MARGIN);
+        int maxX = cellOf(bounds.x + Math.max(bounds.width, 0) + MARGIN);
+        int maxY = cellOf(bounds.y + Math.max(bounds.height, 0) + MARGIN);
+        return new Rectangle(minX, minY, maxX - minX + 1, maxY - minY + 1);
+    }
+
+    /**
+     * Returns the cell co-ordinate of the given play pen co-ordinate. This
+     * rounds towards negative infinity so components that are briefly at
+     * negative co-ordinates are indexed properly too.
+     */
+    private static int cellOf(int coordinate) {
+        return (int) Math.floor((double) coordinate / CELL_SIZE);
+    }
+
+    /**
+     * The co-ordinates of a grid cell. Instances used as keys in
+     * {@link PlayPenSpatialIndex#cells} must never be moved.
+     */
+    private static final class Cell {
+        private int x;
+        private int y;
+
+        Cell(int x, int y) {
+            this.x = x;
+            this.y = y;
+        }
+
+        Cell moveTo(int x, int y) {
+            this.x = x;
+            this.y = y;
+            return this;
+        }
+
+        boolean isIn(int minX, int minY, int maxX, int maxY) {
+            return x >= minX && x <= maxX && y >= minY && y <= maxY;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Cell)) return false;
+            Cell other = (Cell) obj;
+            return x == other.x && y == other.y;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * x + y;
+        }
+    }
+}
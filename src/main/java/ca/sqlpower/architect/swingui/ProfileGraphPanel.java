@@ -83,6 +83,14 @@ public class ProfileGraphPanel {
 
     private JLabel avgValue;
 
+    private JLabel medianValue;
+
+    /**
+     * Says whether the displayed profile is an estimate, and how far off it
+     * may be.
+     */
+    private JLabel accuracyLabel;
+
     private JLabel nullCountLabel;
 
     private JLabel nullPercentLabel;
@@ -182,6 +190,10 @@ public class ProfileGraphPanel {
         row += 2;
         avgValue = makeInfoRow(pb, "Average Value", row);
         row += 2;
+        medianValue = makeInfoRow(pb, "Median Value", row);
+        row += 2;
+        accuracyLabel = makeInfoRow(pb, "Accuracy", row);
+        row += 2;
 
         freqValueTable = new FreqValueTable(null);
         freqValueSp = new JScrollPane(freqValueTable);
@@ -360,6 +372,17 @@ public class ProfileGraphPanel {
             ProfilePanel.logger.debug("Got avgValue of type: " + o.getClass().getName());
             avgValue.setText(cr.getAvgValue().toString());
         }
+        o = cr.getMedianValue();
+        if (o instanceof Number) {
+            medianValue.setText(format(((Number) o).doubleValue()));
+        } else {
+            medianValue.setText(o == null ? "" : o.toString());
+        }
+        if (cr.isEstimate()) {
+            accuracyLabel.setText("Estimate, +/-" + format(cr.getErrorBound() * 100D) + "%");
+        } else {
+            accuracyLabel.setText("Exact");
+        }
 
         if (notesField != null) {
             
@@ -63,6 +63,12 @@ public class ProjectSettingsPanel extends JPanel implements DataEntryPanel {
      */
     private JComboBox profileMode;
 
+    private JCheckBox approximateProfiles;
+
+    private JTextField profileSamplePercent;
+
+    private JCheckBox incrementalProfiles;
+
     private JRadioButton rectilinearRelationships;
     private JRadioButton directRelationships;
     
@@ -105,6 +111,12 @@ public class ProjectSettingsPanel extends JPanel implements DataEntryPanel {
         
         fb.append(Messages.getString("ProjectSettingsPanel.profileMode"), profileMode = new JComboBox(session.getProfileManager().getProfileCreators().toArray())); //$NON-NLS-1$
         fb.nextLine();
+        fb.append(Messages.getString("ProjectSettingsPanel.approximateProfiles"), approximateProfiles = new JCheckBox()); //$NON-NLS-1$
+        fb.nextLine();
+        fb.append(Messages.getString("ProjectSettingsPanel.profileSamplePercent"), profileSamplePercent = new JTextField("",6)); //$NON-NLS-1$
+        fb.nextLine();
+        fb.append(Messages.getString("ProjectSettingsPanel.incrementalProfiles"), incrementalProfiles = new JCheckBox()); //$NON-NLS-1$
+        fb.nextLine();
         fb.appendUnrelatedComponentsGapRow();
         fb.nextLine();
        
@@ -187,6 +199,9 @@ public class ProjectSettingsPanel extends JPanel implements DataEntryPanel {
         logger.debug("Reverting project options"); //$NON-NLS-1$
         numberOfFreqValues.setText(String.valueOf(session.getProfileManager().getDefaultProfileSettings().getTopNCount()));
         profileMode.setSelectedItem(session.getProfileManager().getCreator());
+        approximateProfiles.setSelected(session.getProfileManager().getDefaultProfileSettings().isApproximate());
+        profileSamplePercent.setText(String.valueOf(session.getProfileManager().getDefaultProfileSettings().getSamplePercent()));
+        incrementalProfiles.setSelected(session.getProfileManager().getDefaultProfileSettings().isIncremental());
 		saveEntireSource.setSelected(session.isSavingEntireSource());
         if (session.getRelationshipLinesDirect()) {
             directRelationships.setSelected(true);
@@ -246,6 +261,16 @@ public class ProjectSettingsPanel extends JPanel implements DataEntryPanel {
         }
         
         session.getProfileManager().setCreator((TableProfileCreator) profileMode.getSelectedItem());
+        session.getProfileManager().getDefaultProfileSettings().setApproximate(approximateProfiles.isSelected());
+        session.getProfileManager().getDefaultProfileSettings().setIncremental(incrementalProfiles.isSelected());
+        if ( profileSamplePercent.getText().length() > 0 ) {
+            try {
+                session.getProfileManager().getDefaultProfileSettings().setSamplePercent(Double.parseDouble(profileSamplePercent.getText()));
+            } catch ( IllegalArgumentException e ) {
+                ASUtils.showExceptionDialogNoReport(this,
+                        "Number Format Error", e); //$NON-NLS-1$
+            }
+        }
         
         if (directRelationships.isSelected()) {
             settings.setRelationshipLinesDirect(true);
@@ -33,7 +33,6 @@ import java.lang.reflect.InvocationTargetException;
 import java.sql.Connection;
 import java.sql.SQLException;
 import java.sql.Statement;
-import java.util.Iterator;
 import java.util.List;
 
 import javax.swing.AbstractAction;
@@ -57,6 +56,7 @@ import javax.swing.text.StyleConstants;
 import org.apache.log4j.Logger;
 
 import ca.sqlpower.architect.ddl.DDLGenerator;
+import ca.sqlpower.architect.ddl.DDLScriptExecutor;
 import ca.sqlpower.architect.ddl.DDLStatement;
 import ca.sqlpower.sql.JDBCDataSource;
 import ca.sqlpower.sqlobject.SQLDatabase;
@@ -103,6 +103,12 @@ public class SQLScriptDialog extends JDialog {
 
     private JButton executeButton;
 
+    /**
+     * If true, the script is sent to the database in JDBC batches when the
+     * driver supports batch updates. See {@link DDLScriptExecutor}.
+     */
+    private boolean batchExecution = true;
+
     /**
      * Creates and packs a new SQL script dialog, but does not display it. Call
      * setVisible(true) to show the dialog, which will appear over or near the
@@ -279,6 +285,19 @@ public class SQLScriptDialog extends JDialog {
 		executeTask = v;
 	}
 
+	public boolean isBatchExecution() {
+		return batchExecution;
+	}
+
+	/**
+	 * Turns batched execution of the script on or off. Batches are only used
+	 * when the target database's driver supports them; otherwise each statement
+	 * is executed on its own regardless of this setting.
+	 */
+	public void setBatchExecution(boolean batchExecution) {
+		this.batchExecution = batchExecution;
+	}
+
 	// ============== Nested classes follow ================
 
 	private class CopyAction extends AbstractAction {
@@ -386,49 +405,36 @@ public class SQLScriptDialog extends JDialog {
 				logger.info("Playpen Dump: " + target.getDataSource()); //$NON-NLS-1$
 				
 				SQLScriptDialog.this.executeButton.setEnabled(false);
-				Iterator<DDLStatement> it = statements.iterator();
-				while (it.hasNext() && !isFinished() && !isCancelled()) {
-					DDLStatement ddlStmt = it.next();
-					try {
-						increaseProgress();
-						logger.info("executing: " + ddlStmt.getSQLText()); //$NON-NLS-1$
-						stmt.executeUpdate(ddlStmt.getSQLText());
-						stmtsCompleted++;
-					} catch (final SQLException ex) {
-						final String fsql = ddlStmt.getSQLText() == null ? null : ddlStmt.getSQLText().trim();
-						logger.info("sql statement failed: " + ex.getMessage()); //$NON-NLS-1$
-						try {
-							SwingUtilities.invokeAndWait(new Runnable() {
-								public void run() {
-									JTextArea jta = new JTextArea(fsql);
-									jta.setOpaque(false);
-									jta.setEditable(false);
-									JPanel jp = new JPanel(new BorderLayout(0, 10));
-									jp.add(new JLabel(Messages.getString("SQLScriptDialog.sqlStatementFailed", ex.getMessage())), BorderLayout.NORTH);
-									jp.add(jta, BorderLayout.CENTER);
-									jp.add(new JLabel(Messages.getString("SQLScriptDialog.continuePrompt")), BorderLayout.SOUTH);
-									int decision = JOptionPane.showConfirmDialog(
-									        SQLScriptDialog.this,
-									        jp,
-									        Messages.getString("SQLScriptDialog.sqlFailure"), //$NON-NLS-1$
-									        JOptionPane.YES_NO_OPTION);
-									if (decision == JOptionPane.NO_OPTION) {
-										logger.info("Export cancelled by user."); //$NON-NLS-1$
-										cancelJob();
-									}
-								}
-							});
-						} catch (InterruptedException ex2) {
-							logger.warn("DDL Worker was interrupted during InvokeAndWait", ex2); //$NON-NLS-1$
-						} catch (InvocationTargetException ex2) {
-							throw new RuntimeException(ex2);
-						}
-
-						if (isCancelled()) {
-							setFinished(true);
-							// don't return, we might as well display how many statements ended up being processed...
-						}
-					}
+				DDLScriptExecutor executor = new DDLScriptExecutor() {
+				    @Override
+				    protected boolean statementFailed(DDLStatement ddlStmt, SQLException ex) {
+				        showStatementFailure(ddlStmt, ex);
+				        return !isCancelled();
+				    }
+				    @Override
+				    protected void batchExecuted(int statementsProcessed, int batchSize, long batchMillis, long elapsedMillis) {
+				        stmtsCompleted = getStatementsCompleted();
+				        setProgress(statementsProcessed);
+				        if (isBatchUpdates()) {
+				            setMessage(Messages.getString("SQLScriptDialog.batchProgress", //$NON-NLS-1$
+				                    String.valueOf(stmtsCompleted),
+				                    String.valueOf(Math.round(getThroughput(elapsedMillis))),
+				                    String.valueOf(elapsedMillis / 1000)));
+				            logger.debug("Executed batch of " + batchSize + " statements in " + batchMillis + " ms"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+				        }
+				    }
+				    @Override
+				    protected boolean isCancelled() {
+				        return ExecuteSQLScriptWorker.this.isCancelled() || isFinished();
+				    }
+				};
+				executor.setBatchUpdates(batchExecution && con.getMetaData().supportsBatchUpdates());
+				logger.debug("Batch updates: " + executor.isBatchUpdates()); //$NON-NLS-1$
+				stmtsCompleted = executor.execute(stmt, statements);
+
+				if (isCancelled()) {
+					setFinished(true);
+					// don't return, we might as well display how many statements ended up being processed...
 				}
 
 			} catch (Exception exc){
@@ -459,6 +465,41 @@ public class SQLScriptDialog extends JDialog {
 
 		}
 
+		/**
+		 * Tells the user the given statement failed and asks whether to carry on
+		 * with the rest of the script. Cancels this worker if the user says no.
+		 * This method runs on the worker thread and waits for the user's answer.
+		 */
+		private void showStatementFailure(DDLStatement ddlStmt, final SQLException ex) {
+			final String fsql = ddlStmt.getSQLText() == null ? null : ddlStmt.getSQLText().trim();
+			try {
+				SwingUtilities.invokeAndWait(new Runnable() {
+					public void run() {
+						JTextArea jta = new JTextArea(fsql);
+						jta.setOpaque(false);
+						jta.setEditable(false);
+						JPanel jp = new JPanel(new BorderLayout(0, 10));
+						jp.add(new JLabel(Messages.getString("SQLScriptDialog.sqlStatementFailed", ex.getMessage())), BorderLayout.NORTH);
+						jp.add(jta, BorderLayout.CENTER);
+						jp.add(new JLabel(Messages.getString("SQLScriptDialog.continuePrompt")), BorderLayout.SOUTH);
+						int decision = JOptionPane.showConfirmDialog(
+						        SQLScriptDialog.this,
+						        jp,
+						        Messages.getString("SQLScriptDialog.sqlFailure"), //$NON-NLS-1$
+						        JOptionPane.YES_NO_OPTION);
+						if (decision == JOptionPane.NO_OPTION) {
+							logger.info("Export cancelled by user."); //$NON-NLS-1$
+							cancelJob();
+						}
+					}
+				});
+			} catch (InterruptedException ex2) {
+				logger.warn("DDL Worker was interrupted during InvokeAndWait", ex2); //$NON-NLS-1$
+			} catch (InvocationTargetException ex2) {
+				throw new RuntimeException(ex2);
+			}
+		}
+
 		/**
 		 * Displays error messages or invokes the next process in the chain on a new
 		 * thread. The run method asks swing to invoke this method on the event dispatch
@@ -25,6 +25,8 @@ import java.awt.Frame;
 import java.awt.GridLayout;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.regex.Pattern;
@@ -57,6 +59,8 @@ import javax.swing.table.TableModel;
 
 import org.apache.log4j.Logger;
 
+import ca.sqlpower.architect.SQLObjectNameIndex;
+import ca.sqlpower.architect.SQLObjectNameIndex.NameProperty;
 import ca.sqlpower.architect.swingui.action.ZoomToFitAction;
 import ca.sqlpower.architect.swingui.event.SelectionEvent;
 import ca.sqlpower.sqlobject.SQLColumn;
@@ -171,7 +175,7 @@ public class SearchReplace {
      * searchable text from a given SQLObject.
      */
     private enum SearchAspect {
-        LOGICAL_NAME {
+        LOGICAL_NAME(NameProperty.LOGICAL_NAME) {
             String getSearchableText(SQLObject obj) {
                 return obj.getName();
             }
@@ -188,7 +192,7 @@ public class SearchReplace {
                 return true;
             }
         },
-        PHYSICAL_NAME {
+        PHYSICAL_NAME(NameProperty.PHYSICAL_NAME) {
             String getSearchableText(SQLObject obj) {
                 return obj.getPhysicalName();
             }
@@ -206,6 +210,20 @@ public class SearchReplace {
             }
         };
         
+        private final NameProperty nameProperty;
+        
+        private SearchAspect(NameProperty nameProperty) {
+            this.nameProperty = nameProperty;
+        }
+        
+        /**
+         * Returns the name in the {@link SQLObjectNameIndex} that holds the
+         * same text as this aspect.
+         */
+        NameProperty getNameProperty() {
+            return nameProperty;
+        }
+        
         /**
          * Returns the text that should be searched or displayed when this
          * aspect is applied to the given object.
@@ -252,10 +270,26 @@ public class SearchReplace {
     private JTextField searchExpression;
     private JCheckBox caseInsensitive;
 
+    /**
+     * The index used for substring and exact searches. It is created by the
+     * first such search and kept up to date until the search dialog closes.
+     */
+    private SQLObjectNameIndex nameIndex;
+
     public void showSearchDialog(final PlayPen pp) {
     	// XXX need to convert to an ArchitectPanel before switching
     	// this to use ArchitectPanelBuilder.
         final JDialog d = new JDialog((Frame) SwingUtilities.getAncestorOfClass(JFrame.class, pp), Messages.getString("SearchReplace.dialogTitle")); //$NON-NLS-1$
+        d.setDefaultCloseOperation(JDialog.DISPOSE_ON_CLOSE);
+        d.addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosed(WindowEvent e) {
+                if (nameIndex != null) {
+                    nameIndex.cleanup();
+                    nameIndex = null;
+                }
+            }
+        });
 
         ButtonGroup matchType = new ButtonGroup();
         matchType.add(substringMatch = new JRadioButton(Messages.getString("SearchReplace.substringCompareByOption"))); //$NON-NLS-1$
@@ -481,26 +515,30 @@ public class SearchReplace {
 
     public List<SQLObject> doSearch(SQLObject start, SearchAspect aspect) throws SQLObjectException {
         List<SQLObject> results = new ArrayList<SQLObject>();
-        String pat;
         if (substringMatch.isSelected() || exactMatch.isSelected()) {
-            String p = searchExpression.getText();
-            StringBuffer escapedPat = new StringBuffer();
-            for (int i = 0; i < p.length(); i++) {
-                if (! (Character.isLetterOrDigit(p.charAt(i)) || Character.isSpaceChar(p.charAt(i)))) {
-                    escapedPat.append("\\"); //$NON-NLS-1$
+            if (nameIndex == null || nameIndex.getRoot() != start) {
+                if (nameIndex != null) {
+                    nameIndex.cleanup();
                 }
-                escapedPat.append(p.charAt(i));
+                nameIndex = new SQLObjectNameIndex(start);
             }
+            String text = searchExpression.getText();
+            List<SQLObject> matches;
             if (exactMatch.isSelected()) {
-                pat = "^"+escapedPat+"$"; //$NON-NLS-1$ //$NON-NLS-2$
+                matches = nameIndex.findExact(aspect.getNameProperty(), text, caseInsensitive.isSelected());
             } else {
-                pat = ".*"+escapedPat+".*"; //$NON-NLS-1$ //$NON-NLS-2$
+                matches = nameIndex.findSubstring(aspect.getNameProperty(), text, caseInsensitive.isSelected());
+            }
+            for (SQLObject obj : matches) {
+                if (searchTypeMatches(obj)) {
+                    results.add(obj);
+                }
             }
-        } else if (regexMatch.isSelected()) {
-            pat = searchExpression.getText();
-        } else {
+            return results;
+        } else if (!regexMatch.isSelected()) {
             throw new IllegalStateException(Messages.getString("SearchReplace.unknownSearchMode")); //$NON-NLS-1$
         }
+        String pat = searchExpression.getText();
         int patternFlags = 0;
         if (caseInsensitive.isSelected()) {
             patternFlags |= (Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE);
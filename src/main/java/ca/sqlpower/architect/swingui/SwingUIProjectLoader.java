@@ -20,7 +20,11 @@ package ca.sqlpower.architect.swingui;
 
 import java.awt.Color;
 import java.awt.Point;
+import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -49,6 +53,8 @@ import org.xml.sax.SAXException;
 
 import ca.sqlpower.architect.ArchitectSession;
 import ca.sqlpower.architect.ArchitectVersion;
+import ca.sqlpower.architect.BinaryProjectReader;
+import ca.sqlpower.architect.BinaryProjectWriter;
 import ca.sqlpower.architect.ProjectLoader;
 import ca.sqlpower.architect.UnclosableInputStream;
 import ca.sqlpower.architect.ProjectSettings.ColumnVisibility;
@@ -209,7 +215,17 @@ public class SwingUIProjectLoader extends ProjectLoader {
             // parse the Mondrian business model parts first because the olap id
             // map is needed in the digester for parsing the olap gui
             try {
-                MondrianXMLReader.parse(uin, getSession().getOLAPRootObject(), sessionDbMap, olapObjectLoadIdMap);
+                if (BinaryProjectReader.isBinary(uin)) {
+                    // decoded once here and used again for the rest of the project
+                    BinaryProjectReader reader = preloadBinary(uin);
+                    BinaryProjectReader.Section olap = reader.getSection("olap"); //$NON-NLS-1$
+                    if (olap != null) {
+                        MondrianXMLReader.parse(new ByteArrayInputStream(reader.toXML(olap).getBytes("UTF-8")), //$NON-NLS-1$
+                                getSession().getOLAPRootObject(), sessionDbMap, olapObjectLoadIdMap);
+                    }
+                } else {
+                    MondrianXMLReader.parse(uin, getSession().getOLAPRootObject(), sessionDbMap, olapObjectLoadIdMap);
+                }
             } catch (SAXException e) {
                 logger.error("Error parsing project file's olap schemas!", e);
                 throw new SQLObjectException("SAX Exception in project file olap schemas parse!", e);
@@ -762,6 +778,13 @@ public class SwingUIProjectLoader extends ProjectLoader {
     
     // ------------- WRITING THE PROJECT FILE ---------------
 
+    /**
+     * The size of the character buffer between the XML writer and the file
+     * when saving. Large projects produce many megabytes of XML, so this is
+     * considerably larger than the default buffer of a {@link PrintWriter}.
+     */
+    private static final int SAVE_BUFFER_SIZE = 64 * 1024;
+
     /**
      * Saves this project by writing an XML description of it to a temp file, then renaming.
      * The location of the file is determined by this project's <code>file</code> property.
@@ -771,8 +794,132 @@ public class SwingUIProjectLoader extends ProjectLoader {
      * invoke this method on the AWT event dispatch thread!
      */
     public void save(ProgressMonitor pm) throws IOException, SQLObjectException {
+        if (!confirmOverwrite()) {
+            return;
+        }
+
         // write to temp file and then rename (this preserves old project file
         // when there's problems)
+        File tempFile = createTempFile();
+        String encoding = "UTF-8"; //$NON-NLS-1$
+        OutputStream fileOut;
+        try {
+            // If creating this temp file fails, feed the user back a more explanatory message
+            fileOut = new FileOutputStream(tempFile);
+        } catch (IOException e) {
+            throw new SQLObjectException(Messages.getString("SwingUIProject.cannotCreateOutputFile") + e, e); //$NON-NLS-1$
+        }
+        BinaryProjectWriter.Encoder encoder = null;
+        if (isBinaryFormat()) {
+            // the XML is converted to the binary format as it is written
+            encoder = BinaryProjectWriter.openEncoder(fileOut);
+            fileOut = encoder;
+        }
+        out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(
+                fileOut, encoding), SAVE_BUFFER_SIZE));
+
+        startProgress(pm);
+
+        save(out,encoding);	// Does ALL the actual I/O
+        out = null;
+        if (encoder != null) {
+            // the print writer hides conversion errors when it closes the encoder
+            encoder.close();
+        }
+        if (pm != null)
+            pm.close();
+        pm = null;
+
+        replaceFile(tempFile);
+    }
+
+    /**
+     * Serialises this project into memory so it can be written to disk later
+     * by {@link #writeSnapshot(byte[])}. This reads the whole model, so it
+     * has to run on the session's foreground thread to get a consistent copy
+     * of the project. This does not ask about overwriting the project file;
+     * see {@link #confirmOverwrite()}.
+     * 
+     * @param pm
+     *            An optional progress monitor which will be initialised then
+     *            updated as tables are written. It is not closed.
+     * @return The project file's contents, in UTF-8 XML or in the binary
+     *         format depending on {@link #isBinaryFormat()}.
+     */
+    public byte[] saveSnapshot(ProgressMonitor pm) throws IOException, SQLObjectException {
+        startProgress(pm);
+        try {
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream(SAVE_BUFFER_SIZE);
+            if (isBinaryFormat()) {
+                BinaryProjectWriter.Encoder encoder = BinaryProjectWriter.openEncoder(buffer);
+                save(encoder, "UTF-8"); //$NON-NLS-1$
+                // the print writer hides conversion errors when it closes the encoder
+                encoder.close();
+            } else {
+                save(buffer, "UTF-8"); //$NON-NLS-1$
+            }
+            return buffer.toByteArray();
+        } finally {
+            this.pm = null;
+        }
+    }
+
+    /**
+     * Resets the save progress and initialises the given progress monitor, if
+     * any, to count the tables that will be written.
+     */
+    private void startProgress(ProgressMonitor pm) {
+        progress = 0;
+        this.pm = pm;
+        if (pm != null) {
+            int pmMax = 0;
+            pm.setMinimum(0);
+            if (getSession().isSavingEntireSource()) {
+                pmMax = SQLObjectUtils.countTablesSnapshot((SQLObject) getSession().getDBTree().getModel().getRoot());
+            } else {
+                pmMax = SQLObjectUtils.countTables((SQLObject) getSession().getDBTree().getModel().getRoot());
+            }
+            logger.debug("Setting progress monitor maximum to "+pmMax); //$NON-NLS-1$
+            pm.setMaximum(pmMax);
+            pm.setProgress(progress);
+            pm.setMillisToDecideToPopup(0);
+        }
+    }
+
+    /**
+     * Writes a snapshot taken by {@link #saveSnapshot(ProgressMonitor)} to
+     * this project's file, going through a temp file and renaming it just
+     * like {@link #save(ProgressMonitor)}. This does not look at the project
+     * itself, so it is safe to call on a background thread.
+     */
+    public void writeSnapshot(byte[] snapshot) throws IOException, SQLObjectException {
+        File tempFile = createTempFile();
+        writeFile(tempFile, snapshot);
+        replaceFile(tempFile);
+    }
+
+    private void writeFile(File tempFile, byte[] contents) throws IOException, SQLObjectException {
+        OutputStream fileOut;
+        try {
+            fileOut = new FileOutputStream(tempFile);
+        } catch (IOException e) {
+            throw new SQLObjectException(Messages.getString("SwingUIProject.cannotCreateOutputFile") + e, e); //$NON-NLS-1$
+        }
+        try {
+            fileOut.write(contents);
+        } finally {
+            fileOut.close();
+        }
+    }
+
+    /**
+     * Checks that this project's file can be written and, if it was last
+     * saved by a different version of the Architect, asks the user whether
+     * to overwrite it anyway.
+     * 
+     * @return False if the user cancelled the save.
+     */
+    public boolean confirmOverwrite() throws SQLObjectException {
         if (file.exists() && !file.canWrite()) {
             // write problems with architect file will muck up the save process
             throw new SQLObjectException(Messages.getString("SwingUIProject.errorSavingProject", file.getAbsolutePath())); //$NON-NLS-1$
@@ -797,47 +944,29 @@ public class SwingUIProjectLoader extends ProjectLoader {
                     UserPromptResponse.OK, "OK", "Cancel");
             UserPromptResponse response = prompter.promptUser();
             if (response.equals(UserPromptResponse.CANCEL)) {
-                return;
+                return false;
             }
         }
+        return true;
+    }
 
-        File backupFile = new File (file.getParent(), file.getName()+"~"); //$NON-NLS-1$
-
+    /**
+     * Returns the temp file a save writes to before renaming it over this
+     * project's file.
+     */
+    private File createTempFile() {
         // Several places we would check dir perms, but MS-Windows stupidly doesn't let use the
         // "directory write" attribute for directory writing (but instead overloads
         // it to mean 'this is a special directory'.
+        return new File (file.getParent(),"tmp___" + file.getName()); //$NON-NLS-1$
+    }
 
-        File tempFile = null;
-        tempFile = new File (file.getParent(),"tmp___" + file.getName()); //$NON-NLS-1$
-        String encoding = "UTF-8"; //$NON-NLS-1$
-        try {
-            // If creating this temp file fails, feed the user back a more explanatory message
-            out = new PrintWriter(tempFile,encoding);
-        } catch (IOException e) {
-            throw new SQLObjectException(Messages.getString("SwingUIProject.cannotCreateOutputFile") + e, e); //$NON-NLS-1$
-        }
-
-        progress = 0;
-        this.pm = pm;
-        if (pm != null) {
-            int pmMax = 0;
-            pm.setMinimum(0);
-            if (getSession().isSavingEntireSource()) {
-                pmMax = SQLObjectUtils.countTablesSnapshot((SQLObject) getSession().getDBTree().getModel().getRoot());
-            } else {
-                pmMax = SQLObjectUtils.countTables((SQLObject) getSession().getDBTree().getModel().getRoot());
-            }
-            logger.debug("Setting progress monitor maximum to "+pmMax); //$NON-NLS-1$
-            pm.setMaximum(pmMax);
-            pm.setProgress(progress);
-            pm.setMillisToDecideToPopup(0);
-        }
-
-        save(out,encoding);	// Does ALL the actual I/O
-        out = null;
-        if (pm != null)
-            pm.close();
-        pm = null;
+    /**
+     * Replaces this project's file with the given completely written temp
+     * file, keeping the previous file as a backup.
+     */
+    private void replaceFile(File tempFile) throws SQLObjectException {
+        File backupFile = new File (file.getParent(), file.getName()+"~"); //$NON-NLS-1$
 
         // Do the rename dance.
         // This is a REALLY bad place for failure (especially if we've made the user wait several hours to save
@@ -920,7 +1049,7 @@ public class SwingUIProjectLoader extends ProjectLoader {
     }
 
     public void save(OutputStream out, String encoding) throws IOException {
-        save(new PrintWriter(new OutputStreamWriter(out, encoding)), encoding);
+        save(new PrintWriter(new BufferedWriter(new OutputStreamWriter(out, encoding), SAVE_BUFFER_SIZE)), encoding);
     }
     
     private void saveOLAP(PrintWriter out) {
@@ -1335,6 +1464,11 @@ public class SwingUIProjectLoader extends ProjectLoader {
             ioo.print(out, "<table-profile-result"); //$NON-NLS-1$
             printCommonItems(out, tableResult, profiledObjectId);
             ioo.niprint(out, " rowCount=\"" + tableResult.getRowCount() + "\""); //$NON-NLS-1$ //$NON-NLS-2$
+            if (tableResult.getChangeProbe() != null) {
+                out.write(" changeProbe=\""); //$NON-NLS-1$
+                writeEscapedXML(out, tableResult.getChangeProbe());
+                out.write('"');
+            }
             ioo.niprint(out, " UUID=\"" + tableResult.getUUID() + "\"");
             ioo.niprintln(out, ">"); //$NON-NLS-1$
             ioo.indent++;
@@ -1357,46 +1491,36 @@ public class SwingUIProjectLoader extends ProjectLoader {
                 ioo.niprint(out, " maxLength=\"" + cpr.getMaxLength() + "\""); //$NON-NLS-1$ //$NON-NLS-2$
                 ioo.niprint(out, " nullCount=\"" + cpr.getNullCount() + "\""); //$NON-NLS-1$ //$NON-NLS-2$
                 ioo.niprint(out, " distinctValueCount=\"" + cpr.getDistinctValueCount() + "\""); //$NON-NLS-1$ //$NON-NLS-2$
+                if (cpr.isEstimate()) {
+                    ioo.niprint(out, " estimate=\"true\""); //$NON-NLS-1$
+                    ioo.niprint(out, " errorBound=\"" + cpr.getErrorBound() + "\""); //$NON-NLS-1$ //$NON-NLS-2$
+                }
                 ioo.niprint(out, " UUID=\"" + cpr.getUUID() + "\"");
                 ioo.niprintln(out, ">"); //$NON-NLS-1$
 
                 ioo.indent++;
 
-                if ( cpr.getAvgValue() != null ) {
-                    ioo.println(out, "<avgValue type=\"" + //$NON-NLS-1$
-                            cpr.getAvgValue().getClass().getName() +
-                            "\" value=\""+ //$NON-NLS-1$
-                            SQLPowerUtils.escapeXML(String.valueOf(cpr.getAvgValue())) +
-                            "\"/>" ); //$NON-NLS-1$
-                }
-                if ( cpr.getMaxValue() != null ) {
-                    ioo.println(out, "<maxValue type=\"" + //$NON-NLS-1$
-                            cpr.getMaxValue().getClass().getName() +
-                            "\" value=\""+ //$NON-NLS-1$
-                            SQLPowerUtils.escapeXML(String.valueOf(cpr.getMaxValue())) +
-                            "\"/>" ); //$NON-NLS-1$
-                }
-                if ( cpr.getMinValue() != null ) {
-                    ioo.println(out, "<minValue type=\"" + //$NON-NLS-1$
-                            cpr.getMinValue().getClass().getName() +
-                            "\" value=\""+ //$NON-NLS-1$
-                            SQLPowerUtils.escapeXML(String.valueOf(cpr.getMinValue())) +
-                            "\"/>" ); //$NON-NLS-1$
-                }
+                saveProfileValue(out, "avgValue", cpr.getAvgValue()); //$NON-NLS-1$
+                saveProfileValue(out, "maxValue", cpr.getMaxValue()); //$NON-NLS-1$
+                saveProfileValue(out, "minValue", cpr.getMinValue()); //$NON-NLS-1$
+                saveProfileValue(out, "medianValue", cpr.getMedianValue()); //$NON-NLS-1$
 
                 List<ColumnValueCount> valueCount = cpr.getValueCount();
                 if (valueCount != null) {
                     for (ColumnValueCount count : valueCount) {
-                        ioo.println(out, "<topNvalue count=\""+ //$NON-NLS-1$
-                                count.getCount()+
-                                "\" type=\"" + //$NON-NLS-1$
-                                (count.getValue() == null ? "" : count.getValue().getClass().getName()) + //$NON-NLS-1$
-                                "\" value=\""+ //$NON-NLS-1$
-                                SQLPowerUtils.escapeXML(String.valueOf(count.getValue()))+
-                                "\" percent=\"" +  //$NON-NLS-1$
-                                count.getPercent() + 
-                                "\" otherValues=\"" + 
-                                Boolean.toString(count.isOtherValues()) + "\"/>" ); //$NON-NLS-1$
+                        ioo.print(out, "<topNvalue count=\""); //$NON-NLS-1$
+                        out.print(count.getCount());
+                        out.write("\" type=\""); //$NON-NLS-1$
+                        if (count.getValue() != null) {
+                            out.write(count.getValue().getClass().getName());
+                        }
+                        out.write("\" value=\""); //$NON-NLS-1$
+                        writeEscapedXML(out, String.valueOf(count.getValue()));
+                        out.write("\" percent=\""); //$NON-NLS-1$
+                        out.print(count.getPercent());
+                        out.write("\" otherValues=\""); //$NON-NLS-1$
+                        out.print(count.isOtherValues());
+                        ioo.niprintln(out, "\"/>"); //$NON-NLS-1$
                     }
                 }
                 ioo.indent--;
@@ -1410,6 +1534,24 @@ public class SwingUIProjectLoader extends ProjectLoader {
         ioo.indent--;
     }
 
+    /**
+     * Writes an element holding one of the values of a column profile, such
+     * as its average, with the value's class so it can be restored as the
+     * same type. Nothing is written if the value is null.
+     */
+    private void saveProfileValue(PrintWriter out, String elementName, Object value) {
+        if (value == null) {
+            return;
+        }
+        ioo.print(out, "<"); //$NON-NLS-1$
+        out.write(elementName);
+        out.write(" type=\""); //$NON-NLS-1$
+        out.write(value.getClass().getName());
+        out.write("\" value=\""); //$NON-NLS-1$
+        writeEscapedXML(out, String.valueOf(value));
+        ioo.niprintln(out, "\"/>"); //$NON-NLS-1$
+    }
+
     private void printCommonItems(PrintWriter out, ProfileResult<?> profileResult, String profiledObjectId) {
         ioo.niprint(out, " ref-id=\"" + profiledObjectId + "\"" + //$NON-NLS-1$ //$NON-NLS-2$
                 " createStartTime=\""+profileResult.getCreateStartTime()+"\"" + //$NON-NLS-1$ //$NON-NLS-2$
@@ -1558,7 +1700,11 @@ public class SwingUIProjectLoader extends ProjectLoader {
             // use this for debugging duplicate object problems
             ioo.print(out, "<"+type+" hashCode=\""+o.hashCode()+"\" id=\""+quote(id)+"\" ");
         } else {
-            ioo.print(out, "<"+type+" id="+quote(id)+" "); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+            ioo.print(out, "<"); //$NON-NLS-1$
+            out.write(type);
+            out.write(" id=\""); //$NON-NLS-1$
+            writeEscapedXML(out, id);
+            out.write("\" "); //$NON-NLS-1$
         }
 
         if ( (!getSession().isSavingEntireSource()) && (!o.isPopulated()) ) {
@@ -1567,12 +1713,13 @@ public class SwingUIProjectLoader extends ProjectLoader {
             ioo.niprint(out, "populated=\"true\" "); //$NON-NLS-1$
         }
 
-        Iterator<String> props = propNames.keySet().iterator();
-        while (props.hasNext()) {
-            Object key = props.next();
-            Object value = propNames.get(key);
+        for (Map.Entry<String, Object> prop : propNames.entrySet()) {
+            Object value = prop.getValue();
             if (value != null) {
-                ioo.niprint(out, key+"="+quote(value.toString())+" "); //$NON-NLS-1$ //$NON-NLS-2$
+                out.write(prop.getKey());
+                out.write("=\""); //$NON-NLS-1$
+                writeEscapedXML(out, value.toString());
+                out.write("\" "); //$NON-NLS-1$
             }
         }
         if (o.allowsChildren()) {
@@ -1595,7 +1742,7 @@ public class SwingUIProjectLoader extends ProjectLoader {
             String indicesFolder = null;
             if (o instanceof SQLTable) {
                 SQLTable table = (SQLTable) o;
-                ioo.println(out, "<remarks>" + SQLPowerUtils.escapeXML(table.getRemarks()) + "</remarks>");
+                saveRemarks(out, table.getRemarks());
                 String exception;
                 if (table.getChildrenInaccessibleReason(SQLColumn.class) != null) {
                     exception = "sql-exception=\"" + 
@@ -1638,7 +1785,7 @@ public class SwingUIProjectLoader extends ProjectLoader {
                     table.isIndicesPopulated() + "\" name=\"Indices\" " +
                     "physicalName=\"Indices\" " + exception + "type=\"4\">";
             } else if (o instanceof SQLColumn) {
-                ioo.println(out, "<remarks>" + SQLPowerUtils.escapeXML(((SQLColumn) o).getRemarks()) + "</remarks>");
+                saveRemarks(out, ((SQLColumn) o).getRemarks());
             }
             while (children.hasNext()) {
                 SQLObject child = (SQLObject) children.next();
@@ -1705,9 +1852,45 @@ public class SwingUIProjectLoader extends ProjectLoader {
         ioo.println(out, tagText.toString());
     }
 
+    private void saveRemarks(PrintWriter out, String remarks) {
+        ioo.print(out, "<remarks>"); //$NON-NLS-1$
+        writeEscapedXML(out, remarks);
+        ioo.niprintln(out, "</remarks>"); //$NON-NLS-1$
+    }
+
     private String quote(String str) {
         return "\""+SQLPowerUtils.escapeXML(str)+"\""; //$NON-NLS-1$ //$NON-NLS-2$
     }
+
+    /**
+     * Writes the given text to the given writer escaped exactly as
+     * {@link SQLPowerUtils#escapeXML(String)} would escape it. Most names,
+     * types and values in a project are plain printable ASCII that needs no
+     * escaping at all, and those are written straight through without
+     * creating any new strings; anything else is handed to escapeXML.
+     */
+    static void writeEscapedXML(PrintWriter out, String text) {
+        if (text == null || needsEscaping(text)) {
+            out.write(SQLPowerUtils.escapeXML(text));
+        } else {
+            out.write(text);
+        }
+    }
+
+    /**
+     * Returns true if the given text contains anything other than printable
+     * ASCII characters that have no special meaning in XML.
+     */
+    private static boolean needsEscaping(String text) {
+        for (int i = 0, n = text.length(); i < n; i++) {
+            char ch = text.charAt(i);
+            if (ch < 0x20 || ch > 0x7e || ch == '&' || ch == '<' || ch == '>'
+                    || ch == '"' || ch == '\'' || ch == '\\') {
+                return true;
+            }
+        }
+        return false;
+    }
     // ------------------- accessors and mutators ---------------------
     
     @Override
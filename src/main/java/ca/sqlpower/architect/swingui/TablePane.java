@@ -441,6 +441,34 @@ public class TablePane extends ContainerPane<SQLTable, SQLColumn> {
 		}
 	}
 
+	/**
+	 * Anything that asks a table pane to repaint itself may have changed the
+	 * way it looks, so this also drops its image from the play pen's
+	 * {@link TablePaneRenderCache} and tells the play pen's table pane repaint
+	 * listeners.
+	 */
+	@Override
+	public void repaint() {
+	    invalidateRenderCache();
+	    super.repaint();
+	    PlayPen pp = getPlayPen();
+	    if (pp != null) {
+	        pp.fireTablePaneRepaint(this);
+	    }
+	}
+
+	/**
+	 * Drops this table pane's image from the play pen's
+	 * {@link TablePaneRenderCache}, so it is drawn from scratch the next time
+	 * it is painted.
+	 */
+	void invalidateRenderCache() {
+	    PlayPen pp = getPlayPen();
+	    if (pp != null) {
+	        pp.getTablePaneRenderCache().invalidate(this);
+	    }
+	}
+
 	public void updateHiddenColumns() {
 	    hiddenColumns.clear();
 	    ArchitectSwingSession session = getPlayPen().getSession();
@@ -0,0 +1,230 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.architect.swingui;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.image.BufferedImage;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+
+import ca.sqlpower.architect.ArchitectUtils;
+
+/**
+ * Keeps an offscreen image of what each table pane in a play pen last looked
+ * like, so a table that has not changed can be painted with a single image
+ * copy instead of drawing its title, columns and box again on every repaint.
+ * <p>
+ * Each image remembers the zoom level, selection state, size, font and
+ * session display settings it was drawn with, and is only handed out again
+ * while all of those still match. Anything else that changes the way a table
+ * looks (model changes, column selection, highlights and so on) goes through
+ * {@link TablePane#repaint()} or the table pane UI's property change handling,
+ * both of which call {@link #invalidate(TablePane)}.
+ * <p>
+ * The images together are never allowed to take more than a set number of
+ * bytes; when a new image would go over the limit, the images of the tables
+ * that were painted least recently are dropped first.
+ * <p>
+ * Like the rest of the play pen, this class is not thread safe and should only
+ * be used on the Swing event dispatch thread.
+ */
+class TablePaneRenderCache {
+
+    private static final Logger logger = Logger.getLogger(TablePaneRenderCache.class);
+
+    /**
+     * The default limit on the memory used by all cached images, in bytes.
+     */
+    public static final long DEFAULT_MAX_BYTES = 32L * 1024 * 1024;
+
+    /**
+     * An image of one table pane and the state it was drawn in.
+     */
+    private static class Entry {
+        final BufferedImage image;
+        final long bytes;
+        final double scale;
+        final boolean selected;
+        final int width;
+        final int height;
+        final Font font;
+        final Color background;
+        final int displayFlags;
+
+        Entry(BufferedImage image, TablePane tp, double scale) {
+            this.image = image;
+            this.bytes = (long) image.getWidth() * image.getHeight() * 4;
+            this.scale = scale;
+            this.selected = tp.isSelected();
+            this.width = tp.getWidth();
+            this.height = tp.getHeight();
+            this.font = tp.getFont();
+            this.background = tp.getPlayPen().getBackground();
+            this.displayFlags = displayFlags(tp);
+        }
+
+        boolean matches(TablePane tp, double scale) {
+            return this.scale == scale &&
+                this.selected == tp.isSelected() &&
+                this.width == tp.getWidth() &&
+                this.height == tp.getHeight() &&
+                ArchitectUtils.areEqual(this.font, tp.getFont()) &&
+                ArchitectUtils.areEqual(this.background, tp.getPlayPen().getBackground()) &&
+                this.displayFlags == displayFlags(tp);
+        }
+    }
+
+    /**
+     * The cached images, least recently used first.
+     */
+    private final Map<TablePane, Entry> entries = new LinkedHashMap<TablePane, Entry>(16, 0.75f, true);
+
+    private long maxBytes = DEFAULT_MAX_BYTES;
+
+    /**
+     * The number of bytes taken by all of the images in {@link #entries}.
+     */
+    private long usedBytes;
+
+    /**
+     * Returns the cached image of the given table pane if there is one and it
+     * was drawn at the given scale in the table's current state. Otherwise
+     * returns null, dropping the out of date image if there was one.
+     */
+    public BufferedImage get(TablePane tp, double scale) {
+        Entry entry = entries.get(tp);
+        if (entry == null) return null;
+        if (!entry.matches(tp, scale)) {
+            remove(tp);
+            return null;
+        }
+        return entry.image;
+    }
+
+    /**
+     * Remembers the given image of the given table pane, drawn at the given
+     * scale in the table's current state. Images that are too big for the
+     * cache are not kept at all.
+     * 
+     * @return true if the image was kept.
+     */
+    public boolean put(TablePane tp, double scale, BufferedImage image) {
+        remove(tp);
+        Entry entry = new Entry(image, tp, scale);
+        if (!fits(entry.bytes)) {
+            return false;
+        }
+        entries.put(tp, entry);
+        usedBytes += entry.bytes;
+        evict();
+        return true;
+    }
+
+    /**
+     * Tells whether an image of the given width and height could be kept by
+     * this cache. Callers can use this to avoid drawing images that would be
+     * thrown away right away.
+     */
+    public boolean fits(int width, int height) {
+        return fits((long) width * height * 4);
+    }
+
+    private boolean fits(long bytes) {
+        // a single table is not allowed to push out most of the others
+        return bytes <= maxBytes / 4;
+    }
+
+    /**
+     * Drops the cached image of the given table pane, if there is one.
+     */
+    public void invalidate(TablePane tp) {
+        remove(tp);
+    }
+
+    /**
+     * Drops every cached image.
+     */
+    public void clear() {
+        entries.clear();
+        usedBytes = 0;
+    }
+
+    private void remove(TablePane tp) {
+        Entry old = entries.remove(tp);
+        if (old != null) {
+            usedBytes -= old.bytes;
+        }
+    }
+
+    /**
+     * Drops the least recently used images until the cache is within its
+     * limit again.
+     */
+    private void evict() {
+        Iterator<Entry> it = entries.values().iterator();
+        while (usedBytes > maxBytes && it.hasNext()) {
+            Entry entry = it.next();
+            it.remove();
+            usedBytes -= entry.bytes;
+        }
+        if (logger.isDebugEnabled()) {
+            logger.debug(entries.size() + " table images cached in " + usedBytes + " bytes");
+        }
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public long getUsedBytes() {
+        return usedBytes;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * Sets the limit on the memory used by all of the cached images, dropping
+     * images right away if the cache is now over its limit.
+     */
+    public void setMaxBytes(long maxBytes) {
+        this.maxBytes = maxBytes;
+        evict();
+    }
+
+    /**
+     * Packs the session settings that change what a table pane shows, but
+     * that are not properties of the table pane, into one number.
+     */
+    private static int displayFlags(TablePane tp) {
+        int flags = 0;
+        if (tp.isUsingLogicalNames()) flags |= 1;
+        if (tp.isShowPkTag()) flags |= 2;
+        if (tp.isShowFkTag()) flags |= 4;
+        if (tp.isShowAkTag()) flags |= 8;
+        if (tp.isFullyQualifiedNameInHeader()) flags |= 16;
+        return flags;
+    }
+}
@@ -35,6 +35,7 @@ import javax.swing.JProgressBar;
 import javax.swing.SwingUtilities;
 import javax.swing.tree.TreePath;
 
+import ca.sqlpower.architect.ddl.DatabaseMetaDataCache;
 import ca.sqlpower.architect.swingui.ASUtils;
 import ca.sqlpower.architect.swingui.ArchitectSwingSession;
 import ca.sqlpower.architect.swingui.DBTree;
@@ -87,6 +88,7 @@ public class RefreshAction extends AbstractArchitectAction {
             try {
                 for (SQLDatabase db : databasesToRefresh) {
                     dbBeingRefreshed = db;
+                    DatabaseMetaDataCache.getInstance().invalidate(db.getDataSource());
                     db.refresh();
                     increaseProgress();
                 }
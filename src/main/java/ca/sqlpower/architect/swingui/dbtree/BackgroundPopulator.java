@@ -0,0 +1,132 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.architect.swingui.dbtree;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import ca.sqlpower.architect.WeakIdentityMap;
+
+/**
+ * Runs the population of {@link DBTreeModel} nodes on worker threads. Each
+ * data source gets its own small pool of threads, so expanding many nodes of
+ * one database at once does not open a connection for each of them, and a
+ * slow database does not hold up the nodes of the other ones.
+ * <p>
+ * The threads are daemon threads and go away after they have been idle for
+ * a while.
+ */
+class BackgroundPopulator {
+
+    /**
+     * The number of nodes of one data source that can be populated at the
+     * same time.
+     */
+    static final int THREADS_PER_DATA_SOURCE = 2;
+
+    /**
+     * The number of seconds a worker thread waits for more work before it
+     * ends.
+     */
+    private static final long KEEP_ALIVE_SECONDS = 30;
+
+    private static final BackgroundPopulator instance = new BackgroundPopulator(THREADS_PER_DATA_SOURCE);
+
+    /**
+     * Returns the populator shared by all of the tree models.
+     */
+    static BackgroundPopulator getInstance() {
+        return instance;
+    }
+
+    private final int threadsPerDataSource;
+
+    /**
+     * The worker pool of each data source that has had nodes populated. Data
+     * sources are mutable and their equality depends on their properties, so
+     * they are compared by identity here; otherwise editing a connection
+     * would lose its pool and start another one.
+     */
+    private final WeakIdentityMap<Object, ExecutorService> executors = new WeakIdentityMap<Object, ExecutorService>();
+
+    /**
+     * Runs every task instead of the per data source pools, or null to use
+     * the pools. See {@link #BackgroundPopulator(Executor)}.
+     */
+    private final Executor executor;
+
+    BackgroundPopulator(int threadsPerDataSource) {
+        this.threadsPerDataSource = threadsPerDataSource;
+        executor = null;
+    }
+
+    /**
+     * Creates a populator that hands every task to the given executor,
+     * whatever its data source. This is for tests that need to decide when
+     * a population runs.
+     */
+    BackgroundPopulator(Executor executor) {
+        threadsPerDataSource = 0;
+        this.executor = executor;
+    }
+
+    /**
+     * Queues the given task on the worker pool of the given data source.
+     * 
+     * @param dataSource
+     *            The data source the task will query. Tasks for the same
+     *            data source share a pool.
+     * @param task
+     *            The population to run.
+     * @return A future that can cancel the task if it has not started yet.
+     */
+    synchronized Future<?> submit(Object dataSource, Runnable task) {
+        if (this.executor != null) {
+            FutureTask<Void> future = new FutureTask<Void>(task, null);
+            this.executor.execute(future);
+            return future;
+        }
+        ExecutorService executor = executors.get(dataSource);
+        if (executor == null) {
+            final String name = String.valueOf(dataSource);
+            ThreadPoolExecutor pool = new ThreadPoolExecutor(threadsPerDataSource, threadsPerDataSource,
+                    KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+                    new ThreadFactory() {
+                        private int count;
+                        public synchronized Thread newThread(Runnable r) {
+                            count++;
+                            Thread t = new Thread(r, "DBTree populator " + count + " for " + name);
+                            t.setDaemon(true);
+                            return t;
+                        }
+                    });
+            pool.allowCoreThreadTimeOut(true);
+            executor = pool;
+            executors.put(dataSource, executor);
+        }
+        return executor.submit(task);
+    }
+}
@@ -21,14 +21,17 @@ package ca.sqlpower.architect.swingui.dbtree;
 import java.beans.PropertyChangeEvent;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
 
 import javax.swing.JTree;
 import javax.swing.SwingUtilities;
@@ -41,6 +44,7 @@ import javax.swing.tree.TreePath;
 
 import org.apache.log4j.Logger;
 
+import ca.sqlpower.architect.swingui.Messages;
 import ca.sqlpower.object.AbstractSPObject;
 import ca.sqlpower.object.SPChildEvent;
 import ca.sqlpower.object.SPListener;
@@ -150,22 +154,29 @@ public class DBTreeModel implements TreeModel, java.io.Serializable {
             }
             SQLPowerUtils.listenToHierarchy(e.getChild(), this);
             
-            Set<TreeModelEvent> events = createTreeEvents(e);
-            for (TreeModelEvent evt : events) {
-                fireTreeNodesInserted(evt);
+            SPObject treeParent = getTreeParent(e);
+            updateChildIndex(treeParent, e, true);
+            boolean deferred = deferTreeEvent(treeParent);
+            if (!deferred) {
+                Set<TreeModelEvent> events = createTreeEvents(e);
+                for (TreeModelEvent evt : events) {
+                    fireTreeNodesInserted(evt);
+                }
             }
 
             if (e.getChild() instanceof SQLTable && foldersInTables.get(e.getChild()) == null) {
                 SQLTable table = (SQLTable) e.getChild();
                 createFolders(table);
-                List<ArchitectFolder> folderList = foldersInTables.get(table);
-                int[] positions = new int[folderList.size()];
-                for (int i = 0; i < folderList.size(); i++) {
-                    positions[i] = i;
+                if (!deferred) {
+                    List<ArchitectFolder> folderList = foldersInTables.get(table);
+                    int[] positions = new int[folderList.size()];
+                    for (int i = 0; i < folderList.size(); i++) {
+                        positions[i] = i;
+                    }
+                    final TreeModelEvent evt = new TreeModelEvent(table, getPathToNode(table), 
+                            positions, folderList.toArray());
+                    fireTreeNodesInserted(evt);
                 }
-                final TreeModelEvent evt = new TreeModelEvent(table, getPathToNode(table), 
-                        positions, folderList.toArray());
-                fireTreeNodesInserted(evt);
             } else {
                 setupTreeForNode((SPObject) e.getChild());
             }
@@ -186,13 +197,23 @@ public class DBTreeModel implements TreeModel, java.io.Serializable {
             }
             if (logger.isDebugEnabled()) logger.debug("dbChildrenRemoved SQLObjectEvent: "+e); //$NON-NLS-1$
             SQLPowerUtils.unlistenToHierarchy(e.getChild(), this);
+            
+            SPObject treeParent = getTreeParent(e);
+            updateChildIndex(treeParent, e, false);
+            forgetSubtree(e.getChild());
+            boolean deferred = deferTreeEvent(treeParent);
+            if (!deferred) {
+                Set<TreeModelEvent> events = createTreeEvents(e);
+                for (TreeModelEvent evt : events) {
+                    fireTreeNodesRemoved(evt);
+                }
+            }
             if (e.getChild() instanceof SQLTable) {
                 foldersInTables.remove(e.getChild());
             }
-            
-            Set<TreeModelEvent> events = createTreeEvents(e);
-            for (TreeModelEvent evt : events) {
-                fireTreeNodesRemoved(evt);
+            if (openTransactions.isEmpty()) {
+                // the removed objects can't end their transactions any more
+                fireDeferredStructureChanges();
             }
         }
 
@@ -200,18 +221,34 @@ public class DBTreeModel implements TreeModel, java.io.Serializable {
             if (!root.getRunnableDispatcher().isForegroundThread()) 
                 throw new IllegalStateException("Transaction ended for " + e.getSource() + 
                         " while not on the foreground thread.");
+            endTransaction(e.getSource());
         }
 
         public void transactionRollback(TransactionEvent e) {
             if (!root.getRunnableDispatcher().isForegroundThread()) 
                 throw new IllegalStateException("Transaction rolled back for " + e.getSource() + 
                         " while not on the foreground thread.");
+            endTransaction(e.getSource());
         }
 
         public void transactionStarted(TransactionEvent e) {
             if (!root.getRunnableDispatcher().isForegroundThread()) 
                 throw new IllegalStateException("Transaction started for " + e.getSource() + 
                         " while not on the foreground thread.");
+            Integer depth = openTransactions.get(e.getSource());
+            openTransactions.put(e.getSource(), depth == null ? 1 : depth + 1);
+        }
+        
+        private void endTransaction(Object source) {
+            Integer depth = openTransactions.get(source);
+            if (depth != null && depth > 1) {
+                openTransactions.put(source, depth - 1);
+            } else {
+                openTransactions.remove(source);
+            }
+            if (openTransactions.isEmpty()) {
+                fireDeferredStructureChanges();
+            }
         }
 
         public void propertyChanged(PropertyChangeEvent e) {
@@ -234,18 +271,28 @@ public class DBTreeModel implements TreeModel, java.io.Serializable {
          */
         private Set<TreeModelEvent> createTreeEvents(SPChildEvent change) {
             Set<TreeModelEvent> events = new HashSet<TreeModelEvent>();
+            SPObject parent = getTreeParent(change);
+            SPObject child = change.getChild();
+            events.add(new TreeModelEvent(DBTreeModel.this, getPathToNode(parent), new int[]{change.getIndex()}, new Object[]{child}));
+            return events;
+        }
+
+        /**
+         * Returns the node the child of the given event is under in the tree.
+         * This is the event's source, except for children of tables, which
+         * are in the table's folders.
+         */
+        private SPObject getTreeParent(SPChildEvent change) {
             SPObject parent = change.getSource();
             SPObject child = change.getChild();
-            if (parent instanceof SQLTable) {
+            if (parent instanceof SQLTable && foldersInTables.get(parent) != null) {
                 for (ArchitectFolder folder : foldersInTables.get(parent)) {
                     if (folder.getContainingChildType().isAssignableFrom(child.getClass())) {
-                        parent = folder;
-                        break;
+                        return folder;
                     }
                 }
             }
-            events.add(new TreeModelEvent(DBTreeModel.this, getPathToNode(parent), new int[]{change.getIndex()}, new Object[]{child}));
-            return events;
+            return parent;
         }
 
         /**
@@ -320,6 +367,144 @@ public class DBTreeModel implements TreeModel, java.io.Serializable {
 	
 	private final DBTreeSPListener treeListener = new DBTreeSPListener();
 
+    /**
+     * The node shown as the only child of a node whose children are being
+     * loaded in the background.
+     */
+    static final Object LOADING_PLACEHOLDER = new Object() {
+        @Override
+        public String toString() {
+            return Messages.getString("DBTreeModel.loading"); //$NON-NLS-1$
+        }
+    };
+
+    /**
+     * The number of children of a node loaded in the background that are
+     * shown to the tree at a time. The next page is inserted once the event
+     * dispatch thread has handled the previous one.
+     */
+    static final int PAGE_SIZE = 200;
+
+    /**
+     * If true, unpopulated nodes show {@link #LOADING_PLACEHOLDER} when the
+     * tree asks for their children, and are populated on a worker thread.
+     */
+    private boolean backgroundPopulation;
+
+    /**
+     * The nodes being populated in the background, with the task doing it.
+     */
+    private final Map<Object, Future<?>> loadingNodes = new IdentityHashMap<Object, Future<?>>();
+
+    /**
+     * The nodes whose children are being shown to the tree a page at a time,
+     * with the number of children the tree has been told about so far.
+     */
+    private final Map<Object, Integer> revealedCounts = new IdentityHashMap<Object, Integer>();
+
+    /**
+     * Nodes that were still not populated after populating them in the
+     * background. These are left to the tree to populate, as they would be
+     * without background population, so failures are not retried forever.
+     */
+    private final Set<Object> failedLoads = Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>());
+
+    /**
+     * Runs the background populations of this model.
+     */
+    private BackgroundPopulator populator = BackgroundPopulator.getInstance();
+
+    /**
+     * The number of child events a transaction can cause before the rest of
+     * its insert and remove events are replaced by one structure change per
+     * affected node when the transaction ends.
+     */
+    static final int COALESCE_THRESHOLD = 100;
+
+    /**
+     * The children of a node as they appear in the tree, and the position of
+     * each one, so the tree can look children and their indices up in
+     * constant time.
+     */
+    private static class ChildIndex {
+        private final List<Object> children;
+        private final Map<Object, Integer> positions;
+        
+        ChildIndex(List<?> children) {
+            this.children = new ArrayList<Object>(children);
+            positions = new IdentityHashMap<Object, Integer>(children.size());
+            renumberFrom(0);
+        }
+
+        /**
+         * Inserts the given child at the given position, which only costs the
+         * number of children after it, so appending is constant time.
+         * 
+         * @return false if the position is out of range or the child is
+         *         already here, in which case nothing is changed.
+         */
+        boolean add(Object child, int position) {
+            if (position < 0 || position > children.size() || positions.containsKey(child)) {
+                return false;
+            }
+            children.add(position, child);
+            renumberFrom(position);
+            return true;
+        }
+
+        /**
+         * Removes the given child, which is expected at the given position
+         * but is looked up if it is somewhere else.
+         * 
+         * @return false if the child is not here.
+         */
+        boolean remove(Object child, int position) {
+            if (position < 0 || position >= children.size() || children.get(position) != child) {
+                Integer actual = positions.get(child);
+                if (actual == null) return false;
+                position = actual;
+            }
+            children.remove(position);
+            positions.remove(child);
+            renumberFrom(position);
+            return true;
+        }
+
+        private void renumberFrom(int start) {
+            for (int i = start; i < children.size(); i++) {
+                positions.put(children.get(i), i);
+            }
+        }
+    }
+
+    /**
+     * The child indices of the nodes the tree has asked about, by node. An
+     * entry is built when it is first needed and kept up to date by the
+     * {@link DBTreeSPListener} as children are added and removed.
+     */
+    private final Map<Object, ChildIndex> childIndices = new IdentityHashMap<Object, ChildIndex>();
+
+    /**
+     * The objects in the tree that are in a transaction, with the number of
+     * transactions each has started and not yet finished.
+     */
+    private final Map<Object, Integer> openTransactions = new IdentityHashMap<Object, Integer>();
+
+    /**
+     * The number of children added or removed since the outermost open
+     * transaction started.
+     */
+    private int childEventsInTransaction;
+
+    /**
+     * The nodes whose insert and remove events were held back because the
+     * transaction they happened in passed the {@link #COALESCE_THRESHOLD}.
+     * A structure change is fired for each of them when the last transaction
+     * ends.
+     */
+    private final Set<SPObject> pendingStructureChanges =
+        Collections.newSetFromMap(new IdentityHashMap<SPObject, Boolean>());
+
     /**
      * When this flag is true, the DBTreeModel's protection against firing
      * TreeModelEvents on the wrong thread are disabled. The only legitimate
@@ -348,9 +533,11 @@ public class DBTreeModel implements TreeModel, java.io.Serializable {
      */
     private TreeWillExpandListener treeWillExpandListener = new TreeWillExpandListener() {
         public void treeWillCollapse(TreeExpansionEvent event) {
+            stopLoading(event.getPath().getLastPathComponent());
         }
         public void treeWillExpand(TreeExpansionEvent event) {
-            if (isColumnsFolder(event.getPath().getLastPathComponent())){
+            // when populating in the background, the worker populates the indices first
+            if (!backgroundPopulation && isColumnsFolder(event.getPath().getLastPathComponent())){
                 try {
                     ((SQLTable) event.getPath().getPathComponent(event.getPath().getPathCount() -2)).getIndices();
                 } catch (SQLObjectException e) {
@@ -527,39 +714,15 @@ public class DBTreeModel implements TreeModel, java.io.Serializable {
 	public Object getChild(Object parent, int index) {
 		if (logger.isDebugEnabled()) logger.debug("DBTreeModel.getChild("+parent+","+index+")"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
 		
-		if (parent instanceof ArchitectFolder) {
-		    return ((ArchitectFolder) parent).getChildren().get(index);
+		if (loadingNodes.containsKey(parent)) {
+		    return LOADING_PLACEHOLDER;
 		} else if (parent instanceof SQLTable) {
 		    return foldersInTables.get((SQLTable) parent).get(index);
-		}
-		
-		// If the playpen database is hidden, adjust the index accordingly.
-		// The index passed into this method is in terms of a non-PP-database
-		// tree.
-		if (!showPlayPenDatabase && parent instanceof SQLObjectRoot) {
-		    SQLObjectRoot root = (SQLObjectRoot) parent;
-		    List<? extends SQLObject> children = root.getChildren();
-		    int treeIndex = 0;
-		    for (int childIndex = 0; childIndex < children.size(); childIndex++) {
-		        SQLObject child = children.get(childIndex);
-
-		        if (!(child instanceof SQLDatabase && 
-		                ((SQLDatabase) child).isPlayPenDatabase())) {
-		            if (treeIndex == index) {
-		                return child;
-		            }
-		            treeIndex++;
-		        }
-		    }
-		    if (index == treeIndex && getSnapshotContainer() != null) {
-		        return getSnapshotContainer();
-		    }
-		} else if (parent instanceof SQLObjectRoot && 
-		        index == ((SQLObjectRoot) parent).getChildren().size()) {
-		    return getSnapshotContainer();
-		} else if (parent == getSnapshotContainer()) {
-		    SPObjectSnapshot<?> snapshot = getSnapshotContainer().getChildren(SPObjectSnapshot.class).get(index);
-		    return snapshot;
+		} else if (parent instanceof ArchitectFolder || parent instanceof SQLObjectRoot
+		        || parent == getSnapshotContainer()) {
+		    // The index passed into this method is in terms of the tree, which
+		    // may not show the play pen database.
+		    return getChildIndex(parent).children.get(index);
 		}
 		
 		SQLObject sqlParent = (SQLObject) parent;
@@ -574,34 +737,22 @@ public class DBTreeModel implements TreeModel, java.io.Serializable {
 	public int getChildCount(Object parent) {
 		if (logger.isDebugEnabled()) logger.debug("DBTreeModel.getChildCount("+parent+")"); //$NON-NLS-1$ //$NON-NLS-2$
 		
-		if (parent instanceof ArchitectFolder) {
-		    return ((ArchitectFolder) parent).getChildren().size();
+        if (parent == LOADING_PLACEHOLDER) {
+            return 0;
+        } else if (loadingNodes.containsKey(parent)) {
+            return 1;
+        } else if (revealedCounts.containsKey(parent)) {
+            return revealedCounts.get(parent);
+        } else if (needsBackgroundPopulation(parent)) {
+            startLoading((SPObject) parent);
+            return 1;
         } else if (parent instanceof SQLTable) {
             return foldersInTables.get((SQLTable) parent).size();
         } else if (parent instanceof SQLColumn) {
             return 0;
-        } else if (!showPlayPenDatabase && parent instanceof SQLObjectRoot) {
-            SQLObjectRoot root = (SQLObjectRoot) parent;
-            int size = root.getChildren().size();
-            for (SQLDatabase db : ((SQLObjectRoot) parent).getChildren(SQLDatabase.class)) {
-                if (db.isPlayPenDatabase()) {
-                    size--;
-                }
-            }
-            if (getSnapshotContainer() != null) {
-                size++;
-            }
-            return size;
-        } else if (parent instanceof SQLObjectRoot) {
-            SQLObjectRoot root = (SQLObjectRoot) parent;
-            int size = root.getChildren().size();
-            if (getSnapshotContainer() != null) {
-                size++;
-            }
-            return size;
-        } else if (parent == getSnapshotContainer()) {
-            int size = ((SPObject) parent).getChildren(SPObjectSnapshot.class).size();
-            return size;
+        } else if (parent instanceof ArchitectFolder || parent instanceof SQLObjectRoot
+                || parent == getSnapshotContainer()) {
+            return getChildIndex(parent).children.size();
         }
 		
 		SPObject sqlParent = (SPObject) parent;
@@ -622,7 +773,9 @@ public class DBTreeModel implements TreeModel, java.io.Serializable {
 		        logger.debug("DBTreeModel.isLeaf("+parent+"): returning "+!((SQLObject) parent).allowsChildren()); //$NON-NLS-1$ //$NON-NLS-2$
 		    }
 		}
-		if (parent instanceof ArchitectFolder) {
+		if (parent == LOADING_PLACEHOLDER) {
+		    return true;
+		} else if (parent instanceof ArchitectFolder) {
 		    return false;
 		} else if (parent instanceof SQLColumn) {
 		    return true;
@@ -639,47 +792,349 @@ public class DBTreeModel implements TreeModel, java.io.Serializable {
 	}
 
 	public int getIndexOfChild(Object parent, Object child) {
+	    if (loadingNodes.containsKey(parent)) {
+	        return child == LOADING_PLACEHOLDER ? 0 : -1;
+	    } else if (child == LOADING_PLACEHOLDER) {
+	        return -1;
+	    }
 	    SPObject spChild = (SPObject) child;
-		if (logger.isDebugEnabled()) logger.debug("DBTreeModel.getIndexOfChild("+parent+","+child+"): returning "+((SQLObject) parent).getChildren(spChild.getClass()).indexOf(child)); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
 		
-		if (parent instanceof ArchitectFolder) {
-            if (((ArchitectFolder) parent).isPopulated() ||
-                    spChild.getParent().equals(parent)) {
-                return ((ArchitectFolder) parent).getChildren(spChild.getClass()).indexOf(child);
-            } else {
-                return -1;
-            }
+		int index;
+		if (parent instanceof ArchitectFolder &&
+		        !((ArchitectFolder) parent).isPopulated() &&
+		        !spChild.getParent().equals(parent)) {
+		    index = -1;
+		} else if (parent instanceof SQLTable) {
+		    if (foldersInTables.get((SQLTable) parent) == null) return -1;
+		    index = foldersInTables.get((SQLTable) parent).indexOf(child);
+		} else {
+		    Integer position = getChildIndex(parent).positions.get(child);
+		    index = position == null ? -1 : position.intValue();
+		}
+		Integer revealed = revealedCounts.get(parent);
+		if (revealed != null && index >= revealed) {
+		    index = -1;
+		}
+		
+		if (logger.isDebugEnabled()) logger.debug("DBTreeModel.getIndexOfChild("+parent+","+child+"): returning "+index); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+        return index;
+	}
+
+    /**
+     * Returns the child index of the given node, building it if the tree has
+     * not asked about this node since it last changed.
+     */
+    private ChildIndex getChildIndex(Object parent) {
+        ChildIndex index = childIndices.get(parent);
+        if (index == null) {
+            index = new ChildIndex(getTreeChildren(parent));
+            childIndices.put(parent, index);
+        }
+        return index;
+    }
+
+    /**
+     * Returns the children of the given node in the order the tree shows
+     * them. The children of the root leave out the play pen database if it
+     * is hidden and end with the snapshot container, if there is one.
+     */
+    private List<?> getTreeChildren(Object parent) {
+        if (parent instanceof ArchitectFolder) {
+            return ((ArchitectFolder) parent).getChildren();
         } else if (parent instanceof SQLTable) {
-            if (foldersInTables.get((SQLTable) parent) == null) return -1;
-            return foldersInTables.get((SQLTable) parent).indexOf(child);
+            List<ArchitectFolder> folders = foldersInTables.get(parent);
+            return folders == null ? Collections.emptyList() : folders;
+        } else if (parent instanceof SQLObjectRoot) {
+            List<SPObject> children = new ArrayList<SPObject>();
+            for (SQLObject child : ((SQLObjectRoot) parent).getChildren()) {
+                if (showPlayPenDatabase || !(child instanceof SQLDatabase && 
+                        ((SQLDatabase) child).isPlayPenDatabase())) {
+                    children.add(child);
+                }
+            }
+            if (getSnapshotContainer() != null) {
+                children.add(getSnapshotContainer());
+            }
+            return children;
+        } else if (parent == getSnapshotContainer()) {
+            return getSnapshotContainer().getChildren(SPObjectSnapshot.class);
         }
-		
-		int index = ((SPObject) parent).getChildren(spChild.getClass()).indexOf(child);
-		
-		if (!showPlayPenDatabase && parent instanceof SQLObjectRoot) {
-            if (child instanceof SQLDatabase && ((SQLDatabase) child).isPlayPenDatabase()) {
-                index = -1;
-            } else {
-                SQLObjectRoot root = (SQLObjectRoot) parent;
-                List<? extends SQLObject> children = root.getChildren();
-                int playPenDatabaseCount = 0;
-                for (int i = 0; i < index; i++) {
-                    SQLObject childOfRoot = children.get(i);
-
-                    if (childOfRoot instanceof SQLDatabase && 
-                            ((SQLDatabase) childOfRoot).isPlayPenDatabase()) {
-                        playPenDatabaseCount++;
+        try {
+            return ((SPObject) parent).getChildren();
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Forgets the child index of the given node.
+     */
+    private void invalidateChildIndex(Object parent) {
+        childIndices.remove(parent);
+    }
+
+    /**
+     * Applies a child being added to or removed from the given node to the
+     * node's child index, if it has one. The event's index is the child's
+     * position in the tree, as it is for the tree events, except for the
+     * root, which can hide the play pen database, and for the snapshot
+     * container and tables, whose tree children are not their own. Their
+     * index is dropped and rebuilt when it is next needed instead.
+     */
+    private void updateChildIndex(Object treeParent, SPChildEvent e, boolean added) {
+        ChildIndex index = childIndices.get(treeParent);
+        if (index == null) return;
+        boolean updated;
+        if (treeParent instanceof SQLObjectRoot || treeParent == getSnapshotContainer()
+                || treeParent instanceof SQLTable) {
+            updated = false;
+        } else if (added) {
+            updated = index.add(e.getChild(), e.getIndex());
+        } else {
+            updated = index.remove(e.getChild(), e.getIndex());
+        }
+        if (!updated) {
+            invalidateChildIndex(treeParent);
+        }
+    }
+
+    /**
+     * Forgets everything kept about the given node and its descendants, which
+     * have just been removed from the tree.
+     */
+    private void forgetSubtree(SPObject node) {
+        for (Iterator<Object> it = childIndices.keySet().iterator(); it.hasNext(); ) {
+            if (isInSubtree(it.next(), node)) {
+                it.remove();
+            }
+        }
+        for (Iterator<Object> it = openTransactions.keySet().iterator(); it.hasNext(); ) {
+            if (isInSubtree(it.next(), node)) {
+                it.remove();
+            }
+        }
+        for (Iterator<Map.Entry<Object, Future<?>>> it = loadingNodes.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<Object, Future<?>> entry = it.next();
+            if (isInSubtree(entry.getKey(), node)) {
+                entry.getValue().cancel(false);
+                it.remove();
+            }
+        }
+        for (Iterator<Object> it = revealedCounts.keySet().iterator(); it.hasNext(); ) {
+            if (isInSubtree(it.next(), node)) {
+                it.remove();
+            }
+        }
+    }
+
+    private static boolean isInSubtree(Object candidate, SPObject subtreeRoot) {
+        if (!(candidate instanceof SPObject)) return false;
+        for (SPObject o = (SPObject) candidate; o != null; o = o.getParent()) {
+            if (o == subtreeRoot) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Decides whether the insert or remove event for a child of the given
+     * node should be held back. This happens once a transaction has added or
+     * removed more than {@link #COALESCE_THRESHOLD} children; from then on,
+     * the nodes that changed are remembered and get one structure change
+     * each when the transaction ends.
+     * 
+     * @return true if the event should not be fired now.
+     */
+    private boolean deferTreeEvent(SPObject treeParent) {
+        if (loadingNodes.containsKey(treeParent)) {
+            // the tree only sees the loading placeholder until the load finishes
+            return true;
+        } else if (revealedCounts.remove(treeParent) != null) {
+            // the tree has only been told about some of the children
+            pendingStructureChanges.add(treeParent);
+            if (openTransactions.isEmpty()) {
+                fireDeferredStructureChanges();
+            }
+            return true;
+        }
+        if (openTransactions.isEmpty()) return false;
+        childEventsInTransaction++;
+        if (childEventsInTransaction <= COALESCE_THRESHOLD) return false;
+        pendingStructureChanges.add(treeParent);
+        return true;
+    }
+
+    /**
+     * Returns true if the given node is still part of this tree.
+     */
+    private boolean isInTree(SPObject node) {
+        SPObject treeNode = node instanceof ArchitectFolder ? node.getParent() : node;
+        if (treeNode != root && !treeListener.isSPObjectRelevant(treeNode)) return false;
+        if (node instanceof ArchitectFolder && foldersInTables.get(treeNode) == null) return false;
+        return true;
+    }
+
+    /**
+     * Returns true if the children of the given node should be loaded on a
+     * worker thread before the tree gets to see them. This is the case for
+     * databases, catalogs, schemas and table folders that have not been
+     * populated yet. A columns folder also needs its table's indices, which
+     * reorder the columns when they are populated.
+     */
+    private boolean needsBackgroundPopulation(Object node) {
+        if (!backgroundPopulation || failedLoads.contains(node)) {
+            return false;
+        } else if (node instanceof ArchitectFolder) {
+            ArchitectFolder folder = (ArchitectFolder) node;
+            return !folder.isPopulated() || 
+                (isColumnsFolder(folder) && !((SQLTable) folder.getParent()).isIndicesPopulated());
+        } else if (node instanceof SQLObjectRoot || node instanceof SQLTable || node instanceof SQLColumn) {
+            return false;
+        }
+        return node instanceof SQLObject && !((SQLObject) node).isPopulated();
+    }
+
+    /**
+     * Starts populating the given node on the worker pool of its data
+     * source. The tree sees the {@link #LOADING_PLACEHOLDER} as the node's
+     * only child until {@link #finishLoading(Object, boolean)} runs.
+     */
+    private void startLoading(final SPObject node) {
+        Runnable task = new Runnable() {
+            public void run() {
+                boolean failed = false;
+                try {
+                    if (node instanceof ArchitectFolder) {
+                        ArchitectFolder folder = (ArchitectFolder) node;
+                        if (isColumnsFolder(folder)) {
+                            ((SQLTable) folder.getParent()).getIndices();
+                        }
+                        folder.getChildren();
+                    } else {
+                        ((SQLObject) node).populate();
                     }
+                } catch (Exception e) {
+                    logger.error("Populating " + node + " in the background failed", e); //$NON-NLS-1$ //$NON-NLS-2$
+                    failed = true;
                 }
-                index -= playPenDatabaseCount;
+                final boolean populateFailed = failed;
+                SwingUtilities.invokeLater(new Runnable() {
+                    public void run() {
+                        finishLoading(node, populateFailed);
+                    }
+                });
             }
-            if (child == getSnapshotContainer()) {
-                index++;
+        };
+        SQLDatabase db = node instanceof SQLDatabase ? (SQLDatabase) node : SQLPowerUtils.getAncestor(node, SQLDatabase.class);
+        Object dataSource = db == null ? node : (db.getDataSource() == null ? db : db.getDataSource());
+        loadingNodes.put(node, populator.submit(dataSource, task));
+    }
+
+    /**
+     * Replaces the loading placeholder of the given node with its children,
+     * which are inserted a page at a time. If the node could not be
+     * populated, the tree is told to reread it instead, and populates it
+     * itself as it would without background population. Does nothing if the
+     * load was stopped in the mean time.
+     */
+    private void finishLoading(Object node, boolean populateFailed) {
+        if (loadingNodes.remove(node) == null) return;
+        boolean failed = populateFailed || needsBackgroundPopulation(node);
+        if (failed) {
+            failedLoads.add(node);
+        }
+        if (!isInTree((SPObject) node)) return;
+        invalidateChildIndex(node);
+        if (failed) {
+            fireTreeStructureChanged(new TreeModelEvent(this, getPathToNode((SPObject) node)));
+            return;
+        }
+        revealedCounts.put(node, 0);
+        fireTreeNodesRemoved(new TreeModelEvent(this, getPathToNode((SPObject) node), 
+                new int[] { 0 }, new Object[] { LOADING_PLACEHOLDER }));
+        revealNextPage(node);
+    }
+
+    /**
+     * Tells the tree about the next {@link #PAGE_SIZE} children of the given
+     * node, and schedules the page after that if there is one.
+     */
+    private void revealNextPage(final Object node) {
+        Integer revealed = revealedCounts.get(node);
+        if (revealed == null) return;
+        List<Object> children = getChildIndex(node).children;
+        int end = Math.min(revealed + PAGE_SIZE, children.size());
+        if (end == children.size()) {
+            revealedCounts.remove(node);
+        } else {
+            revealedCounts.put(node, end);
+        }
+        if (end > revealed) {
+            int[] positions = new int[end - revealed];
+            for (int i = 0; i < positions.length; i++) {
+                positions[i] = revealed + i;
             }
+            fireTreeNodesInserted(new TreeModelEvent(this, getPathToNode((SPObject) node), 
+                    positions, children.subList(revealed, end).toArray()));
         }
-		
-        return index;
-	}
+        if (revealedCounts.containsKey(node)) {
+            SwingUtilities.invokeLater(new Runnable() {
+                public void run() {
+                    revealNextPage(node);
+                }
+            });
+        }
+    }
+
+    /**
+     * Stops loading or revealing the children of the given node, which is
+     * being collapsed. A population that has already started is left to
+     * finish, but its children are not inserted page by page any more. The
+     * tree is told to reread the node once it has been collapsed.
+     */
+    private void stopLoading(final Object node) {
+        Future<?> task = loadingNodes.remove(node);
+        if (task != null) {
+            task.cancel(false);
+        }
+        if (task != null || revealedCounts.remove(node) != null) {
+            SwingUtilities.invokeLater(new Runnable() {
+                public void run() {
+                    if (node instanceof SPObject && isInTree((SPObject) node)) {
+                        invalidateChildIndex(node);
+                        fireTreeStructureChanged(new TreeModelEvent(DBTreeModel.this, getPathToNode((SPObject) node)));
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Fires a structure change for each node that had events held back by
+     * {@link #deferTreeEvent(SPObject)}, skipping nodes that are no longer in
+     * the tree or that are under another node getting a structure change.
+     */
+    private void fireDeferredStructureChanges() {
+        childEventsInTransaction = 0;
+        if (pendingStructureChanges.isEmpty()) return;
+        List<SPObject> nodes = new ArrayList<SPObject>(pendingStructureChanges);
+        Set<SPObject> changed = Collections.newSetFromMap(new IdentityHashMap<SPObject, Boolean>());
+        changed.addAll(pendingStructureChanges);
+        pendingStructureChanges.clear();
+        for (SPObject node : nodes) {
+            if (!isInTree(node)) continue;
+            SPObject[] path = getPathToNode(node);
+            boolean underChangedNode = false;
+            for (int i = 0; i < path.length - 1; i++) {
+                if (changed.contains(path[i])) {
+                    underChangedNode = true;
+                    break;
+                }
+            }
+            if (!underChangedNode) {
+                fireTreeStructureChanged(new TreeModelEvent(this, path));
+            }
+        }
+    }
 
 	// -------------- treeModel event source support -----------------
 	protected LinkedList<TreeModelListener> treeModelListeners;
@@ -765,6 +1220,8 @@ public class DBTreeModel implements TreeModel, java.io.Serializable {
 	 * and can be a heavy operation!
 	 */
 	public void refreshTreeStructure() {
+	    childIndices.clear();
+	    revealedCounts.clear();
         fireTreeStructureChanged(new TreeModelEvent(root, new Object[]{root}));
 	}
 
@@ -834,6 +1291,7 @@ public class DBTreeModel implements TreeModel, java.io.Serializable {
         if (foldersInTables.get(table) == null) {
             List<ArchitectFolder> folderList = new ArrayList<ArchitectFolder>();
             foldersInTables.put(table, folderList);
+            invalidateChildIndex(table);
             if (showColumns) {
                 ArchitectFolder SQLColumnFolder = new ArchitectFolder(table, SQLColumn.class, new Callable<Boolean>() {
                     public Boolean call() throws Exception {
@@ -869,6 +1327,29 @@ public class DBTreeModel implements TreeModel, java.io.Serializable {
         }
     }
 
+    /**
+     * Sets whether unpopulated nodes should be populated on worker threads
+     * instead of on the thread that asks the model for their children. While
+     * a node is loading, the tree shows a placeholder as its only child;
+     * collapsing the node stops the load. This should only be turned on for
+     * trees used on the event dispatch thread.
+     */
+    public void setBackgroundPopulation(boolean backgroundPopulation) {
+        this.backgroundPopulation = backgroundPopulation;
+    }
+
+    public boolean isBackgroundPopulation() {
+        return backgroundPopulation;
+    }
+
+    /**
+     * Sets what runs the background populations of this model. Only for
+     * tests; the model normally shares {@link BackgroundPopulator#getInstance()}.
+     */
+    void setPopulator(BackgroundPopulator populator) {
+        this.populator = populator;
+    }
+
     public SPObject getSnapshotContainer() {
         return snapshotContainer;
     }
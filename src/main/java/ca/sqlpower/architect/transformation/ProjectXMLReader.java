@@ -0,0 +1,141 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.architect.transformation;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParserFactory;
+
+import org.apache.log4j.Logger;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.XMLFilterImpl;
+
+import ca.sqlpower.architect.swingui.ArchitectSwingSession;
+
+/**
+ * An XMLReader that produces the SAX events of a session's project file
+ * straight from the session, without keeping a saved copy of the project in
+ * memory. Use it with a {@link javax.xml.transform.sax.SAXSource} to run a
+ * transformation on the project.
+ * <p>
+ * The project is saved by the session's normal save behaviour, on the thread
+ * that calls {@link #parse(InputSource)}, into a pipe. A parser thread reads
+ * the other end of the pipe and passes the events on to the handlers of this
+ * reader as the XML arrives. Only the pipe's buffer is ever held in memory.
+ * The input source given to parse is ignored.
+ */
+public class ProjectXMLReader extends XMLFilterImpl {
+
+    private static final Logger logger = Logger.getLogger(ProjectXMLReader.class);
+
+    /**
+     * The size of the buffer between the thread saving the project and the
+     * thread parsing it.
+     */
+    private static final int PIPE_SIZE = 64 * 1024;
+
+    private final ArchitectSwingSession session;
+
+    public ProjectXMLReader(ArchitectSwingSession session) throws ParserConfigurationException, SAXException {
+        this.session = session;
+        SAXParserFactory factory = SAXParserFactory.newInstance();
+        factory.setNamespaceAware(true);
+        setParent(factory.newSAXParser().getXMLReader());
+    }
+
+    @Override
+    public void parse(InputSource ignored) throws SAXException, IOException {
+        final PipedInputStream in = new PipedInputStream(PIPE_SIZE);
+        OutputStream out = new BufferedOutputStream(new PipedOutputStream(in));
+        final Exception[] parseFailure = new Exception[1];
+        final AtomicBoolean parseFinished = new AtomicBoolean();
+        Thread parser = new Thread("Project XML parser") {
+            @Override
+            public void run() {
+                try {
+                    ProjectXMLReader.super.parse(new InputSource(in));
+                } catch (Exception e) {
+                    parseFailure[0] = e;
+                } finally {
+                    parseFinished.set(true);
+                    // stops the save if parsing ended early
+                    try {
+                        in.close();
+                    } catch (IOException e) {
+                        logger.error("Couldn't close the project pipe", e); //$NON-NLS-1$
+                    }
+                }
+            }
+        };
+        parser.setDaemon(true);
+        parser.start();
+
+        IOException saveFailure = null;
+        boolean saveStoppedByParser = false;
+        try {
+            writeProject(out);
+            out.flush();
+        } catch (IOException e) {
+            saveFailure = e;
+            saveStoppedByParser = parseFinished.get();
+        } finally {
+            try {
+                out.close();
+            } catch (IOException e) {
+                logger.debug("Couldn't close the project pipe", e); //$NON-NLS-1$
+            }
+        }
+        try {
+            parser.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SAXException("Interrupted while waiting for the project to be parsed", e); //$NON-NLS-1$
+        }
+
+        // a failed save also makes the parse fail, and the other way around,
+        // so report whichever failure happened first
+        if (saveFailure != null && !saveStoppedByParser) {
+            throw saveFailure;
+        } else if (parseFailure[0] instanceof SAXException) {
+            throw (SAXException) parseFailure[0];
+        } else if (parseFailure[0] instanceof IOException) {
+            throw (IOException) parseFailure[0];
+        } else if (parseFailure[0] != null) {
+            throw new SAXException(parseFailure[0]);
+        } else if (saveFailure != null) {
+            throw saveFailure;
+        }
+    }
+
+    /**
+     * Writes the project XML to the given stream. This uses the session's
+     * save behaviour.
+     */
+    protected void writeProject(OutputStream out) throws IOException {
+        session.getSaveBehaviour().saveToStream(session, out);
+    }
+}
@@ -18,8 +18,6 @@
  */
 package ca.sqlpower.architect.transformation;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
@@ -30,23 +28,52 @@ import java.util.Map;
 import java.util.Map.Entry;
 
 import javax.xml.transform.Source;
+import javax.xml.transform.Templates;
 import javax.xml.transform.Transformer;
 import javax.xml.transform.TransformerException;
 import javax.xml.transform.TransformerFactory;
 import javax.xml.transform.URIResolver;
+import javax.xml.transform.sax.SAXSource;
 import javax.xml.transform.stream.StreamResult;
 import javax.xml.transform.stream.StreamSource;
 
+import org.xml.sax.InputSource;
+
 import ca.sqlpower.architect.swingui.ArchitectSwingSession;
 
 /**
  * This class transforms xml content from the InputStream passed, into the
  * format specified by the xslt stylesheet and sends the results to an
  * OutputStream.
+ * <p>
+ * The project is fed to the stylesheet by a {@link ProjectXMLReader}, so no
+ * saved copy of it is kept in memory. Built-in and external stylesheets are
+ * compiled once and kept until the external file changes.
  */
 public class XsltTransformation
   implements ReportTransformer, URIResolver {
 
+	/**
+	 * A compiled stylesheet, and the modification time of the file it was
+	 * compiled from (0 for built-in stylesheets).
+	 */
+	private static class CachedTemplates {
+		private final Templates templates;
+		private final long lastModified;
+
+		CachedTemplates(Templates templates, long lastModified) {
+			this.templates = templates;
+			this.lastModified = lastModified;
+		}
+	}
+
+	/**
+	 * The compiled stylesheets, keyed by resource name for built-in
+	 * stylesheets and by absolute path for external ones. Stylesheets
+	 * imported by an external stylesheet are not checked for changes.
+	 */
+	private static final Map<String, CachedTemplates> templatesCache = new HashMap<String, CachedTemplates>();
+
 	private File baseDir;
 	private File projectDir;
 	
@@ -66,8 +93,18 @@ public class XsltTransformation
 	public void transform(String builtInXsltName, File result, ArchitectSwingSession session)
 	  throws Exception {
 
-		InputStream xsltStylesheet = getClass().getResourceAsStream(builtInXsltName);
-		transform(xsltStylesheet, result, session);
+		String key = "builtin:" + builtInXsltName;
+		Templates templates = getCachedTemplates(key, 0);
+		if (templates == null) {
+			InputStream xsltStylesheet = getClass().getResourceAsStream(builtInXsltName);
+			try {
+				templates = compile(xsltStylesheet);
+			} finally {
+				xsltStylesheet.close();
+			}
+			putCachedTemplates(key, templates, 0);
+		}
+		transform(templates, result, session);
 	}
 
 	/**
@@ -81,9 +118,20 @@ public class XsltTransformation
 	public void transform(File xsltStylesheet, File output, ArchitectSwingSession session)
 	  throws Exception {
 
-		InputStream xslt = new FileInputStream(xsltStylesheet);
 		baseDir = xsltStylesheet.getParentFile();
-		transform(xslt, output, session);
+		String key = xsltStylesheet.getAbsolutePath();
+		long lastModified = xsltStylesheet.lastModified();
+		Templates templates = getCachedTemplates(key, lastModified);
+		if (templates == null) {
+			InputStream xslt = new FileInputStream(xsltStylesheet);
+			try {
+				templates = compile(xslt);
+			} finally {
+				xslt.close();
+			}
+			putCachedTemplates(key, templates, lastModified);
+		}
+		transform(templates, output, session);
 	}
 
 	/**
@@ -96,27 +144,68 @@ public class XsltTransformation
 	 */
 	public void transform(InputStream xsltStylesheet, File output, ArchitectSwingSession session)
 	  throws Exception {
-		ByteArrayOutputStream sessionAsStream = new ByteArrayOutputStream();
-		session.getSaveBehaviour().saveToStream(session, sessionAsStream);
+		Templates templates;
+		try {
+			templates = compile(xsltStylesheet);
+		} finally {
+			xsltStylesheet.close();
+		}
+		transform(templates, output, session);
+	}
 
-		Source xmlSource = new StreamSource(new ByteArrayInputStream(sessionAsStream.toByteArray()));
-		Source xsltSource = new StreamSource(xsltStylesheet);
+	/**
+	 * Runs the given compiled stylesheet on the session's project, writing
+	 * the result to the given file.
+	 */
+	private void transform(Templates templates, File output, ArchitectSwingSession session)
+	  throws Exception {
+		Source xmlSource = new SAXSource(new ProjectXMLReader(session), new InputSource());
 		FileOutputStream result = new FileOutputStream(output);
+		try {
+			Transformer trans = templates.newTransformer();
+			trans.setURIResolver(this);
+
+			for (Entry<String, Object> entry : parameters.entrySet()) {
+			    trans.setParameter(entry.getKey(), entry.getValue());
+			}
 
+			trans.transform(xmlSource, new StreamResult(result));
+			result.flush();
+		} finally {
+			result.close();
+		}
+	}
+
+	/**
+	 * Compiles the given stylesheet, resolving the stylesheets it imports
+	 * with this transformation.
+	 */
+	private Templates compile(InputStream xsltStylesheet) throws TransformerException {
 		TransformerFactory transFact =
 				TransformerFactory.newInstance();
 
 		transFact.setURIResolver(this);
-		Transformer trans = transFact.newTransformer(xsltSource);
-		
-		for (Entry<String, Object> entry : parameters.entrySet()) {
-		    trans.setParameter(entry.getKey(), entry.getValue());
+		return transFact.newTemplates(new StreamSource(xsltStylesheet));
+	}
+
+	/**
+	 * Returns the cached stylesheet for the given key, or null if there is
+	 * none or it was compiled from a file that has changed since.
+	 */
+	private static Templates getCachedTemplates(String key, long lastModified) {
+		synchronized (templatesCache) {
+			CachedTemplates cached = templatesCache.get(key);
+			if (cached == null || cached.lastModified != lastModified) {
+				return null;
+			}
+			return cached.templates;
 		}
+	}
 
-		trans.transform(xmlSource, new StreamResult(result));
-		result.flush();
-		result.close();
-		xsltStylesheet.close();
+	private static void putCachedTemplates(String key, Templates templates, long lastModified) {
+		synchronized (templatesCache) {
+			templatesCache.put(key, new CachedTemplates(templates, lastModified));
+		}
 	}
 
 	/**